@@ -0,0 +1,31 @@
+package es.udc.fi.dc.fd.controller;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewFilter;
+
+/**
+ * Open entity manager in view filter which skips the Server-Sent Events
+ * streams.
+ * <p>
+ * A stream stays open for minutes, and the entity manager of the view would
+ * keep its database connection during all that time.
+ */
+public class EventStreamAwareOpenEntityManagerInViewFilter extends OpenEntityManagerInViewFilter {
+
+	/** Suffix of the paths of the event streams. */
+	private static final String EVENTS_SUFFIX = "/events";
+
+	/**
+	 * Default constructor.
+	 */
+	public EventStreamAwareOpenEntityManagerInViewFilter() {
+		super();
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return request.getRequestURI().endsWith(EVENTS_SUFFIX);
+	}
+
+}
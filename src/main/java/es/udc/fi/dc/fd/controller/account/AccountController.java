@@ -3,7 +3,9 @@
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
@@ -29,12 +31,13 @@
 import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.service.UserService;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementDTOAssembler;
+import es.udc.fi.dc.fd.service.securityService.PasswordEncoderOverloadedException;
 import es.udc.fi.dc.fd.service.securityService.SecurityService;
 import es.udc.fi.dc.fd.service.user.exceptions.HighRatingException;
 import es.udc.fi.dc.fd.service.user.exceptions.LowRatingException;
 import es.udc.fi.dc.fd.service.user.exceptions.UserAlreadyGiveRatingToUserToRate;
 import es.udc.fi.dc.fd.service.user.exceptions.UserEmailExistsException;
-import es.udc.fi.dc.fd.service.user.exceptions.UserEmailNotFoundException;
 import es.udc.fi.dc.fd.service.user.exceptions.UserLoginAndEmailExistsException;
 import es.udc.fi.dc.fd.service.user.exceptions.UserLoginExistsException;
 import es.udc.fi.dc.fd.service.user.exceptions.UserNoRatingException;
@@ -54,6 +57,11 @@ public class AccountController {
 	 */
 	private SecurityService securityService;
 
+	/**
+	 * The sale advertisement DTO assembler.
+	 */
+	private SaleAdvertisementDTOAssembler assembler;
+
 	private String redirect = "redirect:";
 
 	private String referer = "Referer";
@@ -63,14 +71,18 @@ public class AccountController {
 	 * 
 	 * @param userService     user service
 	 * @param securityService security service
+	 * @param assembler       sale advertisement DTO assembler
 	 */
 	@Autowired
-	public AccountController(final UserService userService, final SecurityService securityService) {
+	public AccountController(final UserService userService, final SecurityService securityService,
+			final SaleAdvertisementDTOAssembler assembler) {
 		super();
 		this.securityService = checkNotNull(securityService, ViewConstants.NULL_POINTER);
 
 		this.userService = checkNotNull(userService, ViewConstants.NULL_POINTER);
 
+		this.assembler = checkNotNull(assembler, ViewConstants.NULL_POINTER);
+
 	}
 
 	/**
@@ -94,7 +106,9 @@ public String showSignUpView(final Model model) {
 	 * @param bindingResult bindingResult
 	 * @param model         model
 	 * 
-	 * @return the welcome view
+	 * @return the welcome view, the sign up view with the errors or, when the
+	 *         account was created but its password could not be checked to sign
+	 *         in, the sign in view
 	 */
 	@PostMapping(path = "/signUp")
 	public String signUp(@Valid @ModelAttribute("signUpForm") SignUpForm signUpForm, BindingResult bindingResult,
@@ -108,11 +122,6 @@ public String signUp(@Valid @ModelAttribute("signUpForm") SignUpForm signUpForm,
 
 			userService.signUp(new DefaultUserEntity(signUpForm.getLogin(), signUpForm.getPassword(),
 					signUpForm.getName(), signUpForm.getLastName(), signUpForm.getEmail(), signUpForm.getCity()));
-
-			securityService.autologin(signUpForm.getLogin(), signUpForm.getPassword());
-			model.addAttribute(ViewConstants.USER_NAME, signUpForm.getLogin());
-
-			return ViewConstants.WELCOME;
 		} catch (UserLoginExistsException e) {
 			model.addAttribute(AccountViewConstants.USER_EXIST, AccountViewConstants.USER_EXIST);
 			checkEmail(signUpForm, model);
@@ -124,7 +133,21 @@ public String signUp(@Valid @ModelAttribute("signUpForm") SignUpForm signUpForm,
 			model.addAttribute(AccountViewConstants.USER_EXIST, AccountViewConstants.USER_EXIST);
 			model.addAttribute(AccountViewConstants.EMAIL_EXIST, AccountViewConstants.EMAIL_EXIST);
 			return ViewConstants.VIEW_SIGNUP;
+		} catch (PasswordEncoderOverloadedException e) {
+			// Nothing was saved, the same form can be sent again
+			model.addAttribute(AccountViewConstants.TRY_AGAIN, AccountViewConstants.TRY_AGAIN);
+			return ViewConstants.VIEW_SIGNUP;
+		}
+
+		try {
+			securityService.autologin(signUpForm.getLogin(), signUpForm.getPassword());
+		} catch (PasswordEncoderOverloadedException e) {
+			// The account is already created, the user only has to sign in
+			return redirect + "/signIn";
 		}
+		model.addAttribute(ViewConstants.USER_NAME, signUpForm.getLogin());
+
+		return ViewConstants.WELCOME;
 	}
 
 	/**
@@ -149,8 +172,7 @@ public String showSignInView(final Model model) {
 	@GetMapping(path = "/profile")
 	public String showProfile(final Model model) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity user = userService.findByLogin(username);
+			DefaultUserEntity user = userService.getReference(this.securityService.findLoggedInUserId());
 
 			UserDTO userDTO = createUserDTO(user, user);
 
@@ -174,8 +196,7 @@ public String showUserProfile(@PathVariable(value = "id") Integer id, final Mode
 		try {
 			model.addAttribute(AccountViewConstants.RATE_FORM, new RateForm());
 
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity userLogged = userService.findByLogin(username);
+			DefaultUserEntity userLogged = userService.getReference(this.securityService.findLoggedInUserId());
 			DefaultUserEntity user = userService.findById(id);
 
 			UserDTO userDTO = createUserDTO(user, userLogged);
@@ -199,8 +220,7 @@ public String showUserProfile(@PathVariable(value = "id") Integer id, final Mode
 	@GetMapping(path = "/follow/{id}")
 	public String followUser(@PathVariable(value = "id") Integer id, Model model, HttpServletRequest request) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity user = userService.findByLogin(username);
+			DefaultUserEntity user = userService.getReference(this.securityService.findLoggedInUserId());
 
 			DefaultUserEntity userToFollow = userService.findById(id);
 
@@ -226,8 +246,7 @@ public String followUser(@PathVariable(value = "id") Integer id, Model model, Ht
 	@GetMapping(path = "/unfollow/{id}")
 	public String unfollowUser(@PathVariable(value = "id") Integer id, Model model, HttpServletRequest request) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity user = userService.findByLogin(username);
+			DefaultUserEntity user = userService.getReference(this.securityService.findLoggedInUserId());
 
 			DefaultUserEntity userToFollow = userService.findById(id);
 
@@ -253,8 +272,7 @@ public String unfollowUser(@PathVariable(value = "id") Integer id, Model model,
 	public String showUserFollowers(@PathVariable(value = "id") Integer id, Model model) {
 
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity userLogged = userService.findByLogin(username);
+			DefaultUserEntity userLogged = userService.getReference(this.securityService.findLoggedInUserId());
 			DefaultUserEntity user = userService.findById(id);
 
 			UserDTO userDTO = createUserDTO(user, userLogged);
@@ -283,8 +301,7 @@ public String showUserFollowers(@PathVariable(value = "id") Integer id, Model mo
 	public String showUserFollowed(@PathVariable(value = "id") Integer id, Model model) {
 
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity userLogged = userService.findByLogin(username);
+			DefaultUserEntity userLogged = userService.getReference(this.securityService.findLoggedInUserId());
 			DefaultUserEntity user = userService.findById(id);
 
 			UserDTO userDTO = createUserDTO(user, userLogged);
@@ -312,8 +329,7 @@ public String showUserFollowed(@PathVariable(value = "id") Integer id, Model mod
 	@GetMapping(path = "/profile/{id}/advertisements")
 	public String showUserAdvertisements(@PathVariable(value = "id") Integer id, Model model) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity userLogged = userService.findByLogin(username);
+			DefaultUserEntity userLogged = userService.getReference(this.securityService.findLoggedInUserId());
 			DefaultUserEntity user = userService.findById(id);
 
 			UserDTO userDTO = createUserDTO(user, userLogged);
@@ -343,8 +359,7 @@ public String showUserAdvertisements(@PathVariable(value = "id") Integer id, Mod
 	@GetMapping(path = "/profile/{id}/likes")
 	public String showUserLikes(@PathVariable(value = "id") Integer id, Model model) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity userLogged = userService.findByLogin(username);
+			DefaultUserEntity userLogged = userService.getReference(this.securityService.findLoggedInUserId());
 			DefaultUserEntity user = userService.findById(id);
 
 			UserDTO userDTO = createUserDTO(user, userLogged);
@@ -375,10 +390,10 @@ public String showUserLikes(@PathVariable(value = "id") Integer id, Model model)
 	@PostMapping(path = "/premium")
 	public String becomePremium(Model model, HttpServletRequest request) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity user = userService.findByLogin(username);
+			DefaultUserEntity user = userService.getReference(this.securityService.findLoggedInUserId());
 
 			userService.premiumUser(user);
+			securityService.updateLoggedInUser(user);
 
 			UserDTO userDTO = createUserDTO(user, user);
 			model.addAttribute(AccountViewConstants.USER, userDTO);
@@ -408,8 +423,7 @@ public String rateUser(@PathVariable(value = "id") Integer id, @ModelAttribute("
 			if (bindingResult.hasErrors())
 				return redirect + previousPage;
 
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity user = userService.findByLogin(username);
+			DefaultUserEntity user = userService.getReference(this.securityService.findLoggedInUserId());
 
 			DefaultUserEntity userToRate = userService.findById(id);
 
@@ -432,8 +446,7 @@ public String rateUser(@PathVariable(value = "id") Integer id, @ModelAttribute("
 	@GetMapping(path = "/profile/history")
 	public String showPurchaseHistory(Model model) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity userLogged = userService.findByLogin(username);
+			DefaultUserEntity userLogged = userService.getReference(this.securityService.findLoggedInUserId());
 
 			UserDTO userDTO = createUserDTO(userLogged, userLogged);
 			model.addAttribute(AccountViewConstants.USER, userDTO);
@@ -456,19 +469,10 @@ public String showPurchaseHistory(Model model) {
 	 * @param model      the model
 	 */
 	private void checkUserNameAndEmail(SignUpForm signUpForm, Model model) {
-		try {
-			userService.findByLogin(signUpForm.getLogin());
+		if (userService.existsLogin(signUpForm.getLogin()))
 			model.addAttribute(AccountViewConstants.USER_EXIST, AccountViewConstants.USER_EXIST);
-		} catch (UserNotFoundException e) {
-			// If the exception jump, the user name is not in use
-		}
 
-		try {
-			userService.findByEmail(signUpForm.getEmail());
-			model.addAttribute(AccountViewConstants.EMAIL_EXIST, AccountViewConstants.EMAIL_EXIST);
-		} catch (UserEmailNotFoundException e) {
-			// If the exception jump, the email is not in use
-		}
+		checkEmail(signUpForm, model);
 	}
 
 	/**
@@ -478,12 +482,8 @@ private void checkUserNameAndEmail(SignUpForm signUpForm, Model model) {
 	 * @param model      the model
 	 */
 	private void checkEmail(SignUpForm signUpForm, Model model) {
-		try {
-			userService.findByEmail(signUpForm.getEmail());
+		if (userService.existsEmail(signUpForm.getEmail()))
 			model.addAttribute(AccountViewConstants.EMAIL_EXIST, AccountViewConstants.EMAIL_EXIST);
-		} catch (UserEmailNotFoundException e) {
-			// If the exception jump, the email is not in use
-		}
 	}
 
 	/**
@@ -546,51 +546,22 @@ private List<UserDTO> createUserDTOList(Set<DefaultUserEntity> usersList, Defaul
 		return usersDTOList;
 	}
 
-	/**
-	 * Creates a new sale advertisement DTO.
-	 *
-	 * @param saleAdvertisement the sale advertisement
-	 * @param userLogged        the user logged
-	 * @return the sale advertisement with logged user info DTO
-	 * @throws UserNotFoundException the user not found exception
-	 * @throws UserNoRatingException the user no rating exception
-	 */
-	private SaleAdvertisementWithLoggedUserInfoDTO createSaleAdvertisementDTO(
-			DefaultSaleAdvertisementEntity saleAdvertisement, DefaultUserEntity userLogged)
-			throws UserNotFoundException, UserNoRatingException {
-		boolean isRated = userService.existsRatingForUser(saleAdvertisement.getUser());
-		Double averageRating;
-		if (isRated)
-			averageRating = userService.averageRating(saleAdvertisement.getUser());
-		else
-			averageRating = null;
-
-		return new SaleAdvertisementWithLoggedUserInfoDTO(saleAdvertisement,
-				userLogged.getLikes().contains(saleAdvertisement),
-				userLogged.getFollowed().contains(saleAdvertisement.getUser()), isRated, averageRating,
-				saleAdvertisement.getBuyTransaction() != null, saleAdvertisement.getUser().equals(userLogged));
-
-	}
-
 	/**
 	 * Creates a new sale advertisement DTO list.
 	 *
 	 * @param saleAdvertisementsList the sale advertisements list
 	 * @param userLogged             the user logged
 	 * @return the list
-	 * @throws UserNotFoundException the user not found exception
-	 * @throws UserNoRatingException the user no rating exception
 	 */
 	private List<SaleAdvertisementWithLoggedUserInfoDTO> createSaleAdvertisementDTOList(
-			Set<DefaultSaleAdvertisementEntity> saleAdvertisementsList, DefaultUserEntity userLogged)
-			throws UserNotFoundException, UserNoRatingException {
-		List<SaleAdvertisementWithLoggedUserInfoDTO> saleAdvertisementsListDtoList = new ArrayList<>();
+			Set<DefaultSaleAdvertisementEntity> saleAdvertisementsList, DefaultUserEntity userLogged) {
+		List<Integer> saleAdvertisementIds = new ArrayList<>();
 
 		for (DefaultSaleAdvertisementEntity saleAdvertisement : saleAdvertisementsList) {
-			saleAdvertisementsListDtoList.add(createSaleAdvertisementDTO(saleAdvertisement, userLogged));
+			saleAdvertisementIds.add(saleAdvertisement.getId());
 		}
 
-		return saleAdvertisementsListDtoList;
+		return assembler.assemble(saleAdvertisementIds, userLogged);
 	}
 
 	/**
@@ -599,15 +570,24 @@ private List<SaleAdvertisementWithLoggedUserInfoDTO> createSaleAdvertisementDTOL
 	 * @param buyTransactionList the buy transaction list
 	 * @param userLogged         the user logged
 	 * @return the list
-	 * @throws UserNotFoundException the user not found exception
-	 * @throws UserNoRatingException the user no rating exception
 	 */
 	private List<BuyTransactionDTO> createBuyTransactionDTOList(Set<DefaultBuyTransactionEntity> buyTransactionList,
-			DefaultUserEntity userLogged) throws UserNotFoundException, UserNoRatingException {
+			DefaultUserEntity userLogged) {
+		List<Integer> saleAdvertisementIds = new ArrayList<>();
+		for (DefaultBuyTransactionEntity buyTransaction : buyTransactionList) {
+			saleAdvertisementIds.add(buyTransaction.getSaleAdvertisement().getId());
+		}
+
+		Map<Integer, SaleAdvertisementWithLoggedUserInfoDTO> saleAdvertisements = new HashMap<>();
+		for (SaleAdvertisementWithLoggedUserInfoDTO saleAdvertisement : assembler.assemble(saleAdvertisementIds,
+				userLogged)) {
+			saleAdvertisements.put(saleAdvertisement.getSaleAdvertisementID(), saleAdvertisement);
+		}
+
 		List<BuyTransactionDTO> buyTransactionDtoList = new ArrayList<>();
 		for (DefaultBuyTransactionEntity buyTransaction : buyTransactionList) {
 			buyTransactionDtoList.add(new BuyTransactionDTO(buyTransaction.getCreatedDate(),
-					createSaleAdvertisementDTO(buyTransaction.getSaleAdvertisement(), userLogged)));
+					saleAdvertisements.get(buyTransaction.getSaleAdvertisement().getId())));
 		}
 		return buyTransactionDtoList;
 	}
@@ -11,6 +11,9 @@ public class AccountViewConstants {
 	/** User name already exist parameter name. */
 	public static final String EMAIL_EXIST = "email_exist";
 
+	/** The sign up could not be done now, and may be sent again. */
+	public static final String TRY_AGAIN = "try_again";
+
 	/** Message for incorrect fields . */
 	public static final String ERROR_LOGIN = "error_login";
 
@@ -2,28 +2,35 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import es.udc.fi.dc.fd.controller.ViewConstants;
 import es.udc.fi.dc.fd.model.dto.SaleAdvertisementWithLoggedUserInfoDTO;
 import es.udc.fi.dc.fd.model.form.SearchCriteriaForm;
-import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
-import es.udc.fi.dc.fd.service.SaleAdvertisementService;
 import es.udc.fi.dc.fd.service.UserService;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchService;
+import es.udc.fi.dc.fd.service.search.SearchPage;
 import es.udc.fi.dc.fd.service.securityService.SecurityService;
 import es.udc.fi.dc.fd.service.user.exceptions.UserNoRatingException;
 import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
@@ -32,8 +39,26 @@
 @RequestMapping("/api")
 public class ApiRestController {
 
-	/** The sale advertisement service. */
-	private SaleAdvertisementService saleAdvertisementService;
+	/**
+	 * Mapper used to stream the search results, configured like the one of the
+	 * message converters.
+	 */
+	private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().build();
+
+	/** Content type of the streamed search results, newline delimited JSON. */
+	public static final String NDJSON_VALUE = "application/x-ndjson";
+
+	/** Logger for the failures of the streamed searches. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ApiRestController.class);
+
+	/** Error reported at the end of a streamed search which could not finish. */
+	private static final String STREAM_ERROR = "The search could not be completed";
+
+	/** Number of sale advertisements written between flushes of the stream. */
+	private static final int STREAM_FLUSH_SIZE = 20;
+
+	/** The sale advertisement search service. */
+	private SaleAdvertisementSearchService searchService;
 
 	/** The user service. */
 	private UserService userService;
@@ -41,15 +66,15 @@ public class ApiRestController {
 	/**
 	 * Instantiates a new api rest controller.
 	 *
-	 * @param saleAdvertisementService the sale advertisement service
-	 * @param userService              the user service
-	 * @param securityService          the security service
+	 * @param searchService   the sale advertisement search service
+	 * @param userService     the user service
+	 * @param securityService the security service
 	 */
 	@Autowired
-	public ApiRestController(SaleAdvertisementService saleAdvertisementService, UserService userService,
+	public ApiRestController(SaleAdvertisementSearchService searchService, UserService userService,
 			SecurityService securityService) {
 		super();
-		this.saleAdvertisementService = checkNotNull(saleAdvertisementService, ViewConstants.NULL_POINTER);
+		this.searchService = checkNotNull(searchService, ViewConstants.NULL_POINTER);
 		this.userService = checkNotNull(userService, ViewConstants.NULL_POINTER);
 	}
 
@@ -64,7 +89,11 @@ public ApiRestController(SaleAdvertisementService saleAdvertisementService, User
 	 * @param minPrice  the min price
 	 * @param maxPrice  the max price
 	 * @param minRating the min rating
-	 * @return the response entity
+	 * @param limit     the maximum number of sale advertisements to return
+	 * @param after     the cursor of the previous page, sent in the
+	 *                  <code>Link</code> header of its response
+	 * @return the response entity, with a <code>Link</code> header pointing to
+	 *         the next page if there is one
 	 * @throws UserNotFoundException the user not found exception
 	 * @throws UserNoRatingException the user no rating exception
 	 */
@@ -77,106 +106,137 @@ public ResponseEntity<List<SaleAdvertisementWithLoggedUserInfoDTO>> find(
 			@RequestParam(value = "maxDate", required = false) String maxDate,
 			@RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
 			@RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
-			@RequestParam(value = "minRating", required = false) Double minRating)
+			@RequestParam(value = "minRating", required = false) Double minRating,
+			@RequestParam(value = "limit", required = false) Integer limit,
+			@RequestParam(value = "after", required = false) String after)
 			throws UserNotFoundException, UserNoRatingException {
 
-		LocalDate minimumDate;
-		LocalDate maximumDate;
-
 		DefaultUserEntity user = userService.findByLogin(userName);
-		SearchCriteriaForm form = checkSearchCriteriaParams(city, keywords, minPrice, maxPrice);
-
-		if (minDate == null || minDate.isEmpty())
-			minimumDate = LocalDate.of(1900, 1, 1);
-		else
-			minimumDate = LocalDate.parse(minDate, DateTimeFormatter.ISO_LOCAL_DATE);
-
-		if (maxDate == null || maxDate.isEmpty())
-			maximumDate = LocalDate.now();
-		else
-			maximumDate = LocalDate.parse(maxDate, DateTimeFormatter.ISO_LOCAL_DATE);
-
-		Iterable<DefaultSaleAdvertisementEntity> saleAdvertisementsList = saleAdvertisementService
-				.getSaleAdvertisementsBySearchCriteria(form.getCity(), form.getKeywords(),
-						LocalDateTime.of(minimumDate, LocalTime.of(0, 0, 0)),
-						LocalDateTime.of(maximumDate, LocalTime.of(23, 59, 59)), form.getMinPrice(), form.getMaxPrice(),
-						minRating);
-
-		List<SaleAdvertisementWithLoggedUserInfoDTO> list = new ArrayList<>();
-
-		for (DefaultSaleAdvertisementEntity saleAdvertisement : saleAdvertisementsList) {
+		SearchCriteriaForm form = createSearchCriteriaForm(city, keywords, minDate, maxDate, minPrice, maxPrice,
+				minRating);
+
+		SearchPage<SaleAdvertisementWithLoggedUserInfoDTO> page;
+		try {
+			page = searchService.search(user, form, after, limit);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().build();
+		}
 
-			if ((saleAdvertisement.getBuyTransaction() == null) || !(saleAdvertisement.getBuyTransaction()
-					.getCreatedDate().isBefore(LocalDateTime.now().minusDays(1)))) {
+		if (!page.hasNext())
+			return ResponseEntity.ok().body(page.getItems());
 
-				list.add(createSaleAdvertisementDTO(saleAdvertisement, user));
-			}
-		}
+		String next = ServletUriComponentsBuilder.fromCurrentRequest()
+				.replaceQueryParam("after", page.getNextCursor()).toUriString();
 
-		return ResponseEntity.ok().body(list);
+		return ResponseEntity.ok().header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"").body(page.getItems());
 
 	}
 
 	/**
-	 * Creates a new sale advertisement DTO.
+	 * Find, streaming every matching sale advertisement.
+	 * <p>
+	 * The sale advertisements are read one page at a time and each one is written
+	 * to the response as soon as it is built, so the memory used does not depend
+	 * on the number of results and the client gets the first ones right away.
+	 * <p>
+	 * The response is newline delimited JSON, one sale advertisement per line.
+	 * Invalid criteria are answered with a 400 status, and the first page is read
+	 * before anything is written, so a failure there is answered with a 500
+	 * status. Once the status is sent a failure can no
+	 * longer change it, and it is reported with a last line holding only an
+	 * <code>error</code> field, so a client always tells a complete response from
+	 * a truncated one.
 	 *
-	 * @param saleAdvertisement the sale advertisement
-	 * @param userLogged        the user logged
-	 * @return the sale advertisement with logged user info DTO
+	 * @param userName  the user name
+	 * @param city      the city
+	 * @param keywords  the keywords
+	 * @param minDate   the min date
+	 * @param maxDate   the max date
+	 * @param minPrice  the min price
+	 * @param maxPrice  the max price
+	 * @param minRating the min rating
+	 * @param response  the response
 	 * @throws UserNotFoundException the user not found exception
-	 * @throws UserNoRatingException the user no rating exception
+	 * @throws IOException           if the response can not be written
 	 */
-	private SaleAdvertisementWithLoggedUserInfoDTO createSaleAdvertisementDTO(
-			DefaultSaleAdvertisementEntity saleAdvertisement, DefaultUserEntity userLogged)
-			throws UserNotFoundException, UserNoRatingException {
+	@GetMapping("/search/stream")
+	public void findStream(@RequestParam(value = "userName", required = true) String userName,
+			@RequestParam(value = "city", required = false) String city,
+			@RequestParam(value = "keywords", required = false) String keywords,
+			@RequestParam(value = "minDate", required = false) String minDate,
+			@RequestParam(value = "maxDate", required = false) String maxDate,
+			@RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+			@RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
+			@RequestParam(value = "minRating", required = false) Double minRating, HttpServletResponse response)
+			throws UserNotFoundException, IOException {
 
-		boolean isRated = userService.existsRatingForUser(saleAdvertisement.getUser());
-		Double averageRating = null;
+		DefaultUserEntity user = userService.findByLogin(userName);
 
-		if (isRated)
-			averageRating = userService.averageRating(saleAdvertisement.getUser());
+		Iterator<SaleAdvertisementWithLoggedUserInfoDTO> saleAdvertisements;
+		try {
+			saleAdvertisements = searchService.iterate(user,
+					createSearchCriteriaForm(city, keywords, minDate, maxDate, minPrice, maxPrice, minRating));
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
 
-		return new SaleAdvertisementWithLoggedUserInfoDTO(saleAdvertisement,
-				userLogged.getLikes().contains(saleAdvertisement),
-				userLogged.getFollowed().contains(saleAdvertisement.getUser()), isRated, averageRating,
-				saleAdvertisement.getBuyTransaction() != null, saleAdvertisement.getUser().equals(userLogged));
+		boolean empty;
+		try {
+			empty = !saleAdvertisements.hasNext();
+		} catch (RuntimeException e) {
+			LOGGER.error("The search stream failed before the first sale advertisement", e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			return;
+		}
 
+		response.setContentType(NDJSON_VALUE);
+
+		try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(response.getOutputStream())) {
+			generator.setRootValueSeparator(null);
+			if (empty)
+				return;
+
+			int written = 0;
+			try {
+				do {
+					generator.writeObject(saleAdvertisements.next());
+					generator.writeRaw('\n');
+					if (++written % STREAM_FLUSH_SIZE == 0)
+						generator.flush();
+				} while (saleAdvertisements.hasNext());
+			} catch (RuntimeException e) {
+				LOGGER.error("The search stream failed after {} sale advertisements", written, e);
+				generator.writeStartObject();
+				generator.writeStringField("error", STREAM_ERROR);
+				generator.writeEndObject();
+				generator.writeRaw('\n');
+			}
+		}
 	}
 
 	/**
-	 * Check search criteria params.
+	 * Creates the search criteria form from the request parameters.
 	 *
-	 * @param form the form
+	 * @param city      the city
+	 * @param keywords  the keywords
+	 * @param minDate   the min date
+	 * @param maxDate   the max date
+	 * @param minPrice  the min price
+	 * @param maxPrice  the max price
+	 * @param minRating the min rating
+	 * @return the search criteria form
 	 */
-	private SearchCriteriaForm checkSearchCriteriaParams(String city, String keywords, BigDecimal minPrice,
-			BigDecimal maxPrice) {
-
+	private SearchCriteriaForm createSearchCriteriaForm(String city, String keywords, String minDate, String maxDate,
+			BigDecimal minPrice, BigDecimal maxPrice, Double minRating) {
 		SearchCriteriaForm form = new SearchCriteriaForm();
-
-		if (city == null || city.isEmpty())
-			form.setCity("%");
-		else if (city.contains("%"))
-			form.setCity("\\%");
-		else
-			form.setCity(city);
-
-		if (keywords == null)
-			form.setKeywords("");
-		else if (keywords.contains("%"))
-			form.setKeywords("\\%");
-		else
-			form.setKeywords(keywords);
-
-		if (minPrice == null)
-			form.setMinPrice(BigDecimal.valueOf(0));
-		else
-			form.setMinPrice(minPrice);
-
-		if (maxPrice == null)
-			form.setMaxPrice(saleAdvertisementService.getMaximumPrice());
-		else
-			form.setMaxPrice(maxPrice);
-
+		form.setCity(city);
+		form.setKeywords(keywords);
+		form.setMinDate(minDate);
+		form.setMaxDate(maxDate);
+		form.setMinPrice(minPrice);
+		form.setMaxPrice(maxPrice);
+		form.setMinRating(minRating);
 		return form;
 	}
 }
@@ -2,12 +2,14 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
 import java.util.List;
-import java.util.Set;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -16,18 +18,22 @@
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import es.udc.fi.dc.fd.controller.ViewConstants;
+import es.udc.fi.dc.fd.model.dto.ChatInboxEntryDTO;
 import es.udc.fi.dc.fd.model.form.ChatForm;
 import es.udc.fi.dc.fd.model.persistence.DefaultChatMessageEntity;
-import es.udc.fi.dc.fd.model.persistence.DefaultChatRoomEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.service.UserService;
 import es.udc.fi.dc.fd.service.chat.ChatMessageService;
+import es.udc.fi.dc.fd.service.chat.ChatNotificationRegistry;
 import es.udc.fi.dc.fd.service.chat.ChatRoomService;
 import es.udc.fi.dc.fd.service.chat.exceptions.ChatRoomNotFoundException;
 import es.udc.fi.dc.fd.service.chat.exceptions.IncorrectChatMessageException;
+import es.udc.fi.dc.fd.service.securityService.LoggedUser;
 import es.udc.fi.dc.fd.service.securityService.SecurityService;
 import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
 
@@ -38,6 +44,9 @@
 @RequestMapping("/chat")
 public class ChatController {
 
+	/** Maximum number of messages shown at once. */
+	private static final int MESSAGES_PAGE_SIZE = 50;
+
 	/**
 	 * The User service.
 	 */
@@ -54,17 +63,21 @@ public class ChatController {
 	/** The chat message service. */
 	private final ChatMessageService chatMessageService;
 
+	/** The chat notification registry. */
+	private final ChatNotificationRegistry notificationRegistry;
+
 	/**
 	 * Constructs a controller with the specified dependencies.
 	 *
-	 * @param userService        the user service
-	 * @param securityService    the security service
-	 * @param chatRoomService    the chat room service
-	 * @param chatMessageService the chat message service
+	 * @param userService          the user service
+	 * @param securityService      the security service
+	 * @param chatRoomService      the chat room service
+	 * @param chatMessageService   the chat message service
+	 * @param notificationRegistry the chat notification registry
 	 */
 	@Autowired
 	public ChatController(UserService userService, SecurityService securityService, ChatRoomService chatRoomService,
-			ChatMessageService chatMessageService) {
+			ChatMessageService chatMessageService, ChatNotificationRegistry notificationRegistry) {
 		super();
 		this.securityService = checkNotNull(securityService, ViewConstants.NULL_POINTER);
 
@@ -73,6 +86,8 @@ public ChatController(UserService userService, SecurityService securityService,
 		this.chatRoomService = checkNotNull(chatRoomService, ViewConstants.NULL_POINTER);
 
 		this.chatMessageService = checkNotNull(chatMessageService, ViewConstants.NULL_POINTER);
+
+		this.notificationRegistry = checkNotNull(notificationRegistry, ViewConstants.NULL_POINTER);
 	}
 
 	/**
@@ -84,13 +99,12 @@ public ChatController(UserService userService, SecurityService securityService,
 	@GetMapping(path = "/emptyChat")
 	public String showEmptyChat(Model model) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity user = userService.findByLogin(username);
+			LoggedUser user = loggedUser();
 
 			model.addAttribute(ChatViewConstants.USER, user);
 			model.addAttribute(ChatViewConstants.CHAT_FORM, new ChatForm());
 
-			Set<DefaultChatRoomEntity> chatList = chatRoomService.findByUserId(user.getId());
+			List<ChatInboxEntryDTO> chatList = chatRoomService.findInbox(user.getId());
 			model.addAttribute(ChatViewConstants.CHAT_LIST, chatList);
 
 			return ChatViewConstants.CHAT_VIEW;
@@ -120,19 +134,43 @@ public String showChat(@PathVariable(value = "id") Integer id, Model model) {
 	}
 
 	/**
-	 * Show messages with the user with the id only by reloading the section
-	 * #messages_history.
+	 * Show a page of the messages with the user with the id, to be added to the
+	 * section #messages_history. These are the messages older than
+	 * <code>before</code> when scrolling back, the ones newer than
+	 * <code>after</code> when new messages arrive, or else the latest ones.
 	 *
-	 * @param id    the id
-	 * @param model the model
+	 * @param id     the id
+	 * @param before the oldest message id already shown
+	 * @param after  the newest message id already shown
+	 * @param model  the model
 	 * @return the string
 	 */
 	@GetMapping(path = "/messages/{id}")
-	public String showMessagges(@PathVariable(value = "id") Integer id, Model model) {
+	public String showMessagges(@PathVariable(value = "id") Integer id,
+			@RequestParam(value = "before", required = false) Integer before,
+			@RequestParam(value = "after", required = false) Integer after, Model model) {
 		try {
-			loadMessagges(model, id);
+			LoggedUser user = loggedUser();
+			DefaultUserEntity recipientUser = userService.findById(id);
 
-			return ChatViewConstants.CHAT_VIEW + " :: #messages_history";
+			List<DefaultChatMessageEntity> messages;
+			if (before != null) {
+				messages = chatMessageService.findChatMessagesBefore(user.getId(), recipientUser.getId(), before,
+						MESSAGES_PAGE_SIZE);
+			} else if (after != null) {
+				messages = chatMessageService.findChatMessagesAfter(user.getId(), recipientUser.getId(), after,
+						MESSAGES_PAGE_SIZE);
+				markAsRead(user, recipientUser);
+			} else {
+				messages = chatMessageService.findLatestChatMessages(user.getId(), recipientUser.getId(),
+						MESSAGES_PAGE_SIZE);
+				markAsRead(user, recipientUser);
+			}
+
+			model.addAttribute(ChatViewConstants.USER, user);
+			model.addAttribute(ChatViewConstants.MESSAGES, messages);
+
+			return ChatViewConstants.CHAT_VIEW + " :: messages_page";
 
 		} catch (UserNotFoundException | ChatRoomNotFoundException e) {
 			return ViewConstants.VIEW_SIGNIN;
@@ -140,28 +178,33 @@ public String showMessagges(@PathVariable(value = "id") Integer id, Model model)
 	}
 
 	/**
-	 * Returns true if there are new messages with the user id.
+	 * Opens a Server-Sent Events stream notified of each new message of the chat
+	 * with the user id.
+	 *
+	 * <p>
+	 * An unknown user or chat is answered with the error of the container, not
+	 * with an exception, so the exception handlers do not turn it into an error
+	 * page with a 200 status the browser keeps reconnecting to.
 	 *
-	 * @param userId      the user id
-	 * @param messageSize the message size
-	 * @param model       the model
-	 * @return true, if successful
+	 * @param id       the id
+	 * @param response the response
+	 * @return the stream, or null if the chat was not found
+	 * @throws IOException if the error can not be sent
 	 */
-	@GetMapping(path = "/{userId}/{messageSize}")
-	public @ResponseBody boolean areNewMessages(@PathVariable(value = "userId") Integer userId,
-			@PathVariable(value = "messageSize") Integer messageSize, Model model) {
+	@GetMapping(path = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public @ResponseBody SseEmitter subscribe(@PathVariable(value = "id") Integer id, HttpServletResponse response)
+			throws IOException {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity user = userService.findByLogin(username);
-			DefaultUserEntity recipientUser = userService.findById(userId);
+			LoggedUser user = loggedUser();
+			DefaultUserEntity recipientUser = userService.findById(id);
 
-			List<DefaultChatMessageEntity> messages = chatMessageService.findChatMessages(user.getId(),
-					recipientUser.getId());
+			Integer chatId = chatRoomService.getChatId(user.getId(), recipientUser.getId(), true);
 
-			return messages.size() != messageSize;
+			return notificationRegistry.subscribe(chatId);
 
 		} catch (UserNotFoundException | ChatRoomNotFoundException e) {
-			return false;
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return null;
 		}
 	}
 
@@ -178,8 +221,7 @@ public String showMessagges(@PathVariable(value = "id") Integer id, Model model)
 	public String sendMessage(@Valid @ModelAttribute ChatForm chatForm, BindingResult bindingResult,
 			@PathVariable(value = "id") Integer id, final Model model) {
 		try {
-			String username = this.securityService.findLoggedInUsername();
-			DefaultUserEntity user = userService.findByLogin(username);
+			LoggedUser user = loggedUser();
 			DefaultUserEntity recipientUser = userService.findById(id);
 
 			if (!bindingResult.hasErrors()) {
@@ -193,13 +235,14 @@ public String sendMessage(@Valid @ModelAttribute ChatForm chatForm, BindingResul
 			Integer chatId = chatRoomService.getChatId(user.getId(), recipientUser.getId(), true);
 			model.addAttribute(ChatViewConstants.CHAT_ACTIVE, chatId);
 
-			Set<DefaultChatRoomEntity> chatList = chatRoomService.findByUserId(user.getId());
+			chatRoomService.markAsRead(chatId, user.getId());
+			List<ChatInboxEntryDTO> chatList = chatRoomService.findInbox(user.getId());
 			model.addAttribute(ChatViewConstants.CHAT_LIST, chatList);
 
-			List<DefaultChatMessageEntity> messages = chatMessageService.findChatMessages(user.getId(),
-					recipientUser.getId());
+			List<DefaultChatMessageEntity> messages = chatMessageService.findLatestChatMessages(user.getId(),
+					recipientUser.getId(), MESSAGES_PAGE_SIZE);
 			model.addAttribute(ChatViewConstants.MESSAGES, messages);
-			model.addAttribute(ChatViewConstants.MESSAGES_SIZE, messages.size());
+			model.addAttribute(ChatViewConstants.MESSAGES_PAGE_SIZE, MESSAGES_PAGE_SIZE);
 
 			return ChatViewConstants.CHAT_VIEW;
 
@@ -210,8 +253,7 @@ public String sendMessage(@Valid @ModelAttribute ChatForm chatForm, BindingResul
 
 	private void loadMessagges(Model model, Integer userToChatId)
 			throws UserNotFoundException, ChatRoomNotFoundException {
-		String username = this.securityService.findLoggedInUsername();
-		DefaultUserEntity user = userService.findByLogin(username);
+		LoggedUser user = loggedUser();
 		DefaultUserEntity recipientUser = userService.findById(userToChatId);
 
 		model.addAttribute(ChatViewConstants.USER, user);
@@ -221,12 +263,33 @@ private void loadMessagges(Model model, Integer userToChatId)
 		Integer chatId = chatRoomService.getChatId(user.getId(), recipientUser.getId(), true);
 		model.addAttribute(ChatViewConstants.CHAT_ACTIVE, chatId);
 
-		Set<DefaultChatRoomEntity> chatList = chatRoomService.findByUserId(user.getId());
+		chatRoomService.markAsRead(chatId, user.getId());
+		List<ChatInboxEntryDTO> chatList = chatRoomService.findInbox(user.getId());
 		model.addAttribute(ChatViewConstants.CHAT_LIST, chatList);
 
-		List<DefaultChatMessageEntity> messages = chatMessageService.findChatMessages(user.getId(),
-				recipientUser.getId());
+		List<DefaultChatMessageEntity> messages = chatMessageService.findLatestChatMessages(user.getId(),
+				recipientUser.getId(), MESSAGES_PAGE_SIZE);
 		model.addAttribute(ChatViewConstants.MESSAGES, messages);
-		model.addAttribute(ChatViewConstants.MESSAGES_SIZE, messages.size());
+		model.addAttribute(ChatViewConstants.MESSAGES_PAGE_SIZE, MESSAGES_PAGE_SIZE);
+	}
+
+	private void markAsRead(LoggedUser user, DefaultUserEntity recipientUser)
+			throws UserNotFoundException, ChatRoomNotFoundException {
+		Integer chatId = chatRoomService.getChatId(user.getId(), recipientUser.getId(), true);
+		chatRoomService.markAsRead(chatId, user.getId());
+	}
+
+	/**
+	 * Gets the logged user, without reading it from the database.
+	 *
+	 * @return the logged user
+	 * @throws UserNotFoundException if there is not an user logged in
+	 */
+	private LoggedUser loggedUser() throws UserNotFoundException {
+		LoggedUser user = securityService.findLoggedInUser();
+		if (user == null)
+			throw new UserNotFoundException((Integer) null);
+
+		return user;
 	}
 }
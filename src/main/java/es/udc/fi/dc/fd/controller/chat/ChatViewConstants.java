@@ -17,14 +17,15 @@ public class ChatViewConstants {
 	/** The Constant MESSAGES. */
 	public static final String MESSAGES = "messages";
 
+	/** The Constant MESSAGES_PAGE_SIZE. */
+	public static final String MESSAGES_PAGE_SIZE = "messagesPageSize";
+
 	/** The Constant RECIPIENT_USER_ID. */
 	public static final String RECIPIENT_USER_ID = "recipientUserId";
 
 	/** The Constant CHAT VIEW. */
 	public static final String CHAT_VIEW = "chat/chat";
 
-	public static final String MESSAGES_SIZE = "messagesSize";
-
 	private ChatViewConstants() {
 		super();
 	}
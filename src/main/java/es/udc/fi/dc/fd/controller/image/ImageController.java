@@ -0,0 +1,163 @@
+package es.udc.fi.dc.fd.controller.image;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import es.udc.fi.dc.fd.service.ImageFileCache;
+import es.udc.fi.dc.fd.service.ImageStore;
+
+/**
+ * Controller serving the files of the image store.
+ * <p>
+ * The files are named after the hash of their contents, so they are cached by
+ * the browsers as immutable and their hash is their strong ETag. A single byte
+ * range is served when it is asked for, and the rest of the requests with
+ * ranges get the whole file.
+ * <p>
+ * The images uploaded before the store are not mapped here, and they are still
+ * served as plain files.
+ * <p>
+ * A missing file is answered with the error of the container, not with an
+ * exception, so the exception handlers do not turn it into an error page with
+ * a 200 status.
+ */
+@Controller
+public class ImageController {
+
+	/** Cache control of the stored files, which never change. */
+	private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+	/** The image store. */
+	private final ImageStore imageStore;
+
+	/** The mappings of the served files. */
+	private final ImageFileCache imageFileCache;
+
+	/** The context, which gives the content types. */
+	private final ServletContext context;
+
+	/**
+	 * Instantiates a new image controller.
+	 *
+	 * @param imageStore     the image store
+	 * @param imageFileCache the mappings of the served files
+	 * @param context        the servlet context
+	 */
+	@Autowired
+	public ImageController(final ImageStore imageStore, final ImageFileCache imageFileCache,
+			final ServletContext context) {
+		super();
+		this.imageStore = checkNotNull(imageStore, "Received a null pointer as imageStore");
+		this.imageFileCache = checkNotNull(imageFileCache, "Received a null pointer as imageFileCache");
+		this.context = checkNotNull(context, "Received a null pointer as context");
+	}
+
+	/**
+	 * Serves a stored file or one of its variants.
+	 *
+	 * @param folder     the folder of the file, the first characters of its hash
+	 * @param name       the name of the file
+	 * @param webRequest the request, to check the ETag
+	 * @param request    the request
+	 * @param response   the response
+	 * @throws IOException if the file can not be read or the response written
+	 */
+	@GetMapping(ImageStore.IMAGES_PATH + "/{folder:[0-9a-f]{2}}/"
+			+ "{name:[0-9a-f]{64}(?:-[a-z]{1,20})?(?:\\.[a-z0-9]{1,10})?}")
+	public void serveImage(@PathVariable String folder, @PathVariable String name, ServletWebRequest webRequest,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Path file = imageStore.getStoredFile(folder + "/" + name);
+		if (file == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		long size;
+		try {
+			size = Files.readAttributes(file, BasicFileAttributes.class).size();
+		} catch (NoSuchFileException e) {
+			imageFileCache.invalidate(file);
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		String etag = "\"" + FilenameUtils.getBaseName(name) + "\"";
+		response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+		if (webRequest.checkNotModified(etag))
+			return;
+
+		String contentType = context.getMimeType(name);
+		response.setContentType(contentType == null ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType);
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+		long start = 0;
+		long end = size - 1;
+		HttpRange range = getRange(request, etag);
+		if (range != null) {
+			try {
+				start = range.getRangeStart(size);
+				end = range.getRangeEnd(size);
+			} catch (IllegalArgumentException e) {
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+				response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+				return;
+			}
+			response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+		}
+
+		long count = end - start + 1;
+		response.setContentLengthLong(count);
+		if (count > 0 && !HttpMethod.HEAD.matches(request.getMethod()))
+			imageFileCache.transfer(file, size, start, count, response.getOutputStream());
+	}
+
+	/**
+	 * Gets the byte range asked for, if there is a single one and the If-Range
+	 * condition, if any, matches the file.
+	 *
+	 * @param request the request
+	 * @param etag    the ETag of the file
+	 * @return the range, or null if the whole file is served
+	 */
+	private static HttpRange getRange(HttpServletRequest request, String etag) {
+		String header = request.getHeader(HttpHeaders.RANGE);
+		if (header == null)
+			return null;
+
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (ifRange != null && !ifRange.trim().equals(etag))
+			return null;
+
+		List<HttpRange> ranges;
+		try {
+			ranges = HttpRange.parseRanges(header);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		return ranges.size() == 1 ? ranges.get(0) : null;
+	}
+
+}
@@ -2,11 +2,7 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +32,7 @@
 import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.service.ImageService;
+import es.udc.fi.dc.fd.service.ImageStore;
 import es.udc.fi.dc.fd.service.SaleAdvertisementService;
 import es.udc.fi.dc.fd.service.UserService;
 import es.udc.fi.dc.fd.service.exceptions.ImageAlreadyExistsException;
@@ -67,6 +64,9 @@ public class SaleAdvertisementFormController {
 	/** The context. */
 	private ServletContext context;
 
+	/** The image store. */
+	private ImageStore imageStore;
+
 	/**
 	 * Instantiates a new sale add controller.
 	 *
@@ -75,17 +75,19 @@ public class SaleAdvertisementFormController {
 	 * @param userService              the user service
 	 * @param context                  the context
 	 * @param imageService             the image service
+	 * @param imageStore               the image store
 	 */
 	@Autowired
 	public SaleAdvertisementFormController(final SaleAdvertisementService saleAdvertisementService,
 			final SecurityService securityService, final UserService userService, final ServletContext context,
-			final ImageService imageService) {
+			final ImageService imageService, final ImageStore imageStore) {
 		super();
 		this.saleAdvertisementService = checkNotNull(saleAdvertisementService, ViewConstants.NULL_POINTER);
 		this.securityService = checkNotNull(securityService, ViewConstants.NULL_POINTER);
 		this.userService = checkNotNull(userService, ViewConstants.NULL_POINTER);
 		this.imageService = checkNotNull(imageService, ViewConstants.NULL_POINTER);
 		this.context = checkNotNull(context, ViewConstants.NULL_POINTER);
+		this.imageStore = checkNotNull(imageStore, ViewConstants.NULL_POINTER);
 	}
 
 	/**
@@ -124,9 +126,7 @@ public String addSaleAdvertisement(
 				return SaleAdvertisementViewConstants.VIEW_SALE_ADVERTISEMENT_FORM;
 			}
 
-			String username = securityService.findLoggedInUsername();
-
-			DefaultUserEntity user = userService.findByLogin(username);
+			DefaultUserEntity user = userService.getReference(securityService.findLoggedInUserId());
 
 			double price = Double.parseDouble(saleAdvertisementForm.getPrice());
 
@@ -180,6 +180,9 @@ private void uploadImages(Integer saleId, List<MultipartFile> files, Model model
 
 	/**
 	 * Upload one image into the saleAdvertisement.
+	 * <p>
+	 * The file is stored by the hash of its contents, so uploading the same image
+	 * twice stores it once.
 	 *
 	 * @param saleAdvertisement the sale advertisement
 	 * @param file              the image
@@ -187,128 +190,21 @@ private void uploadImages(Integer saleId, List<MultipartFile> files, Model model
 	 */
 	private void uploadImage(DefaultSaleAdvertisementEntity saleAdvertisement, MultipartFile file)
 			throws InternalServerErrorException {
-
+		String imagePath;
 		try {
-			final String slash = "/";
-			InputStream inputStream = file.getInputStream();
-
-			openFolder(getUserFolderAbsolutePath());
-
-			File newFile = createFile(file);
-
-			writeInputStreamIntoFile(inputStream, newFile);
-
-			String finalFileName = newFile.getName();
-			String filePath = getUserFolderRelativePath() + slash + finalFileName;
-
-			imageService.add(new DefaultImageEntity(filePath, finalFileName, saleAdvertisement));
-		} catch (IOException | InternalServerErrorException | ImageAlreadyExistsException e) {
+			imagePath = imageStore.store(file);
+		} catch (IOException e) {
 			throw new InternalServerErrorException();
 		}
-	}
 
-	/**
-	 * Open the folder or create it if it does not exist.
-	 *
-	 * @param folderPath the folder path
-	 * @return the file
-	 * @throws InternalServerErrorException the internal server error exception if
-	 *                                      can't open or create the folder
-	 */
-	private File openFolder(String folderPath) throws InternalServerErrorException {
 		try {
-			File folder = new File(folderPath);
-
-			if ((!folder.exists()) && (!folder.mkdirs())) {
-				throw new InternalServerErrorException();
-			}
-
-			return folder;
-		} catch (SecurityException e) {
+			String title = FilenameUtils.getName(file.getOriginalFilename());
+			imageService.add(new DefaultImageEntity(context.getContextPath() + imagePath,
+					title == null ? "" : title, saleAdvertisement));
+		} catch (ImageAlreadyExistsException | DataIntegrityViolationException e) {
+			imageStore.release(imagePath);
 			throw new InternalServerErrorException();
 		}
 	}
 
-	/**
-	 * Creates the file.
-	 *
-	 * @param uploadFile the upload file
-	 * @return the file
-	 * @throws InternalServerErrorException the internal server error exception
-	 */
-	private File createFile(MultipartFile uploadFile) throws InternalServerErrorException {
-		try {
-			String folderPath = getUserFolderAbsolutePath();
-			String originalFileName = uploadFile.getOriginalFilename();
-			String fileName = FilenameUtils.removeExtension(originalFileName);
-			String extension = FilenameUtils.getExtension(originalFileName);
-
-			String finalFileName = fileName + "." + extension;
-			final String slash = "/";
-
-			File newFile = new File(folderPath, finalFileName);
-			String filePath = getUserFolderRelativePath() + slash + finalFileName;
-
-			// If file exists, new version
-			int version = 1;
-			while (newFile.exists() || imageService.existsImagePath(filePath)) {
-				finalFileName = fileName + version + "." + extension;
-				newFile = new File(folderPath, finalFileName);
-				version++;
-				filePath = getUserFolderRelativePath() + slash + finalFileName;
-			}
-
-			if (!newFile.createNewFile()) {
-				throw new InternalServerErrorException();
-			}
-
-			return newFile;
-		} catch (IOException | SecurityException e) {
-			throw new InternalServerErrorException();
-		}
-	}
-
-	/**
-	 * Write input stream into file.
-	 *
-	 * @param inputStream the input stream
-	 * @param file        the file
-	 * @throws InternalServerErrorException the internal server error exception
-	 */
-	private void writeInputStreamIntoFile(InputStream inputStream, File file) throws InternalServerErrorException {
-		try (OutputStream outputStream = new FileOutputStream(file)) {
-			int read = 0;
-			byte[] bytes = new byte[1024];
-
-			while ((read = inputStream.read(bytes)) != -1) {
-				outputStream.write(bytes, 0, read);
-			}
-
-		} catch (IOException e) {
-			throw new InternalServerErrorException();
-		}
-	}
-
-	/**
-	 * Gets the user folder absolute path.
-	 *
-	 * @return the user folder absolute path
-	 */
-	private String getUserFolderAbsolutePath() {
-		String login = this.securityService.findLoggedInUsername();
-
-		return context.getRealPath("/") + ViewConstants.UPLOADS_FOLDER_NAME + "/" + login;
-	}
-
-	/**
-	 * Gets the user folder relative path.
-	 *
-	 * @return the user folder relative path
-	 */
-	private String getUserFolderRelativePath() {
-		String login = this.securityService.findLoggedInUsername();
-
-		return context.getContextPath() + ViewConstants.UPLOADS_FOLDER_NAME + "/" + login;
-	}
-
-}
\ No newline at end of file
+}
@@ -53,8 +53,8 @@ public class SaleAdvertisementViewConstants {
 	/** The Constant SEARCH_CRITERIA_FORM. */
 	public static final String SEARCH_CRITERIA_FORM = "searchCriteriaForm";
 
-	/** The Constant FIND_API_REST. */
-	public static final String FIND_API_REST = "/api/search";
+	/** The Constant NEXT_PAGE_URL. */
+	public static final String NEXT_PAGE_URL = "nextPageUrl";
 
 	/**
 	 * Private constructor to avoid initialization.
@@ -59,6 +59,20 @@ public interface ImageEntity extends Serializable {
 	 */
 	public String getImagePath();
 
+	/**
+	 * Returns the path of the card sized variant of the image.
+	 *
+	 * @return the variant's path, or null if it was not generated
+	 */
+	public String getCardPath();
+
+	/**
+	 * Returns the path of the detail sized variant of the image.
+	 *
+	 * @return the variant's path, or null if it was not generated
+	 */
+	public String getDetailPath();
+
 	/**
 	 * Returns the sale_advertisement of the image.
 	 *
@@ -0,0 +1,25 @@
+package es.udc.fi.dc.fd.model;
+
+import java.io.Serializable;
+
+/**
+ * A stored image file, shared by every image with the same contents.
+ */
+public interface ImageFileEntity extends Serializable {
+
+	/**
+	 * Gets the name of the file: the SHA-256 hash of its contents and its
+	 * extension.
+	 *
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Gets the number of images which use the file.
+	 *
+	 * @return the reference count
+	 */
+	int getReferenceCount();
+
+}
@@ -181,4 +181,25 @@ public interface SaleAdvertisementEntity extends Serializable {
 	 */
 	void setBuyTransaction(DefaultBuyTransactionEntity buyTransaction);
 
+	/**
+	 * Gets the date when the sale advertisement was sold.
+	 *
+	 * @return the sold date, null if it is not sold
+	 */
+	LocalDateTime getSoldDate();
+
+	/**
+	 * Sets the date when the sale advertisement was sold.
+	 *
+	 * @param soldDate the sold date
+	 */
+	void setSoldDate(LocalDateTime soldDate);
+
+	/**
+	 * Gets the number of users who like the sale advertisement.
+	 *
+	 * @return the likes count
+	 */
+	Integer getLikesCount();
+
 }
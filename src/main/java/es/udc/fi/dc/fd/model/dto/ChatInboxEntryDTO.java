@@ -0,0 +1,136 @@
+package es.udc.fi.dc.fd.model.dto;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * The Class ChatInboxEntryDTO. Used to send a chat room of the inbox of the
+ * logged user from the controller to the view.
+ */
+public class ChatInboxEntryDTO implements Serializable {
+
+	/**
+	 * Serialization ID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/** The chat room id. */
+	private final Integer chatId;
+
+	/** The id of the other user of the chat room. */
+	private final Integer peerId;
+
+	/** The login of the other user of the chat room. */
+	private final String peerLogin;
+
+	/** The contents of the last message, null if there are no messages. */
+	private final String lastMessage;
+
+	/** The time of the last message, null if there are no messages. */
+	private final Date lastMessageTime;
+
+	/** The number of messages not read by the logged user. */
+	private final int unreadCount;
+
+	/**
+	 * Instantiates a new chat inbox entry DTO.
+	 *
+	 * @param chatId          the chat room id
+	 * @param peerId          the id of the other user
+	 * @param peerLogin       the login of the other user
+	 * @param lastMessage     the contents of the last message
+	 * @param lastMessageTime the time of the last message
+	 * @param unreadCount     the number of unread messages
+	 */
+	public ChatInboxEntryDTO(Integer chatId, Integer peerId, String peerLogin, String lastMessage,
+			Date lastMessageTime, int unreadCount) {
+		super();
+		this.chatId = chatId;
+		this.peerId = peerId;
+		this.peerLogin = peerLogin;
+		this.lastMessage = lastMessage;
+		this.lastMessageTime = lastMessageTime;
+		this.unreadCount = unreadCount;
+	}
+
+	/**
+	 * Gets the chat room id.
+	 *
+	 * @return the chat room id
+	 */
+	public Integer getChatId() {
+		return chatId;
+	}
+
+	/**
+	 * Gets the id of the other user.
+	 *
+	 * @return the id of the other user
+	 */
+	public Integer getPeerId() {
+		return peerId;
+	}
+
+	/**
+	 * Gets the login of the other user.
+	 *
+	 * @return the login of the other user
+	 */
+	public String getPeerLogin() {
+		return peerLogin;
+	}
+
+	/**
+	 * Gets the contents of the last message.
+	 *
+	 * @return the contents of the last message
+	 */
+	public String getLastMessage() {
+		return lastMessage;
+	}
+
+	/**
+	 * Gets the time of the last message.
+	 *
+	 * @return the time of the last message
+	 */
+	public Date getLastMessageTime() {
+		return lastMessageTime;
+	}
+
+	/**
+	 * Gets the number of unread messages.
+	 *
+	 * @return the number of unread messages
+	 */
+	public int getUnreadCount() {
+		return unreadCount;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(chatId, peerId, peerLogin, lastMessage, lastMessageTime, unreadCount);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ChatInboxEntryDTO)) {
+			return false;
+		}
+		ChatInboxEntryDTO other = (ChatInboxEntryDTO) obj;
+		return Objects.equals(chatId, other.chatId) && Objects.equals(peerId, other.peerId)
+				&& Objects.equals(peerLogin, other.peerLogin) && Objects.equals(lastMessage, other.lastMessage)
+				&& Objects.equals(lastMessageTime, other.lastMessageTime) && unreadCount == other.unreadCount;
+	}
+
+	@Override
+	public String toString() {
+		return "ChatInboxEntryDTO [chatId=" + chatId + ", peerId=" + peerId + ", peerLogin=" + peerLogin
+				+ ", lastMessageTime=" + lastMessageTime + ", unreadCount=" + unreadCount + "]";
+	}
+
+}
@@ -53,9 +53,37 @@ public final class ImageDTO implements Serializable {
 	 */
 	private String imagePath;
 
+	/**
+	 * Path of the image shown in the sale advertisement cards.
+	 * <p>
+	 * The original image until its card sized variant is generated
+	 */
+	private String cardImagePath;
+
+	/**
+	 * Path of the image shown in the sale advertisement page.
+	 * <p>
+	 * The original image until its detail sized variant is generated
+	 */
+	private String detailImagePath;
+
 	public ImageDTO(String imagePath) {
+		this(imagePath, null, null);
+	}
+
+	/**
+	 * Constructs a DTO for an image and its variants.
+	 *
+	 * @param imagePath  the image path
+	 * @param cardPath   the card sized variant path, null if it was not generated
+	 * @param detailPath the detail sized variant path, null if it was not
+	 *                   generated
+	 */
+	public ImageDTO(String imagePath, String cardPath, String detailPath) {
 		super();
 		this.imagePath = imagePath;
+		this.cardImagePath = cardPath == null ? imagePath : cardPath;
+		this.detailImagePath = detailPath == null ? imagePath : detailPath;
 	}
 
 	/**
@@ -64,8 +92,7 @@ public ImageDTO(String imagePath) {
 	 * @param image the image
 	 */
 	public ImageDTO(ImageEntity image) {
-		super();
-		imagePath = image.getImagePath();
+		this(image.getImagePath(), image.getCardPath(), image.getDetailPath());
 	}
 
 	/**
@@ -77,6 +104,24 @@ public final String getImagePath() {
 		return imagePath;
 	}
 
+	/**
+	 * Returns the path of the image shown in the cards.
+	 * 
+	 * @return the card image path
+	 */
+	public final String getCardImagePath() {
+		return cardImagePath;
+	}
+
+	/**
+	 * Returns the path of the image shown in the sale advertisement page.
+	 * 
+	 * @return the detail image path
+	 */
+	public final String getDetailImagePath() {
+		return detailImagePath;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -105,7 +150,8 @@ public boolean equals(Object obj) {
 
 	@Override
 	public String toString() {
-		return "ImageDTO [imagePath=" + imagePath + "]";
+		return "ImageDTO [imagePath=" + imagePath + ", cardImagePath=" + cardImagePath + ", detailImagePath="
+				+ detailImagePath + "]";
 	}
 
 }
@@ -31,7 +31,9 @@
 import java.util.List;
 import java.util.Objects;
 
+import es.udc.fi.dc.fd.model.Role;
 import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
+import es.udc.fi.dc.fd.model.State;
 
 /**
  * Represents the information send to sale advertisement list view
@@ -147,7 +149,7 @@ public SaleAdvertisementWithLoggedUserInfoDTO(SaleAdvertisementEntity saleAdvert
 		productTitle = saleAdvertisement.getProductTitle();
 		productDescription = saleAdvertisement.getProductDescription();
 		ownerUserLogin = saleAdvertisement.getUser().getLogin();
-		saleAdvertisementLikesCount = saleAdvertisement.getLikes().size();
+		saleAdvertisementLikesCount = saleAdvertisement.getLikesCount();
 		saleAdvertisementID = saleAdvertisement.getId();
 		date = saleAdvertisement.getDate();
 		this.userLikeSaleAdvertisement = userLikeSaleAdvertisement;
@@ -164,6 +166,59 @@ public SaleAdvertisementWithLoggedUserInfoDTO(SaleAdvertisementEntity saleAdvert
 		this.isUserLogged = isUserLogged;
 	}
 
+	/**
+	 * Constructs SaleAdvertisementWithLoggedUserInfoDTO DTO from values already
+	 * read, without touching the sale advertisement associations.
+	 *
+	 * @param saleAdvertisementID                    the sale advertisement id
+	 * @param productTitle                           the product title
+	 * @param productDescription                     the product description
+	 * @param date                                   the publish date
+	 * @param price                                  the price
+	 * @param state                                  the state
+	 * @param ownerUserId                            the owner user id
+	 * @param ownerUserLogin                         the owner user login
+	 * @param city                                   the owner city
+	 * @param role                                   the owner role
+	 * @param saleAdvertisementLikesCount            the likes count
+	 * @param images                                 the images
+	 * @param userLikeSaleAdvertisement              the user like sale
+	 *                                               advertisement
+	 * @param loggedUserFollowsSaleAdvertisementUser the logged user follows sale
+	 *                                               advertisement user
+	 * @param averageRating                          the average rating, null if
+	 *                                               the owner is not rated
+	 * @param saleAdvertisementIsSold                the sale advertisement is sold
+	 * @param isUserLogged                           the is user logged
+	 */
+	public SaleAdvertisementWithLoggedUserInfoDTO(Integer saleAdvertisementID, String productTitle,
+			String productDescription, LocalDateTime date, BigDecimal price, State state, Integer ownerUserId,
+			String ownerUserLogin, String city, Role role, Integer saleAdvertisementLikesCount, List<ImageDTO> images,
+			boolean userLikeSaleAdvertisement, boolean loggedUserFollowsSaleAdvertisementUser, Double averageRating,
+			boolean saleAdvertisementIsSold, boolean isUserLogged) {
+
+		super();
+
+		this.productTitle = productTitle;
+		this.productDescription = productDescription;
+		this.ownerUserLogin = ownerUserLogin;
+		this.saleAdvertisementLikesCount = saleAdvertisementLikesCount;
+		this.saleAdvertisementID = saleAdvertisementID;
+		this.date = date;
+		this.userLikeSaleAdvertisement = userLikeSaleAdvertisement;
+		this.ownerUserId = ownerUserId;
+		this.loggedUserFollowsSaleAdvertisementUser = loggedUserFollowsSaleAdvertisementUser;
+		this.state = state.toString();
+		this.price = price;
+		this.city = city;
+		this.role = role.ordinal();
+		this.areUserRated = averageRating != null;
+		this.averageRating = averageRating;
+		this.images = images;
+		this.saleAdvertisementIsSold = saleAdvertisementIsSold;
+		this.isUserLogged = isUserLogged;
+	}
+
 	/**
 	 * @return the saleAdvertisementIsSold
 	 */
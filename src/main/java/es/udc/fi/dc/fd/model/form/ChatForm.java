@@ -3,6 +3,8 @@
 import java.io.Serializable;
 import java.util.Objects;
 
+import javax.validation.constraints.Size;
+
 import org.hibernate.validator.constraints.NotEmpty;
 
 public class ChatForm implements Serializable {
@@ -12,6 +14,7 @@ public class ChatForm implements Serializable {
 	 */
 	private static final long serialVersionUID = 1L;
 	@NotEmpty(message = "{notEmpty}")
+	@Size(max = 255, message = "{chatMessageSize}")
 	private String messageText;
 
 	public String getMessageText() {
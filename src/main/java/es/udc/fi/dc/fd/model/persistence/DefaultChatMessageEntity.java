@@ -44,6 +44,12 @@ public class DefaultChatMessageEntity implements ChatMessageEntity {
 	@Column(name = "content", nullable = false, unique = false)
 	private String contents;
 
+	@Column(name = "logNode", insertable = false, updatable = false)
+	private String logNode;
+
+	@Column(name = "logPosition", insertable = false, updatable = false)
+	private Long logPosition;
+
 	public DefaultChatMessageEntity() {
 		super();
 	}
@@ -1,5 +1,6 @@
 package es.udc.fi.dc.fd.model.persistence;
 
+import java.util.Date;
 import java.util.Objects;
 
 import javax.persistence.Column;
@@ -34,10 +35,38 @@ public class DefaultChatRoomEntity implements ChatRoomEntity {
 	@JoinColumn(name = "userIdTwo")
 	private DefaultUserEntity userTwo;
 
+	/**
+	 * Lower id of the two users, which with {@link #highUserId} identifies the room
+	 * whoever started it.
+	 */
+	@Column(name = "lowUserId", nullable = false)
+	private Integer lowUserId;
+
+	/** Higher id of the two users. */
+	@Column(name = "highUserId", nullable = false)
+	private Integer highUserId;
+
+	/** Contents of the last message, updated when a message is sent. */
+	@Column(name = "lastMessageContent", insertable = false, updatable = false)
+	private String lastMessageContent;
+
+	/** Time of the last message, updated when a message is sent. */
+	@Column(name = "lastMessageTime", insertable = false, updatable = false)
+	private Date lastMessageTime;
+
+	/** Messages not read yet by the user with the lower id. */
+	@Column(name = "lowUserUnread", insertable = false, updatable = false)
+	private Integer lowUserUnread;
+
+	/** Messages not read yet by the user with the higher id. */
+	@Column(name = "highUserUnread", insertable = false, updatable = false)
+	private Integer highUserUnread;
+
 	public DefaultChatRoomEntity(DefaultUserEntity userOne, DefaultUserEntity userTwo) {
 		super();
 		this.userOne = userOne;
 		this.userTwo = userTwo;
+		updateUserPair();
 	}
 
 	public DefaultChatRoomEntity() {
@@ -47,11 +76,13 @@ public DefaultChatRoomEntity() {
 	@Override
 	public void setUserTwo(DefaultUserEntity user) {
 		this.userTwo = user;
+		updateUserPair();
 	}
 
 	@Override
 	public void setUserOne(DefaultUserEntity user) {
 		this.userOne = user;
+		updateUserPair();
 	}
 
 	@Override
@@ -69,6 +100,38 @@ public Integer getId() {
 		return this.id;
 	}
 
+	public Integer getLowUserId() {
+		return this.lowUserId;
+	}
+
+	public Integer getHighUserId() {
+		return this.highUserId;
+	}
+
+	public String getLastMessageContent() {
+		return this.lastMessageContent;
+	}
+
+	public Date getLastMessageTime() {
+		return this.lastMessageTime;
+	}
+
+	public Integer getLowUserUnread() {
+		return this.lowUserUnread;
+	}
+
+	public Integer getHighUserUnread() {
+		return this.highUserUnread;
+	}
+
+	private void updateUserPair() {
+		if (userOne == null || userTwo == null || userOne.getId() == null || userTwo.getId() == null)
+			return;
+
+		this.lowUserId = Math.min(userOne.getId(), userTwo.getId());
+		this.highUserId = Math.max(userOne.getId(), userTwo.getId());
+	}
+
 	@Override
 	public int hashCode() {
 		return Objects.hash(userOne, userTwo);
@@ -28,6 +28,7 @@
 
 import java.util.Objects;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -39,6 +40,9 @@
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import es.udc.fi.dc.fd.model.ImageEntity;
 import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
 
@@ -51,6 +55,8 @@
  */
 @Entity(name = "ImageEntity")
 @Table(name = "images")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 public class DefaultImageEntity implements ImageEntity {
 
 	/**
@@ -76,13 +82,23 @@ public class DefaultImageEntity implements ImageEntity {
 	private String title = "";
 
 	/**
-	 * Title of the image.
-	 * <p>
-	 * This is to have additional data apart from the id, to be used on the tests.
+	 * Path of the image file, shared by the images with the same contents.
 	 */
-	@Column(name = "image_path", nullable = false, unique = true)
+	@Column(name = "image_path", nullable = false, unique = false)
 	private String image_path = "";
 
+	/**
+	 * Path of the card sized variant of the image, null until it is generated.
+	 */
+	@Column(name = "card_path", nullable = true, unique = false)
+	private String card_path;
+
+	/**
+	 * Path of the detail sized variant of the image, null until it is generated.
+	 */
+	@Column(name = "detail_path", nullable = true, unique = false)
+	private String detail_path;
+
 	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "sale_advertisement_id", nullable = false)
 	private DefaultSaleAdvertisementEntity sale_advertisement;
@@ -123,6 +139,16 @@ public String getImagePath() {
 		return image_path;
 	}
 
+	@Override
+	public String getCardPath() {
+		return card_path;
+	}
+
+	@Override
+	public String getDetailPath() {
+		return detail_path;
+	}
+
 	@Override
 	public SaleAdvertisementEntity getSale_advertisement() {
 		return sale_advertisement;
@@ -0,0 +1,88 @@
+package es.udc.fi.dc.fd.model.persistence;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import es.udc.fi.dc.fd.model.ImageFileEntity;
+
+/**
+ * Persistent entity for the stored image files.
+ * <p>
+ * The reference count is only changed through the repository updates, so
+ * concurrent images sharing a file do not overwrite each other's count.
+ */
+@Entity(name = "ImageFileEntity")
+@Table(name = "image_files")
+public class DefaultImageFileEntity implements ImageFileEntity {
+
+	/**
+	 * Serialization ID.
+	 */
+	@Transient
+	private static final long serialVersionUID = 1L;
+
+	/** Hash of the contents and extension of the file. */
+	@Id
+	@Column(name = "name", nullable = false, unique = true)
+	private String name;
+
+	/** Number of images which use the file. */
+	@Column(name = "reference_count", nullable = false)
+	private int referenceCount;
+
+	/**
+	 * Constructs an image file entity.
+	 */
+	public DefaultImageFileEntity() {
+		super();
+	}
+
+	/**
+	 * Constructs an image file entity used by a single image.
+	 *
+	 * @param name the file name
+	 */
+	public DefaultImageFileEntity(final String name) {
+		super();
+		this.name = checkNotNull(name, "Received a null pointer as name");
+		this.referenceCount = 1;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getReferenceCount() {
+		return referenceCount;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof DefaultImageFileEntity))
+			return false;
+		DefaultImageFileEntity other = (DefaultImageFileEntity) obj;
+		return Objects.equals(name, other.name);
+	}
+
+	@Override
+	public String toString() {
+		return "DefaultImageFileEntity [name=" + name + ", referenceCount=" + referenceCount + "]";
+	}
+
+}
@@ -32,6 +32,7 @@
 import java.util.Objects;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -45,6 +46,9 @@
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import com.google.common.base.MoreObjects;
 
 import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
@@ -63,6 +67,8 @@
  */
 @Entity(name = "SaleAdvertisementEntity")
 @Table(name = "sale_advertisements")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class DefaultSaleAdvertisementEntity implements SaleAdvertisementEntity {
 
 	/**
@@ -101,6 +107,7 @@ public class DefaultSaleAdvertisementEntity implements SaleAdvertisementEntity {
 	 * This is to have additional data apart from the id, to be used on the tests.
 	 */
 	@OneToMany(mappedBy = "sale_advertisement")
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 	private Set<DefaultImageEntity> images = new HashSet<>();
 
 	/**
@@ -138,6 +145,24 @@ public class DefaultSaleAdvertisementEntity implements SaleAdvertisementEntity {
 	@Column(name = "state", nullable = true, unique = false)
 	private State state;
 
+	/**
+	 * The date when the sale_advertisement was sold, null if it is not sold.
+	 * <p>
+	 * Only written by the bulk update run when it is bought, so saving a stale
+	 * copy of the sale_advertisement never clears it.
+	 */
+	@Column(name = "sold_date", nullable = true, insertable = false, updatable = false)
+	private LocalDateTime soldDate;
+
+	/**
+	 * The number of users who like the sale_advertisement.
+	 * <p>
+	 * Only written by the bulk updates run on like and unlike, so it can be read
+	 * without loading the users.
+	 */
+	@Column(name = "likes_count", nullable = false, insertable = false, updatable = false)
+	private Integer likesCount = 0;
+
 	/**
 	 * Constructs an sale_advertisement entity.
 	 */
@@ -333,4 +358,19 @@ public void setPrice(BigDecimal price) {
 		this.price = price;
 	}
 
+	@Override
+	public LocalDateTime getSoldDate() {
+		return soldDate;
+	}
+
+	@Override
+	public void setSoldDate(LocalDateTime soldDate) {
+		this.soldDate = soldDate;
+	}
+
+	@Override
+	public Integer getLikesCount() {
+		return likesCount;
+	}
+
 }
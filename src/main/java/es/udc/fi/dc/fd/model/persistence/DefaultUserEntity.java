@@ -30,6 +30,7 @@
 import java.util.Objects;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -42,6 +43,9 @@
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import es.udc.fi.dc.fd.model.Role;
 import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.UserEntity;
@@ -55,6 +59,8 @@
  */
 @Entity(name = "UserEntity")
 @Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class DefaultUserEntity implements UserEntity {
 
 	/** The Constant NULL_USER. */
@@ -116,21 +122,69 @@ public class DefaultUserEntity implements UserEntity {
 	@Column(name = "role", nullable = true, unique = false)
 	private Role role;
 
+	/**
+	 * Sum of the ratings received by the user.
+	 * <p>
+	 * The rating aggregates are only written through the bulk update of the user
+	 * repository, so saving a stale copy of the user never overwrites them.
+	 */
+	@Column(name = "rating_sum", nullable = false, insertable = false, updatable = false)
+	private Long ratingSum = 0L;
+
+	/**
+	 * Number of ratings received by the user.
+	 */
+	@Column(name = "rating_count", nullable = false, insertable = false, updatable = false)
+	private Integer ratingCount = 0;
+
+	/**
+	 * Number of one star ratings received by the user.
+	 */
+	@Column(name = "one_star_ratings", nullable = false, insertable = false, updatable = false)
+	private Integer oneStarRatings = 0;
+
+	/**
+	 * Number of two star ratings received by the user.
+	 */
+	@Column(name = "two_star_ratings", nullable = false, insertable = false, updatable = false)
+	private Integer twoStarRatings = 0;
+
+	/**
+	 * Number of three star ratings received by the user.
+	 */
+	@Column(name = "three_star_ratings", nullable = false, insertable = false, updatable = false)
+	private Integer threeStarRatings = 0;
+
+	/**
+	 * Number of four star ratings received by the user.
+	 */
+	@Column(name = "four_star_ratings", nullable = false, insertable = false, updatable = false)
+	private Integer fourStarRatings = 0;
+
+	/**
+	 * Number of five star ratings received by the user.
+	 */
+	@Column(name = "five_star_ratings", nullable = false, insertable = false, updatable = false)
+	private Integer fiveStarRatings = 0;
+
 	/**
 	 * Sale_advertisements of the user.
 	 * <p>
 	 * This is to have additional data apart from the id, to be used on the tests.
 	 */
 	@OneToMany(mappedBy = "user")
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 	private Set<DefaultSaleAdvertisementEntity> sale_advertisements;
 
 	/** The followers. */
 	@ManyToMany(mappedBy = "followed")
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 	private Set<DefaultUserEntity> followers = new HashSet<>();
 
 	/** The followed. */
 	@ManyToMany
 	@JoinTable(name = "follow_users", joinColumns = @JoinColumn(name = "user_id"), inverseJoinColumns = @JoinColumn(name = "user_follow_id"))
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 	private Set<DefaultUserEntity> followed = new HashSet<>();
 
 	/**
@@ -245,6 +299,45 @@ public Role getRole() {
 		return role;
 	}
 
+	/**
+	 * Gets the sum of the ratings received by the user.
+	 *
+	 * @return the rating sum
+	 */
+	public Long getRatingSum() {
+		return ratingSum;
+	}
+
+	/**
+	 * Gets the number of ratings received by the user.
+	 *
+	 * @return the rating count
+	 */
+	public Integer getRatingCount() {
+		return ratingCount;
+	}
+
+	/**
+	 * Gets the average rating of the user.
+	 *
+	 * @return the average rating, null if the user is not rated
+	 */
+	public Double getAverageRating() {
+		if (ratingCount == null || ratingCount == 0)
+			return null;
+		return ratingSum.doubleValue() / ratingCount;
+	}
+
+	/**
+	 * Gets the number of ratings received by the user for each number of stars,
+	 * from one to five.
+	 *
+	 * @return the rating histogram
+	 */
+	public int[] getRatingHistogram() {
+		return new int[] { oneStarRatings, twoStarRatings, threeStarRatings, fourStarRatings, fiveStarRatings };
+	}
+
 	/**
 	 * Gets the sale advertisements.
 	 *
@@ -478,10 +571,11 @@ public boolean equals(Object obj) {
 			return false;
 		}
 		DefaultUserEntity other = (DefaultUserEntity) obj;
-		return Objects.equals(id, other.id) && Objects.equals(login, other.login)
-				&& Objects.equals(password, other.password) && Objects.equals(name, other.name)
-				&& Objects.equals(lastName, other.lastName) && role == other.role && Objects.equals(email, other.email)
-				&& Objects.equals(city, other.city);
+		// The getters are used, as the other user may be a lazy proxy
+		return Objects.equals(id, other.getId()) && Objects.equals(login, other.getLogin())
+				&& Objects.equals(password, other.getPassword()) && Objects.equals(name, other.getName())
+				&& Objects.equals(lastName, other.getLastName()) && role == other.getRole()
+				&& Objects.equals(email, other.getEmail()) && Objects.equals(city, other.getCity());
 	}
 
 }
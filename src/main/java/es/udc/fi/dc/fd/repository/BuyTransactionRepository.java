@@ -38,5 +38,4 @@
  * @author Santiago
  */
 public interface BuyTransactionRepository extends JpaRepository<DefaultBuyTransactionEntity, BuyTransactionId> {
-
 }
@@ -2,6 +2,7 @@
 
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -10,6 +11,51 @@
 
 public interface ChatMessageRepository extends JpaRepository<DefaultChatMessageEntity, Integer> {
 
-	@Query("SELECT s from ChatMessageEntity s WHERE s.chatId  = :chatId ORDER BY s.timeSent ASC")
-	List<DefaultChatMessageEntity> findByChatId(@Param("chatId") Integer chatId);
+	/**
+	 * Finds the newest messages of a chat room, newest first.
+	 *
+	 * @param chatId the chat id
+	 * @param page   the page, only its size is used
+	 * @return the messages
+	 */
+	@Query("SELECT s from ChatMessageEntity s WHERE s.chatId = :chatId ORDER BY s.id DESC")
+	List<DefaultChatMessageEntity> findLatestByChatId(@Param("chatId") Integer chatId, Pageable page);
+
+	/**
+	 * Finds the messages of a chat room older than a message, newest first.
+	 *
+	 * @param chatId the chat id
+	 * @param before the message id
+	 * @param page   the page, only its size is used
+	 * @return the messages
+	 */
+	@Query("SELECT s from ChatMessageEntity s WHERE s.chatId = :chatId AND s.id < :before ORDER BY s.id DESC")
+	List<DefaultChatMessageEntity> findOlderByChatId(@Param("chatId") Integer chatId, @Param("before") Integer before,
+			Pageable page);
+
+	/**
+	 * Finds the messages of a chat room newer than a message, oldest first.
+	 *
+	 * @param chatId the chat id
+	 * @param after  the message id
+	 * @param page   the page, only its size is used
+	 * @return the messages
+	 */
+	@Query("SELECT s from ChatMessageEntity s WHERE s.chatId = :chatId AND s.id > :after ORDER BY s.id ASC")
+	List<DefaultChatMessageEntity> findNewerByChatId(@Param("chatId") Integer chatId, @Param("after") Integer after,
+			Pageable page);
+
+	/**
+	 * Finds the messages saved from a range of the chat message log of a node,
+	 * oldest first.
+	 *
+	 * @param node  the node id
+	 * @param first the first log position
+	 * @param last  the last log position
+	 * @return the messages
+	 */
+	@Query("SELECT s from ChatMessageEntity s JOIN FETCH s.authorUser JOIN FETCH s.recipientUser "
+			+ "WHERE s.logNode = :node AND s.logPosition BETWEEN :first AND :last ORDER BY s.id ASC")
+	List<DefaultChatMessageEntity> findLogged(@Param("node") String node, @Param("first") long first,
+			@Param("last") long last);
 }
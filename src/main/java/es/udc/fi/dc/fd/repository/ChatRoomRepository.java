@@ -1,9 +1,12 @@
 package es.udc.fi.dc.fd.repository;
 
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -11,11 +14,67 @@
 
 public interface ChatRoomRepository extends JpaRepository<DefaultChatRoomEntity, Integer> {
 
-	@Query("SELECT s from ChatRoomEntity s WHERE s.userOne.id IN (:userOneId, :userTwoId) "
-			+ "AND s.userTwo.id IN (:userOneId, :userTwoId)")
-	Optional<DefaultChatRoomEntity> findBySenderIdAndRecipientId(@Param("userOneId") Integer userOneId,
-			@Param("userTwoId") Integer userTwoId);
+	/**
+	 * Finds the id of the chat room between two users.
+	 *
+	 * @param lowUserId  the lower id of the two users
+	 * @param highUserId the higher id of the two users
+	 * @return the chat room id
+	 */
+	@Query("SELECT s.id from ChatRoomEntity s WHERE s.lowUserId = :lowUserId AND s.highUserId = :highUserId")
+	Optional<Integer> findIdByUserPair(@Param("lowUserId") Integer lowUserId,
+			@Param("highUserId") Integer highUserId);
 
 	@Query("SELECT s from ChatRoomEntity s WHERE s.userOne.id IN (:userId) " + "OR s.userTwo.id IN (:userId)")
 	Set<DefaultChatRoomEntity> findByUserId(@Param("userId") Integer userId);
+
+	/**
+	 * Finds the inbox of a user: for each of its chat rooms, the room id, the id
+	 * and login of the other user, the last message contents and time, and the
+	 * number of messages the user has not read. The most recent rooms come first.
+	 *
+	 * @param userId the user id
+	 * @return the inbox rows
+	 */
+	@Query("SELECT r.id, p.id, p.login, r.lastMessageContent, r.lastMessageTime, "
+			+ "CASE WHEN r.lowUserId = :userId THEN r.lowUserUnread ELSE r.highUserUnread END "
+			+ "FROM ChatRoomEntity r, UserEntity p "
+			+ "WHERE (r.lowUserId = :userId AND p.id = r.highUserId) "
+			+ "OR (r.highUserId = :userId AND p.id = r.lowUserId) "
+			+ "ORDER BY CASE WHEN r.lastMessageTime IS NULL THEN 1 ELSE 0 END, r.lastMessageTime DESC, r.id DESC")
+	List<Object[]> findInboxEntries(@Param("userId") Integer userId);
+
+	/**
+	 * Sets the last message of a chat room and counts it as unread by its
+	 * recipient.
+	 *
+	 * @param chatId      the chat id
+	 * @param recipientId the recipient id
+	 * @param content     the message contents
+	 * @param timeSent    the message time
+	 * @return the number of rooms updated
+	 */
+	@Modifying
+	@Query("UPDATE ChatRoomEntity r SET r.lastMessageContent = :content, r.lastMessageTime = :timeSent, "
+			+ "r.lowUserUnread = CASE WHEN r.lowUserId = :recipientId "
+			+ "THEN r.lowUserUnread + 1 ELSE r.lowUserUnread END, "
+			+ "r.highUserUnread = CASE WHEN r.highUserId = :recipientId AND r.lowUserId <> :recipientId "
+			+ "THEN r.highUserUnread + 1 ELSE r.highUserUnread END WHERE r.id = :chatId")
+	int updateLastMessage(@Param("chatId") Integer chatId, @Param("recipientId") Integer recipientId,
+			@Param("content") String content, @Param("timeSent") Date timeSent);
+
+	/**
+	 * Marks the messages of a chat room as read by one of its users.
+	 *
+	 * @param chatId the chat id
+	 * @param userId the user id
+	 * @return the number of rooms updated, 0 if there were no unread messages
+	 */
+	@Modifying
+	@Query("UPDATE ChatRoomEntity r SET "
+			+ "r.lowUserUnread = CASE WHEN r.lowUserId = :userId THEN 0 ELSE r.lowUserUnread END, "
+			+ "r.highUserUnread = CASE WHEN r.highUserId = :userId THEN 0 ELSE r.highUserUnread END "
+			+ "WHERE r.id = :chatId AND ((r.lowUserId = :userId AND r.lowUserUnread > 0) "
+			+ "OR (r.highUserId = :userId AND r.highUserUnread > 0))")
+	int markAsRead(@Param("chatId") Integer chatId, @Param("userId") Integer userId);
 }
@@ -0,0 +1,53 @@
+package es.udc.fi.dc.fd.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import es.udc.fi.dc.fd.model.persistence.DefaultImageFileEntity;
+
+/**
+ * Spring-JPA repository for {@link DefaultImageFileEntity}.
+ * <p>
+ * The updates run in their own transaction when there is none, as the image
+ * files are stored before their image is saved.
+ */
+public interface ImageFileRepository extends JpaRepository<DefaultImageFileEntity, String> {
+
+	/**
+	 * Adds an image to the images using a file.
+	 *
+	 * @param name the file name
+	 * @return the number of files updated, 0 if the file is not stored
+	 */
+	@Transactional
+	@Modifying
+	@Query("UPDATE ImageFileEntity f SET f.referenceCount = f.referenceCount + 1 WHERE f.name = :name")
+	int addReference(@Param("name") String name);
+
+	/**
+	 * Removes an image from the images using a file.
+	 *
+	 * @param name the file name
+	 * @return the number of files updated, 0 if the file is not stored
+	 */
+	@Transactional
+	@Modifying
+	@Query("UPDATE ImageFileEntity f SET f.referenceCount = f.referenceCount - 1 "
+			+ "WHERE f.name = :name AND f.referenceCount > 0")
+	int removeReference(@Param("name") String name);
+
+	/**
+	 * Deletes a file if no image uses it.
+	 *
+	 * @param name the file name
+	 * @return the number of files deleted
+	 */
+	@Transactional
+	@Modifying
+	@Query("DELETE FROM ImageFileEntity f WHERE f.name = :name AND f.referenceCount <= 0")
+	int deleteIfUnreferenced(@Param("name") String name);
+
+}
@@ -24,8 +24,14 @@
 
 package es.udc.fi.dc.fd.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import es.udc.fi.dc.fd.model.persistence.DefaultImageEntity;
 
@@ -47,4 +53,31 @@ public interface ImageRepository extends JpaRepository<DefaultImageEntity, Integ
 	 */
 	@Query("select count(u)>0 from ImageEntity u where u.image_path = ?1")
 	boolean existsImagePath(String imagePath);
+
+	/**
+	 * Find the image paths of several sale advertisements.
+	 *
+	 * @param saleAdvertisementIds the sale advertisement ids
+	 * @return the sale advertisement id, the image path and the card and detail
+	 *         variant paths of each image
+	 */
+	@Query("SELECT i.sale_advertisement.id, i.image_path, i.card_path, i.detail_path FROM ImageEntity i "
+			+ "WHERE i.sale_advertisement.id IN :saleAdvertisementIds ORDER BY i.id")
+	List<Object[]> findImagePathsBySaleAdvertisementIds(
+			@Param("saleAdvertisementIds") Collection<Integer> saleAdvertisementIds);
+
+	/**
+	 * Sets the variant paths of all the images with the same path.
+	 *
+	 * @param imagePath  the image path
+	 * @param cardPath   the path of the card sized variant
+	 * @param detailPath the path of the detail sized variant
+	 * @return the number of images updated
+	 */
+	@Transactional
+	@Modifying
+	@Query("UPDATE ImageEntity i SET i.card_path = :cardPath, i.detail_path = :detailPath "
+			+ "WHERE i.image_path = :imagePath")
+	int updateVariantPaths(@Param("imagePath") String imagePath, @Param("cardPath") String cardPath,
+			@Param("detailPath") String detailPath);
 }
@@ -12,24 +12,6 @@
  */
 public interface RateUserRepository extends JpaRepository<DefaultRateUserEntity, RateUserKey> {
 
-	/**
-	 * Find average rating.
-	 *
-	 * @param userId the user id
-	 * @return the double
-	 */
-	@Query("SELECT AVG(u.rating) FROM RateUserEntity u WHERE u.userRated.id = :userId")
-	Double findAverageRating(@Param("userId") Integer userId);
-
-	/**
-	 * Exists rated user.
-	 *
-	 * @param userId the user id
-	 * @return true, if successful
-	 */
-	@Query("select count(u)>0 from RateUserEntity u where u.userRated.id = :userId")
-	boolean existsRatedUser(@Param("userId") Integer userId);
-
 	/**
 	 * Exists rating from user to rated user.
 	 *
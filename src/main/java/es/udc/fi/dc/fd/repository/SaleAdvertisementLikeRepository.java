@@ -0,0 +1,52 @@
+package es.udc.fi.dc.fd.repository;
+
+/**
+ * Queries of the likes of the sale advertisements, added to the
+ * {@link SaleAdvertisementRepository}.
+ * <p>
+ * The queries are native, and they declare the likes table as the only table
+ * they change, so they do not evict the second-level cache of the entities.
+ */
+public interface SaleAdvertisementLikeRepository {
+
+	/**
+	 * Adds the like of a user to a sale advertisement, if the user does not like
+	 * it yet. The sale advertisement stays locked until the end of the
+	 * transaction, so the concurrent likes of the same user are added once.
+	 *
+	 * @param userId              the user id
+	 * @param saleAdvertisementId the sale advertisement id
+	 * @return the number of added likes
+	 */
+	int insertLike(Integer userId, Integer saleAdvertisementId);
+
+	/**
+	 * Removes the like of a user from a sale advertisement.
+	 *
+	 * @param userId              the user id
+	 * @param saleAdvertisementId the sale advertisement id
+	 * @return the number of removed likes
+	 */
+	int deleteLike(Integer userId, Integer saleAdvertisementId);
+
+	/**
+	 * Removes all the likes of a sale advertisement.
+	 *
+	 * @param saleAdvertisementId the sale advertisement id
+	 * @return the number of removed likes
+	 */
+	int deleteLikes(Integer saleAdvertisementId);
+
+	/**
+	 * Adds a delta to the likes count of a sale advertisement. Only that sale
+	 * advertisement is evicted from the second-level cache, and it is refreshed
+	 * if it is in the persistence context, so it is read afterwards with the new
+	 * likes.
+	 *
+	 * @param id    the sale advertisement id
+	 * @param delta the number of added likes, negative for removed likes
+	 * @return the number of updated sale advertisements
+	 */
+	int updateLikesCount(Integer id, int delta);
+
+}
@@ -0,0 +1,124 @@
+package es.udc.fi.dc.fd.repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.NativeQuery;
+
+import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
+import es.udc.fi.dc.fd.service.TransactionCallbacks;
+
+/**
+ * Implementation of the {@link SaleAdvertisementLikeRepository}.
+ * <p>
+ * A native query without query spaces makes Hibernate evict every region of
+ * the second-level cache, so each query declares the table it changes. The
+ * likes table is not cached, and the likes count is written by a single
+ * update which evicts its sale advertisement alone.
+ * <p>
+ * A like is inserted while holding the lock of its sale advertisement, so two
+ * concurrent likes of the same user do not both pass the check of the like
+ * and make the second one fail on the primary key. Catching that failure is
+ * not enough, as it marks the whole transaction for rollback.
+ */
+public class SaleAdvertisementLikeRepositoryImpl implements SaleAdvertisementLikeRepository {
+
+	/** The likes table, the query space of the like queries. */
+	private static final String LIKES = "likes";
+
+	private static final String LOCK_SALE_ADVERTISEMENT = "SELECT id FROM sale_advertisements "
+			+ "WHERE id = :saleAdvertisementId FOR UPDATE";
+
+	private static final String INSERT_LIKE = "INSERT INTO likes (user_id, sale_advertisement_id) "
+			+ "SELECT :userId, s.id FROM sale_advertisements s WHERE s.id = :saleAdvertisementId "
+			+ "AND NOT EXISTS (SELECT 1 FROM likes l WHERE l.user_id = :userId "
+			+ "AND l.sale_advertisement_id = :saleAdvertisementId)";
+
+	private static final String DELETE_LIKE = "DELETE FROM likes "
+			+ "WHERE user_id = :userId AND sale_advertisement_id = :saleAdvertisementId";
+
+	private static final String DELETE_LIKES = "DELETE FROM likes WHERE sale_advertisement_id = :saleAdvertisementId";
+
+	private static final String UPDATE_LIKES_COUNT = "UPDATE sale_advertisements "
+			+ "SET likes_count = likes_count + :delta WHERE id = :id";
+
+	/** The entity manager of the current transaction. */
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Instantiates a new sale advertisement like repository.
+	 */
+	public SaleAdvertisementLikeRepositoryImpl() {
+		super();
+	}
+
+	@Override
+	public int insertLike(Integer userId, Integer saleAdvertisementId) {
+		if (likesQuery(LOCK_SALE_ADVERTISEMENT).setParameter("saleAdvertisementId", saleAdvertisementId)
+				.getResultList().isEmpty())
+			return 0;
+
+		return likesQuery(INSERT_LIKE).setParameter("userId", userId)
+				.setParameter("saleAdvertisementId", saleAdvertisementId).executeUpdate();
+	}
+
+	@Override
+	public int deleteLike(Integer userId, Integer saleAdvertisementId) {
+		return likesQuery(DELETE_LIKE).setParameter("userId", userId)
+				.setParameter("saleAdvertisementId", saleAdvertisementId).executeUpdate();
+	}
+
+	@Override
+	public int deleteLikes(Integer saleAdvertisementId) {
+		return likesQuery(DELETE_LIKES).setParameter("saleAdvertisementId", saleAdvertisementId).executeUpdate();
+	}
+
+	@Override
+	public int updateLikesCount(Integer id, int delta) {
+		int updated = likesQuery(UPDATE_LIKES_COUNT).setParameter("id", id).setParameter("delta", delta)
+				.executeUpdate();
+
+		Object managed = findManaged(id);
+		if (managed != null)
+			entityManager.refresh(managed);
+
+		// Evicted again once committed, as a concurrent read may cache the old
+		// count meanwhile
+		evict(id);
+		TransactionCallbacks.afterCommit(() -> evict(id));
+		return updated;
+	}
+
+	/**
+	 * Creates a native query on the likes, flushing the pending changes first.
+	 * The likes count column is not mapped as updatable, so declaring the likes
+	 * table alone is right for the count update too.
+	 *
+	 * @param sql the query
+	 * @return the query
+	 */
+	private Query likesQuery(String sql) {
+		entityManager.flush();
+		return entityManager.createNativeQuery(sql).unwrap(NativeQuery.class).addSynchronizedQuerySpace(LIKES);
+	}
+
+	/**
+	 * Finds a sale advertisement in the persistence context, without loading it.
+	 *
+	 * @param id the sale advertisement id
+	 * @return the sale advertisement, or null if it is not in the context
+	 */
+	private Object findManaged(Integer id) {
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		return session.getPersistenceContext().getEntity(session.generateEntityKey(id,
+				session.getFactory().getMetamodel().entityPersister(DefaultSaleAdvertisementEntity.class)));
+	}
+
+	private void evict(Integer id) {
+		entityManager.getEntityManagerFactory().getCache().evict(DefaultSaleAdvertisementEntity.class, id);
+	}
+
+}
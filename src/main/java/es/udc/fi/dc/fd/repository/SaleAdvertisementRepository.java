@@ -26,9 +26,14 @@
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
 
@@ -36,11 +41,13 @@
  * Spring-JPA repository for {@link DefaultSaleAdvertisementEntity}.
  * <p>
  * This is a simple repository just to allow the endpoints querying the
- * Sale_advertisements they are asked for.
+ * Sale_advertisements they are asked for. The queries of the likes are in the
+ * {@link SaleAdvertisementLikeRepository}.
  *
  * @author Santiago
  */
-public interface SaleAdvertisementRepository extends JpaRepository<DefaultSaleAdvertisementEntity, Integer> {
+public interface SaleAdvertisementRepository
+		extends JpaRepository<DefaultSaleAdvertisementEntity, Integer>, SaleAdvertisementLikeRepository {
 
 	/**
 	 * Find sale advertisements order by date desc.
@@ -51,43 +58,85 @@ public interface SaleAdvertisementRepository extends JpaRepository<DefaultSaleAd
 	Iterable<DefaultSaleAdvertisementEntity> findSaleAdvertisementsOrderByDateDesc();
 
 	/**
-	 * Find sale advertisements by search criteria.
+	 * Find the values of every visible sale advertisement needed by the search
+	 * index. Sale advertisements sold before the given date are not visible.
 	 *
-	 * @param city     the city of the sale advertisement
-	 * @param keywords the keywords that should be in the title or description
-	 * @param date1    the oldest date in the date range
-	 * @param date2    the most recent date in the date range
-	 * @param price1   the minimum price in the price range
-	 * @param price2   the maximum price in the price range
-	 * @return the sale advertisements that meet the search criteria order by date
-	 *         with the most recents first
+	 * @param visibleSince the oldest sold date of a visible sale advertisement
+	 * @return the sale advertisement id, owner id, owner city, owner role, date,
+	 *         price, product title, product description and sold date of every
+	 *         visible sale advertisement
 	 */
-	@Query("SELECT s FROM SaleAdvertisementEntity s JOIN UserEntity u ON s.user = u WHERE u.city LIKE ?1 "
-			+ "AND (s.product_title LIKE %?2% OR s.product_description LIKE %?2%) AND s.date BETWEEN ?3 AND ?4 "
-			+ "AND (s.price BETWEEN ?5 AND ?6 OR s.price is null) ORDER BY u.role DESC, s.date DESC")
-	Iterable<DefaultSaleAdvertisementEntity> findSaleAdvertisementsByCriteria(String city, String keywords,
-			LocalDateTime date1, LocalDateTime date2, BigDecimal price1, BigDecimal price2);
+	@Query("SELECT s.id, u.id, u.city, u.role, s.date, s.price, s.product_title, s.product_description, s.soldDate "
+			+ "FROM SaleAdvertisementEntity s JOIN s.user u "
+			+ "WHERE s.soldDate IS NULL OR s.soldDate >= :visibleSince")
+	List<Object[]> findSearchIndexEntries(@Param("visibleSince") LocalDateTime visibleSince);
 
 	/**
-	 * Find sale advertisements by search criteria.
+	 * Find the newest visible sale advertisements published by the users followed
+	 * by a user, newest publication first.
 	 *
-	 * @param city     the city of the sale advertisement
-	 * @param keywords the keywords that should be in the title or description
-	 * @param date1    the oldest date in the date range
-	 * @param date2    the most recent date in the date range
-	 * @param price1   the minimum price in the price range
-	 * @param price2   the maximum price in the price range
-	 * @param rating   the rating
-	 * @return the sale advertisements that meet the search criteria order by date
-	 *         with the most recents first
+	 * @param userId       the user id
+	 * @param visibleSince the oldest sold date of a visible sale advertisement
+	 * @param page         the page, only its size is used
+	 * @return the sale advertisement id, owner id and date of each sale
+	 *         advertisement
 	 */
-	@Query("SELECT s FROM SaleAdvertisementEntity s JOIN UserEntity u ON s.user = u WHERE u.city LIKE ?1 "
-			+ "AND (s.product_title LIKE %?2% OR s.product_description LIKE %?2%) AND s.date BETWEEN ?3 AND ?4 "
-			+ "AND (s.price BETWEEN ?5 AND ?6 OR s.price is null) "
-			+ "AND (?7 <= (SELECT AVG(r.rating) FROM RateUserEntity r WHERE r.userRated = s.user)) "
-			+ "ORDER BY u.role DESC, s.date DESC")
-	Iterable<DefaultSaleAdvertisementEntity> findSaleAdvertisementsByCriteriaAndRating(String city, String keywords,
-			LocalDateTime date1, LocalDateTime date2, BigDecimal price1, BigDecimal price2, Double rating);
+	@Query("SELECT s.id, f.id, s.date FROM UserEntity u JOIN u.followed f JOIN f.sale_advertisements s "
+			+ "WHERE u.id = :userId AND (s.soldDate IS NULL OR s.soldDate >= :visibleSince) "
+			+ "ORDER BY s.date DESC, s.id DESC")
+	List<Object[]> findFollowedFeedEntries(@Param("userId") Integer userId,
+			@Param("visibleSince") LocalDateTime visibleSince, Pageable page);
+
+	/**
+	 * Find the newest visible sale advertisements published by a user, newest
+	 * publication first.
+	 *
+	 * @param userId       the user id
+	 * @param visibleSince the oldest sold date of a visible sale advertisement
+	 * @param page         the page, only its size is used
+	 * @return the sale advertisement id and date of each sale advertisement
+	 */
+	@Query("SELECT s.id, s.date FROM SaleAdvertisementEntity s "
+			+ "WHERE s.user.id = :userId AND (s.soldDate IS NULL OR s.soldDate >= :visibleSince) "
+			+ "ORDER BY s.date DESC, s.id DESC")
+	List<Object[]> findVisibleFeedEntriesByUser(@Param("userId") Integer userId,
+			@Param("visibleSince") LocalDateTime visibleSince, Pageable page);
+
+	/**
+	 * Find the values of several sale advertisements and their owners needed to
+	 * show them in a list.
+	 *
+	 * @param ids the sale advertisement ids
+	 * @return the sale advertisement id, product title, product description,
+	 *         date, price and state, the owner id, login, city, role, rating sum
+	 *         and rating count, and the sold date and likes count of each sale
+	 *         advertisement
+	 */
+	@Query("SELECT s.id, s.product_title, s.product_description, s.date, s.price, s.state, "
+			+ "u.id, u.login, u.city, u.role, u.ratingSum, u.ratingCount, s.soldDate, s.likesCount "
+			+ "FROM SaleAdvertisementEntity s JOIN s.user u WHERE s.id IN :ids")
+	List<Object[]> findSummariesByIds(@Param("ids") Collection<Integer> ids);
+
+	/**
+	 * Find which of the given sale advertisements are liked by a user.
+	 *
+	 * @param userId the user id
+	 * @param ids    the sale advertisement ids
+	 * @return the ids of the liked sale advertisements
+	 */
+	@Query("SELECT s.id FROM UserEntity u JOIN u.likedSaleAdvertisements s WHERE u.id = :userId AND s.id IN :ids")
+	List<Integer> findLikedIds(@Param("userId") Integer userId, @Param("ids") Collection<Integer> ids);
+
+	/**
+	 * Sets the sold date of a sale advertisement.
+	 *
+	 * @param id       the sale advertisement id
+	 * @param soldDate the sold date
+	 * @return the number of updated sale advertisements
+	 */
+	@Modifying
+	@Query("UPDATE SaleAdvertisementEntity s SET s.soldDate = :soldDate WHERE s.id = :id")
+	int updateSoldDate(@Param("id") Integer id, @Param("soldDate") LocalDateTime soldDate);
 
 	/**
 	 * Gets the maximum price of all sale advertisements.
@@ -24,8 +24,13 @@
 
 package es.udc.fi.dc.fd.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 
@@ -57,6 +62,17 @@ public interface UserRepository extends JpaRepository<DefaultUserEntity, Integer
 	@Query("select u from UserEntity u where u.login = ?1")
 	DefaultUserEntity findByLogin(String login);
 
+	/**
+	 * Replaces the password hash of an user.
+	 *
+	 * @param login    the login
+	 * @param password the new password hash
+	 * @return the number of updated users
+	 */
+	@Modifying
+	@Query("UPDATE UserEntity u SET u.password = :password WHERE u.login = :login")
+	int updatePassword(@Param("login") String login, @Param("password") String password);
+
 	/**
 	 * Exists by email.
 	 *
@@ -66,6 +82,14 @@ public interface UserRepository extends JpaRepository<DefaultUserEntity, Integer
 	@Query("select count(u)>0 from UserEntity u where u.email = ?1")
 	boolean existsByEmail(String email);
 
+	/**
+	 * Find the login and email of every user.
+	 *
+	 * @return the login and email of each user
+	 */
+	@Query("SELECT u.login, u.email FROM UserEntity u")
+	List<Object[]> findLoginsAndEmails();
+
 	/**
 	 * Find by email
 	 * 
@@ -74,4 +98,69 @@ public interface UserRepository extends JpaRepository<DefaultUserEntity, Integer
 	 */
 	@Query("SELECT u FROM UserEntity u WHERE u.email = ?1")
 	DefaultUserEntity findByEmail(String email);
+
+	/**
+	 * Adds a rating to the rating aggregates of a user.
+	 * <p>
+	 * The aggregates are incremented in the database, so concurrent ratings of
+	 * the same user are never lost.
+	 *
+	 * @param userId the rated user id
+	 * @param rating the rating, from one to five
+	 * @return the number of updated users
+	 */
+	@Modifying
+	@Query("UPDATE UserEntity u SET u.ratingSum = u.ratingSum + :rating, u.ratingCount = u.ratingCount + 1, "
+			+ "u.oneStarRatings = u.oneStarRatings + CASE WHEN :rating = 1 THEN 1 ELSE 0 END, "
+			+ "u.twoStarRatings = u.twoStarRatings + CASE WHEN :rating = 2 THEN 1 ELSE 0 END, "
+			+ "u.threeStarRatings = u.threeStarRatings + CASE WHEN :rating = 3 THEN 1 ELSE 0 END, "
+			+ "u.fourStarRatings = u.fourStarRatings + CASE WHEN :rating = 4 THEN 1 ELSE 0 END, "
+			+ "u.fiveStarRatings = u.fiveStarRatings + CASE WHEN :rating = 5 THEN 1 ELSE 0 END "
+			+ "WHERE u.id = :userId")
+	int addRating(@Param("userId") Integer userId, @Param("rating") Integer rating);
+
+	/**
+	 * Exists rated user.
+	 *
+	 * @param userId the user id
+	 * @return true, if the user has received any rating
+	 */
+	@Query("SELECT count(u)>0 FROM UserEntity u WHERE u.id = :userId AND u.ratingCount > 0")
+	boolean existsRatedUser(@Param("userId") Integer userId);
+
+	/**
+	 * Find average rating.
+	 *
+	 * @param userId the user id
+	 * @return the average rating, null if the user is not rated
+	 */
+	@Query("SELECT (1.0 * u.ratingSum) / u.ratingCount FROM UserEntity u WHERE u.id = :userId AND u.ratingCount > 0")
+	Double findAverageRating(@Param("userId") Integer userId);
+
+	/**
+	 * Find the average rating of every rated user.
+	 *
+	 * @return the rated user id and its average rating
+	 */
+	@Query("SELECT u.id, (1.0 * u.ratingSum) / u.ratingCount FROM UserEntity u WHERE u.ratingCount > 0")
+	List<Object[]> findAverageRatings();
+
+	/**
+	 * Find which of the given users are followed by a user.
+	 *
+	 * @param userId  the user id
+	 * @param userIds the ids of the users to check
+	 * @return the ids of the followed users
+	 */
+	@Query("SELECT f.id FROM UserEntity u JOIN u.followed f WHERE u.id = :userId AND f.id IN :userIds")
+	List<Integer> findFollowedIds(@Param("userId") Integer userId, @Param("userIds") Collection<Integer> userIds);
+
+	/**
+	 * Find the followers of a user.
+	 *
+	 * @param userId the user id
+	 * @return the ids of the users following the user
+	 */
+	@Query("SELECT f.id FROM UserEntity u JOIN u.followers f WHERE u.id = :userId")
+	List<Integer> findFollowerIds(@Param("userId") Integer userId);
 }
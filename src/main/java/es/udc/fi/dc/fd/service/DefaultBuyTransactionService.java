@@ -31,6 +31,7 @@
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import es.udc.fi.dc.fd.model.BuyTransactionEntity;
 import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
@@ -45,6 +46,7 @@
 import es.udc.fi.dc.fd.service.exceptions.BuyTransactionAlreadyExistsException;
 import es.udc.fi.dc.fd.service.exceptions.BuyTransactionNotFoundException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementNotFoundException;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchIndex;
 import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
 
 /**
@@ -63,6 +65,9 @@ public class DefaultBuyTransactionService implements BuyTransactionService {
 	private final UserRepository userRepository;
 	private final BuyTransactionRepository buyTransactionRepository;
 
+	/** The sale advertisement search index. */
+	private final SaleAdvertisementSearchIndex searchIndex;
+
 	/**
 	 * Constructs an image service with the specified repositories.
 	 *
@@ -71,10 +76,12 @@ public class DefaultBuyTransactionService implements BuyTransactionService {
 	 * @param buyTransactionRepository    the repository for the buy transaction
 	 *                                    instances
 	 * @param userRepository              the repository for the user instances
+	 * @param searchIndex                 the sale advertisement search index
 	 */
 	@Autowired
 	public DefaultBuyTransactionService(final SaleAdvertisementRepository saleAdvertisementRepository,
-			final BuyTransactionRepository buyTransactionRepository, final UserRepository userRepository) {
+			final BuyTransactionRepository buyTransactionRepository, final UserRepository userRepository,
+			final SaleAdvertisementSearchIndex searchIndex) {
 		super();
 
 		this.saleAdvertisementRepository = checkNotNull(saleAdvertisementRepository,
@@ -82,6 +89,7 @@ public DefaultBuyTransactionService(final SaleAdvertisementRepository saleAdvert
 		this.buyTransactionRepository = checkNotNull(buyTransactionRepository,
 				"Received a null pointer as buyTransactionRepository");
 		this.userRepository = checkNotNull(userRepository, "Received a null pointer as userRepository");
+		this.searchIndex = checkNotNull(searchIndex, "Received a null pointer as searchIndex");
 	}
 
 	@Override
@@ -96,6 +104,7 @@ public BuyTransactionEntity findById(BuyTransactionId identifier) throws BuyTran
 	}
 
 	@Override
+	@Transactional
 	public BuyTransactionEntity create(UserEntity user, SaleAdvertisementEntity saleAdvertisement)
 			throws UserNotFoundException, SaleAdvertisementNotFoundException, BuyTransactionAlreadyExistsException {
 		checkNotNull(user, "Received a null pointer as user");
@@ -119,8 +128,9 @@ public BuyTransactionEntity create(UserEntity user, SaleAdvertisementEntity sale
 		}
 
 		// Create new BuyTransactionEntity
+		LocalDateTime soldDate = LocalDateTime.now();
 		DefaultBuyTransactionEntity newBuyTransaction = new DefaultBuyTransactionEntity(transactionIdentifier,
-				LocalDateTime.now());
+				soldDate);
 		newBuyTransaction.setUser((DefaultUserEntity) user);
 		newBuyTransaction.setSaleAdvertisement((DefaultSaleAdvertisementEntity) saleAdvertisement);
 		// Store buy transaction
@@ -131,6 +141,13 @@ public BuyTransactionEntity create(UserEntity user, SaleAdvertisementEntity sale
 		saleAdvertisement.setBuyTransaction(result);
 		user.addBuyTransaction(result);
 
+		// Keep the sold date with the sale advertisement, so the listings filter the
+		// old sales with an indexed column instead of joining the buy transactions
+		saleAdvertisementRepository.updateSoldDate(saleAdvertisement.getId(), soldDate);
+		saleAdvertisement.setSoldDate(soldDate);
+		Integer saleAdvertisementId = saleAdvertisement.getId();
+		TransactionCallbacks.afterCommit(() -> searchIndex.markSold(saleAdvertisementId, soldDate));
+
 		return result;
 	}
 
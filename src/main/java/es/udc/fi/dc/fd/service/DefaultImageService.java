@@ -54,21 +54,36 @@ public class DefaultImageService implements ImageService {
 	private final ImageRepository imageRepository;
 	private final SaleAdvertisementRepository saleAdvertisementRepository;
 
+	/**
+	 * Store of the image files, released when their images are removed.
+	 */
+	private final ImageStore imageStore;
+
+	/**
+	 * Generator of the card and detail sized variants of the added images.
+	 */
+	private final ImageThumbnailGenerator thumbnailGenerator;
+
 	/**
 	 * Constructs an image service with the specified repositories.
 	 *
 	 * @param imageRepository             the repository for the image instances
 	 * @param saleAdvertisementRepository the repository for the sale advertisement
 	 *                                    instances
+	 * @param imageStore                  the store of the image files
+	 * @param thumbnailGenerator          the generator of the image variants
 	 */
 	@Autowired
 	public DefaultImageService(final ImageRepository imageRepository,
-			final SaleAdvertisementRepository saleAdvertisementRepository) {
+			final SaleAdvertisementRepository saleAdvertisementRepository, final ImageStore imageStore,
+			final ImageThumbnailGenerator thumbnailGenerator) {
 		super();
 
 		this.imageRepository = checkNotNull(imageRepository, "Received a null pointer as imageRepository");
 		this.saleAdvertisementRepository = checkNotNull(saleAdvertisementRepository,
 				"Received a null pointer as saleAdvertisementRepository");
+		this.imageStore = checkNotNull(imageStore, "Received a null pointer as imageStore");
+		this.thumbnailGenerator = checkNotNull(thumbnailGenerator, "Received a null pointer as thumbnailGenerator");
 	}
 
 	/**
@@ -96,7 +111,8 @@ public final ImageEntity findById(final Integer identifier) throws ImageNotFound
 	 * Store an image which no exist.
 	 * <p>
 	 * Create an image with the entity parameters received. Returns the entity
-	 * persisted with id assigned
+	 * persisted with id assigned. Its card and detail sized variants are
+	 * generated in the background.
 	 * 
 	 * @param image image with the parameters
 	 * @return the image with the id associated
@@ -113,6 +129,7 @@ public final ImageEntity add(final DefaultImageEntity image) throws ImageAlready
 		DefaultImageEntity savedImage = imageRepository.save(image);
 		saleAdvertisementEntity.addImage(savedImage);
 		saleAdvertisementRepository.save(saleAdvertisementEntity);
+		thumbnailGenerator.submit(savedImage.getImagePath());
 
 		return savedImage;
 	}
@@ -138,7 +155,8 @@ public final ImageEntity update(final DefaultImageEntity image) throws ImageNotF
 	}
 
 	/**
-	 * Removes an image from persistence.
+	 * Removes an image from persistence. Its file is deleted if no other image
+	 * uses it.
 	 * 
 	 * @param image image to remove
 	 * @throws ImageNotFoundException when image not found
@@ -151,6 +169,7 @@ public final void remove(final DefaultImageEntity image) throws ImageNotFoundExc
 		saleAdvertisement.removeImage(image);
 		saleAdvertisementRepository.save(saleAdvertisement);
 		imageRepository.delete(image);
+		imageStore.release(image.getImagePath());
 	}
 
 	/**
@@ -28,13 +28,20 @@
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.State;
+import es.udc.fi.dc.fd.model.persistence.DefaultImageEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
 import es.udc.fi.dc.fd.repository.ImageRepository;
 import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
@@ -42,6 +49,10 @@
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementAlreadyOnHoldException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementAlreadyOnSaleException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementNotFoundException;
+import es.udc.fi.dc.fd.service.search.FollowedSellersFeed;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchCriteria;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchIndex;
+import es.udc.fi.dc.fd.service.search.SearchPage;
 
 /**
  * Default implementation of the saleAdd service.
@@ -64,20 +75,42 @@ public class DefaultSaleAdvertisementService implements SaleAdvertisementService
 	 */
 	private final ImageRepository imageRepository;
 
+	/**
+	 * Index used to search the sale advertisements.
+	 */
+	private final SaleAdvertisementSearchIndex searchIndex;
+
+	/**
+	 * Feeds of the sale advertisements published by the followed users.
+	 */
+	private final FollowedSellersFeed feed;
+
+	/**
+	 * Store of the image files, released when their images are removed.
+	 */
+	private final ImageStore imageStore;
+
 	/**
 	 * Constructs an saleAdd service with the specified repository.
 	 *
 	 * @param repository   the repository for the saleAdd instances
 	 * @param imRepository the repository for the images instances
+	 * @param searchIndex  the index used to search the sale advertisements
+	 * @param feed         the feeds of the followed users sale advertisements
+	 * @param imageStore   the store of the image files
 	 */
 	@Autowired
 	public DefaultSaleAdvertisementService(final SaleAdvertisementRepository repository,
-			final ImageRepository imRepository) {
+			final ImageRepository imRepository, final SaleAdvertisementSearchIndex searchIndex,
+			final FollowedSellersFeed feed, final ImageStore imageStore) {
 		super();
 
 		saleAdvertisementRepository = checkNotNull(repository,
 				"Received a null pointer as sale advertisement repository");
 		imageRepository = checkNotNull(imRepository, "Received a null pointer as image repository");
+		this.searchIndex = checkNotNull(searchIndex, "Received a null pointer as search index");
+		this.feed = checkNotNull(feed, "Received a null pointer as feed");
+		this.imageStore = checkNotNull(imageStore, "Received a null pointer as image store");
 	}
 
 	/**
@@ -115,7 +148,12 @@ public final SaleAdvertisementEntity add(DefaultSaleAdvertisementEntity saleAdve
 			throw new SaleAdvertisementAlreadyExistsException(saleAdvertisement.getId());
 		}
 		saleAdvertisement.setDate(LocalDateTime.now());
-		return saleAdvertisementRepository.save(saleAdvertisement);
+		DefaultSaleAdvertisementEntity saved = saleAdvertisementRepository.save(saleAdvertisement);
+		TransactionCallbacks.afterCommit(() -> {
+			searchIndex.index(saved);
+			feed.publish(saved.getUser().getId(), saved.getId(), saved.getDate());
+		});
+		return saved;
 	}
 
 	/**
@@ -131,21 +169,39 @@ public final SaleAdvertisementEntity update(final DefaultSaleAdvertisementEntity
 		checkNotNull(saleAdvertisement, "Received a null pointer as sale advertisement");
 		checkSaleAdvertisementExists(saleAdvertisement.getId());
 		saleAdvertisement.setDate(LocalDateTime.now());
-		return saleAdvertisementRepository.save(saleAdvertisement);
+		DefaultSaleAdvertisementEntity saved = saleAdvertisementRepository.save(saleAdvertisement);
+		TransactionCallbacks.afterCommit(() -> {
+			searchIndex.index(saved);
+			// Published again, so it moves to the top of the feeds
+			if (saved.getSoldDate() == null)
+				feed.publish(saved.getUser().getId(), saved.getId(), saved.getDate());
+		});
+		return saved;
 	}
 
 	/**
-	 * Removes the sale advertisement from persistence
+	 * Removes the sale advertisement from persistence, with its likes and images.
+	 * The image files no other sale advertisement uses are deleted.
 	 *
 	 * @param saleAdvertisement the sale advertisement to remove
 	 * @throws SaleAdvertisementNotFoundException when sale advertisement not found
 	 */
 	@Override
+	@Transactional
 	public final void remove(final DefaultSaleAdvertisementEntity saleAdvertisement)
 			throws SaleAdvertisementNotFoundException {
 		checkSaleAdvertisementExists(saleAdvertisement.getId());
-		saleAdvertisement.getImages().forEach(imageRepository::delete);
+		for (DefaultImageEntity image : saleAdvertisement.getImages()) {
+			imageStore.release(image.getImagePath());
+			imageRepository.delete(image);
+		}
+		saleAdvertisementRepository.deleteLikes(saleAdvertisement.getId());
 		saleAdvertisementRepository.delete(saleAdvertisement);
+		Integer identifier = saleAdvertisement.getId();
+		TransactionCallbacks.afterCommit(() -> {
+			searchIndex.remove(identifier);
+			feed.removeAll(Collections.singleton(identifier));
+		});
 	}
 
 	/**
@@ -181,6 +237,9 @@ public final Iterable<DefaultSaleAdvertisementEntity> getSaleAdvertisementsByDat
 
 	/**
 	 * Gets the sale advertisements by search criteria.
+	 * <p>
+	 * Null or empty criteria do not restrict the search. The search is answered
+	 * by the search index, and only the matching sale advertisements are loaded.
 	 *
 	 * @param city     the city
 	 * @param keywords the keywords
@@ -188,20 +247,55 @@ public final Iterable<DefaultSaleAdvertisementEntity> getSaleAdvertisementsByDat
 	 * @param date2    the date 2
 	 * @param price1   the price 1
 	 * @param price2   the price 2
+	 * @param rating   the minimum rating of the owner
 	 * @return the sale advertisements by search criteria
 	 */
 	@Override
 	public Iterable<DefaultSaleAdvertisementEntity> getSaleAdvertisementsBySearchCriteria(String city, String keywords,
 			LocalDateTime date1, LocalDateTime date2, BigDecimal price1, BigDecimal price2, Double rating) {
-		if (rating == null)
-			return saleAdvertisementRepository.findSaleAdvertisementsByCriteria(city, keywords, date1, date2, price1,
-					price2);
-		if (rating < DefaultUserService.MIN_RATING)
-			rating = Double.valueOf(DefaultUserService.MIN_RATING);
-		if (rating > DefaultUserService.MAX_RATING)
-			rating = Double.valueOf(DefaultUserService.MAX_RATING);
-		return saleAdvertisementRepository.findSaleAdvertisementsByCriteriaAndRating(city, keywords, date1, date2,
-				price1, price2, rating);
+		List<Integer> identifiers = searchIndex.search(new SaleAdvertisementSearchCriteria(city, keywords, date1,
+				date2, price1, price2, clampRating(rating)));
+
+		return findAllInOrder(identifiers);
+	}
+
+	/**
+	 * Gets a page of the sale advertisements by search criteria.
+	 *
+	 * @param criteria the search criteria
+	 * @param after    the cursor returned with the previous page
+	 * @param limit    the maximum number of sale advertisements of the page
+	 * @return the page of sale advertisements
+	 */
+	@Override
+	public SearchPage<DefaultSaleAdvertisementEntity> getSaleAdvertisementsBySearchCriteria(
+			SaleAdvertisementSearchCriteria criteria, String after, int limit) {
+		SearchPage<Integer> page = getSaleAdvertisementIdsBySearchCriteria(criteria, after, limit);
+		return new SearchPage<>(findAllInOrder(page.getItems()), page.getNextCursor());
+	}
+
+	/**
+	 * Gets a page of the identifiers of the sale advertisements by search
+	 * criteria.
+	 * <p>
+	 * The page is read from the search index starting after the cursor, with the
+	 * cursor of the next page, which points to its last sale advertisement.
+	 *
+	 * @param criteria the search criteria
+	 * @param after    the cursor returned with the previous page
+	 * @param limit    the maximum number of sale advertisements of the page
+	 * @return the page of identifiers
+	 */
+	@Override
+	public SearchPage<Integer> getSaleAdvertisementIdsBySearchCriteria(SaleAdvertisementSearchCriteria criteria,
+			String after, int limit) {
+		checkNotNull(criteria, "Received a null pointer as search criteria");
+
+		SaleAdvertisementSearchCriteria clamped = new SaleAdvertisementSearchCriteria(criteria.getCity(),
+				criteria.getKeywords(), criteria.getMinDate(), criteria.getMaxDate(), criteria.getMinPrice(),
+				criteria.getMaxPrice(), clampRating(criteria.getMinRating()), criteria.getOwnerIds());
+
+		return searchIndex.searchPage(clamped, after, limit);
 	}
 
 	/**
@@ -249,6 +343,43 @@ public void setOnSaleAdvertisement(Integer identifier)
 		saleAdvertisementRepository.save(saleAdvertisement);
 	}
 
+	/**
+	 * Loads the sale advertisements with the given identifiers, keeping their
+	 * order.
+	 *
+	 * @param identifiers the identifiers
+	 * @return the sale advertisements
+	 */
+	private List<DefaultSaleAdvertisementEntity> findAllInOrder(List<Integer> identifiers) {
+		Map<Integer, DefaultSaleAdvertisementEntity> byId = new HashMap<>();
+		for (DefaultSaleAdvertisementEntity saleAdvertisement : saleAdvertisementRepository
+				.findAllById(identifiers)) {
+			byId.put(saleAdvertisement.getId(), saleAdvertisement);
+		}
+
+		List<DefaultSaleAdvertisementEntity> saleAdvertisements = new ArrayList<>(identifiers.size());
+		for (Integer identifier : identifiers) {
+			DefaultSaleAdvertisementEntity saleAdvertisement = byId.get(identifier);
+			if (saleAdvertisement != null)
+				saleAdvertisements.add(saleAdvertisement);
+		}
+		return saleAdvertisements;
+	}
+
+	/**
+	 * Keeps the rating between the minimum and maximum ratings.
+	 *
+	 * @param rating the rating
+	 * @return the rating in the valid range, or null if there is no rating
+	 */
+	private Double clampRating(Double rating) {
+		if (rating != null && rating < DefaultUserService.MIN_RATING)
+			return Double.valueOf(DefaultUserService.MIN_RATING);
+		if (rating != null && rating > DefaultUserService.MAX_RATING)
+			return Double.valueOf(DefaultUserService.MAX_RATING);
+		return rating;
+	}
+
 	private void checkSaleAdvertisementExists(Integer identifier) throws SaleAdvertisementNotFoundException {
 		checkNotNull(identifier, RECEIVED_A_NULL_POINTER_AS_IDENTIFIER);
 		if (!saleAdvertisementRepository.existsById(identifier)) {
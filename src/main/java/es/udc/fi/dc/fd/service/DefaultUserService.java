@@ -30,7 +30,9 @@
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -38,12 +40,13 @@
 import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.UserEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultRateUserEntity;
-import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.repository.RateUserRepository;
 import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
 import es.udc.fi.dc.fd.repository.UserRepository;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementNotFoundException;
+import es.udc.fi.dc.fd.service.search.FollowedSellersFeed;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchIndex;
 import es.udc.fi.dc.fd.service.user.exceptions.HighRatingException;
 import es.udc.fi.dc.fd.service.user.exceptions.LowRatingException;
 import es.udc.fi.dc.fd.service.user.exceptions.UserAlreadyGiveRatingToUserToRate;
@@ -85,41 +88,104 @@ public class DefaultUserService implements UserService {
 	 */
 	private final RateUserRepository rateUserDao;
 
+	/**
+	 * Index used to search the sale advertisements, which keeps the role and
+	 * rating of their owners.
+	 */
+	private final SaleAdvertisementSearchIndex searchIndex;
+
+	/**
+	 * Feeds of the sale advertisements published by the followed users.
+	 */
+	private final FollowedSellersFeed feed;
+
+	/**
+	 * Cache of the users read when authenticating, updated when their role or
+	 * password changes.
+	 */
+	private final UserCache userCache;
+
+	/**
+	 * Encoder of the passwords, shared with the authentication.
+	 */
+	private final PasswordEncoder passwordEncoder;
+
+	/**
+	 * Filters of the logins and emails in use.
+	 */
+	private final UserIdentifierFilter identifierFilter;
+
 	/**
 	 * Constructs an user service with the specified repository.
 	 *
 	 * @param repository                  the repository for the user instances
 	 * @param saleAdvertisementRepository the repository for sale advertisements
 	 * @param rateUserRepository          the rate user repository
+	 * @param searchIndex                 the sale advertisement search index
+	 * @param feed                        the followed sellers feed
+	 * @param userCache                   the authentication user cache
+	 * @param passwordEncoder             the password encoder
+	 * @param identifierFilter            the login and email filters
 	 */
 	@Autowired
 	public DefaultUserService(final UserRepository repository,
 			final SaleAdvertisementRepository saleAdvertisementRepository,
-			final RateUserRepository rateUserRepository) {
+			final RateUserRepository rateUserRepository, final SaleAdvertisementSearchIndex searchIndex,
+			final FollowedSellersFeed feed, final UserCache userCache, final PasswordEncoder passwordEncoder,
+			final UserIdentifierFilter identifierFilter) {
 		super();
 		userDao = checkNotNull(repository, "Received a null pointer as repository");
 		this.saleAdvertisementRepository = checkNotNull(saleAdvertisementRepository,
 				"Received a null pointer as saleAdvertisementRepository");
 		rateUserDao = checkNotNull(rateUserRepository, "Received a null pointer as repository");
+		this.searchIndex = checkNotNull(searchIndex, "Received a null pointer as searchIndex");
+		this.feed = checkNotNull(feed, "Received a null pointer as feed");
+		this.userCache = checkNotNull(userCache, "Received a null pointer as userCache");
+		this.passwordEncoder = checkNotNull(passwordEncoder, "Received a null pointer as passwordEncoder");
+		this.identifierFilter = checkNotNull(identifierFilter, "Received a null pointer as identifierFilter");
 	}
 
 	@Override
 	public void signUp(DefaultUserEntity user)
 			throws UserLoginExistsException, UserEmailExistsException, UserLoginAndEmailExistsException {
 		checkNotNull(user, NULL_USER_MESSAGE);
-		if ((userDao.existsByLogin(user.getLogin())) && (userDao.existsByEmail(user.getEmail()))) {
-			throw new UserLoginAndEmailExistsException(user.getLogin(), user.getEmail());
+		checkLoginAndEmail(user.getLogin(), user.getEmail(), existsLogin(user.getLogin()),
+				existsEmail(user.getEmail()));
+
+		user.setPassword(passwordEncoder.encode(user.getPassword()));
+		user.setRole(Role.ROLE_USER);
+		try {
+			userDao.save(user);
+		} catch (DataIntegrityViolationException e) {
+			// Signed up meanwhile with the same login or email, maybe not in the filters yet
+			checkLoginAndEmail(user.getLogin(), user.getEmail(), userDao.existsByLogin(user.getLogin()),
+					userDao.existsByEmail(user.getEmail()));
+			throw e;
 		}
-		if (userDao.existsByLogin(user.getLogin())) {
-			throw new UserLoginExistsException(user.getLogin());
+		identifierFilter.add(user.getLogin(), user.getEmail());
+	}
+
+	@Override
+	public boolean existsLogin(String login) {
+		return identifierFilter.mightContainLogin(login) && userDao.existsByLogin(login);
+	}
+
+	@Override
+	public boolean existsEmail(String email) {
+		return identifierFilter.mightContainEmail(email) && userDao.existsByEmail(email);
+	}
+
+	private void checkLoginAndEmail(String login, String email, boolean loginExists, boolean emailExists)
+			throws UserLoginExistsException, UserEmailExistsException, UserLoginAndEmailExistsException {
+		if (loginExists && emailExists) {
+			throw new UserLoginAndEmailExistsException(login, email);
 		}
-		if (userDao.existsByEmail(user.getEmail())) {
-			throw new UserEmailExistsException(user.getEmail());
+		if (loginExists) {
+			throw new UserLoginExistsException(login);
+		}
+		if (emailExists) {
+			throw new UserEmailExistsException(email);
 		}
-		BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
-		user.setPassword(passwordEncoder.encode(user.getPassword()));
-		user.setRole(Role.ROLE_USER);
-		userDao.save(user);
 	}
 
 	@Override
@@ -131,7 +197,6 @@ public DefaultUserEntity login(String login, String password)
 			throw new UserNotFoundException(login);
 		}
 		DefaultUserEntity user = userDao.findByLogin(login);
-		BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 		if (!passwordEncoder.matches(password, user.getPassword())) {
 			throw new UserIncorrectLoginException(login, password);
 		}
@@ -150,10 +215,20 @@ public DefaultUserEntity findById(Integer identifier) throws UserNotFoundExcepti
 
 	@Override
 	public DefaultUserEntity findByLogin(String login) throws UserNotFoundException {
-		if (!userDao.existsByLogin(login)) {
+		DefaultUserEntity user = userDao.findByLogin(login);
+
+		if (user == null) {
 			throw new UserNotFoundException(login);
 		}
-		return userDao.findByLogin(login);
+		return user;
+	}
+
+	@Override
+	public DefaultUserEntity getReference(Integer identifier) throws UserNotFoundException {
+		if (identifier == null) {
+			throw new UserNotFoundException(identifier);
+		}
+		return userDao.getOne(identifier);
 	}
 
 	@Override
@@ -165,6 +240,7 @@ public DefaultUserEntity findByEmail(String email) throws UserEmailNotFoundExcep
 	}
 
 	@Override
+	@Transactional
 	public UserEntity like(UserEntity user, SaleAdvertisementEntity saleAdvertisement)
 			throws UserNotFoundException, SaleAdvertisementNotFoundException {
 		checkNotNull(user, NULL_USER_MESSAGE);
@@ -173,13 +249,14 @@ public UserEntity like(UserEntity user, SaleAdvertisementEntity saleAdvertisemen
 		if (!saleAdvertisementRepository.existsById(saleAdvertisement.getId())) {
 			throw new SaleAdvertisementNotFoundException(saleAdvertisement.getId());
 		}
-		saleAdvertisement.addUsersLike((DefaultUserEntity) user);
-		saleAdvertisementRepository.save((DefaultSaleAdvertisementEntity) saleAdvertisement);
-		user.addLike(saleAdvertisement);
-		return userDao.save((DefaultUserEntity) user);
+		if (saleAdvertisementRepository.insertLike(user.getId(), saleAdvertisement.getId()) > 0) {
+			saleAdvertisementRepository.updateLikesCount(saleAdvertisement.getId(), 1);
+		}
+		return userDao.findById(user.getId()).orElseThrow(() -> new UserNotFoundException(user.getId()));
 	}
 
 	@Override
+	@Transactional
 	public UserEntity unlike(UserEntity user, SaleAdvertisementEntity saleAdvertisement)
 			throws UserNotFoundException, SaleAdvertisementNotFoundException {
 		checkNotNull(user, NULL_USER_MESSAGE);
@@ -188,10 +265,10 @@ public UserEntity unlike(UserEntity user, SaleAdvertisementEntity saleAdvertisem
 		if (!saleAdvertisementRepository.existsById(saleAdvertisement.getId())) {
 			throw new SaleAdvertisementNotFoundException(saleAdvertisement.getId());
 		}
-		saleAdvertisement.removeUsersLike((DefaultUserEntity) user);
-		saleAdvertisementRepository.save((DefaultSaleAdvertisementEntity) saleAdvertisement);
-		user.removeLike(saleAdvertisement);
-		return userDao.save((DefaultUserEntity) user);
+		if (saleAdvertisementRepository.deleteLike(user.getId(), saleAdvertisement.getId()) > 0) {
+			saleAdvertisementRepository.updateLikesCount(saleAdvertisement.getId(), -1);
+		}
+		return userDao.findById(user.getId()).orElseThrow(() -> new UserNotFoundException(user.getId()));
 	}
 
 	public UserEntity followUser(UserEntity user, UserEntity userToFollow)
@@ -204,7 +281,11 @@ public UserEntity followUser(UserEntity user, UserEntity userToFollow)
 		user.addFollowUser((DefaultUserEntity) userToFollow);
 		userToFollow.addFollowserUser((DefaultUserEntity) user);
 		userDao.save((DefaultUserEntity) userToFollow);
-		return userDao.save((DefaultUserEntity) user);
+		UserEntity result = userDao.save((DefaultUserEntity) user);
+		Integer followerId = user.getId();
+		Integer followedId = userToFollow.getId();
+		TransactionCallbacks.afterCommit(() -> feed.follow(followerId, followedId));
+		return result;
 	}
 
 	@Override
@@ -218,7 +299,11 @@ public UserEntity unfollowUser(UserEntity user, UserEntity userToUnfollow)
 		user.removeFollowUser((DefaultUserEntity) userToUnfollow);
 		userToUnfollow.removeFollowserUser((DefaultUserEntity) user);
 		userDao.save((DefaultUserEntity) userToUnfollow);
-		return userDao.save((DefaultUserEntity) user);
+		UserEntity result = userDao.save((DefaultUserEntity) user);
+		Integer followerId = user.getId();
+		Integer unfollowedId = userToUnfollow.getId();
+		TransactionCallbacks.afterCommit(() -> feed.unfollow(followerId, unfollowedId));
+		return result;
 	}
 
 	@Override
@@ -241,10 +326,11 @@ public boolean existsRatingFromUserToRateUser(UserEntity user, UserEntity ratedU
 	@Override
 	public boolean existsRatingForUser(UserEntity user) throws UserNotFoundException {
 		checkUser(user.getId());
-		return rateUserDao.existsRatedUser(user.getId());
+		return userDao.existsRatedUser(user.getId());
 	}
 
 	@Override
+	@Transactional
 	public void rateUser(UserEntity user, UserEntity userToRate, Integer rating)
 			throws UserNotFoundException, UserAlreadyGiveRatingToUserToRate, LowRatingException, HighRatingException {
 		checkUser(user.getId());
@@ -261,15 +347,20 @@ public void rateUser(UserEntity user, UserEntity userToRate, Integer rating)
 		DefaultRateUserEntity rateEntity = new DefaultRateUserEntity((DefaultUserEntity) user,
 				(DefaultUserEntity) userToRate, rating);
 		rateUserDao.save(rateEntity);
+		userDao.addRating(userToRate.getId(), rating);
+		Integer ratedId = userToRate.getId();
+		Double averageRating = userDao.findAverageRating(ratedId);
+		TransactionCallbacks.afterCommit(() -> searchIndex.updateOwnerRating(ratedId, averageRating));
 	}
 
 	@Override
 	public Double averageRating(UserEntity user) throws UserNotFoundException, UserNoRatingException {
 		checkUser(user.getId());
-		if (!existsRatingForUser(user)) {
+		Double averageRating = userDao.findAverageRating(user.getId());
+		if (averageRating == null) {
 			throw new UserNoRatingException(user.getId());
 		}
-		return rateUserDao.findAverageRating(user.getId());
+		return averageRating;
 	}
 
 	@Override
@@ -283,11 +374,19 @@ public UserEntity premiumUser(UserEntity user) throws UserNotFoundException {
 		checkUser(user.getId());
 		if (user.getRole() != Role.ROLE_PREMIUM) {
 			user.setRole(Role.ROLE_PREMIUM);
-			return userDao.save((DefaultUserEntity) user);
 		} else {
 			user.setRole(Role.ROLE_USER);
-			return userDao.save((DefaultUserEntity) user);
 		}
+		UserEntity saved = userDao.save((DefaultUserEntity) user);
+		Integer userId = user.getId();
+		Role role = user.getRole();
+		String login = user.getLogin();
+		// Evicted once committed, so an authentication meanwhile can not cache the old role again
+		TransactionCallbacks.afterCommit(() -> {
+			searchIndex.updateOwnerRole(userId, role);
+			userCache.removeUserFromCache(login);
+		});
+		return saved;
 	}
 
 	private void checkUser(Integer identifier) throws UserNotFoundException {
@@ -0,0 +1,185 @@
+package es.udc.fi.dc.fd.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Memory mappings of the most recently served image files.
+ * <p>
+ * The stored files never change, as they are named after their contents, so a
+ * mapping stays valid while the file is served. The files up to
+ * {@link #MAX_MAPPED_FILE_SIZE} are mapped when they are first served and kept
+ * until the mapped files reach {@link #MAX_MAPPED_BYTES}, dropping the least
+ * recently used ones. Larger files are transferred from their channel without
+ * mapping them.
+ * <p>
+ * The mappings do not keep the files open, and a dropped mapping is released
+ * by the garbage collector.
+ */
+@Component
+@ManagedResource(objectName = "es.udc.fi.dc.fd:name=ImageFileCache", description = "Mapped image files")
+public class ImageFileCache {
+
+	/** Largest file mapped, in bytes. */
+	public static final long MAX_MAPPED_FILE_SIZE = 4 * 1024 * 1024;
+
+	/** Maximum size of all the mapped files, in bytes. */
+	public static final long MAX_MAPPED_BYTES = 256L * 1024 * 1024;
+
+	/** File to its mapping. */
+	private final Cache<Path, MappedByteBuffer> mappings = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_MAPPED_BYTES).weigher((Path file, MappedByteBuffer mapping) -> mapping.capacity())
+			.recordStats().build();
+
+	/**
+	 * Instantiates a new image file cache.
+	 */
+	public ImageFileCache() {
+		super();
+	}
+
+	/**
+	 * Writes a range of a file.
+	 *
+	 * @param file     the file
+	 * @param size     the size of the file
+	 * @param position the first byte written
+	 * @param count    the number of bytes written
+	 * @param output   the output
+	 * @throws IOException if the file can not be read or the output written
+	 */
+	public void transfer(Path file, long size, long position, long count, OutputStream output) throws IOException {
+		checkNotNull(file, "Received a null pointer as file");
+		checkNotNull(output, "Received a null pointer as output");
+
+		WritableByteChannel target = Channels.newChannel(output);
+		if (size <= MAX_MAPPED_FILE_SIZE) {
+			ByteBuffer buffer = getMapping(file).duplicate();
+			if (buffer.capacity() != size) {
+				mappings.invalidate(file);
+				buffer = getMapping(file).duplicate();
+			}
+			if (position + count > buffer.capacity())
+				throw new IOException("The file " + file + " is shorter than " + size + " bytes");
+
+			buffer.position((int) position).limit((int) (position + count));
+			while (buffer.hasRemaining())
+				target.write(buffer);
+		} else {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long transferred = 0;
+				while (transferred < count) {
+					long written = channel.transferTo(position + transferred, count - transferred, target);
+					if (written <= 0)
+						throw new IOException("The file " + file + " is shorter than " + size + " bytes");
+					transferred += written;
+				}
+			}
+		}
+		output.flush();
+	}
+
+	/**
+	 * Drops the mapping of a file, as it was deleted.
+	 *
+	 * @param file the file
+	 */
+	public void invalidate(Path file) {
+		if (file != null)
+			mappings.invalidate(file);
+	}
+
+	/**
+	 * Drops all the mappings.
+	 */
+	@ManagedOperation(description = "Drops all the mappings")
+	public void invalidateAll() {
+		mappings.invalidateAll();
+	}
+
+	/**
+	 * Gets the number of files mapped.
+	 *
+	 * @return the mapped count
+	 */
+	@ManagedAttribute(description = "Files mapped")
+	public long getMappedCount() {
+		return mappings.size();
+	}
+
+	/**
+	 * Gets the size of the files mapped.
+	 *
+	 * @return the mapped bytes
+	 */
+	@ManagedAttribute(description = "Bytes of the files mapped")
+	public long getMappedBytes() {
+		return mappings.asMap().values().stream().mapToLong(MappedByteBuffer::capacity).sum();
+	}
+
+	/**
+	 * Gets the number of files served from their mapping.
+	 *
+	 * @return the hit count
+	 */
+	@ManagedAttribute(description = "Files served from their mapping")
+	public long getHitCount() {
+		return mappings.stats().hitCount();
+	}
+
+	/**
+	 * Gets the number of files mapped to be served.
+	 *
+	 * @return the miss count
+	 */
+	@ManagedAttribute(description = "Files mapped to be served")
+	public long getMissCount() {
+		return mappings.stats().missCount();
+	}
+
+	/**
+	 * Gets the number of mappings dropped as the mapped files were too large.
+	 *
+	 * @return the eviction count
+	 */
+	@ManagedAttribute(description = "Mappings dropped as the mapped files were too large")
+	public long getEvictionCount() {
+		return mappings.stats().evictionCount();
+	}
+
+	private MappedByteBuffer getMapping(Path file) throws IOException {
+		try {
+			return mappings.get(file, () -> map(file));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException("The file " + file + " could not be mapped", e.getCause());
+		}
+	}
+
+	private static MappedByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+}
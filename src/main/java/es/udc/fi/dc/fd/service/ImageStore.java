@@ -0,0 +1,468 @@
+package es.udc.fi.dc.fd.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletContext;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.Striped;
+
+import es.udc.fi.dc.fd.model.persistence.DefaultImageFileEntity;
+import es.udc.fi.dc.fd.repository.ImageFileRepository;
+
+/**
+ * Content addressed store of the uploaded images.
+ * <p>
+ * Each file is named after the SHA-256 hash of its contents, so an upload
+ * never has to look for a free name.
+ * Identical images are stored once, and the number of images using each file
+ * is kept in the database. The file is deleted when its last image is
+ * removed.
+ * <p>
+ * The files are kept under the <code>Images</code> folder of the web
+ * application, spread over sub folders named after the first two characters
+ * of the hash.
+ * <p>
+ * Storing a file and deleting an unused one are serialized for each file name,
+ * and the deletion waits for the removal of the last image to be committed, so
+ * a file uploaded again while it is being released is never lost.
+ * <p>
+ * The smaller variants of a file, such as its thumbnails, are stored beside it
+ * with the name of the variant after the hash, and they are deleted with it.
+ */
+@Component
+public class ImageStore {
+
+	/** Name of the images folder. */
+	private static final String IMAGES_FOLDER = "Images";
+
+	/** Path of the images folder in the web application. */
+	public static final String IMAGES_PATH = "/" + IMAGES_FOLDER;
+
+	private static final Logger logger = LoggerFactory.getLogger(ImageStore.class);
+
+	/** Folder of the uploads being written, inside the images folder. */
+	private static final String TEMPORARY_FOLDER = ".uploads";
+
+	/** Size of the buffer the uploads are hashed with. */
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+	/** Number of locks the file names are spread over. */
+	private static final int LOCK_STRIPES = 64;
+
+	/** Extensions kept in the file names. */
+	private static final Pattern EXTENSION = Pattern.compile("[a-z0-9]{1,10}");
+
+	/** Names of the variants of a file. */
+	private static final Pattern VARIANT = Pattern.compile("[a-z]{1,20}");
+
+	/** Path of a stored file, relative to the images folder. */
+	private static final Pattern STORED_PATH = Pattern
+			.compile("([0-9a-f]{2})/(\\1[0-9a-f]{62}(?:\\.[a-z0-9]{1,10})?)");
+
+	/** Path of a stored file or variant, relative to the images folder. */
+	private static final Pattern STORED_FILE_PATH = Pattern
+			.compile("([0-9a-f]{2})/\\1[0-9a-f]{62}(?:-[a-z]{1,20})?(?:\\.[a-z0-9]{1,10})?");
+
+	/** Encodes the hashes. */
+	private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+	/** The image file repository, which keeps the reference counts. */
+	private final ImageFileRepository imageFileRepository;
+
+	/** The context, which gives the folder of the web application. */
+	private final ServletContext context;
+
+	/** Checks the references of a file out of the transaction which released it. */
+	private final TransactionTemplate newTransaction;
+
+	/** Locks for storing and deleting each file. */
+	private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+
+	/**
+	 * Instantiates a new image store.
+	 *
+	 * @param imageFileRepository the image file repository
+	 * @param context             the servlet context
+	 * @param transactionManager  the transaction manager
+	 */
+	@Autowired
+	public ImageStore(final ImageFileRepository imageFileRepository, final ServletContext context,
+			final PlatformTransactionManager transactionManager) {
+		super();
+		this.imageFileRepository = checkNotNull(imageFileRepository,
+				"Received a null pointer as imageFileRepository");
+		this.context = checkNotNull(context, "Received a null pointer as context");
+		this.newTransaction = new TransactionTemplate(
+				checkNotNull(transactionManager, "Received a null pointer as transactionManager"));
+		this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.newTransaction.setReadOnly(true);
+	}
+
+	/**
+	 * Stores an uploaded image, or adds a reference to the stored file if the
+	 * same contents were uploaded before.
+	 * <p>
+	 * The upload is moved to the store instead of copied when the multipart
+	 * resolver wrote it to disk, and it is then read once to hash it and check
+	 * its size.
+	 * <p>
+	 * It must not be called inside a transaction, as the reference is committed
+	 * before the file is released to other uploads.
+	 *
+	 * @param upload the uploaded image
+	 * @return the path of the image in the web application, without the context
+	 *         path
+	 * @throws IOException if the image can not be written or is too large
+	 */
+	public String store(MultipartFile upload) throws IOException {
+		checkNotNull(upload, "Received a null pointer as upload");
+
+		Path root = getRoot();
+		Path temporary = createTemporaryFile();
+		try {
+			upload.transferTo(temporary.toFile());
+
+			String name = fileName(hash(temporary, upload.getSize()), upload.getOriginalFilename());
+			String relativePath = name.substring(0, 2) + "/" + name;
+
+			Lock lock = locks.get(name);
+			lock.lock();
+			try {
+				Path file = root.resolve(relativePath);
+				if (!Files.exists(file)) {
+					Files.createDirectories(file.getParent());
+					Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+				}
+
+				if (imageFileRepository.addReference(name) == 0)
+					imageFileRepository.save(new DefaultImageFileEntity(name));
+			} finally {
+				lock.unlock();
+			}
+
+			return IMAGES_PATH + "/" + relativePath;
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Creates an empty temporary file, in the same file system as the store so
+	 * it can be moved to it.
+	 *
+	 * @return the temporary file
+	 * @throws IOException if the file can not be created
+	 */
+	public Path createTemporaryFile() throws IOException {
+		Path temporaryFolder = Files.createDirectories(getRoot().resolve(TEMPORARY_FOLDER));
+		return Files.createTempFile(temporaryFolder, "upload", ".tmp");
+	}
+
+	/**
+	 * Gets the file of a stored image.
+	 *
+	 * @param imagePath the path of the image, with or without the context path
+	 * @return the file, or null if the image was not stored by this store
+	 */
+	public Path getFile(String imagePath) {
+		Matcher matcher = matchStoredPath(imagePath);
+		return matcher == null ? null : getRoot().resolve(matcher.group(1)).resolve(matcher.group(2));
+	}
+
+	/**
+	 * Gets a stored file or variant by its path in the images folder. The file
+	 * may not exist.
+	 *
+	 * @param relativePath the path of the file, relative to the images folder
+	 * @return the file, or null if the path is not one of this store
+	 */
+	public Path getStoredFile(String relativePath) {
+		if (relativePath == null || !STORED_FILE_PATH.matcher(relativePath).matches())
+			return null;
+		return getRoot().resolve(relativePath);
+	}
+
+	/**
+	 * Gets the path of a variant of a stored image, if it was stored.
+	 *
+	 * @param imagePath the path of the image, with or without the context path
+	 * @param variant   the name of the variant
+	 * @param extension the extension of the variant
+	 * @return the path of the variant, with the same prefix as the image path, or
+	 *         null if it is not stored
+	 */
+	public String findVariant(String imagePath, String variant, String extension) {
+		Matcher matcher = matchStoredPath(imagePath);
+		if (matcher == null)
+			return null;
+
+		String name = variantName(matcher.group(2), variant, extension);
+		return Files.exists(getRoot().resolve(matcher.group(1)).resolve(name)) ? variantPath(imagePath, name) : null;
+	}
+
+	/**
+	 * Stores a variant of a stored image, replacing the previous one.
+	 * <p>
+	 * The variant is not stored if the image file was deleted meanwhile.
+	 *
+	 * @param imagePath the path of the image, with or without the context path
+	 * @param variant   the name of the variant
+	 * @param extension the extension of the variant
+	 * @param temporary the variant, in a file created by
+	 *                  {@link #createTemporaryFile()}, which is moved
+	 * @return the path of the variant, with the same prefix as the image path, or
+	 *         null if the image is not stored
+	 * @throws IOException if the variant can not be moved to the store
+	 */
+	public String storeVariant(String imagePath, String variant, String extension, Path temporary)
+			throws IOException {
+		checkNotNull(temporary, "Received a null pointer as temporary");
+
+		Matcher matcher = matchStoredPath(imagePath);
+		if (matcher == null)
+			return null;
+
+		String name = matcher.group(2);
+		String variantName = variantName(name, variant, extension);
+		Lock lock = locks.get(name);
+		lock.lock();
+		try {
+			Path folder = getRoot().resolve(matcher.group(1));
+			if (!Files.exists(folder.resolve(name)))
+				return null;
+
+			Files.move(temporary, folder.resolve(variantName), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			lock.unlock();
+		}
+
+		return variantPath(imagePath, variantName);
+	}
+
+	/**
+	 * Removes the reference of an image to its file. The file is deleted once the
+	 * transaction is committed if no other image uses it.
+	 * <p>
+	 * Images not stored by this store are deleted, as each of them has its own
+	 * file.
+	 *
+	 * @param imagePath the path of the image, with or without the context path
+	 */
+	public void release(String imagePath) {
+		String path = relativePath(imagePath);
+		if (path == null)
+			return;
+
+		Matcher matcher = STORED_PATH.matcher(path);
+		if (!matcher.matches()) {
+			String unstoredPath = path;
+			TransactionCallbacks.afterCommit(() -> deleteUnstoredFile(unstoredPath));
+			return;
+		}
+
+		String name = matcher.group(2);
+		if (imageFileRepository.removeReference(name) > 0 && imageFileRepository.deleteIfUnreferenced(name) > 0)
+			TransactionCallbacks.afterCommit(() -> deleteIfUnreferenced(name));
+	}
+
+	/**
+	 * Deletes a stored file and its variants if no image uses it.
+	 *
+	 * @param name the file name
+	 */
+	private void deleteIfUnreferenced(String name) {
+		Lock lock = locks.get(name);
+		lock.lock();
+		try {
+			if (!Boolean.TRUE.equals(newTransaction.execute(status -> imageFileRepository.existsById(name)))) {
+				Path folder = getRoot().resolve(name.substring(0, 2));
+				Files.deleteIfExists(folder.resolve(name));
+				try (DirectoryStream<Path> variants = Files.newDirectoryStream(folder, hashOf(name) + "-*")) {
+					for (Path variant : variants)
+						Files.deleteIfExists(variant);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Could not delete the image file {}", name, e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Deletes the file of an image uploaded before the store, which is not
+	 * shared.
+	 *
+	 * @param path the path of the image, relative to the images folder
+	 */
+	private void deleteUnstoredFile(String path) {
+		Path root = getRoot();
+		Path file = root.resolve(path).normalize();
+		if (!file.startsWith(root))
+			return;
+
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			logger.warn("Could not delete the image file {}", file, e);
+		}
+	}
+
+	/**
+	 * Gets the path of an image relative to the images folder.
+	 *
+	 * @param imagePath the path of the image, with or without the context path
+	 * @return the relative path, or null if the image is not in the images folder
+	 */
+	private String relativePath(String imagePath) {
+		if (imagePath == null)
+			return null;
+
+		String path = imagePath;
+		String contextPath = context.getContextPath();
+		if (!contextPath.isEmpty() && path.startsWith(contextPath))
+			path = path.substring(contextPath.length());
+		if (!path.startsWith(IMAGES_PATH + "/"))
+			return null;
+		return path.substring(IMAGES_PATH.length() + 1);
+	}
+
+	/**
+	 * Matches the path of an image stored by this store.
+	 *
+	 * @param imagePath the path of the image, with or without the context path
+	 * @return the matcher, with the folder and the file name as groups, or null
+	 *         if the image was not stored by this store
+	 */
+	private Matcher matchStoredPath(String imagePath) {
+		String path = relativePath(imagePath);
+		if (path == null)
+			return null;
+
+		Matcher matcher = STORED_PATH.matcher(path);
+		return matcher.matches() ? matcher : null;
+	}
+
+	/**
+	 * Gets the name of a file: its hash and the extension of the uploaded file,
+	 * if it is a valid one.
+	 *
+	 * @param hash             the hash of the contents
+	 * @param originalFilename the name of the uploaded file
+	 * @return the file name
+	 */
+	private static String fileName(String hash, String originalFilename) {
+		String extension = FilenameUtils.getExtension(originalFilename);
+		if (extension == null)
+			return hash;
+
+		extension = extension.toLowerCase(Locale.ROOT);
+		return EXTENSION.matcher(extension).matches() ? hash + "." + extension : hash;
+	}
+
+	/**
+	 * Gets the name of a variant of a file.
+	 *
+	 * @param name      the file name
+	 * @param variant   the name of the variant
+	 * @param extension the extension of the variant
+	 * @return the name of the variant
+	 */
+	private static String variantName(String name, String variant, String extension) {
+		checkArgument(variant != null && VARIANT.matcher(variant).matches(), "Invalid variant %s", variant);
+		checkArgument(extension != null && EXTENSION.matcher(extension).matches(), "Invalid extension %s",
+				extension);
+		return hashOf(name) + "-" + variant + "." + extension;
+	}
+
+	/**
+	 * Replaces the file name of an image path.
+	 *
+	 * @param imagePath the path of the image
+	 * @param name      the new file name
+	 * @return the path with the new file name
+	 */
+	private static String variantPath(String imagePath, String name) {
+		return imagePath.substring(0, imagePath.lastIndexOf('/') + 1) + name;
+	}
+
+	private static String hashOf(String name) {
+		int extension = name.indexOf('.');
+		return extension < 0 ? name : name.substring(0, extension);
+	}
+
+	/**
+	 * Hashes a file, checking its size in the same read.
+	 *
+	 * @param file         the file
+	 * @param expectedSize the size of the upload
+	 * @return the hash of the contents
+	 * @throws IOException if the file can not be read, is too large or was not
+	 *                     fully written
+	 */
+	private static String hash(Path file, long expectedSize) throws IOException {
+		MessageDigest digest = newDigest();
+		ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+		long size = 0;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			int read;
+			while ((read = channel.read(buffer)) != -1) {
+				size += read;
+				if (size > ImageUploaderConfig.MAX_UPLOAD_SIZE_PER_FILE)
+					throw new IOException("The image is larger than " + ImageUploaderConfig.MAX_UPLOAD_SIZE_PER_FILE
+							+ " bytes");
+
+				digest.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+		}
+
+		if (size != expectedSize)
+			throw new IOException("The image was not fully uploaded");
+
+		return HEX.encode(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private Path getRoot() {
+		return Paths.get(context.getRealPath("/"), IMAGES_FOLDER).toAbsolutePath().normalize();
+	}
+
+}
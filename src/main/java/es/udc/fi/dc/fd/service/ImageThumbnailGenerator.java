@@ -0,0 +1,342 @@
+package es.udc.fi.dc.fd.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import es.udc.fi.dc.fd.repository.ImageRepository;
+
+/**
+ * Generates the card and detail sized variants of the stored images in its own
+ * bounded pool of threads, so the uploads do not wait for them.
+ * <p>
+ * Each image is decoded once, subsampled while it is read when it is much
+ * larger than the detail size, and the card variant is scaled from the detail
+ * one. The variants are stored beside the original by the {@link ImageStore},
+ * which is kept as the original size variant, and their paths are set on all
+ * the images sharing the file.
+ * <p>
+ * The variants already stored for a file uploaded again are reused without
+ * decoding it. When the pool is full the image is left out, and it is shown
+ * with its original file.
+ */
+@Component
+@ManagedResource(objectName = "es.udc.fi.dc.fd:name=ImageThumbnailGenerator", description = "Image thumbnails pool")
+public class ImageThumbnailGenerator implements DisposableBean {
+
+	/** Name of the card sized variant. */
+	public static final String CARD = "card";
+
+	/** Name of the detail sized variant. */
+	public static final String DETAIL = "detail";
+
+	/** Largest side of the card sized variant, in pixels. */
+	public static final int CARD_SIZE = 400;
+
+	/** Largest side of the detail sized variant, in pixels. */
+	public static final int DETAIL_SIZE = 1280;
+
+	private static final Logger logger = LoggerFactory.getLogger(ImageThumbnailGenerator.class);
+
+	/** Largest image decoded, in pixels, before subsampling it. */
+	private static final long MAX_PIXELS = 100_000_000L;
+
+	/** Number of generating threads. */
+	private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	/** Maximum number of images waiting for their variants. */
+	private static final int QUEUE_CAPACITY = 200;
+
+	/** The image store. */
+	private final ImageStore imageStore;
+
+	/** The image repository, which keeps the variant paths. */
+	private final ImageRepository imageRepository;
+
+	/** The generating pool. */
+	private final ThreadPoolExecutor executor;
+
+	/** Number of images left out as the pool was full. */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/** Number of images whose variants could not be generated. */
+	private final AtomicLong failed = new AtomicLong();
+
+	/**
+	 * Instantiates a new image thumbnail generator.
+	 *
+	 * @param imageStore      the image store
+	 * @param imageRepository the image repository
+	 */
+	@Autowired
+	public ImageThumbnailGenerator(final ImageStore imageStore, final ImageRepository imageRepository) {
+		super();
+		this.imageStore = checkNotNull(imageStore, "Received a null pointer as imageStore");
+		this.imageRepository = checkNotNull(imageRepository, "Received a null pointer as imageRepository");
+		this.executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+				new ThreadFactoryBuilder().setNameFormat("image-thumbnails-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * Generates the variants of an image in the pool, once the current
+	 * transaction is committed.
+	 *
+	 * @param imagePath the path of the image, with the context path
+	 */
+	public void submit(String imagePath) {
+		if (imageStore.getFile(imagePath) == null)
+			return;
+
+		TransactionCallbacks.afterCommit(() -> {
+			try {
+				executor.execute(() -> generateQuietly(imagePath));
+			} catch (RejectedExecutionException e) {
+				rejected.incrementAndGet();
+				logger.warn("Too many images waiting for their thumbnails, {} is left out", imagePath);
+			}
+		});
+	}
+
+	/**
+	 * Generates the variants of an image, and sets their paths on all the images
+	 * sharing its file.
+	 * <p>
+	 * The variant of an image smaller than its size is the image itself.
+	 *
+	 * @param imagePath the path of the image, with the context path
+	 * @throws IOException if the image can not be read or the variants written
+	 */
+	public void generate(String imagePath) throws IOException {
+		Path file = imageStore.getFile(imagePath);
+		if (file == null)
+			return;
+
+		String extension = variantExtension(file);
+		String cardPath = imageStore.findVariant(imagePath, CARD, extension);
+		String detailPath = imageStore.findVariant(imagePath, DETAIL, extension);
+
+		if (cardPath == null || detailPath == null) {
+			BufferedImage original = read(file);
+			if (original == null)
+				throw new IOException("The image " + imagePath + " can not be decoded");
+
+			BufferedImage detail = scale(original, DETAIL_SIZE, extension);
+			if (detailPath == null)
+				detailPath = detail == null ? imagePath : storeVariant(imagePath, DETAIL, extension, detail);
+
+			BufferedImage card = scale(detail == null ? original : detail, CARD_SIZE, extension);
+			if (cardPath == null)
+				cardPath = card == null ? imagePath : storeVariant(imagePath, CARD, extension, card);
+
+			if (cardPath == null || detailPath == null)
+				return;
+		}
+
+		imageRepository.updateVariantPaths(imagePath, cardPath, detailPath);
+	}
+
+	/**
+	 * Gets the number of images waiting for their variants.
+	 *
+	 * @return the queue size
+	 */
+	@ManagedAttribute(description = "Images waiting for their thumbnails")
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Gets the number of images whose variants are being generated.
+	 *
+	 * @return the active count
+	 */
+	@ManagedAttribute(description = "Images whose thumbnails are being generated")
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Gets the number of images processed.
+	 *
+	 * @return the completed count
+	 */
+	@ManagedAttribute(description = "Images processed")
+	public long getCompletedCount() {
+		return executor.getCompletedTaskCount();
+	}
+
+	/**
+	 * Gets the number of images left out as the pool was full.
+	 *
+	 * @return the rejected count
+	 */
+	@ManagedAttribute(description = "Images left out as the pool was full")
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Gets the number of images whose variants could not be generated.
+	 *
+	 * @return the failed count
+	 */
+	@ManagedAttribute(description = "Images whose thumbnails could not be generated")
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	private void generateQuietly(String imagePath) {
+		try {
+			generate(imagePath);
+		} catch (IOException | RuntimeException e) {
+			failed.incrementAndGet();
+			logger.warn("Could not generate the thumbnails of {}", imagePath, e);
+		}
+	}
+
+	/**
+	 * Writes a variant and moves it to the store.
+	 *
+	 * @param imagePath the path of the image
+	 * @param variant   the name of the variant
+	 * @param extension the extension of the variant
+	 * @param image     the variant
+	 * @return the path of the variant, or null if the image was released
+	 * @throws IOException if the variant can not be written
+	 */
+	private String storeVariant(String imagePath, String variant, String extension, BufferedImage image)
+			throws IOException {
+		Path temporary = imageStore.createTemporaryFile();
+		try {
+			if (!ImageIO.write(image, extension.equals("png") ? "png" : "jpeg", temporary.toFile()))
+				throw new IOException("There is no writer for " + extension + " images");
+			return imageStore.storeVariant(imagePath, variant, extension, temporary);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Decodes an image, subsampling it when it is much larger than the detail
+	 * size.
+	 *
+	 * @param file the image file
+	 * @return the image, or null if its format is not supported or it is too
+	 *         large
+	 * @throws IOException if the file can not be read
+	 */
+	private static BufferedImage read(Path file) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+			if (input == null)
+				return null;
+
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext())
+				return null;
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				if ((long) width * height > MAX_PIXELS)
+					return null;
+
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = Math.max(1, Math.min(width, height) / (2 * DETAIL_SIZE));
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Scales an image down to fit a square, halving it while it is more than
+	 * twice as large, so each step blends all the pixels.
+	 *
+	 * @param image     the image
+	 * @param size      the side of the square
+	 * @param extension the extension of the variant
+	 * @return the scaled image, or null if the image already fits
+	 */
+	private static BufferedImage scale(BufferedImage image, int size, String extension) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (width <= size && height <= size)
+			return null;
+
+		double ratio = (double) size / Math.max(width, height);
+		int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+		int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+		int type = extension.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+		BufferedImage scaled = image;
+		do {
+			width = Math.max(targetWidth, width / 2);
+			height = Math.max(targetHeight, height / 2);
+
+			BufferedImage next = new BufferedImage(width, height, type);
+			Graphics2D graphics = next.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+						RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.drawImage(scaled, 0, 0, width, height, null);
+			} finally {
+				graphics.dispose();
+			}
+			scaled = next;
+		} while (width != targetWidth || height != targetHeight);
+
+		return scaled;
+	}
+
+	/**
+	 * Gets the extension of the variants of an image: PNG for the formats which
+	 * may be transparent, JPEG for the rest.
+	 *
+	 * @param file the image file
+	 * @return the extension
+	 */
+	private static String variantExtension(Path file) {
+		String extension = FilenameUtils.getExtension(file.getFileName().toString()).toLowerCase(Locale.ROOT);
+		return extension.equals("png") || extension.equals("gif") ? "png" : "jpg";
+	}
+
+}
@@ -16,8 +16,19 @@
 @Configuration
 @Import(SaleAdvertisementFormController.class)
 public class ImageUploaderConfig {
+
+	/** Maximum size of each uploaded file, in bytes. */
+	public static final long MAX_UPLOAD_SIZE_PER_FILE = 20_000_000;
+
+	/** Maximum number of files of an upload. */
+	private static final int MAX_FILES_PER_UPLOAD = 10;
+
 	/**
 	 * Multipart resolver.
+	 * <p>
+	 * The request is parsed when its files are first read, and the files over
+	 * the in memory size are written to disk, so the image store can move them
+	 * instead of copying them.
 	 *
 	 * @return the multipart resolver
 	 */
@@ -25,9 +36,9 @@ public class ImageUploaderConfig {
 	public MultipartResolver multipartResolver() {
 		CommonsMultipartResolver commonsMultipartResolver = new CommonsMultipartResolver();
 		commonsMultipartResolver.setDefaultEncoding("utf-8");
-		commonsMultipartResolver.setMaxUploadSizePerFile(20000000);
-		commonsMultipartResolver.setMaxUploadSize((long) 20000000 * 10);
-		commonsMultipartResolver.setResolveLazily(false);
+		commonsMultipartResolver.setMaxUploadSizePerFile(MAX_UPLOAD_SIZE_PER_FILE);
+		commonsMultipartResolver.setMaxUploadSize(MAX_UPLOAD_SIZE_PER_FILE * MAX_FILES_PER_UPLOAD);
+		commonsMultipartResolver.setResolveLazily(true);
 		return commonsMultipartResolver;
 	}
 
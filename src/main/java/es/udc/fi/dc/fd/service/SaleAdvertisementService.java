@@ -35,6 +35,8 @@
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementAlreadyOnHoldException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementAlreadyOnSaleException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementNotFoundException;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchCriteria;
+import es.udc.fi.dc.fd.service.search.SearchPage;
 
 /**
  * Service for the saleAdd domain.
@@ -128,6 +130,33 @@ public void remove(final DefaultSaleAdvertisementEntity saleAdvertisement)
 	public Iterable<DefaultSaleAdvertisementEntity> getSaleAdvertisementsBySearchCriteria(String city, String keywords,
 			LocalDateTime date1, LocalDateTime date2, BigDecimal price1, BigDecimal price2, Double rating);
 
+	/**
+	 * Find a page of the sale advertisements by search criteria, in the same order
+	 * as {@link #getSaleAdvertisementsBySearchCriteria}.
+	 *
+	 * @param criteria the search criteria
+	 * @param after    the cursor returned with the previous page, or null for the
+	 *                 first page
+	 * @param limit    the maximum number of sale advertisements of the page
+	 * @return the page of sale advertisements that meet the search criteria
+	 */
+	public SearchPage<DefaultSaleAdvertisementEntity> getSaleAdvertisementsBySearchCriteria(
+			SaleAdvertisementSearchCriteria criteria, String after, int limit);
+
+	/**
+	 * Find a page of the identifiers of the sale advertisements by search
+	 * criteria, without loading the sale advertisements.
+	 *
+	 * @param criteria the search criteria
+	 * @param after    the cursor returned with the previous page, or null for the
+	 *                 first page
+	 * @param limit    the maximum number of sale advertisements of the page
+	 * @return the page of identifiers of the sale advertisements that meet the
+	 *         search criteria
+	 */
+	public SearchPage<Integer> getSaleAdvertisementIdsBySearchCriteria(SaleAdvertisementSearchCriteria criteria,
+			String after, int limit);
+
 	/**
 	 * Gets the maximum price of all sale advertisements.
 	 *
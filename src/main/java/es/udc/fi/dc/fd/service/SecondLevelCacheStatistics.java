@@ -0,0 +1,202 @@
+package es.udc.fi.dc.fd.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Statistics of the Hibernate second level cache, exported through JMX.
+ * <p>
+ * The regions are configured in <code>cache/ehcache.xml</code>, one for each
+ * cached entity and collection. The hits, misses and puts are given for each
+ * region, so their sizes and expiration times can be tuned. The counters are
+ * only kept while the Hibernate statistics are enabled.
+ */
+@Component
+@ManagedResource(objectName = "es.udc.fi.dc.fd:name=SecondLevelCacheStatistics",
+		description = "Hibernate second level cache statistics")
+public class SecondLevelCacheStatistics {
+
+	/** The entity manager factory. */
+	private final EntityManagerFactory entityManagerFactory;
+
+	/**
+	 * Instantiates the second level cache statistics.
+	 *
+	 * @param entityManagerFactory the entity manager factory
+	 */
+	@Autowired
+	public SecondLevelCacheStatistics(final EntityManagerFactory entityManagerFactory) {
+		super();
+		this.entityManagerFactory = checkNotNull(entityManagerFactory,
+				"Received a null pointer as entityManagerFactory");
+	}
+
+	/**
+	 * Checks if the statistics are being collected.
+	 *
+	 * @return true, if they are enabled
+	 */
+	@ManagedAttribute(description = "Statistics being collected")
+	public boolean isStatisticsEnabled() {
+		return getStatistics().isStatisticsEnabled();
+	}
+
+	/**
+	 * Enables or disables the collection of the statistics.
+	 *
+	 * @param enabled true to enable them
+	 */
+	@ManagedAttribute(description = "Statistics being collected")
+	public void setStatisticsEnabled(boolean enabled) {
+		getStatistics().setStatisticsEnabled(enabled);
+	}
+
+	/**
+	 * Gets the names of the cache regions.
+	 *
+	 * @return the region names
+	 */
+	@ManagedAttribute(description = "Cache regions")
+	public String[] getRegionNames() {
+		String[] names = getStatistics().getSecondLevelCacheRegionNames();
+		Arrays.sort(names);
+		return names;
+	}
+
+	/**
+	 * Gets a summary of the statistics of every region, one line per region.
+	 *
+	 * @return the region statistics
+	 */
+	@ManagedAttribute(description = "Hits, misses, puts and size of each region")
+	public String[] getRegionStatistics() {
+		return Arrays.stream(getRegionNames()).map(this::describe).toArray(String[]::new);
+	}
+
+	/**
+	 * Gets the number of entries found in the cache.
+	 *
+	 * @return the hit count
+	 */
+	@ManagedAttribute(description = "Entries found in the cache")
+	public long getHitCount() {
+		return getStatistics().getSecondLevelCacheHitCount();
+	}
+
+	/**
+	 * Gets the number of entries not found in the cache.
+	 *
+	 * @return the miss count
+	 */
+	@ManagedAttribute(description = "Entries not found in the cache")
+	public long getMissCount() {
+		return getStatistics().getSecondLevelCacheMissCount();
+	}
+
+	/**
+	 * Gets the number of entries put in the cache.
+	 *
+	 * @return the put count
+	 */
+	@ManagedAttribute(description = "Entries put in the cache")
+	public long getPutCount() {
+		return getStatistics().getSecondLevelCachePutCount();
+	}
+
+	/**
+	 * Gets the ratio of entries found in the cache.
+	 *
+	 * @return the hit rate
+	 */
+	@ManagedAttribute(description = "Ratio of entries found in the cache")
+	public double getHitRate() {
+		return hitRate(getHitCount(), getMissCount());
+	}
+
+	/**
+	 * Gets the number of entries of a region found in the cache.
+	 *
+	 * @param region the region name
+	 * @return the hit count, or -1 if there is no such region
+	 */
+	@ManagedOperation(description = "Entries of a region found in the cache")
+	@ManagedOperationParameter(name = "region", description = "Region name")
+	public long regionHitCount(String region) {
+		CacheRegionStatistics statistics = getStatistics().getCacheRegionStatistics(region);
+		return statistics == null ? -1 : statistics.getHitCount();
+	}
+
+	/**
+	 * Gets the number of entries of a region not found in the cache.
+	 *
+	 * @param region the region name
+	 * @return the miss count, or -1 if there is no such region
+	 */
+	@ManagedOperation(description = "Entries of a region not found in the cache")
+	@ManagedOperationParameter(name = "region", description = "Region name")
+	public long regionMissCount(String region) {
+		CacheRegionStatistics statistics = getStatistics().getCacheRegionStatistics(region);
+		return statistics == null ? -1 : statistics.getMissCount();
+	}
+
+	/**
+	 * Resets every counter.
+	 */
+	@ManagedOperation(description = "Resets every counter")
+	public void clearStatistics() {
+		getStatistics().clear();
+	}
+
+	/**
+	 * Removes every entry from the cache.
+	 */
+	@ManagedOperation(description = "Removes every entry from the cache")
+	public void evictAll() {
+		getSessionFactory().getCache().evictAllRegions();
+	}
+
+	/**
+	 * Describes the statistics of a region.
+	 *
+	 * @param region the region name
+	 * @return the description
+	 */
+	private String describe(String region) {
+		CacheRegionStatistics statistics = getStatistics().getCacheRegionStatistics(region);
+		if (statistics == null)
+			return region + ": not found";
+
+		return String.format(Locale.ROOT, "%s: hits=%d, misses=%d, hitRate=%.3f, puts=%d, elements=%d", region,
+				statistics.getHitCount(), statistics.getMissCount(),
+				hitRate(statistics.getHitCount(), statistics.getMissCount()), statistics.getPutCount(),
+				statistics.getElementCountInMemory());
+	}
+
+	private static double hitRate(long hits, long misses) {
+		long requests = hits + misses;
+		return requests == 0 ? 1.0 : (double) hits / requests;
+	}
+
+	private Statistics getStatistics() {
+		return getSessionFactory().getStatistics();
+	}
+
+	private SessionFactory getSessionFactory() {
+		return entityManagerFactory.unwrap(SessionFactory.class);
+	}
+
+}
@@ -0,0 +1,38 @@
+package es.udc.fi.dc.fd.service;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs the changes to the in-memory structures kept beside the database, such
+ * as the search index or the feeds, once the transaction which changed the
+ * database is committed. A rolled back transaction leaves them untouched, and
+ * they are not changed while the transaction holds its locks.
+ */
+public final class TransactionCallbacks {
+
+	private TransactionCallbacks() {
+		super();
+	}
+
+	/**
+	 * Runs an action after the current transaction is committed, or now if there
+	 * is no transaction.
+	 *
+	 * @param action the action
+	 */
+	public static void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+
+}
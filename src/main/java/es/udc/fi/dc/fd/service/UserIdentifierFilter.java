@@ -0,0 +1,149 @@
+package es.udc.fi.dc.fd.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import es.udc.fi.dc.fd.repository.UserRepository;
+
+/**
+ * Bloom filters of the logins and emails in use, checked before asking the
+ * database if a login or email exists.
+ * <p>
+ * A filter never misses a value added to it, so when it does not contain a
+ * value the value is free without reading the database. When it contains it,
+ * the value may be in use and the database is asked. The unique constraints of
+ * the user table are still the final check, which also covers an user signed
+ * up while the filters are loaded.
+ * <p>
+ * The filters are loaded from the database on first use and each signed up
+ * user is added to them. The values are compared in lower case, so the filters
+ * hold for case insensitive collations too. They are loaded again once they
+ * hold more values than they were sized for, as their error rate grows.
+ */
+@Component
+public class UserIdentifierFilter {
+
+	/** Minimum number of values each filter is sized for. */
+	private static final int MIN_EXPECTED_USERS = 100_000;
+
+	/** Probability of a free value being reported as maybe in use. */
+	private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+	/** The user repository. */
+	private final UserRepository userRepository;
+
+	/** The filters, null until they are loaded. */
+	private volatile Filters filters;
+
+	/**
+	 * Instantiates a new user identifier filter.
+	 *
+	 * @param userRepository the user repository
+	 */
+	@Autowired
+	public UserIdentifierFilter(final UserRepository userRepository) {
+		super();
+		this.userRepository = checkNotNull(userRepository, "Received a null pointer as userRepository");
+	}
+
+	/**
+	 * Checks if a login may be in use.
+	 *
+	 * @param login the login
+	 * @return false if the login is not in use, true if it may be
+	 */
+	public boolean mightContainLogin(String login) {
+		return login == null || ensureLoaded().logins.mightContain(normalize(login));
+	}
+
+	/**
+	 * Checks if an email may be in use.
+	 *
+	 * @param email the email
+	 * @return false if the email is not in use, true if it may be
+	 */
+	public boolean mightContainEmail(String email) {
+		return email == null || ensureLoaded().emails.mightContain(normalize(email));
+	}
+
+	/**
+	 * Adds the login and email of a signed up user.
+	 *
+	 * @param login the login
+	 * @param email the email
+	 */
+	public void add(String login, String email) {
+		Filters current = filters;
+		// Before the filters are loaded, the load reads the user
+		if (current == null)
+			return;
+
+		current.logins.put(normalize(login));
+		current.emails.put(normalize(email));
+
+		if (current.logins.approximateElementCount() > current.expectedUsers) {
+			synchronized (this) {
+				if (filters == current)
+					filters = null;
+			}
+		}
+	}
+
+	/**
+	 * Loads the filters from the database the first time they are used.
+	 *
+	 * @return the filters
+	 */
+	private Filters ensureLoaded() {
+		Filters current = filters;
+		if (current != null)
+			return current;
+
+		synchronized (this) {
+			if (filters == null) {
+				long users = userRepository.count();
+				Filters loaded = new Filters((int) Math.max(MIN_EXPECTED_USERS, users * 2));
+				for (Object[] row : userRepository.findLoginsAndEmails()) {
+					loaded.logins.put(normalize((String) row[0]));
+					loaded.emails.put(normalize((String) row[1]));
+				}
+				filters = loaded;
+			}
+			return filters;
+		}
+	}
+
+	private static String normalize(String value) {
+		return value.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * The filters of the logins and the emails.
+	 */
+	private static final class Filters {
+
+		private final int expectedUsers;
+
+		private final BloomFilter<String> logins;
+
+		private final BloomFilter<String> emails;
+
+		private Filters(int expectedUsers) {
+			this.expectedUsers = expectedUsers;
+			this.logins = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedUsers,
+					FALSE_POSITIVE_PROBABILITY);
+			this.emails = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedUsers,
+					FALSE_POSITIVE_PROBABILITY);
+		}
+
+	}
+
+}
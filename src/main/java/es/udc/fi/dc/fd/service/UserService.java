@@ -92,6 +92,33 @@ void signUp(DefaultUserEntity user)
 	 */
 	DefaultUserEntity findByLogin(String login) throws UserNotFoundException;
 
+	/**
+	 * Checks if a login is in use.
+	 *
+	 * @param login the login
+	 * @return true, if there is an user with the login
+	 */
+	boolean existsLogin(String login);
+
+	/**
+	 * Checks if an email is in use.
+	 *
+	 * @param email the email
+	 * @return true, if there is an user with the email
+	 */
+	boolean existsEmail(String email);
+
+	/**
+	 * Gets a reference to an user, which is not read from the database until a
+	 * value other than its id is used. Used for the logged user, which is known to
+	 * exist.
+	 *
+	 * @param identifier the identifier
+	 * @return the default user entity
+	 * @throws UserNotFoundException if the identifier is null
+	 */
+	DefaultUserEntity getReference(final Integer identifier) throws UserNotFoundException;
+
 	/**
 	 * Find by email.
 	 *
@@ -0,0 +1,350 @@
+package es.udc.fi.dc.fd.service.chat;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file where the chat messages are written before they are saved
+ * in the database, so a message already acknowledged is not lost if the
+ * application stops before saving it.
+ * <p>
+ * Each message gets a position which keeps growing even after the file is
+ * emptied, so the database can tell which messages of the file it already
+ * holds. The file starts with the position of its first message, followed by
+ * the messages, each one with its length and checksum so a message written in
+ * part when the application stopped is discarded.
+ */
+public class ChatMessageLog implements Closeable {
+
+	/** Size of the file header: the position of the first message. */
+	private static final int HEADER_SIZE = Long.BYTES;
+
+	/** Size of the length and the checksum of each message. */
+	private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+	/** The file. */
+	private final FileChannel channel;
+
+	/** Position of the first message of the file. */
+	private long base;
+
+	/** Offset in the file of the end of the last message written. */
+	private volatile long written;
+
+	/** Offset in the file up to which the messages are on disk. */
+	private long synced;
+
+	/** Taken while the file is synced to disk. */
+	private final Object syncLock = new Object();
+
+	/**
+	 * Opens a log, creating it if it does not exist.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file can not be opened
+	 */
+	public ChatMessageLog(final Path file) throws IOException {
+		super();
+		checkNotNull(file, "Received a null pointer as file");
+
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		if (channel.size() < HEADER_SIZE) {
+			reset(0);
+		} else {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			channel.read(header, 0);
+			header.flip();
+			base = header.getLong();
+
+			// Drops a message written in part
+			written = scan(new ArrayList<>());
+			channel.truncate(written);
+			synced = written;
+		}
+	}
+
+	/**
+	 * Writes a message to the log, returning once it is on disk.
+	 *
+	 * @param message the message, without position
+	 * @return the message with its position
+	 * @throws IOException if the message can not be written
+	 */
+	public Entry append(Entry message) throws IOException {
+		return append(message, entry -> {
+		});
+	}
+
+	/**
+	 * Writes a message to the log, returning once it is on disk.
+	 * <p>
+	 * The listener receives the message with its position while the log is
+	 * locked, so the messages reach it in the order of their positions. It is
+	 * called before the message is on disk.
+	 *
+	 * @param message    the message, without position
+	 * @param positioned the listener of the message with its position
+	 * @return the message with its position
+	 * @throws IOException if the message can not be written
+	 */
+	public Entry append(Entry message, Consumer<Entry> positioned) throws IOException {
+		checkNotNull(message, "Received a null pointer as message");
+		checkNotNull(positioned, "Received a null pointer as positioned");
+
+		byte[] payload = message.toBytes();
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+		record.putInt(payload.length).putLong(checksum(payload)).put(payload).flip();
+
+		Entry entry;
+		long offsetEnd;
+		synchronized (this) {
+			long offset = written;
+			while (record.hasRemaining()) {
+				channel.write(record, offset + record.position());
+			}
+			offsetEnd = offset + record.limit();
+			written = offsetEnd;
+			entry = message.at(base + offset - HEADER_SIZE, base + offsetEnd - HEADER_SIZE);
+			positioned.accept(entry);
+		}
+
+		// The messages written meanwhile by other threads are synced together
+		synchronized (syncLock) {
+			if (synced < offsetEnd) {
+				long target = written;
+				channel.force(false);
+				synced = target;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Reads every message of the log.
+	 *
+	 * @return the messages with their positions
+	 * @throws IOException if the file can not be read
+	 */
+	public synchronized List<Entry> read() throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		scan(entries);
+		return entries;
+	}
+
+	/**
+	 * Gets the position after the last message of the log.
+	 *
+	 * @return the position
+	 */
+	public synchronized long getEnd() {
+		return base + written - HEADER_SIZE;
+	}
+
+	/**
+	 * Discards the messages before the lowest position not saved in the database
+	 * yet. The log is emptied once every message it holds is saved, that is when
+	 * that position is its end, and kept whole otherwise.
+	 *
+	 * @param lowestUnsaved the position of the first message not saved, or the
+	 *                      end of the log if all of them are saved
+	 * @return true if the log has been emptied
+	 * @throws IOException if the file can not be written
+	 */
+	public synchronized boolean discardUpTo(long lowestUnsaved) throws IOException {
+		if (lowestUnsaved != getEnd())
+			return false;
+
+		reset(lowestUnsaved);
+		return true;
+	}
+
+	/**
+	 * Empties the log, numbering the next messages from the given position.
+	 *
+	 * @param position the position of the next message
+	 * @throws IOException if the file can not be written
+	 */
+	public synchronized void reset(long position) throws IOException {
+		channel.truncate(HEADER_SIZE);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putLong(position).flip();
+		channel.write(header, 0);
+		channel.force(true);
+
+		base = position;
+		written = HEADER_SIZE;
+		synchronized (syncLock) {
+			synced = HEADER_SIZE;
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Reads the messages of the file up to the first one written in part.
+	 *
+	 * @param entries the list where the messages are added
+	 * @return the offset after the last complete message
+	 * @throws IOException if the file can not be read
+	 */
+	private long scan(List<Entry> entries) throws IOException {
+		long offset = HEADER_SIZE;
+		long size = channel.size();
+
+		ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		while (offset + RECORD_HEADER_SIZE <= size) {
+			recordHeader.clear();
+			channel.read(recordHeader, offset);
+			recordHeader.flip();
+			int length = recordHeader.getInt();
+			long checksum = recordHeader.getLong();
+			if (length < 0 || offset + RECORD_HEADER_SIZE + length > size)
+				break;
+
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			channel.read(payload, offset + RECORD_HEADER_SIZE);
+			if (checksum(payload.array()) != checksum)
+				break;
+
+			long end = offset + RECORD_HEADER_SIZE + length;
+			entries.add(Entry.fromBytes(payload.array()).at(base + offset - HEADER_SIZE, base + end - HEADER_SIZE));
+			offset = end;
+		}
+		return offset;
+	}
+
+	private static long checksum(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return crc.getValue();
+	}
+
+	/**
+	 * A chat message of the log.
+	 */
+	public static final class Entry {
+
+		/** Position of the message in the log, -1 if it is not written yet. */
+		private final long position;
+
+		/** Position after the message in the log. */
+		private final long end;
+
+		/** The chat id. */
+		private final Integer chatId;
+
+		/** The author user id. */
+		private final Integer authorUserId;
+
+		/** The recipient user id. */
+		private final Integer recipientUserId;
+
+		/** The time sent. */
+		private final Date timeSent;
+
+		/** The contents. */
+		private final String contents;
+
+		/**
+		 * Instantiates a new message, not written to the log yet.
+		 *
+		 * @param chatId          the chat id
+		 * @param authorUserId    the author user id
+		 * @param recipientUserId the recipient user id
+		 * @param timeSent        the time sent
+		 * @param contents        the contents
+		 */
+		public Entry(Integer chatId, Integer authorUserId, Integer recipientUserId, Date timeSent,
+				String contents) {
+			this(-1, -1, chatId, authorUserId, recipientUserId, timeSent, contents);
+		}
+
+		private Entry(long position, long end, Integer chatId, Integer authorUserId, Integer recipientUserId,
+				Date timeSent, String contents) {
+			super();
+			this.position = position;
+			this.end = end;
+			this.chatId = checkNotNull(chatId, "Received a null pointer as chatId");
+			this.authorUserId = checkNotNull(authorUserId, "Received a null pointer as authorUserId");
+			this.recipientUserId = checkNotNull(recipientUserId, "Received a null pointer as recipientUserId");
+			this.timeSent = new Date(checkNotNull(timeSent, "Received a null pointer as timeSent").getTime());
+			this.contents = checkNotNull(contents, "Received a null pointer as contents");
+		}
+
+		public long getPosition() {
+			return position;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		public Integer getChatId() {
+			return chatId;
+		}
+
+		public Integer getAuthorUserId() {
+			return authorUserId;
+		}
+
+		public Integer getRecipientUserId() {
+			return recipientUserId;
+		}
+
+		public Date getTimeSent() {
+			return new Date(timeSent.getTime());
+		}
+
+		public String getContents() {
+			return contents;
+		}
+
+		private Entry at(long position, long end) {
+			return new Entry(position, end, chatId, authorUserId, recipientUserId, timeSent, contents);
+		}
+
+		private byte[] toBytes() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream output = new DataOutputStream(bytes)) {
+				output.writeInt(chatId);
+				output.writeInt(authorUserId);
+				output.writeInt(recipientUserId);
+				output.writeLong(timeSent.getTime());
+				output.writeUTF(contents);
+			}
+			return bytes.toByteArray();
+		}
+
+		private static Entry fromBytes(byte[] payload) throws IOException {
+			try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload))) {
+				return new Entry(input.readInt(), input.readInt(), input.readInt(), new Date(input.readLong()),
+						input.readUTF());
+			}
+		}
+
+	}
+
+}
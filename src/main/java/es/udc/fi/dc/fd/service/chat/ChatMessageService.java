@@ -29,17 +29,48 @@ ChatMessageEntity sendChatMessage(Integer senderId, Integer recipientId, String
 			throws UserNotFoundException, ChatRoomNotFoundException, IncorrectChatMessageException;
 
 	/**
-	 * Find chat messages.
+	 * Find the latest chat messages, oldest first.
 	 *
 	 * @param senderId    the sender id
 	 * @param recipientId the recipient id
+	 * @param limit       the maximum number of messages
 	 * @return the list
 	 * @throws UserNotFoundException     the user not found exception
 	 * @throws ChatRoomNotFoundException the chat room not found exception
 	 */
-	List<DefaultChatMessageEntity> findChatMessages(Integer senderId, Integer recipientId)
+	List<DefaultChatMessageEntity> findLatestChatMessages(Integer senderId, Integer recipientId, int limit)
 			throws UserNotFoundException, ChatRoomNotFoundException;
 
+	/**
+	 * Find the chat messages older than a message, oldest first. These are the
+	 * latest ones before it, to scroll back the history.
+	 *
+	 * @param senderId    the sender id
+	 * @param recipientId the recipient id
+	 * @param messageId   the message id
+	 * @param limit       the maximum number of messages
+	 * @return the list
+	 * @throws UserNotFoundException     the user not found exception
+	 * @throws ChatRoomNotFoundException the chat room not found exception
+	 */
+	List<DefaultChatMessageEntity> findChatMessagesBefore(Integer senderId, Integer recipientId, Integer messageId,
+			int limit) throws UserNotFoundException, ChatRoomNotFoundException;
+
+	/**
+	 * Find the chat messages newer than a message, oldest first. These are the
+	 * first ones after it, to bring the history up to date.
+	 *
+	 * @param senderId    the sender id
+	 * @param recipientId the recipient id
+	 * @param messageId   the message id
+	 * @param limit       the maximum number of messages
+	 * @return the list
+	 * @throws UserNotFoundException     the user not found exception
+	 * @throws ChatRoomNotFoundException the chat room not found exception
+	 */
+	List<DefaultChatMessageEntity> findChatMessagesAfter(Integer senderId, Integer recipientId, Integer messageId,
+			int limit) throws UserNotFoundException, ChatRoomNotFoundException;
+
 	/**
 	 * Find by id.
 	 *
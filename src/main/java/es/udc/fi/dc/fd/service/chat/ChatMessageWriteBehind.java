@@ -0,0 +1,499 @@
+package es.udc.fi.dc.fd.service.chat;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import es.udc.fi.dc.fd.model.persistence.DefaultChatMessageEntity;
+import es.udc.fi.dc.fd.repository.ChatMessageRepository;
+
+/**
+ * Optional write-behind of the chat messages.
+ * <p>
+ * When it is enabled, a sent message is acknowledged as soon as it is on disk
+ * in the {@link ChatMessageLog}, and the messages are saved in the database
+ * periodically, in JDBC batches, by {@link #flush()}. A single thread saves
+ * them in the order they were logged, so the messages of a room keep their
+ * order. If the application stops before saving some of them, they are read
+ * back from the log when it starts again.
+ * <p>
+ * The inbox of the rooms is updated in the same transaction. Once it is
+ * committed the saved messages are read back, in one query, and added to the
+ * {@link RecentChatMessages}, and the clients of the rooms are signalled with
+ * the last message of each room.
+ * <p>
+ * When a batch fails its messages are saved one by one, so a message the
+ * database rejects does not hold back the others. A message rejected
+ * {@link #MAX_ATTEMPTS} times is moved to a quarantine log beside the log, and
+ * the ones after it are saved. Any other failure leaves the messages queued to
+ * be retried by the next flush.
+ * <p>
+ * The log positions are only unique within a node, so each log directory gets
+ * its own node id, saved with the position of every message. When the
+ * application starts, only the messages of its node which are not in the
+ * database are saved again.
+ */
+public class ChatMessageWriteBehind {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChatMessageWriteBehind.class);
+
+	/** Name of the log file, in the log directory. */
+	private static final String LOG_FILE = "chat-messages.log";
+
+	/** Name of the log of the messages the database rejects, in the log directory. */
+	private static final String QUARANTINE_FILE = "chat-messages.quarantine.log";
+
+	/** Name of the file holding the node id, in the log directory. */
+	private static final String NODE_FILE = "node.id";
+
+	/** Number of times a message is rejected before it is quarantined. */
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static final String INSERT_MESSAGE = "INSERT INTO chat_messages "
+			+ "(chatId, authorUserId, recipientUserId, timeSent, content, logNode, logPosition) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String UPDATE_CHAT_ROOM = "UPDATE chat_room SET lastMessageContent = ?, "
+			+ "lastMessageTime = ?, lowUserUnread = lowUserUnread + ?, highUserUnread = highUserUnread + ? "
+			+ "WHERE id = ?";
+
+	private static final String SELECT_LAST_POSITION = "SELECT MAX(logPosition) FROM chat_messages "
+			+ "WHERE logNode = ?";
+
+	private static final String SELECT_SAVED_POSITIONS = "SELECT logPosition FROM chat_messages "
+			+ "WHERE logNode = ? AND logPosition BETWEEN ? AND ?";
+
+	/** If the write-behind is enabled. */
+	private final boolean enabled;
+
+	/** The log directory. */
+	private final String logDirectory;
+
+	/** Maximum number of messages saved in each batch. */
+	private final int batchSize;
+
+	/** The JDBC template. */
+	private final JdbcTemplate jdbcTemplate;
+
+	/** The transaction template. */
+	private final TransactionTemplate transactionTemplate;
+
+	/** The chat message repository, to read the saved messages back. */
+	private final ChatMessageRepository chatMessageRepository;
+
+	/** The recent chat messages. */
+	private final RecentChatMessages recentMessages;
+
+	/** The chat notification registry. */
+	private final ChatNotificationRegistry notificationRegistry;
+
+	/** Messages logged but not saved in the database yet, oldest first. */
+	private final BlockingDeque<ChatMessageLog.Entry> pending = new LinkedBlockingDeque<>();
+
+	/** Position of each message rejected by the database to its attempts. */
+	private final Map<Long, Integer> attempts = new HashMap<>();
+
+	/** Id of the node writing the log, null if the write-behind is disabled. */
+	private String node;
+
+	/** The log, null if the write-behind is disabled. */
+	private ChatMessageLog log;
+
+	/** The log of the messages rejected by the database, null if disabled. */
+	private ChatMessageLog quarantine;
+
+	/**
+	 * Instantiates a new chat message write-behind.
+	 *
+	 * @param enabled               if the write-behind is enabled
+	 * @param logDirectory          the directory of the log, required if it is
+	 *                              enabled
+	 * @param batchSize             the maximum number of messages saved in each
+	 *                              batch
+	 * @param dataSource            the data source
+	 * @param transactionManager    the transaction manager
+	 * @param chatMessageRepository the chat message repository
+	 * @param recentMessages        the recent chat messages
+	 * @param notificationRegistry  the chat notification registry
+	 */
+	public ChatMessageWriteBehind(final boolean enabled, final String logDirectory, final int batchSize,
+			final DataSource dataSource, final PlatformTransactionManager transactionManager,
+			final ChatMessageRepository chatMessageRepository, final RecentChatMessages recentMessages,
+			final ChatNotificationRegistry notificationRegistry) {
+		super();
+		checkArgument(batchSize > 0, "The batch size must be positive");
+
+		this.enabled = enabled;
+		this.logDirectory = checkNotNull(logDirectory, "Received a null pointer as logDirectory");
+		this.batchSize = batchSize;
+		this.jdbcTemplate = new JdbcTemplate(checkNotNull(dataSource, "Received a null pointer as dataSource"));
+		this.transactionTemplate = new TransactionTemplate(
+				checkNotNull(transactionManager, "Received a null pointer as transactionManager"));
+		this.chatMessageRepository = checkNotNull(chatMessageRepository,
+				"Received a null pointer as chatMessageRepository");
+		this.recentMessages = checkNotNull(recentMessages, "Received a null pointer as recentMessages");
+		this.notificationRegistry = checkNotNull(notificationRegistry,
+				"Received a null pointer as notificationRegistry");
+	}
+
+	/**
+	 * Opens the log and queues the messages it holds which are not in the
+	 * database yet nor quarantined, to be saved by the next flush.
+	 *
+	 * @throws IOException if the log can not be opened
+	 */
+	public void open() throws IOException {
+		if (!enabled)
+			return;
+		checkState(!logDirectory.isBlank(), "The chat message write-behind needs a log directory");
+
+		Path directory = Paths.get(logDirectory);
+		node = readNode(directory);
+		log = new ChatMessageLog(directory.resolve(LOG_FILE));
+		quarantine = new ChatMessageLog(directory.resolve(QUARANTINE_FILE));
+
+		Long lastPosition = jdbcTemplate.queryForObject(SELECT_LAST_POSITION, Long.class, node);
+		long saved = lastPosition == null ? -1 : lastPosition;
+
+		List<ChatMessageLog.Entry> logged = log.read();
+		Set<Long> skipped = new HashSet<>();
+		if (!logged.isEmpty()) {
+			skipped.addAll(jdbcTemplate.queryForList(SELECT_SAVED_POSITIONS, Long.class, node,
+					logged.get(0).getPosition(), logged.get(logged.size() - 1).getPosition()));
+			for (ChatMessageLog.Entry entry : quarantine.read()) {
+				skipped.add(entry.getPosition());
+			}
+		}
+
+		List<ChatMessageLog.Entry> unsaved = new ArrayList<>();
+		for (ChatMessageLog.Entry entry : logged) {
+			if (!skipped.contains(entry.getPosition()))
+				unsaved.add(entry);
+		}
+
+		if (unsaved.isEmpty()) {
+			// The positions keep growing even if the log file has been removed
+			log.reset(Math.max(log.getEnd(), saved + 1));
+		} else {
+			logger.info("Queueing {} chat messages recovered from the log", unsaved.size());
+			pending.addAll(unsaved);
+		}
+	}
+
+	/**
+	 * Checks if the write-behind is enabled.
+	 *
+	 * @return true, if it is enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Logs a message to be saved in the database later.
+	 *
+	 * @param message the message
+	 */
+	public void submit(ChatMessageLog.Entry message) {
+		checkState(enabled, "The chat message write-behind is disabled");
+		checkNotNull(message, "Received a null pointer as message");
+
+		try {
+			// Queued while the log is locked, so the queue keeps the order of the
+			// positions
+			log.append(message, pending::add);
+		} catch (IOException e) {
+			throw new IllegalStateException("The chat message could not be logged", e);
+		}
+	}
+
+	/**
+	 * Saves the logged messages in the database, and empties the log if every
+	 * message it holds has been saved.
+	 */
+	public synchronized void flush() {
+		if (!enabled)
+			return;
+
+		List<ChatMessageLog.Entry> batch = new ArrayList<>(batchSize);
+		boolean saved = false;
+		while (pending.drainTo(batch, batchSize) > 0) {
+			int count = saveOrIsolate(batch);
+			saved |= count > 0;
+			if (count < batch.size()) {
+				for (int i = batch.size() - 1; i >= count; i--) {
+					pending.addFirst(batch.get(i));
+				}
+				break;
+			}
+			batch.clear();
+		}
+
+		if (saved) {
+			try {
+				log.discardUpTo(lowestUnsaved());
+			} catch (IOException e) {
+				logger.error("The chat message log could not be emptied", e);
+			}
+		}
+	}
+
+	/**
+	 * Saves the pending messages and closes the log.
+	 *
+	 * @throws IOException if the log can not be closed
+	 */
+	public void close() throws IOException {
+		if (!enabled)
+			return;
+
+		flush();
+		log.close();
+		quarantine.close();
+	}
+
+	/**
+	 * Reads the id of the node from the log directory, creating it the first
+	 * time.
+	 *
+	 * @param directory the log directory
+	 * @return the node id
+	 * @throws IOException if the id can not be read or written
+	 */
+	private static String readNode(Path directory) throws IOException {
+		Path file = directory.resolve(NODE_FILE);
+		if (!Files.exists(file)) {
+			Files.createDirectories(directory);
+			Path temporary = Files.createTempFile(directory, NODE_FILE, ".tmp");
+			Files.write(temporary, UUID.randomUUID().toString().getBytes(StandardCharsets.US_ASCII));
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		}
+
+		String id = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+		checkState(!id.isEmpty(), "The node id file %s is empty", file);
+		return id;
+	}
+
+	/**
+	 * Saves a batch of messages. If it fails, saves them one by one up to the
+	 * first one which fails, quarantining the ones rejected too many times.
+	 *
+	 * @param batch the messages, oldest first
+	 * @return the number of messages, from the first one, saved or quarantined
+	 */
+	private int saveOrIsolate(List<ChatMessageLog.Entry> batch) {
+		try {
+			save(batch);
+			return batch.size();
+		} catch (DataAccessException e) {
+			logger.warn("The batch of chat messages could not be saved, saving them one by one", e);
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			ChatMessageLog.Entry message = batch.get(i);
+			try {
+				save(Collections.singletonList(message));
+				attempts.remove(message.getPosition());
+			} catch (DataIntegrityViolationException e) {
+				int attempt = attempts.merge(message.getPosition(), 1, Integer::sum);
+				if (attempt < MAX_ATTEMPTS || !quarantine(message, e)) {
+					logger.warn("The chat message {} was rejected, it will be retried", message.getPosition(), e);
+					return i;
+				}
+			} catch (DataAccessException e) {
+				logger.error("The chat messages could not be saved, they will be retried", e);
+				return i;
+			}
+		}
+		return batch.size();
+	}
+
+	/**
+	 * Moves a message rejected by the database to the quarantine log.
+	 *
+	 * @param message the message
+	 * @param cause   the last rejection
+	 * @return true if the message has been quarantined
+	 */
+	private boolean quarantine(ChatMessageLog.Entry message, DataAccessException cause) {
+		try {
+			quarantine.append(message);
+		} catch (IOException e) {
+			logger.error("The chat message {} could not be quarantined", message.getPosition(), e);
+			return false;
+		}
+
+		attempts.remove(message.getPosition());
+		logger.error("The chat message {} of the room {} was rejected {} times and has been quarantined",
+				message.getPosition(), message.getChatId(), MAX_ATTEMPTS, cause);
+		return true;
+	}
+
+	/**
+	 * Gets the position of the first logged message not saved yet.
+	 * <p>
+	 * The end of the log is read before the queue, so a message logged meanwhile
+	 * is after it.
+	 *
+	 * @return the position, the end of the log if every message is saved
+	 */
+	private long lowestUnsaved() {
+		long end = log.getEnd();
+		ChatMessageLog.Entry first = pending.peekFirst();
+		return first == null ? end : Math.min(first.getPosition(), end);
+	}
+
+	/**
+	 * Saves a batch of messages and updates the inbox of their rooms in one
+	 * transaction, then publishes them.
+	 *
+	 * @param batch the messages, oldest first
+	 */
+	private void save(List<ChatMessageLog.Entry> batch) {
+		Map<Integer, RoomUpdate> rooms = new LinkedHashMap<>();
+		for (ChatMessageLog.Entry message : batch) {
+			rooms.computeIfAbsent(message.getChatId(), RoomUpdate::new).add(message);
+		}
+		List<RoomUpdate> updates = new ArrayList<>(rooms.values());
+
+		transactionTemplate.execute(status -> {
+			jdbcTemplate.batchUpdate(INSERT_MESSAGE, new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					ChatMessageLog.Entry message = batch.get(i);
+					ps.setInt(1, message.getChatId());
+					ps.setInt(2, message.getAuthorUserId());
+					ps.setInt(3, message.getRecipientUserId());
+					ps.setTimestamp(4, new Timestamp(message.getTimeSent().getTime()));
+					ps.setString(5, message.getContents());
+					ps.setString(6, node);
+					ps.setLong(7, message.getPosition());
+				}
+
+				@Override
+				public int getBatchSize() {
+					return batch.size();
+				}
+			});
+
+			jdbcTemplate.batchUpdate(UPDATE_CHAT_ROOM, new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					RoomUpdate update = updates.get(i);
+					ps.setString(1, update.lastMessage.getContents());
+					ps.setTimestamp(2, new Timestamp(update.lastMessage.getTimeSent().getTime()));
+					ps.setInt(3, update.lowUserUnread);
+					ps.setInt(4, update.highUserUnread);
+					ps.setInt(5, update.chatId);
+				}
+
+				@Override
+				public int getBatchSize() {
+					return updates.size();
+				}
+			});
+			return null;
+		});
+
+		publish(batch, updates);
+	}
+
+	/**
+	 * Adds the saved messages to the recent messages and signals their rooms.
+	 * <p>
+	 * The messages are already committed, so if they can not be read back the
+	 * rooms are removed from the recent messages instead of failing the batch.
+	 *
+	 * @param batch   the saved messages, oldest first
+	 * @param updates the changes to their rooms
+	 */
+	private void publish(List<ChatMessageLog.Entry> batch, List<RoomUpdate> updates) {
+		List<DefaultChatMessageEntity> saved;
+		try {
+			saved = chatMessageRepository.findLogged(node, batch.get(0).getPosition(),
+					batch.get(batch.size() - 1).getPosition());
+		} catch (DataAccessException e) {
+			logger.warn("The saved chat messages could not be read back", e);
+			for (RoomUpdate update : updates) {
+				recentMessages.invalidate(update.chatId);
+				notificationRegistry.signal(update.chatId, null);
+			}
+			return;
+		}
+
+		Map<Integer, Integer> lastIds = new HashMap<>();
+		for (DefaultChatMessageEntity message : saved) {
+			recentMessages.add(message);
+			lastIds.put(message.getChatId(), message.getId());
+		}
+		for (RoomUpdate update : updates) {
+			notificationRegistry.signal(update.chatId, lastIds.get(update.chatId));
+		}
+	}
+
+	/**
+	 * Changes to the inbox of a room made by a batch of messages.
+	 */
+	private static final class RoomUpdate {
+
+		private final Integer chatId;
+
+		private ChatMessageLog.Entry lastMessage;
+
+		private int lowUserUnread;
+
+		private int highUserUnread;
+
+		private RoomUpdate(Integer chatId) {
+			this.chatId = chatId;
+		}
+
+		private void add(ChatMessageLog.Entry message) {
+			lastMessage = message;
+
+			// Same rule as ChatRoomRepository.updateLastMessage
+			if (message.getRecipientUserId() <= message.getAuthorUserId())
+				lowUserUnread++;
+			else
+				highUserUnread++;
+		}
+
+	}
+
+}
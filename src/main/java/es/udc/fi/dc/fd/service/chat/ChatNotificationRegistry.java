@@ -0,0 +1,197 @@
+package es.udc.fi.dc.fd.service.chat;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Registry of the clients waiting for new messages in each chat room.
+ * <p>
+ * The clients keep a Server-Sent Events stream open and are signalled when a
+ * message is sent to their chat room, so an idle client does not query the
+ * database. The browser opens the stream again when it times out.
+ * <p>
+ * The events are sent in a small pool of threads of its own, so a slow client
+ * does not hold the thread which sent or saved the message. The clients read
+ * the new messages when they are signalled, whatever the event holds, so a
+ * signal waiting to be sent to a chat room replaces the previous one waiting
+ * there. When the pool is full the signal is left out, and the clients see the
+ * message with the next one or when they open the stream again.
+ */
+@Component
+@ManagedResource(objectName = "es.udc.fi.dc.fd:name=ChatNotificationRegistry", description = "Chat notifications pool")
+public class ChatNotificationRegistry implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChatNotificationRegistry.class);
+
+	/** Time a stream is kept open, in milliseconds. */
+	private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+	/** Number of sending threads. */
+	private static final int THREADS = 2;
+
+	/** Maximum number of chat rooms waiting for their signal. */
+	private static final int QUEUE_CAPACITY = 1000;
+
+	/** Chat room identifier to the streams open on it. */
+	private final ConcurrentMap<Integer, Set<SseEmitter>> rooms = new ConcurrentHashMap<>();
+
+	/** Chat room identifier to the message id of the signal waiting to be sent. */
+	private final ConcurrentMap<Integer, Optional<Integer>> pending = new ConcurrentHashMap<>();
+
+	/** The sending pool. */
+	private final ThreadPoolExecutor executor;
+
+	/** Number of signals left out as the pool was full. */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Instantiates a new chat notification registry.
+	 */
+	public ChatNotificationRegistry() {
+		super();
+		this.executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+				new ThreadFactoryBuilder().setNameFormat("chat-notifications-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * Opens a stream notified of the new messages of a chat room.
+	 *
+	 * @param chatId the chat id
+	 * @return the stream
+	 */
+	public SseEmitter subscribe(Integer chatId) {
+		checkNotNull(chatId, "Received a null pointer as chatId");
+
+		SseEmitter emitter = new SseEmitter(TIMEOUT);
+		emitter.onCompletion(() -> unsubscribe(chatId, emitter));
+		emitter.onTimeout(() -> unsubscribe(chatId, emitter));
+		emitter.onError(e -> unsubscribe(chatId, emitter));
+
+		rooms.compute(chatId, (id, emitters) -> {
+			Set<SseEmitter> result = emitters == null ? ConcurrentHashMap.newKeySet() : emitters;
+			result.add(emitter);
+			return result;
+		});
+		return emitter;
+	}
+
+	/**
+	 * Notifies the streams open on a chat room of a new message, in the sending
+	 * pool.
+	 *
+	 * @param chatId    the chat id
+	 * @param messageId the new message id, or null if it is not known
+	 */
+	public void signal(Integer chatId, Integer messageId) {
+		checkNotNull(chatId, "Received a null pointer as chatId");
+
+		if (!rooms.containsKey(chatId))
+			return;
+
+		// A signal already waiting is sent with this message id instead
+		if (pending.put(chatId, Optional.ofNullable(messageId)) != null)
+			return;
+
+		try {
+			executor.execute(() -> send(chatId));
+		} catch (RejectedExecutionException e) {
+			pending.remove(chatId);
+			rejected.incrementAndGet();
+			logger.warn("Too many chat rooms waiting for their notifications, {} is left out", chatId);
+		}
+	}
+
+	/**
+	 * Gets the number of chat rooms waiting for their signal.
+	 *
+	 * @return the queue size
+	 */
+	@ManagedAttribute(description = "Chat rooms waiting for their notifications")
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Gets the number of streams open.
+	 *
+	 * @return the stream count
+	 */
+	@ManagedAttribute(description = "Streams open")
+	public int getStreamCount() {
+		return rooms.values().stream().mapToInt(Set::size).sum();
+	}
+
+	/**
+	 * Gets the number of signals left out as the pool was full.
+	 *
+	 * @return the rejected count
+	 */
+	@ManagedAttribute(description = "Signals left out as the pool was full")
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Sends the signal waiting for a chat room to its streams.
+	 *
+	 * @param chatId the chat id
+	 */
+	private void send(Integer chatId) {
+		Optional<Integer> messageId = pending.remove(chatId);
+		Set<SseEmitter> emitters = rooms.get(chatId);
+		if (messageId == null || emitters == null)
+			return;
+
+		for (SseEmitter emitter : emitters) {
+			try {
+				if (messageId.isPresent())
+					emitter.send(SseEmitter.event().id(String.valueOf(messageId.get())).data(messageId.get()));
+				else
+					emitter.send(SseEmitter.event().data(chatId));
+			} catch (IOException | IllegalStateException e) {
+				// The client is gone
+				unsubscribe(chatId, emitter);
+			}
+		}
+	}
+
+	/**
+	 * Removes a stream from a chat room.
+	 *
+	 * @param chatId  the chat id
+	 * @param emitter the stream
+	 */
+	private void unsubscribe(Integer chatId, SseEmitter emitter) {
+		rooms.computeIfPresent(chatId, (id, emitters) -> {
+			emitters.remove(emitter);
+			return emitters.isEmpty() ? null : emitters;
+		});
+	}
+
+}
@@ -1,7 +1,10 @@
 package es.udc.fi.dc.fd.service.chat;
 
+import java.util.List;
 import java.util.Set;
 
+import es.udc.fi.dc.fd.model.ChatMessageEntity;
+import es.udc.fi.dc.fd.model.dto.ChatInboxEntryDTO;
 import es.udc.fi.dc.fd.model.persistence.DefaultChatRoomEntity;
 import es.udc.fi.dc.fd.service.chat.exceptions.ChatRoomNotFoundException;
 import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
@@ -34,4 +37,28 @@ Integer getChatId(Integer senderId, Integer recipientId, boolean createIfNotExis
 	 */
 	Set<DefaultChatRoomEntity> findByUserId(Integer userId) throws UserNotFoundException;
 
+	/**
+	 * Find the inbox of a user: its chat rooms with the other user, the last
+	 * message and the number of unread messages, the most recent first.
+	 *
+	 * @param userId the user id
+	 * @return the inbox entries
+	 */
+	List<ChatInboxEntryDTO> findInbox(Integer userId);
+
+	/**
+	 * Updates the inbox of the users of a chat room with a new message.
+	 *
+	 * @param message the sent message
+	 */
+	void messageSent(ChatMessageEntity message);
+
+	/**
+	 * Marks the messages of a chat room as read by one of its users.
+	 *
+	 * @param chatId the chat id
+	 * @param userId the user id
+	 */
+	void markAsRead(Integer chatId, Integer userId);
+
 }
\ No newline at end of file
@@ -8,6 +8,9 @@
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import es.udc.fi.dc.fd.model.ChatMessageEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultChatMessageEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
@@ -27,20 +30,43 @@ public class DefaultChatMessageService implements ChatMessageService {
 
 	private final UserRepository userRepository;
 
+	private final ChatNotificationRegistry notificationRegistry;
+
+	private final RecentChatMessages recentMessages;
+
+	private final ChatMessageWriteBehind writeBehind;
+
+	/** Ids of the users known to exist, checked when writing behind. */
+	private final Cache<Integer, Boolean> knownUserIds = CacheBuilder.newBuilder().maximumSize(MAX_KNOWN_USER_IDS)
+			.build();
+
+	private static final long MAX_KNOWN_USER_IDS = 100_000;
+
+	/** Maximum length of the content of a message, the size of its column. */
+	private static final int MAX_CONTENT_LENGTH = 255;
+
 	private static final String NULL_POINTER_RECEIVED = "Received a null pointer as saleAdvertisementRepository";
 
 	@Autowired
 	public DefaultChatMessageService(ChatMessageRepository chatMessageRepository,
-			DefaultChatRoomService chatRoomService, UserRepository userRepository) {
+			ChatRoomService chatRoomService, UserRepository userRepository,
+			ChatNotificationRegistry notificationRegistry, RecentChatMessages recentMessages,
+			ChatMessageWriteBehind writeBehind) {
 		super();
 		this.chatMessageRepository = checkNotNull(chatMessageRepository, NULL_POINTER_RECEIVED);
 		this.chatRoomService = checkNotNull(chatRoomService, NULL_POINTER_RECEIVED);
 		this.userRepository = checkNotNull(userRepository, NULL_POINTER_RECEIVED);
+		this.notificationRegistry = checkNotNull(notificationRegistry, NULL_POINTER_RECEIVED);
+		this.recentMessages = checkNotNull(recentMessages, NULL_POINTER_RECEIVED);
+		this.writeBehind = checkNotNull(writeBehind, NULL_POINTER_RECEIVED);
 	}
 
 	@Override
 	public ChatMessageEntity sendChatMessage(Integer senderId, Integer recipientId, String content)
 			throws UserNotFoundException, ChatRoomNotFoundException, IncorrectChatMessageException {
+		if (writeBehind.isEnabled())
+			return sendChatMessageBehind(senderId, recipientId, content);
+
 		Optional<DefaultUserEntity> sender = userRepository.findById(senderId);
 		Optional<DefaultUserEntity> recipient = userRepository.findById(recipientId);
 
@@ -50,22 +76,87 @@ public ChatMessageEntity sendChatMessage(Integer senderId, Integer recipientId,
 		if (!recipient.isPresent())
 			throw new UserNotFoundException(recipientId);
 
-		if (content == null || content.isEmpty() || content.isBlank())
-			throw new IncorrectChatMessageException();
+		checkContent(content);
 
 		Integer chatId = chatRoomService.getChatId(senderId, recipientId, true);
 
 		DefaultChatMessageEntity message = new DefaultChatMessageEntity(chatId, sender.get(), recipient.get(), content);
 
-		return chatMessageRepository.save(message);
+		DefaultChatMessageEntity saved = chatMessageRepository.save(message);
+		recentMessages.add(saved);
+		chatRoomService.messageSent(saved);
+		notificationRegistry.signal(chatId, saved.getId());
+
+		return saved;
+	}
+
+	/**
+	 * Sends a chat message through the write-behind, without reading the users.
+	 * The message returned has no id, as it is not saved yet.
+	 */
+	private ChatMessageEntity sendChatMessageBehind(Integer senderId, Integer recipientId, String content)
+			throws UserNotFoundException, ChatRoomNotFoundException, IncorrectChatMessageException {
+		checkUserExists(senderId);
+		checkUserExists(recipientId);
+
+		checkContent(content);
+
+		Integer chatId = chatRoomService.getChatId(senderId, recipientId, true);
+
+		DefaultChatMessageEntity message = new DefaultChatMessageEntity(chatId, userRepository.getOne(senderId),
+				userRepository.getOne(recipientId), content);
+		writeBehind.submit(
+				new ChatMessageLog.Entry(chatId, senderId, recipientId, message.getTimeSent(), message.getContents()));
+
+		return message;
+	}
+
+	/**
+	 * Checks that the content of a message is not blank and fits its column, so
+	 * a message is never acknowledged and then rejected by the database.
+	 */
+	private static void checkContent(String content) throws IncorrectChatMessageException {
+		if (content == null || content.isBlank() || content.length() > MAX_CONTENT_LENGTH)
+			throw new IncorrectChatMessageException();
+	}
+
+	private void checkUserExists(Integer userId) throws UserNotFoundException {
+		if (userId == null)
+			throw new UserNotFoundException(userId);
+
+		if (knownUserIds.getIfPresent(userId) != null)
+			return;
+
+		if (!userRepository.existsById(userId))
+			throw new UserNotFoundException(userId);
+
+		knownUserIds.put(userId, Boolean.TRUE);
 	}
 
 	@Override
-	public List<DefaultChatMessageEntity> findChatMessages(Integer senderId, Integer recipientId)
+	public List<DefaultChatMessageEntity> findLatestChatMessages(Integer senderId, Integer recipientId, int limit)
 			throws UserNotFoundException, ChatRoomNotFoundException {
 		Integer chatId = chatRoomService.getChatId(senderId, recipientId, true);
 
-		return chatMessageRepository.findByChatId(chatId);
+		return recentMessages.latest(chatId, limit);
+	}
+
+	@Override
+	public List<DefaultChatMessageEntity> findChatMessagesBefore(Integer senderId, Integer recipientId,
+			Integer messageId, int limit) throws UserNotFoundException, ChatRoomNotFoundException {
+		checkNotNull(messageId, "Received a null pointer as messageId");
+		Integer chatId = chatRoomService.getChatId(senderId, recipientId, true);
+
+		return recentMessages.before(chatId, messageId, limit);
+	}
+
+	@Override
+	public List<DefaultChatMessageEntity> findChatMessagesAfter(Integer senderId, Integer recipientId,
+			Integer messageId, int limit) throws UserNotFoundException, ChatRoomNotFoundException {
+		checkNotNull(messageId, "Received a null pointer as messageId");
+		Integer chatId = chatRoomService.getChatId(senderId, recipientId, true);
+
+		return recentMessages.after(chatId, messageId, limit);
 	}
 
 	@Override
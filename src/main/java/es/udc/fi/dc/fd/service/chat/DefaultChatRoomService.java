@@ -2,26 +2,54 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+
+import es.udc.fi.dc.fd.model.ChatMessageEntity;
+import es.udc.fi.dc.fd.model.dto.ChatInboxEntryDTO;
 import es.udc.fi.dc.fd.model.persistence.DefaultChatRoomEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.repository.ChatRoomRepository;
 import es.udc.fi.dc.fd.repository.UserRepository;
+import es.udc.fi.dc.fd.service.TransactionCallbacks;
 import es.udc.fi.dc.fd.service.chat.exceptions.ChatRoomNotFoundException;
 import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
 
 @Service
 public class DefaultChatRoomService implements ChatRoomService {
 
+	/** Maximum number of chat room ids kept in memory. */
+	private static final long MAX_CHAT_IDS = 100_000;
+
+	/** Number of locks the chat room creations are spread over. */
+	private static final int CREATION_LOCK_STRIPES = 64;
+
 	private ChatRoomRepository chatRoomRepository;
 
 	private final UserRepository userRepository;
 
+	/** Pair of users, as given by {@link #userPair}, to their chat room id. */
+	private final Cache<Long, Integer> chatIds = CacheBuilder.newBuilder().maximumSize(MAX_CHAT_IDS).build();
+
+	/**
+	 * Locks of the chat room creations, so a room is created only once for each
+	 * pair of users.
+	 */
+	private final Striped<Lock> creationLocks = Striped.lock(CREATION_LOCK_STRIPES);
+
 	@Autowired
 	public DefaultChatRoomService(final ChatRoomRepository chatRoomRepository, UserRepository userRepository) {
 		super();
@@ -33,45 +61,118 @@ public DefaultChatRoomService(final ChatRoomRepository chatRoomRepository, UserR
 	@Override
 	public Integer getChatId(Integer senderId, Integer recipientId, boolean createIfNotExist)
 			throws UserNotFoundException, ChatRoomNotFoundException {
+		checkNotNull(senderId, "Received a null pointer as senderId");
+		checkNotNull(recipientId, "Received a null pointer as recipientId");
 
-		Optional<DefaultChatRoomEntity> chatRoom = chatRoomRepository.findBySenderIdAndRecipientId(senderId,
-				recipientId);
+		Long userPair = userPair(senderId, recipientId);
+		Integer chatId = chatIds.getIfPresent(userPair);
+		if (chatId != null) {
+			return chatId;
+		}
 
-		if (chatRoom.isPresent()) {
-			return chatRoom.get().getId();
+		Optional<Integer> chatRoomId = findChatId(senderId, recipientId);
+		if (chatRoomId.isPresent()) {
+			cacheChatId(userPair, chatRoomId.get());
+			return chatRoomId.get();
 		}
 
-		if (createIfNotExist) {
+		if (!createIfNotExist) {
+			throw new ChatRoomNotFoundException(senderId, recipientId);
+		}
 
-			Optional<DefaultUserEntity> sender = userRepository.findById(senderId);
-			Optional<DefaultUserEntity> recipient = userRepository.findById(recipientId);
+		Lock lock = creationLocks.get(userPair);
+		lock.lock();
+		try {
+			chatRoomId = findChatId(senderId, recipientId);
+			if (!chatRoomId.isPresent()) {
+				chatRoomId = Optional.of(createChatRoom(senderId, recipientId));
+			}
+		} finally {
+			lock.unlock();
+		}
 
-			if (!sender.isPresent())
-				throw new UserNotFoundException(senderId);
+		cacheChatId(userPair, chatRoomId.get());
+		return chatRoomId.get();
+	}
 
-			if (!recipient.isPresent())
-				throw new UserNotFoundException(recipientId);
+	@Override
+	public Set<DefaultChatRoomEntity> findByUserId(Integer userId) throws UserNotFoundException {
 
-			DefaultChatRoomEntity newChatRoom = new DefaultChatRoomEntity(sender.get(), recipient.get());
+		Optional<DefaultUserEntity> user = userRepository.findById(userId);
 
-			chatRoomRepository.save(newChatRoom);
+		if (!user.isPresent())
+			throw new UserNotFoundException(userId);
 
-			return newChatRoom.getId();
+		return chatRoomRepository.findByUserId(userId);
+	}
 
-		} else {
-			throw new ChatRoomNotFoundException(senderId, recipientId);
+	@Override
+	@Transactional(readOnly = true)
+	public List<ChatInboxEntryDTO> findInbox(Integer userId) {
+		checkNotNull(userId, "Received a null pointer as userId");
+
+		List<ChatInboxEntryDTO> inbox = new ArrayList<>();
+		for (Object[] row : chatRoomRepository.findInboxEntries(userId)) {
+			inbox.add(new ChatInboxEntryDTO((Integer) row[0], (Integer) row[1], (String) row[2], (String) row[3],
+					(Date) row[4], ((Number) row[5]).intValue()));
 		}
+		return inbox;
+	}
+
+	@Override
+	@Transactional
+	public void messageSent(ChatMessageEntity message) {
+		checkNotNull(message, "Received a null pointer as message");
 
+		chatRoomRepository.updateLastMessage(message.getChatId(), message.getRecipientUser().getId(),
+				message.getContents(), message.getTimeSent());
 	}
 
 	@Override
-	public Set<DefaultChatRoomEntity> findByUserId(Integer userId) throws UserNotFoundException {
+	@Transactional
+	public void markAsRead(Integer chatId, Integer userId) {
+		checkNotNull(chatId, "Received a null pointer as chatId");
+		checkNotNull(userId, "Received a null pointer as userId");
 
-		Optional<DefaultUserEntity> user = userRepository.findById(userId);
+		chatRoomRepository.markAsRead(chatId, userId);
+	}
 
-		if (!user.isPresent())
-			throw new UserNotFoundException(userId);
+	private Integer createChatRoom(Integer senderId, Integer recipientId) throws UserNotFoundException {
+		Optional<DefaultUserEntity> sender = userRepository.findById(senderId);
+		Optional<DefaultUserEntity> recipient = userRepository.findById(recipientId);
 
-		return chatRoomRepository.findByUserId(userId);
+		if (!sender.isPresent())
+			throw new UserNotFoundException(senderId);
+
+		if (!recipient.isPresent())
+			throw new UserNotFoundException(recipientId);
+
+		try {
+			return chatRoomRepository.save(new DefaultChatRoomEntity(sender.get(), recipient.get())).getId();
+		} catch (DataIntegrityViolationException e) {
+			// Created meanwhile by another server
+			return findChatId(senderId, recipientId).orElseThrow(() -> e);
+		}
+	}
+
+	private Optional<Integer> findChatId(Integer userOneId, Integer userTwoId) {
+		return chatRoomRepository.findIdByUserPair(Math.min(userOneId, userTwoId), Math.max(userOneId, userTwoId));
+	}
+
+	/**
+	 * Caches a chat room id. Inside a transaction it is cached once committed, so
+	 * a room rolled back is not remembered.
+	 */
+	private void cacheChatId(Long userPair, Integer chatId) {
+		TransactionCallbacks.afterCommit(() -> chatIds.put(userPair, chatId));
+	}
+
+	/**
+	 * Gets the key of a pair of users, the same whatever their order.
+	 */
+	private static Long userPair(Integer userOneId, Integer userTwoId) {
+		long low = Math.min(userOneId, userTwoId);
+		long high = Math.max(userOneId, userTwoId);
+		return (low << Integer.SIZE) | (high & 0xFFFFFFFFL);
 	}
 }
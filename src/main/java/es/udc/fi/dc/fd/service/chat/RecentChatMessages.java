@@ -0,0 +1,268 @@
+package es.udc.fi.dc.fd.service.chat;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import es.udc.fi.dc.fd.model.persistence.DefaultChatMessageEntity;
+import es.udc.fi.dc.fd.repository.ChatMessageRepository;
+
+/**
+ * Bounded buffer of the most recent messages of each active chat room, in front
+ * of the {@link ChatMessageRepository}.
+ * <p>
+ * The buffer of a room is read from the database the first time the room is
+ * used and then each sent message is added to it, dropping the oldest one once
+ * it is full. The reads it can answer, which are most of them, do not touch the
+ * database. Rooms idle for {@link #IDLE_TIME} are evicted, and at most
+ * {@link #MAX_MESSAGES} messages are kept in memory.
+ */
+@Component
+public class RecentChatMessages {
+
+	/** Maximum number of messages kept for each room. */
+	public static final int CAPACITY = 50;
+
+	/** Maximum number of messages kept in memory. */
+	private static final long MAX_MESSAGES = 100_000;
+
+	/** Time after which an unused room is evicted. */
+	private static final Duration IDLE_TIME = Duration.ofMinutes(30);
+
+	/** The chat message repository. */
+	private final ChatMessageRepository chatMessageRepository;
+
+	/** Chat room identifier to its recent messages. */
+	private final Cache<Integer, Room> rooms = CacheBuilder.newBuilder().maximumSize(MAX_MESSAGES / CAPACITY)
+			.expireAfterAccess(IDLE_TIME).build();
+
+	/**
+	 * Instantiates a new recent chat messages buffer.
+	 *
+	 * @param chatMessageRepository the chat message repository
+	 */
+	@Autowired
+	public RecentChatMessages(final ChatMessageRepository chatMessageRepository) {
+		super();
+		this.chatMessageRepository = checkNotNull(chatMessageRepository,
+				"Received a null pointer as chatMessageRepository");
+	}
+
+	/**
+	 * Finds the latest messages of a chat room, oldest first.
+	 *
+	 * @param chatId the chat id
+	 * @param limit  the maximum number of messages
+	 * @return the messages
+	 */
+	public List<DefaultChatMessageEntity> latest(Integer chatId, int limit) {
+		checkArgument(limit > 0, "The limit must be positive");
+		if (limit > CAPACITY)
+			return oldestFirst(chatMessageRepository.findLatestByChatId(chatId, PageRequest.of(0, limit)));
+
+		return roomOf(chatId).latest(limit);
+	}
+
+	/**
+	 * Finds the messages of a chat room older than a message, oldest first.
+	 *
+	 * @param chatId    the chat id
+	 * @param messageId the message id
+	 * @param limit     the maximum number of messages
+	 * @return the messages
+	 */
+	public List<DefaultChatMessageEntity> before(Integer chatId, Integer messageId, int limit) {
+		checkArgument(limit > 0, "The limit must be positive");
+
+		List<DefaultChatMessageEntity> messages = roomOf(chatId).before(messageId, limit);
+		if (messages != null)
+			return messages;
+
+		return oldestFirst(chatMessageRepository.findOlderByChatId(chatId, messageId, PageRequest.of(0, limit)));
+	}
+
+	/**
+	 * Finds the messages of a chat room newer than a message, oldest first.
+	 *
+	 * @param chatId    the chat id
+	 * @param messageId the message id
+	 * @param limit     the maximum number of messages
+	 * @return the messages
+	 */
+	public List<DefaultChatMessageEntity> after(Integer chatId, Integer messageId, int limit) {
+		checkArgument(limit > 0, "The limit must be positive");
+
+		List<DefaultChatMessageEntity> messages = roomOf(chatId).after(messageId, limit);
+		if (messages != null)
+			return messages;
+
+		return chatMessageRepository.findNewerByChatId(chatId, messageId, PageRequest.of(0, limit));
+	}
+
+	/**
+	 * Adds a sent message to the buffer of its room, if the room is in memory.
+	 *
+	 * @param message the saved message
+	 */
+	public void add(DefaultChatMessageEntity message) {
+		checkNotNull(message, "Received a null pointer as message");
+
+		Room room = rooms.getIfPresent(message.getChatId());
+		if (room != null)
+			room.add(message);
+	}
+
+	/**
+	 * Removes a room from memory, so it is read again from the database. Used
+	 * when messages are saved without going through {@link #add}.
+	 *
+	 * @param chatId the chat id
+	 */
+	public void invalidate(Integer chatId) {
+		checkNotNull(chatId, "Received a null pointer as chatId");
+
+		rooms.invalidate(chatId);
+	}
+
+	/**
+	 * Gets the buffer of a room, reading it from the database if it is not in
+	 * memory.
+	 *
+	 * @param chatId the chat id
+	 * @return the buffer
+	 */
+	private Room roomOf(Integer chatId) {
+		checkNotNull(chatId, "Received a null pointer as chatId");
+
+		Room room;
+		try {
+			room = rooms.get(chatId, Room::new);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("The messages of the chat room " + chatId + " could not be read",
+					e.getCause());
+		}
+
+		// The room is filled under its lock, so a message sent meanwhile waits and
+		// is not lost
+		synchronized (room) {
+			if (!room.isLoaded())
+				room.load(chatMessageRepository.findLatestByChatId(chatId, PageRequest.of(0, CAPACITY)));
+		}
+		return room;
+	}
+
+	/**
+	 * Reverses a page of messages read newest first.
+	 *
+	 * @param messages the messages, newest first
+	 * @return the messages, oldest first
+	 */
+	private static List<DefaultChatMessageEntity> oldestFirst(List<DefaultChatMessageEntity> messages) {
+		List<DefaultChatMessageEntity> result = new ArrayList<>(messages);
+		Collections.reverse(result);
+		return result;
+	}
+
+	/**
+	 * The most recent messages of a room.
+	 * <p>
+	 * The messages are kept by identifier, so a message saved before another one
+	 * but added after it still takes its place.
+	 */
+	private static final class Room {
+
+		/** Message identifier to message. */
+		private final NavigableMap<Integer, DefaultChatMessageEntity> messages = new TreeMap<>();
+
+		/** If the messages have been read from the database. */
+		private boolean loaded;
+
+		/** If the buffer holds the whole history of the room. */
+		private boolean complete;
+
+		synchronized boolean isLoaded() {
+			return loaded;
+		}
+
+		synchronized void load(List<DefaultChatMessageEntity> latest) {
+			for (DefaultChatMessageEntity message : latest) {
+				messages.put(message.getId(), message);
+			}
+			complete = latest.size() < CAPACITY;
+			loaded = true;
+		}
+
+		synchronized void add(DefaultChatMessageEntity message) {
+			// Before the room is loaded, the load reads the message
+			if (!loaded)
+				return;
+
+			messages.put(message.getId(), message);
+			if (messages.size() > CAPACITY) {
+				messages.pollFirstEntry();
+				complete = false;
+			}
+		}
+
+		synchronized List<DefaultChatMessageEntity> latest(int limit) {
+			return last(messages, limit);
+		}
+
+		/**
+		 * Gets the messages older than a message, or null if some of them may not
+		 * be in the buffer.
+		 */
+		synchronized List<DefaultChatMessageEntity> before(Integer messageId, int limit) {
+			NavigableMap<Integer, DefaultChatMessageEntity> older = messages.headMap(messageId, false);
+			if (older.size() < limit && !complete)
+				return null;
+
+			return last(older, limit);
+		}
+
+		/**
+		 * Gets the messages newer than a message, or null if some of them may not
+		 * be in the buffer.
+		 */
+		synchronized List<DefaultChatMessageEntity> after(Integer messageId, int limit) {
+			if (!complete && messageId < messages.firstKey())
+				return null;
+
+			List<DefaultChatMessageEntity> result = new ArrayList<>();
+			for (DefaultChatMessageEntity message : messages.tailMap(messageId, false).values()) {
+				if (result.size() >= limit)
+					break;
+				result.add(message);
+			}
+			return result;
+		}
+
+		private static List<DefaultChatMessageEntity> last(NavigableMap<Integer, DefaultChatMessageEntity> messages,
+				int limit) {
+			List<DefaultChatMessageEntity> result = new ArrayList<>(Math.min(limit, messages.size()));
+			for (DefaultChatMessageEntity message : messages.descendingMap().values()) {
+				if (result.size() >= limit)
+					break;
+				result.add(message);
+			}
+			Collections.reverse(result);
+			return result;
+		}
+
+	}
+
+}
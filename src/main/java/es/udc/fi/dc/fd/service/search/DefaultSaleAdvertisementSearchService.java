@@ -0,0 +1,237 @@
+package es.udc.fi.dc.fd.service.search;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import es.udc.fi.dc.fd.model.dto.SaleAdvertisementWithLoggedUserInfoDTO;
+import es.udc.fi.dc.fd.model.form.SearchCriteriaForm;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.service.SaleAdvertisementService;
+import es.udc.fi.dc.fd.service.user.exceptions.UserNoRatingException;
+import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
+
+/**
+ * The Class DefaultSaleAdvertisementSearchService.
+ */
+@Service
+public class DefaultSaleAdvertisementSearchService implements SaleAdvertisementSearchService {
+
+	/** The minimum date used when the criteria does not have one. */
+	private static final LocalDate DEFAULT_MIN_DATE = LocalDate.of(1900, 1, 1);
+
+	/** The page size used when the request does not have one. */
+	public static final int DEFAULT_PAGE_SIZE = 20;
+
+	/** The maximum page size. */
+	public static final int MAX_PAGE_SIZE = 100;
+
+	/** The sale advertisement service. */
+	private final SaleAdvertisementService saleAdvertisementService;
+
+	/** The assembler of the sale advertisement DTOs. */
+	private final SaleAdvertisementDTOAssembler assembler;
+
+	/** The feeds of the sale advertisements published by the followed users. */
+	private final FollowedSellersFeed feed;
+
+	/**
+	 * Instantiates a new default sale advertisement search service.
+	 *
+	 * @param saleAdvertisementService the sale advertisement service
+	 * @param assembler                the sale advertisement DTO assembler
+	 * @param feed                     the followed sellers feed
+	 */
+	@Autowired
+	public DefaultSaleAdvertisementSearchService(final SaleAdvertisementService saleAdvertisementService,
+			final SaleAdvertisementDTOAssembler assembler, final FollowedSellersFeed feed) {
+		super();
+		this.saleAdvertisementService = checkNotNull(saleAdvertisementService,
+				"Received a null pointer as saleAdvertisementService");
+		this.assembler = checkNotNull(assembler, "Received a null pointer as assembler");
+		this.feed = checkNotNull(feed, "Received a null pointer as feed");
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public SearchPage<SaleAdvertisementWithLoggedUserInfoDTO> search(DefaultUserEntity userLogged,
+			SearchCriteriaForm form, String after, Integer limit) throws UserNotFoundException, UserNoRatingException {
+
+		return findPage(userLogged, createCriteria(form, null), after, limit);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public SearchPage<SaleAdvertisementWithLoggedUserInfoDTO> searchFollowed(DefaultUserEntity userLogged,
+			SearchCriteriaForm form, String after, Integer limit) throws UserNotFoundException, UserNoRatingException {
+
+		if (isEmpty(form)) {
+			return findFeedPage(userLogged, after, limit);
+		}
+
+		Set<Integer> followedIds = new HashSet<>();
+		for (DefaultUserEntity followed : userLogged.getFollowed()) {
+			followedIds.add(followed.getId());
+		}
+
+		if (followedIds.isEmpty()) {
+			return new SearchPage<>(new ArrayList<>(), null);
+		}
+
+		return findPage(userLogged, createCriteria(form, followedIds), after, limit);
+	}
+
+	@Override
+	public Iterator<SaleAdvertisementWithLoggedUserInfoDTO> iterate(DefaultUserEntity userLogged,
+			SearchCriteriaForm form) {
+		return new PageIterator(userLogged, createCriteria(form, null));
+	}
+
+	/**
+	 * Runs the search and discards the sale advertisements sold more than one day
+	 * ago. The index hides them on its periodic sweep, so only the ones sold since
+	 * the last sweep are discarded here, and a page may have less sale
+	 * advertisements than the limit.
+	 *
+	 * @param userLogged the user logged
+	 * @param criteria   the criteria
+	 * @param after      the cursor of the previous page
+	 * @param limit      the requested page size
+	 * @return the page of visible sale advertisements
+	 */
+	private SearchPage<SaleAdvertisementWithLoggedUserInfoDTO> findPage(DefaultUserEntity userLogged,
+			SaleAdvertisementSearchCriteria criteria, String after, Integer limit) {
+
+		LocalDateTime soldLimit = LocalDateTime.now().minus(SaleAdvertisementSearchIndex.SOLD_VISIBILITY);
+		int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+		SearchPage<Integer> page = saleAdvertisementService.getSaleAdvertisementIdsBySearchCriteria(criteria, after,
+				pageSize);
+
+		return new SearchPage<>(assembler.assemble(page.getItems(), userLogged, soldLimit), page.getNextCursor());
+	}
+
+	/**
+	 * Reads a page of the followed sellers feed of the logged user, newest
+	 * publication first.
+	 *
+	 * @param userLogged the user logged
+	 * @param after      the cursor of the previous page
+	 * @param limit      the requested page size
+	 * @return the page of visible sale advertisements
+	 */
+	private SearchPage<SaleAdvertisementWithLoggedUserInfoDTO> findFeedPage(DefaultUserEntity userLogged,
+			String after, Integer limit) {
+
+		LocalDateTime soldLimit = LocalDateTime.now().minus(SaleAdvertisementSearchIndex.SOLD_VISIBILITY);
+		int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+		SearchPage<Integer> page = feed.page(userLogged.getId(), after, pageSize);
+
+		return new SearchPage<>(assembler.assemble(page.getItems(), userLogged, soldLimit), page.getNextCursor());
+	}
+
+	/**
+	 * Checks if the user did not send any search criteria.
+	 *
+	 * @param form the form
+	 * @return true, if every value of the form is empty
+	 */
+	private boolean isEmpty(SearchCriteriaForm form) {
+		return (form.getCity() == null || form.getCity().isEmpty())
+				&& (form.getKeywords() == null || form.getKeywords().isEmpty())
+				&& (form.getMinDate() == null || form.getMinDate().isEmpty())
+				&& (form.getMaxDate() == null || form.getMaxDate().isEmpty()) && form.getMinPrice() == null
+				&& form.getMaxPrice() == null && form.getMinRating() == null;
+	}
+
+	/**
+	 * Creates the search criteria from the values sent by the user.
+	 *
+	 * @param form     the form
+	 * @param ownerIds the identifiers of the allowed owners, or null for any
+	 * @return the search criteria
+	 */
+	private SaleAdvertisementSearchCriteria createCriteria(SearchCriteriaForm form, Set<Integer> ownerIds) {
+		return new SaleAdvertisementSearchCriteria(form.getCity(), form.getKeywords(),
+				LocalDateTime.of(parseDate(form.getMinDate(), DEFAULT_MIN_DATE), LocalTime.of(0, 0, 0)),
+				LocalDateTime.of(parseDate(form.getMaxDate(), LocalDate.now()), LocalTime.of(23, 59, 59)),
+				form.getMinPrice(), form.getMaxPrice(), form.getMinRating(), ownerIds);
+	}
+
+	/**
+	 * Parses an ISO local date, returning the default value when it is empty.
+	 *
+	 * @param date         the date
+	 * @param defaultValue the default value
+	 * @return the local date
+	 * @throws IllegalArgumentException if the date is not valid
+	 */
+	private LocalDate parseDate(String date, LocalDate defaultValue) {
+		if (date == null || date.isEmpty())
+			return defaultValue;
+
+		try {
+			return LocalDate.parse(date, DateTimeFormatter.ISO_LOCAL_DATE);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid date " + date, e);
+		}
+	}
+
+	/**
+	 * Iterator reading the search results one page at a time, following the
+	 * cursor of each page.
+	 */
+	private final class PageIterator implements Iterator<SaleAdvertisementWithLoggedUserInfoDTO> {
+
+		private final DefaultUserEntity userLogged;
+
+		private final SaleAdvertisementSearchCriteria criteria;
+
+		private Iterator<SaleAdvertisementWithLoggedUserInfoDTO> page = Collections.emptyIterator();
+
+		private String cursor;
+
+		private boolean lastPage = false;
+
+		private PageIterator(DefaultUserEntity userLogged, SaleAdvertisementSearchCriteria criteria) {
+			this.userLogged = userLogged;
+			this.criteria = criteria;
+		}
+
+		@Override
+		public boolean hasNext() {
+			// A page may be empty when all its sale advertisements were sold
+			while (!page.hasNext() && !lastPage) {
+				SearchPage<SaleAdvertisementWithLoggedUserInfoDTO> next = findPage(userLogged, criteria, cursor,
+						MAX_PAGE_SIZE);
+				page = next.getItems().iterator();
+				cursor = next.getNextCursor();
+				lastPage = !next.hasNext();
+			}
+			return page.hasNext();
+		}
+
+		@Override
+		public SaleAdvertisementWithLoggedUserInfoDTO next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return page.next();
+		}
+	}
+
+}
@@ -0,0 +1,365 @@
+package es.udc.fi.dc.fd.service.search;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
+import es.udc.fi.dc.fd.repository.UserRepository;
+
+/**
+ * Feed of the sale advertisements published by the users followed by each user.
+ * <p>
+ * The feed of a user keeps the newest {@link #MAX_FEED_LENGTH} visible sale
+ * advertisements of the followed users, by publication date and then by
+ * identifier, so reading a page of it does not depend on the number of sale
+ * advertisements or followed users and its memory is bounded. It is read from
+ * the database the first time it is used, and then it is kept up to date on
+ * write: a publication is added to the feeds of the followers of its owner, or
+ * moved if it was published again, and following or unfollowing a user adds or
+ * removes its sale advertisements. The oldest entries are dropped once a feed
+ * is full, so the older sale advertisements are only found by searching.
+ * <p>
+ * Only the feeds of the most recent users are kept in memory.
+ */
+@Component
+public class FollowedSellersFeed {
+
+	/** Maximum number of sale advertisements kept in each feed. */
+	public static final int MAX_FEED_LENGTH = 1000;
+
+	/** Maximum number of feeds kept in memory. */
+	private static final long MAX_FEEDS = 10_000;
+
+	/** The newest sale advertisements read for a feed. */
+	private static final Pageable FEED_PAGE = PageRequest.of(0, MAX_FEED_LENGTH);
+
+	/** Newest publication first, then highest identifier first. */
+	private static final Comparator<FeedEntry> NEWEST_FIRST = Comparator
+			.comparing((FeedEntry entry) -> entry.date).thenComparing(entry -> entry.id).reversed();
+
+	/** Separator of the values in a cursor. */
+	private static final String CURSOR_SEPARATOR = "~";
+
+	/** Encoder of the cursors. */
+	private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	/** Decoder of the cursors. */
+	private static final Base64.Decoder CURSOR_DECODER = Base64.getUrlDecoder();
+
+	/** The sale advertisement repository. */
+	private final SaleAdvertisementRepository saleAdvertisementRepository;
+
+	/** The user repository. */
+	private final UserRepository userRepository;
+
+	/**
+	 * Taken for reading while a feed is loaded and for writing while the feeds
+	 * are updated, so an update is never lost by a load running at the same time.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** User identifier to its feed. */
+	private final Cache<Integer, Feed> feeds = CacheBuilder.newBuilder().maximumSize(MAX_FEEDS).build();
+
+	/**
+	 * Instantiates a new followed sellers feed.
+	 *
+	 * @param saleAdvertisementRepository the sale advertisement repository
+	 * @param userRepository              the user repository
+	 */
+	@Autowired
+	public FollowedSellersFeed(final SaleAdvertisementRepository saleAdvertisementRepository,
+			final UserRepository userRepository) {
+		super();
+		this.saleAdvertisementRepository = checkNotNull(saleAdvertisementRepository,
+				"Received a null pointer as saleAdvertisementRepository");
+		this.userRepository = checkNotNull(userRepository, "Received a null pointer as userRepository");
+	}
+
+	/**
+	 * Reads a page of the feed of a user, newest publication first.
+	 *
+	 * @param userId the user id
+	 * @param after  the cursor of the previous page, or null to start from the
+	 *               newest one
+	 * @param limit  the maximum number of identifiers to return
+	 * @return the page of sale advertisement identifiers
+	 * @throws IllegalArgumentException if the cursor is not valid
+	 */
+	public SearchPage<Integer> page(Integer userId, String after, int limit) {
+		checkNotNull(userId, "Received a null pointer as userId");
+		checkArgument(limit > 0, "The limit must be positive");
+
+		FeedEntry start = after == null ? null : decodeCursor(after);
+		NavigableSet<FeedEntry> entries = feedOf(userId).entries;
+
+		List<Integer> ids = new ArrayList<>(Math.min(limit, MAX_FEED_LENGTH));
+		FeedEntry last = null;
+		for (FeedEntry entry : start == null ? entries : entries.tailSet(start, false)) {
+			if (ids.size() >= limit)
+				return new SearchPage<>(ids, encodeCursor(last));
+			ids.add(entry.id);
+			last = entry;
+		}
+		return new SearchPage<>(ids, null);
+	}
+
+	/**
+	 * Adds a new or published again sale advertisement to the feeds of the
+	 * followers of its owner.
+	 *
+	 * @param ownerId             the owner id
+	 * @param saleAdvertisementId the sale advertisement id
+	 * @param date                the publication date
+	 */
+	public void publish(Integer ownerId, Integer saleAdvertisementId, LocalDateTime date) {
+		checkNotNull(ownerId, "Received a null pointer as ownerId");
+		checkNotNull(saleAdvertisementId, "Received a null pointer as saleAdvertisementId");
+		checkNotNull(date, "Received a null pointer as date");
+
+		lock.writeLock().lock();
+		try {
+			for (Integer followerId : userRepository.findFollowerIds(ownerId)) {
+				Feed feed = feeds.getIfPresent(followerId);
+				if (feed != null)
+					feed.put(new FeedEntry(saleAdvertisementId, ownerId, date));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes sale advertisements from every feed.
+	 *
+	 * @param saleAdvertisementIds the sale advertisement ids
+	 */
+	public void removeAll(Collection<Integer> saleAdvertisementIds) {
+		checkNotNull(saleAdvertisementIds, "Received a null pointer as saleAdvertisementIds");
+		if (saleAdvertisementIds.isEmpty())
+			return;
+
+		lock.writeLock().lock();
+		try {
+			for (Feed feed : feeds.asMap().values()) {
+				for (Integer id : saleAdvertisementIds) {
+					feed.remove(id);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds the newest visible sale advertisements of a followed user to the feed
+	 * of its new follower.
+	 *
+	 * @param userId     the follower id
+	 * @param followedId the followed user id
+	 */
+	public void follow(Integer userId, Integer followedId) {
+		checkNotNull(userId, "Received a null pointer as userId");
+		checkNotNull(followedId, "Received a null pointer as followedId");
+
+		lock.writeLock().lock();
+		try {
+			Feed feed = feeds.getIfPresent(userId);
+			if (feed == null)
+				return;
+
+			for (Object[] row : saleAdvertisementRepository.findVisibleFeedEntriesByUser(followedId, visibleSince(),
+					FEED_PAGE)) {
+				feed.put(new FeedEntry((Integer) row[0], followedId, (LocalDateTime) row[1]));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the sale advertisements of an unfollowed user from the feed of its
+	 * former follower.
+	 *
+	 * @param userId       the former follower id
+	 * @param unfollowedId the unfollowed user id
+	 */
+	public void unfollow(Integer userId, Integer unfollowedId) {
+		checkNotNull(userId, "Received a null pointer as userId");
+		checkNotNull(unfollowedId, "Received a null pointer as unfollowedId");
+
+		lock.writeLock().lock();
+		try {
+			Feed feed = feeds.getIfPresent(userId);
+			if (feed != null)
+				feed.removeOwner(unfollowedId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the feed of a user, loading it from the database if it is not in
+	 * memory.
+	 *
+	 * @param userId the user id
+	 * @return the feed
+	 */
+	private Feed feedOf(Integer userId) {
+		Feed feed = feeds.getIfPresent(userId);
+		if (feed != null)
+			return feed;
+
+		lock.readLock().lock();
+		try {
+			return feeds.get(userId, () -> load(userId));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException("The feed of the user " + userId + " could not be loaded", e.getCause());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the feed of a user from the database.
+	 *
+	 * @param userId the user id
+	 * @return the feed
+	 */
+	private Feed load(Integer userId) {
+		Feed feed = new Feed();
+		for (Object[] row : saleAdvertisementRepository.findFollowedFeedEntries(userId, visibleSince(), FEED_PAGE)) {
+			feed.put(new FeedEntry((Integer) row[0], (Integer) row[1], (LocalDateTime) row[2]));
+		}
+		return feed;
+	}
+
+	/**
+	 * Gets the oldest sold date of a visible sale advertisement.
+	 *
+	 * @return the date
+	 */
+	private static LocalDateTime visibleSince() {
+		return LocalDateTime.now().minus(SaleAdvertisementSearchIndex.SOLD_VISIBILITY);
+	}
+
+	/**
+	 * Encodes the position of an entry as a cursor.
+	 *
+	 * @param entry the entry
+	 * @return the cursor
+	 */
+	private static String encodeCursor(FeedEntry entry) {
+		String key = entry.date.toString() + CURSOR_SEPARATOR + entry.id;
+		return CURSOR_ENCODER.encodeToString(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes a cursor into a probe with the position of the entry it points to.
+	 *
+	 * @param cursor the cursor
+	 * @return the probe
+	 */
+	private static FeedEntry decodeCursor(String cursor) {
+		try {
+			String key = new String(CURSOR_DECODER.decode(cursor), StandardCharsets.UTF_8);
+			String[] parts = key.split(CURSOR_SEPARATOR, -1);
+			checkArgument(parts.length == 2, "Invalid feed cursor");
+
+			return new FeedEntry(Integer.valueOf(parts[1]), null, LocalDateTime.parse(parts[0]));
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid feed cursor", e);
+		}
+	}
+
+	/**
+	 * A sale advertisement in a feed.
+	 */
+	private static final class FeedEntry {
+
+		private final Integer id;
+
+		private final Integer ownerId;
+
+		private final LocalDateTime date;
+
+		private FeedEntry(Integer id, Integer ownerId, LocalDateTime date) {
+			this.id = id;
+			this.ownerId = ownerId;
+			this.date = date;
+		}
+
+	}
+
+	/**
+	 * The feed of a user. The entries are read without the lock, and they are
+	 * only changed while the feed is loaded or with the write lock taken.
+	 */
+	private static final class Feed {
+
+		/** The entries, newest first. */
+		private final ConcurrentSkipListSet<FeedEntry> entries = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+
+		/** Sale advertisement identifier to its entry. */
+		private final Map<Integer, FeedEntry> entriesById = new HashMap<>();
+
+		/**
+		 * Adds an entry, replacing the one of the same sale advertisement, and drops
+		 * the oldest ones beyond the maximum length.
+		 *
+		 * @param entry the entry
+		 */
+		private void put(FeedEntry entry) {
+			FeedEntry previous = entriesById.put(entry.id, entry);
+			if (previous != null)
+				entries.remove(previous);
+			entries.add(entry);
+
+			while (entriesById.size() > MAX_FEED_LENGTH) {
+				entriesById.remove(entries.pollLast().id);
+			}
+		}
+
+		private void remove(Integer id) {
+			FeedEntry entry = entriesById.remove(id);
+			if (entry != null)
+				entries.remove(entry);
+		}
+
+		private void removeOwner(Integer ownerId) {
+			entriesById.values().removeIf(entry -> {
+				if (!ownerId.equals(entry.ownerId))
+					return false;
+				entries.remove(entry);
+				return true;
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,157 @@
+package es.udc.fi.dc.fd.service.search;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import es.udc.fi.dc.fd.model.Role;
+import es.udc.fi.dc.fd.model.State;
+import es.udc.fi.dc.fd.model.dto.ImageDTO;
+import es.udc.fi.dc.fd.model.dto.SaleAdvertisementWithLoggedUserInfoDTO;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.repository.ImageRepository;
+import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
+import es.udc.fi.dc.fd.repository.UserRepository;
+
+/**
+ * Builds the sale advertisement DTOs shown to a logged user.
+ * <p>
+ * All the sale advertisements of a list are assembled together, reading each
+ * kind of value for the whole list with a single query: the sale advertisements
+ * with their owners, sold dates and likes counts, the images, and the likes
+ * and followed users of the logged user. So the number of queries does
+ * not depend on the size of the list.
+ */
+@Component
+public class SaleAdvertisementDTOAssembler {
+
+	/** The sale advertisement repository. */
+	private final SaleAdvertisementRepository saleAdvertisementRepository;
+
+	/** The user repository. */
+	private final UserRepository userRepository;
+
+	/** The image repository. */
+	private final ImageRepository imageRepository;
+
+	/**
+	 * Instantiates a new sale advertisement DTO assembler.
+	 *
+	 * @param saleAdvertisementRepository the sale advertisement repository
+	 * @param userRepository              the user repository
+	 * @param imageRepository             the image repository
+	 */
+	@Autowired
+	public SaleAdvertisementDTOAssembler(final SaleAdvertisementRepository saleAdvertisementRepository,
+			final UserRepository userRepository, final ImageRepository imageRepository) {
+		super();
+		this.saleAdvertisementRepository = checkNotNull(saleAdvertisementRepository,
+				"Received a null pointer as saleAdvertisementRepository");
+		this.userRepository = checkNotNull(userRepository, "Received a null pointer as userRepository");
+		this.imageRepository = checkNotNull(imageRepository, "Received a null pointer as imageRepository");
+	}
+
+	/**
+	 * Assembles the DTOs of the sale advertisements, in the same order as the
+	 * identifiers.
+	 *
+	 * @param identifiers the sale advertisement identifiers
+	 * @param userLogged  the user logged
+	 * @return the sale advertisement DTOs, without the identifiers that do not
+	 *         exist
+	 */
+	@Transactional(readOnly = true)
+	public List<SaleAdvertisementWithLoggedUserInfoDTO> assemble(List<Integer> identifiers,
+			DefaultUserEntity userLogged) {
+		return assemble(identifiers, userLogged, null);
+	}
+
+	/**
+	 * Assembles the DTOs of the sale advertisements, in the same order as the
+	 * identifiers, leaving out the ones sold before a date.
+	 *
+	 * @param identifiers the sale advertisement identifiers
+	 * @param userLogged  the user logged
+	 * @param soldLimit   the sale advertisements sold before this date are left
+	 *                    out, null to keep all of them
+	 * @return the sale advertisement DTOs, without the identifiers that do not
+	 *         exist
+	 */
+	@Transactional(readOnly = true)
+	public List<SaleAdvertisementWithLoggedUserInfoDTO> assemble(List<Integer> identifiers,
+			DefaultUserEntity userLogged, LocalDateTime soldLimit) {
+		checkNotNull(identifiers, "Received a null pointer as identifiers");
+		checkNotNull(userLogged, "Received a null pointer as userLogged");
+
+		if (identifiers.isEmpty())
+			return new ArrayList<>();
+
+		Set<Integer> ids = new LinkedHashSet<>(identifiers);
+
+		Map<Integer, Object[]> summaries = new HashMap<>();
+		Set<Integer> ownerIds = new HashSet<>();
+		for (Object[] row : saleAdvertisementRepository.findSummariesByIds(ids)) {
+			summaries.put((Integer) row[0], row);
+			ownerIds.add((Integer) row[6]);
+		}
+
+		if (summaries.isEmpty())
+			return new ArrayList<>();
+
+		Map<Integer, List<ImageDTO>> images = new HashMap<>();
+		for (Object[] row : imageRepository.findImagePathsBySaleAdvertisementIds(ids)) {
+			images.computeIfAbsent((Integer) row[0], id -> new ArrayList<>())
+					.add(new ImageDTO((String) row[1], (String) row[2], (String) row[3]));
+		}
+
+		Set<Integer> liked = new HashSet<>(saleAdvertisementRepository.findLikedIds(userLogged.getId(), ids));
+		Set<Integer> followed = new HashSet<>(userRepository.findFollowedIds(userLogged.getId(), ownerIds));
+
+		List<SaleAdvertisementWithLoggedUserInfoDTO> saleAdvertisements = new ArrayList<>(summaries.size());
+		for (Integer id : ids) {
+			Object[] row = summaries.get(id);
+			if (row == null)
+				continue;
+
+			LocalDateTime soldDate = (LocalDateTime) row[12];
+			boolean sold = soldDate != null;
+			if (sold && soldLimit != null && soldDate.isBefore(soldLimit))
+				continue;
+
+			Integer ownerId = (Integer) row[6];
+			saleAdvertisements.add(new SaleAdvertisementWithLoggedUserInfoDTO(id, (String) row[1], (String) row[2],
+					(LocalDateTime) row[3], (BigDecimal) row[4], (State) row[5], ownerId, (String) row[7],
+					(String) row[8], (Role) row[9], (Integer) row[13],
+					images.getOrDefault(id, new ArrayList<>()), liked.contains(id), followed.contains(ownerId),
+					averageRating((Long) row[10], (Integer) row[11]), sold, ownerId.equals(userLogged.getId())));
+		}
+
+		return saleAdvertisements;
+	}
+
+	/**
+	 * Computes the average rating from the rating aggregates of an user.
+	 *
+	 * @param ratingSum   the rating sum
+	 * @param ratingCount the rating count
+	 * @return the average rating, null if the user is not rated
+	 */
+	private Double averageRating(Long ratingSum, Integer ratingCount) {
+		if (ratingCount == null || ratingCount == 0)
+			return null;
+		return ratingSum.doubleValue() / ratingCount;
+	}
+
+}
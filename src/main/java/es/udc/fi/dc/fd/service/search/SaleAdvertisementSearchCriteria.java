@@ -0,0 +1,150 @@
+package es.udc.fi.dc.fd.service.search;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Normalized criteria of a sale advertisement search.
+ * <p>
+ * A null value means that the search is not restricted by that criterion.
+ */
+public final class SaleAdvertisementSearchCriteria implements Serializable {
+
+	/**
+	 * Serialization ID.
+	 */
+	private static final long serialVersionUID = -3019482301773405436L;
+
+	/** The city of the owner of the sale advertisement. */
+	private final String city;
+
+	/** The keywords that should be in the title or description. */
+	private final String keywords;
+
+	/** The oldest date in the date range. */
+	private final LocalDateTime minDate;
+
+	/** The most recent date in the date range. */
+	private final LocalDateTime maxDate;
+
+	/** The minimum price in the price range. */
+	private final BigDecimal minPrice;
+
+	/** The maximum price in the price range. */
+	private final BigDecimal maxPrice;
+
+	/** The minimum average rating of the owner. */
+	private final Double minRating;
+
+	/** The identifiers of the allowed owners. */
+	private final Set<Integer> ownerIds;
+
+	/**
+	 * Instantiates a new sale advertisement search criteria.
+	 *
+	 * @param city      the city
+	 * @param keywords  the keywords
+	 * @param minDate   the min date
+	 * @param maxDate   the max date
+	 * @param minPrice  the min price
+	 * @param maxPrice  the max price
+	 * @param minRating the min rating
+	 */
+	public SaleAdvertisementSearchCriteria(String city, String keywords, LocalDateTime minDate,
+			LocalDateTime maxDate, BigDecimal minPrice, BigDecimal maxPrice, Double minRating) {
+		this(city, keywords, minDate, maxDate, minPrice, maxPrice, minRating, null);
+	}
+
+	/**
+	 * Instantiates a new sale advertisement search criteria restricted to the
+	 * sale advertisements of some owners.
+	 *
+	 * @param city      the city
+	 * @param keywords  the keywords
+	 * @param minDate   the min date
+	 * @param maxDate   the max date
+	 * @param minPrice  the min price
+	 * @param maxPrice  the max price
+	 * @param minRating the min rating
+	 * @param ownerIds  the identifiers of the allowed owners
+	 */
+	public SaleAdvertisementSearchCriteria(String city, String keywords, LocalDateTime minDate,
+			LocalDateTime maxDate, BigDecimal minPrice, BigDecimal maxPrice, Double minRating,
+			Collection<Integer> ownerIds) {
+		super();
+		this.city = city == null || city.trim().isEmpty() ? null : city.trim();
+		this.keywords = keywords == null || keywords.trim().isEmpty() ? null : keywords.trim();
+		this.minDate = minDate;
+		this.maxDate = maxDate;
+		this.minPrice = minPrice;
+		this.maxPrice = maxPrice;
+		this.minRating = minRating;
+		this.ownerIds = ownerIds == null ? null : Collections.unmodifiableSet(new HashSet<>(ownerIds));
+	}
+
+	public String getCity() {
+		return city;
+	}
+
+	public String getKeywords() {
+		return keywords;
+	}
+
+	public LocalDateTime getMinDate() {
+		return minDate;
+	}
+
+	public LocalDateTime getMaxDate() {
+		return maxDate;
+	}
+
+	public BigDecimal getMinPrice() {
+		return minPrice;
+	}
+
+	public BigDecimal getMaxPrice() {
+		return maxPrice;
+	}
+
+	public Double getMinRating() {
+		return minRating;
+	}
+
+	public Set<Integer> getOwnerIds() {
+		return ownerIds;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(city, keywords, minDate, maxDate, minPrice, maxPrice, minRating, ownerIds);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SaleAdvertisementSearchCriteria other = (SaleAdvertisementSearchCriteria) obj;
+		return Objects.equals(city, other.city) && Objects.equals(keywords, other.keywords)
+				&& Objects.equals(minDate, other.minDate) && Objects.equals(maxDate, other.maxDate)
+				&& Objects.equals(minPrice, other.minPrice) && Objects.equals(maxPrice, other.maxPrice)
+				&& Objects.equals(minRating, other.minRating) && Objects.equals(ownerIds, other.ownerIds);
+	}
+
+	@Override
+	public String toString() {
+		return "SaleAdvertisementSearchCriteria [city=" + city + ", keywords=" + keywords + ", minDate=" + minDate
+				+ ", maxDate=" + maxDate + ", minPrice=" + minPrice + ", maxPrice=" + maxPrice + ", minRating="
+				+ minRating + ", ownerIds=" + ownerIds + "]";
+	}
+
+}
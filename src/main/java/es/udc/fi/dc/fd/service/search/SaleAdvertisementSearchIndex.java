@@ -0,0 +1,1035 @@
+package es.udc.fi.dc.fd.service.search;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+
+import es.udc.fi.dc.fd.model.Role;
+import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
+import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
+import es.udc.fi.dc.fd.repository.UserRepository;
+
+/**
+ * In-memory inverted index of the sale advertisements.
+ * <p>
+ * The title and description of every sale advertisement are split into
+ * normalized tokens, and each token points to the identifiers of the sale
+ * advertisements containing it. The owner city has its own posting lists, while
+ * the date, price and rating ranges are checked against the indexed values of
+ * the candidates, so a search never touches the database.
+ * <p>
+ * The index is loaded from the database on first use and is kept up to date
+ * by the services that modify the indexed data. Changes received before the
+ * first load are ignored, as the load reads them from the database.
+ * <p>
+ * Sold sale advertisements stay visible for {@link #SOLD_VISIBILITY} after
+ * their sale. The load only reads the visible ones, and the sold ones are kept
+ * ordered by sold date so a periodic sweep hides the expired ones without
+ * checking every sale advertisement.
+ * <p>
+ * The results of the searches are cached, bounded by the total number of
+ * cached identifiers. A change only evicts the cached searches whose criteria
+ * match the changed sale advertisement before or after the change, and the
+ * cache statistics are exported through JMX to size it.
+ * <p>
+ * The keywords and city of the cached searches are normalized once, when the
+ * search is cached, and each cached search is registered under its city, its
+ * owners or its longest keyword. A change only checks the searches registered
+ * under the city, owner or token prefixes of the changed sale advertisement,
+ * plus the ones filtering by none of them.
+ */
+@Component
+@ManagedResource(objectName = "es.udc.fi.dc.fd:name=SaleAdvertisementSearchIndex",
+		description = "Sale advertisement search index")
+public class SaleAdvertisementSearchIndex {
+
+	/** Time a sold sale advertisement stays visible after its sale. */
+	public static final Duration SOLD_VISIBILITY = Duration.ofDays(1);
+
+	/** Maximum number of sale advertisement identifiers kept by the cache. */
+	private static final long MAX_CACHED_IDENTIFIERS = 200_000;
+
+	/** Splits a text into tokens. */
+	private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+	/** Separates the values of the sort key in a cursor. */
+	private static final String CURSOR_SEPARATOR = "~";
+
+	/** Encodes the cursors. */
+	private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	/** Decodes the cursors. */
+	private static final Base64.Decoder CURSOR_DECODER = Base64.getUrlDecoder();
+
+	/** Matches the combining marks left after decomposing a text. */
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+	/**
+	 * Search order: premium owners first, then the most recent, then by
+	 * identifier.
+	 */
+	private static final Comparator<IndexedSaleAdvertisement> SEARCH_ORDER = Comparator
+			.comparingInt((IndexedSaleAdvertisement ad) -> ad.role).reversed()
+			.thenComparing(ad -> ad.date, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+			.thenComparing(ad -> ad.id);
+
+	/** The sale advertisement repository. */
+	private final SaleAdvertisementRepository saleAdvertisementRepository;
+
+	/** The user repository, which keeps the rating aggregates of the users. */
+	private final UserRepository userRepository;
+
+	/** Guards all the index structures. */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** The indexed sale advertisements by identifier. */
+	private final Map<Integer, IndexedSaleAdvertisement> documents = new HashMap<>();
+
+	/** The indexed sale advertisements in search order. */
+	private final NavigableSet<IndexedSaleAdvertisement> ordered = new TreeSet<>(SEARCH_ORDER);
+
+	/** Token to sale advertisement identifiers. */
+	private final NavigableMap<String, Set<Integer>> tokenPostings = new TreeMap<>();
+
+	/** Normalized city to sale advertisement identifiers. */
+	private final Map<String, Set<Integer>> cityPostings = new HashMap<>();
+
+	/** Owner identifier to sale advertisement identifiers. */
+	private final Map<Integer, Set<Integer>> ownerPostings = new HashMap<>();
+
+	/** Sold date to identifiers of the sold sale advertisements. */
+	private final NavigableMap<LocalDateTime, Set<Integer>> soldPostings = new TreeMap<>();
+
+	/** Owner identifier to average rating, only for rated owners. */
+	private final Map<Integer, Double> ownerRatings = new HashMap<>();
+
+	/** Whether the index has been loaded from the database. */
+	private volatile boolean loaded = false;
+
+	/**
+	 * Cached search results. Read and filled under the read lock and evicted
+	 * under the write lock, so a cached result is never older than the index.
+	 */
+	private final Cache<SearchKey, SearchPage<Integer>> results = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_CACHED_IDENTIFIERS)
+			.weigher((SearchKey key, SearchPage<Integer> page) -> page.getItems().size() + 1)
+			.removalListener(
+					(RemovalNotification<SearchKey, SearchPage<Integer>> removal) -> unregister(removal.getKey()))
+			.recordStats().build();
+
+	/**
+	 * Normalized city to the cached searches filtering by it. Like the other
+	 * registries of cached searches, it is updated under the read lock as the
+	 * searches are cached and removed.
+	 */
+	private final Map<String, Set<SearchKey>> keysByCity = new ConcurrentHashMap<>();
+
+	/** Owner identifier to the cached searches filtering by it and no city. */
+	private final Map<Integer, Set<SearchKey>> keysByOwner = new ConcurrentHashMap<>();
+
+	/** Keyword to the cached searches filtering by it and no city nor owner. */
+	private final Map<String, Set<SearchKey>> keysByKeyword = new ConcurrentHashMap<>();
+
+	/** Cached searches filtering by no city, owner nor keyword. */
+	private final Set<SearchKey> unfilteredKeys = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Instantiates a new sale advertisement search index.
+	 *
+	 * @param saleAdvertisementRepository the sale advertisement repository
+	 * @param userRepository              the user repository
+	 */
+	@Autowired
+	public SaleAdvertisementSearchIndex(final SaleAdvertisementRepository saleAdvertisementRepository,
+			final UserRepository userRepository) {
+		super();
+		this.saleAdvertisementRepository = checkNotNull(saleAdvertisementRepository,
+				"Received a null pointer as saleAdvertisementRepository");
+		this.userRepository = checkNotNull(userRepository, "Received a null pointer as userRepository");
+	}
+
+	/**
+	 * Searches the identifiers of the sale advertisements matching the criteria,
+	 * premium owners first and then the most recent first.
+	 * <p>
+	 * Every keyword must be a prefix of a word of the title or the description.
+	 *
+	 * @param criteria the criteria
+	 * @return the identifiers of the matching sale advertisements
+	 */
+	public List<Integer> search(SaleAdvertisementSearchCriteria criteria) {
+		return searchPage(criteria, null, Integer.MAX_VALUE).getItems();
+	}
+
+	/**
+	 * Searches a page of the identifiers of the sale advertisements matching the
+	 * criteria, in the same order as {@link #search(SaleAdvertisementSearchCriteria)}.
+	 * <p>
+	 * The page starts right after the position encoded in the cursor, so its cost
+	 * does not depend on how many pages were read before.
+	 *
+	 * @param criteria the criteria
+	 * @param after    the cursor of the last sale advertisement already read, or
+	 *                 null to start from the first one
+	 * @param limit    the maximum number of identifiers to return
+	 * @return the identifiers of the matching sale advertisements
+	 * @throws IllegalArgumentException if the cursor is not valid
+	 */
+	public List<Integer> search(SaleAdvertisementSearchCriteria criteria, String after, int limit) {
+		return searchPage(criteria, after, limit).getItems();
+	}
+
+	/**
+	 * Searches a page of the identifiers of the sale advertisements matching the
+	 * criteria, like {@link #search(SaleAdvertisementSearchCriteria, String, int)},
+	 * with the cursor of the next page.
+	 * <p>
+	 * The cursor is taken in the same read as the page, so it is there even if
+	 * the last sale advertisement of the page is removed right after. When the
+	 * search has keywords, a city or owners, only the candidates after the cursor
+	 * are compared, keeping the first ones of the page in a bounded heap instead
+	 * of sorting all of them.
+	 *
+	 * @param criteria the criteria
+	 * @param after    the cursor of the last sale advertisement already read, or
+	 *                 null to start from the first one
+	 * @param limit    the maximum number of identifiers to return
+	 * @return the page, whose cursor is null if there are no more results
+	 * @throws IllegalArgumentException if the cursor is not valid
+	 */
+	public SearchPage<Integer> searchPage(SaleAdvertisementSearchCriteria criteria, String after, int limit) {
+		checkNotNull(criteria, "Received a null pointer as criteria");
+		checkArgument(limit > 0, "The limit must be positive");
+		IndexedSaleAdvertisement start = after == null ? null : decodeCursor(after);
+		ensureLoaded();
+
+		SearchKey key = new SearchKey(criteria, after, limit);
+
+		lock.readLock().lock();
+		try {
+			SearchPage<Integer> cached = results.getIfPresent(key);
+			if (cached != null)
+				return cached;
+
+			// One more than the page, to know if there is a next one
+			int count = limit == Integer.MAX_VALUE ? limit : limit + 1;
+			Set<Integer> candidates = findCandidates(key);
+			List<IndexedSaleAdvertisement> found = candidates == null ? firstInOrder(start, criteria, count)
+					: firstCandidates(candidates, start, criteria, count);
+
+			String nextCursor = null;
+			if (found.size() > limit) {
+				found = found.subList(0, limit);
+				nextCursor = encodeCursor(found.get(limit - 1));
+			}
+
+			List<Integer> ids = new ArrayList<>(found.size());
+			for (IndexedSaleAdvertisement ad : found) {
+				ids.add(ad.id);
+			}
+
+			SearchPage<Integer> page = new SearchPage<>(ids, nextCursor);
+			SearchPage<Integer> previous = results.asMap().putIfAbsent(key, page);
+			if (previous != null)
+				return previous;
+			register(key);
+			// A size eviction between the put and the registration unregistered it
+			// before it was registered, so it is unregistered again if it is gone
+			if (!results.asMap().containsKey(key))
+				unregister(key);
+			return page;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the cursor pointing to an indexed sale advertisement.
+	 *
+	 * @param identifier the sale advertisement identifier
+	 * @return the cursor, or null if the sale advertisement is not indexed
+	 */
+	public String cursorOf(Integer identifier) {
+		ensureLoaded();
+
+		lock.readLock().lock();
+		try {
+			IndexedSaleAdvertisement ad = documents.get(identifier);
+			return ad == null ? null : encodeCursor(ad);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds or replaces a sale advertisement in the index.
+	 *
+	 * @param saleAdvertisement the sale advertisement
+	 */
+	public void index(SaleAdvertisementEntity saleAdvertisement) {
+		checkNotNull(saleAdvertisement, "Received a null pointer as sale advertisement");
+
+		lock.writeLock().lock();
+		try {
+			if (!loaded)
+				return;
+
+			evictMatching(documents.get(saleAdvertisement.getId()));
+			removeDocument(saleAdvertisement.getId());
+
+			LocalDateTime soldDate = saleAdvertisement.getSoldDate();
+			if (soldDate != null && soldDate.isBefore(LocalDateTime.now().minus(SOLD_VISIBILITY)))
+				return;
+
+			addDocument(saleAdvertisement.getId(), saleAdvertisement.getUser().getId(),
+					saleAdvertisement.getUser().getCity(), saleAdvertisement.getUser().getRole(),
+					saleAdvertisement.getDate(), saleAdvertisement.getPrice(), saleAdvertisement.getProductTitle(),
+					saleAdvertisement.getProductDescription(), soldDate);
+			evictMatching(documents.get(saleAdvertisement.getId()));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a sale advertisement from the index.
+	 *
+	 * @param identifier the sale advertisement identifier
+	 */
+	public void remove(Integer identifier) {
+		lock.writeLock().lock();
+		try {
+			if (!loaded)
+				return;
+
+			evictMatching(documents.get(identifier));
+			removeDocument(identifier);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Records the sale of a sale advertisement, which stays visible until it is
+	 * hidden by {@link #hideSoldBefore(LocalDateTime)}.
+	 *
+	 * @param identifier the sale advertisement identifier
+	 * @param soldDate   the sold date
+	 */
+	public void markSold(Integer identifier, LocalDateTime soldDate) {
+		checkNotNull(soldDate, "Received a null pointer as soldDate");
+
+		lock.writeLock().lock();
+		try {
+			if (!loaded)
+				return;
+
+			IndexedSaleAdvertisement ad = documents.get(identifier);
+			if (ad == null)
+				return;
+
+			if (ad.soldDate != null)
+				removePosting(soldPostings, ad.soldDate, identifier);
+			ad.soldDate = soldDate;
+			soldPostings.computeIfAbsent(soldDate, key -> new HashSet<>()).add(identifier);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Hides the sale advertisements sold before a date, evicting the cached
+	 * searches that contain them.
+	 *
+	 * @param limit the oldest sold date of a visible sale advertisement
+	 * @return the identifiers of the hidden sale advertisements
+	 */
+	public List<Integer> hideSoldBefore(LocalDateTime limit) {
+		checkNotNull(limit, "Received a null pointer as limit");
+
+		lock.writeLock().lock();
+		try {
+			if (!loaded)
+				return Collections.emptyList();
+
+			List<Integer> expired = new ArrayList<>();
+			soldPostings.headMap(limit, false).values().forEach(expired::addAll);
+
+			for (Integer id : expired) {
+				evictMatching(documents.get(id));
+				removeDocument(id);
+			}
+			return expired;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates the role of the owner of sale advertisements, which changes their
+	 * position in the search order.
+	 *
+	 * @param userId the user id
+	 * @param role   the new role
+	 */
+	public void updateOwnerRole(Integer userId, Role role) {
+		lock.writeLock().lock();
+		try {
+			if (!loaded)
+				return;
+
+			Set<Integer> ids = ownerPostings.get(userId);
+			if (ids == null)
+				return;
+
+			for (Integer id : ids) {
+				IndexedSaleAdvertisement old = documents.get(id);
+				IndexedSaleAdvertisement updated = old.withRole(role.ordinal());
+				evictMatching(old);
+				ordered.remove(old);
+				documents.put(id, updated);
+				ordered.add(updated);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates the average rating of an owner of sale advertisements.
+	 *
+	 * @param userId        the user id
+	 * @param averageRating the average rating, null if the user is not rated
+	 */
+	public void updateOwnerRating(Integer userId, Double averageRating) {
+		lock.writeLock().lock();
+		try {
+			if (!loaded)
+				return;
+
+			Double oldRating = ownerRatings.get(userId);
+			for (Integer id : ownerPostings.getOrDefault(userId, Collections.emptySet())) {
+				evictMatching(documents.get(id), oldRating, averageRating);
+			}
+
+			if (averageRating == null)
+				ownerRatings.remove(userId);
+			else
+				ownerRatings.put(userId, averageRating);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the statistics of the search result cache.
+	 *
+	 * @return the cache statistics
+	 */
+	public CacheStats getCacheStats() {
+		return results.stats();
+	}
+
+	/**
+	 * Gets the number of searches in the cache.
+	 *
+	 * @return the number of cached searches
+	 */
+	@ManagedAttribute(description = "Number of cached searches")
+	public long getCachedSearches() {
+		return results.size();
+	}
+
+	/**
+	 * Gets the number of searches answered by the cache.
+	 *
+	 * @return the hit count
+	 */
+	@ManagedAttribute(description = "Searches answered by the cache")
+	public long getCacheHitCount() {
+		return results.stats().hitCount();
+	}
+
+	/**
+	 * Gets the number of searches not found in the cache.
+	 *
+	 * @return the miss count
+	 */
+	@ManagedAttribute(description = "Searches not found in the cache")
+	public long getCacheMissCount() {
+		return results.stats().missCount();
+	}
+
+	/**
+	 * Gets the ratio of searches answered by the cache.
+	 *
+	 * @return the hit rate
+	 */
+	@ManagedAttribute(description = "Ratio of searches answered by the cache")
+	public double getCacheHitRate() {
+		return results.stats().hitRate();
+	}
+
+	/**
+	 * Gets the number of searches evicted from the cache to keep it under its
+	 * maximum size. Evictions caused by changes are not counted.
+	 *
+	 * @return the eviction count
+	 */
+	@ManagedAttribute(description = "Searches evicted to keep the cache under its maximum size")
+	public long getCacheEvictionCount() {
+		return results.stats().evictionCount();
+	}
+
+	/**
+	 * Removes every search from the cache.
+	 */
+	@ManagedOperation(description = "Removes every search from the cache")
+	public void clearCache() {
+		results.invalidateAll();
+	}
+
+	/**
+	 * Splits a text into normalized tokens: lower case and without diacritics.
+	 *
+	 * @param text the text
+	 * @return the tokens
+	 */
+	static Set<String> tokenize(String text) {
+		Set<String> tokens = new LinkedHashSet<>();
+		if (text == null)
+			return tokens;
+
+		for (String token : TOKEN_SEPARATOR.split(normalize(text))) {
+			if (!token.isEmpty())
+				tokens.add(token);
+		}
+		return tokens;
+	}
+
+	/**
+	 * Normalizes a text: lower case and without diacritics.
+	 *
+	 * @param text the text
+	 * @return the normalized text
+	 */
+	static String normalize(String text) {
+		String decomposed = Normalizer.normalize(text.trim(), Normalizer.Form.NFD);
+		return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Loads the index from the database the first time it is used.
+	 */
+	private void ensureLoaded() {
+		if (loaded)
+			return;
+
+		lock.writeLock().lock();
+		try {
+			if (loaded)
+				return;
+
+			for (Object[] row : userRepository.findAverageRatings()) {
+				ownerRatings.put((Integer) row[0], ((Number) row[1]).doubleValue());
+			}
+
+			LocalDateTime visibleSince = LocalDateTime.now().minus(SOLD_VISIBILITY);
+			for (Object[] row : saleAdvertisementRepository.findSearchIndexEntries(visibleSince)) {
+				addDocument((Integer) row[0], (Integer) row[1], (String) row[2], (Role) row[3],
+						(LocalDateTime) row[4], (BigDecimal) row[5], (String) row[6], (String) row[7],
+						(LocalDateTime) row[8]);
+			}
+
+			loaded = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Encodes the sort key of a sale advertisement into a cursor.
+	 *
+	 * @param ad the indexed sale advertisement
+	 * @return the cursor
+	 */
+	private static String encodeCursor(IndexedSaleAdvertisement ad) {
+		String key = ad.role + CURSOR_SEPARATOR + (ad.date == null ? "" : ad.date.toString()) + CURSOR_SEPARATOR
+				+ ad.id;
+		return CURSOR_ENCODER.encodeToString(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes a cursor into a probe with the sort key of the sale advertisement it
+	 * points to.
+	 *
+	 * @param cursor the cursor
+	 * @return the probe
+	 */
+	private static IndexedSaleAdvertisement decodeCursor(String cursor) {
+		try {
+			String key = new String(CURSOR_DECODER.decode(cursor), StandardCharsets.UTF_8);
+			String[] parts = key.split(CURSOR_SEPARATOR, -1);
+			checkArgument(parts.length == 3, "Invalid search cursor");
+
+			LocalDateTime date = parts[1].isEmpty() ? null : LocalDateTime.parse(parts[1]);
+			return new IndexedSaleAdvertisement(Integer.valueOf(parts[2]), null, null, Integer.parseInt(parts[0]),
+					date, null);
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid search cursor", e);
+		}
+	}
+
+	/**
+	 * Finds the first sale advertisements after the probe matching the ranges,
+	 * walking the whole index in search order. The caller holds the read lock.
+	 *
+	 * @param start    the probe, or null to start from the first one
+	 * @param criteria the criteria
+	 * @param count    the maximum number of sale advertisements
+	 * @return the sale advertisements, in search order
+	 */
+	private List<IndexedSaleAdvertisement> firstInOrder(IndexedSaleAdvertisement start,
+			SaleAdvertisementSearchCriteria criteria, int count) {
+		List<IndexedSaleAdvertisement> found = new ArrayList<>();
+		for (IndexedSaleAdvertisement ad : start == null ? ordered : ordered.tailSet(start, false)) {
+			if (found.size() >= count)
+				break;
+			if (matchesRanges(ad, criteria, ownerRatings.get(ad.ownerId)))
+				found.add(ad);
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the first candidates after the probe matching the ranges, keeping
+	 * them in a heap whose top is the last one, so only the candidates before it
+	 * are checked and none is sorted but the ones returned. The caller holds the
+	 * read lock.
+	 *
+	 * @param candidates the candidate identifiers
+	 * @param start      the probe, or null to start from the first one
+	 * @param criteria   the criteria
+	 * @param count      the maximum number of sale advertisements
+	 * @return the sale advertisements, in search order
+	 */
+	private List<IndexedSaleAdvertisement> firstCandidates(Set<Integer> candidates, IndexedSaleAdvertisement start,
+			SaleAdvertisementSearchCriteria criteria, int count) {
+		PriorityQueue<IndexedSaleAdvertisement> first = new PriorityQueue<>(
+				Math.min(count, candidates.size()) + 1, SEARCH_ORDER.reversed());
+
+		for (Integer id : candidates) {
+			IndexedSaleAdvertisement ad = documents.get(id);
+			if (start != null && SEARCH_ORDER.compare(ad, start) <= 0)
+				continue;
+			if (first.size() >= count && SEARCH_ORDER.compare(ad, first.peek()) >= 0)
+				continue;
+			if (!matchesRanges(ad, criteria, ownerRatings.get(ad.ownerId)))
+				continue;
+
+			first.add(ad);
+			if (first.size() > count)
+				first.poll();
+		}
+
+		List<IndexedSaleAdvertisement> found = new ArrayList<>(first);
+		found.sort(SEARCH_ORDER);
+		return found;
+	}
+
+	/**
+	 * Intersects the posting lists of the city, the owners and the keywords.
+	 *
+	 * @param key the search, with its normalized criteria
+	 * @return the candidate identifiers, or null if every sale advertisement is a
+	 *         candidate
+	 */
+	private Set<Integer> findCandidates(SearchKey key) {
+		List<Set<Integer>> postings = new ArrayList<>();
+
+		if (key.city != null) {
+			postings.add(cityPostings.getOrDefault(key.city, Collections.emptySet()));
+		}
+
+		if (key.ownerIds != null) {
+			Set<Integer> owned = new HashSet<>();
+			for (Integer ownerId : key.ownerIds) {
+				owned.addAll(ownerPostings.getOrDefault(ownerId, Collections.emptySet()));
+			}
+			postings.add(owned);
+		}
+
+		for (String keyword : key.keywords) {
+			postings.add(prefixPostings(keyword));
+		}
+
+		if (postings.isEmpty())
+			return null;
+
+		postings.sort(Comparator.comparingInt(Set::size));
+
+		Set<Integer> candidates = new HashSet<>(postings.get(0));
+		for (int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+			candidates.retainAll(postings.get(i));
+		}
+		return candidates;
+	}
+
+	/**
+	 * Gets the identifiers of the sale advertisements with a token starting with
+	 * the given one.
+	 *
+	 * @param token the token
+	 * @return the identifiers
+	 */
+	private Set<Integer> prefixPostings(String token) {
+		NavigableMap<String, Set<Integer>> matches = tokenPostings.subMap(token, true,
+				token + Character.MAX_VALUE, true);
+
+		if (matches.isEmpty())
+			return Collections.emptySet();
+		if (matches.size() == 1)
+			return matches.firstEntry().getValue();
+
+		Set<Integer> union = new HashSet<>();
+		matches.values().forEach(union::addAll);
+		return union;
+	}
+
+	/**
+	 * Evicts the cached searches whose criteria match a sale advertisement. The
+	 * caller holds the write lock.
+	 *
+	 * @param ad the indexed sale advertisement, or null if it is not indexed
+	 */
+	private void evictMatching(IndexedSaleAdvertisement ad) {
+		if (ad == null)
+			return;
+
+		Double rating = ownerRatings.get(ad.ownerId);
+		evictMatching(ad, rating, rating);
+	}
+
+	/**
+	 * Evicts the cached searches whose criteria match a sale advertisement with
+	 * either of two ratings of its owner. The caller holds the write lock.
+	 *
+	 * @param ad        the indexed sale advertisement
+	 * @param oldRating the rating before the change, null if it was not rated
+	 * @param newRating the rating after the change, null if it is not rated
+	 */
+	private void evictMatching(IndexedSaleAdvertisement ad, Double oldRating, Double newRating) {
+		Set<SearchKey> keys = new HashSet<>(unfilteredKeys);
+		keys.addAll(keysByCity.getOrDefault(ad.city, Collections.emptySet()));
+		keys.addAll(keysByOwner.getOrDefault(ad.ownerId, Collections.emptySet()));
+		for (String token : ad.tokens) {
+			for (int end = 1; end <= token.length(); end++) {
+				keys.addAll(keysByKeyword.getOrDefault(token.substring(0, end), Collections.emptySet()));
+			}
+		}
+
+		for (SearchKey key : keys) {
+			if (matches(ad, key, oldRating) || (!Objects.equals(oldRating, newRating) && matches(ad, key, newRating)))
+				results.invalidate(key);
+		}
+	}
+
+	/**
+	 * Checks all the criteria against a single sale advertisement.
+	 *
+	 * @param ad     the indexed sale advertisement
+	 * @param key    the search, with its normalized criteria
+	 * @param rating the average rating of the owner, null if it is not rated
+	 * @return true, if successful
+	 */
+	private boolean matches(IndexedSaleAdvertisement ad, SearchKey key, Double rating) {
+		if (key.city != null && !key.city.equals(ad.city))
+			return false;
+		if (key.ownerIds != null && !key.ownerIds.contains(ad.ownerId))
+			return false;
+
+		for (String keyword : key.keywords) {
+			boolean found = false;
+			for (String token : ad.tokens) {
+				if (token.startsWith(keyword)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found)
+				return false;
+		}
+
+		return matchesRanges(ad, key.criteria, rating);
+	}
+
+	/**
+	 * Registers a cached search under its city, else its owners, else its
+	 * longest keyword, so the changes matching it find it.
+	 *
+	 * @param key the search
+	 */
+	private void register(SearchKey key) {
+		if (key.city != null) {
+			addKey(keysByCity, key.city, key);
+		} else if (key.ownerIds != null) {
+			for (Integer ownerId : key.ownerIds) {
+				addKey(keysByOwner, ownerId, key);
+			}
+		} else if (key.keywords.length > 0) {
+			addKey(keysByKeyword, key.longestKeyword(), key);
+		} else {
+			unfilteredKeys.add(key);
+		}
+	}
+
+	/**
+	 * Unregisters a search removed from the cache.
+	 * <p>
+	 * An equal search may have been cached again meanwhile, and its registration
+	 * is shared, so it is registered back in that case.
+	 *
+	 * @param key the search
+	 */
+	private void unregister(SearchKey key) {
+		if (key.city != null) {
+			removeKey(keysByCity, key.city, key);
+		} else if (key.ownerIds != null) {
+			for (Integer ownerId : key.ownerIds) {
+				removeKey(keysByOwner, ownerId, key);
+			}
+		} else if (key.keywords.length > 0) {
+			removeKey(keysByKeyword, key.longestKeyword(), key);
+		} else {
+			unfilteredKeys.remove(key);
+		}
+
+		if (results.asMap().containsKey(key))
+			register(key);
+	}
+
+	private static <K> void addKey(Map<K, Set<SearchKey>> keys, K value, SearchKey key) {
+		keys.compute(value, (k, registered) -> {
+			Set<SearchKey> result = registered == null ? ConcurrentHashMap.newKeySet() : registered;
+			result.add(key);
+			return result;
+		});
+	}
+
+	private static <K> void removeKey(Map<K, Set<SearchKey>> keys, K value, SearchKey key) {
+		keys.computeIfPresent(value, (k, registered) -> {
+			registered.remove(key);
+			return registered.isEmpty() ? null : registered;
+		});
+	}
+
+	/**
+	 * Checks the date, price and rating ranges.
+	 *
+	 * @param ad       the indexed sale advertisement
+	 * @param criteria the criteria
+	 * @param rating   the average rating of the owner, null if it is not rated
+	 * @return true, if successful
+	 */
+	private boolean matchesRanges(IndexedSaleAdvertisement ad, SaleAdvertisementSearchCriteria criteria,
+			Double rating) {
+		if (criteria.getMinDate() != null && (ad.date == null || ad.date.isBefore(criteria.getMinDate())))
+			return false;
+		if (criteria.getMaxDate() != null && (ad.date == null || ad.date.isAfter(criteria.getMaxDate())))
+			return false;
+		if (ad.price != null) {
+			if (criteria.getMinPrice() != null && ad.price.compareTo(criteria.getMinPrice()) < 0)
+				return false;
+			if (criteria.getMaxPrice() != null && ad.price.compareTo(criteria.getMaxPrice()) > 0)
+				return false;
+		}
+		if (criteria.getMinRating() != null && (rating == null || rating < criteria.getMinRating()))
+			return false;
+		return true;
+	}
+
+	/**
+	 * Adds a document to all the structures. The caller holds the write lock.
+	 */
+	private void addDocument(Integer id, Integer ownerId, String city, Role role, LocalDateTime date,
+			BigDecimal price, String title, String description, LocalDateTime soldDate) {
+		IndexedSaleAdvertisement ad = new IndexedSaleAdvertisement(id, ownerId, city == null ? "" : normalize(city),
+				role == null ? Role.ROLE_USER.ordinal() : role.ordinal(), date, price);
+		ad.soldDate = soldDate;
+
+		Set<String> tokens = tokenize(title);
+		tokens.addAll(tokenize(description));
+		ad.tokens = tokens.toArray(new String[0]);
+
+		documents.put(id, ad);
+		ordered.add(ad);
+		for (String token : ad.tokens) {
+			tokenPostings.computeIfAbsent(token, key -> new HashSet<>()).add(id);
+		}
+		cityPostings.computeIfAbsent(ad.city, key -> new HashSet<>()).add(id);
+		ownerPostings.computeIfAbsent(ownerId, key -> new HashSet<>()).add(id);
+		if (soldDate != null)
+			soldPostings.computeIfAbsent(soldDate, key -> new HashSet<>()).add(id);
+	}
+
+	/**
+	 * Removes a document from all the structures. The caller holds the write
+	 * lock.
+	 */
+	private void removeDocument(Integer id) {
+		IndexedSaleAdvertisement ad = documents.remove(id);
+		if (ad == null)
+			return;
+
+		ordered.remove(ad);
+		for (String token : ad.tokens) {
+			removePosting(tokenPostings, token, id);
+		}
+		removePosting(cityPostings, ad.city, id);
+		removePosting(ownerPostings, ad.ownerId, id);
+		if (ad.soldDate != null)
+			removePosting(soldPostings, ad.soldDate, id);
+	}
+
+	private static <K> void removePosting(Map<K, Set<Integer>> postings, K key, Integer id) {
+		Set<Integer> ids = postings.get(key);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty())
+				postings.remove(key);
+		}
+	}
+
+	/**
+	 * Key of a cached search, with its city and keywords normalized once.
+	 */
+	private static final class SearchKey {
+
+		private final SaleAdvertisementSearchCriteria criteria;
+
+		private final String after;
+
+		private final int limit;
+
+		/** The normalized city, or null if the search does not filter by city. */
+		private final String city;
+
+		/** The owners, or null if the search does not filter by owner. */
+		private final Set<Integer> ownerIds;
+
+		/** The normalized keywords. */
+		private final String[] keywords;
+
+		private SearchKey(SaleAdvertisementSearchCriteria criteria, String after, int limit) {
+			this.criteria = criteria;
+			this.after = after;
+			this.limit = limit;
+			this.city = criteria.getCity() == null ? null : normalize(criteria.getCity());
+			this.ownerIds = criteria.getOwnerIds();
+			this.keywords = tokenize(criteria.getKeywords()).toArray(new String[0]);
+		}
+
+		private String longestKeyword() {
+			String longest = keywords[0];
+			for (String keyword : keywords) {
+				if (keyword.length() > longest.length())
+					longest = keyword;
+			}
+			return longest;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(criteria, after, limit);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof SearchKey))
+				return false;
+			SearchKey other = (SearchKey) obj;
+			return limit == other.limit && Objects.equals(criteria, other.criteria)
+					&& Objects.equals(after, other.after);
+		}
+	}
+
+	/**
+	 * The values of a sale advertisement kept by the index.
+	 */
+	private static final class IndexedSaleAdvertisement {
+
+		private final Integer id;
+
+		private final Integer ownerId;
+
+		private final String city;
+
+		private final int role;
+
+		private final LocalDateTime date;
+
+		private final BigDecimal price;
+
+		private String[] tokens;
+
+		private LocalDateTime soldDate;
+
+		private IndexedSaleAdvertisement(Integer id, Integer ownerId, String city, int role, LocalDateTime date,
+				BigDecimal price) {
+			this.id = id;
+			this.ownerId = ownerId;
+			this.city = city;
+			this.role = role;
+			this.date = date;
+			this.price = price;
+		}
+
+		private IndexedSaleAdvertisement withRole(int newRole) {
+			IndexedSaleAdvertisement copy = new IndexedSaleAdvertisement(id, ownerId, city, newRole, date, price);
+			copy.tokens = tokens;
+			copy.soldDate = soldDate;
+			return copy;
+		}
+	}
+
+}
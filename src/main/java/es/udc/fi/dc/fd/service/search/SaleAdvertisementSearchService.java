@@ -0,0 +1,72 @@
+package es.udc.fi.dc.fd.service.search;
+
+import java.util.Iterator;
+
+import es.udc.fi.dc.fd.model.dto.SaleAdvertisementWithLoggedUserInfoDTO;
+import es.udc.fi.dc.fd.model.form.SearchCriteriaForm;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.service.user.exceptions.UserNoRatingException;
+import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
+
+/**
+ * The Interface SaleAdvertisementSearchService.
+ * <p>
+ * Search pipeline shared by the sale advertisement list views and the REST
+ * api. It normalizes the search criteria, runs the search and builds the DTOs
+ * seen by the logged user.
+ */
+public interface SaleAdvertisementSearchService {
+
+	/**
+	 * Search a page of the sale advertisements matching the criteria, as seen by
+	 * the logged user. Sale advertisements sold more than one day ago are not
+	 * returned.
+	 *
+	 * @param userLogged the user logged
+	 * @param form       the search criteria form, with the raw values sent by the
+	 *                   user
+	 * @param after      the cursor returned with the previous page, or null for
+	 *                   the first page
+	 * @param limit      the maximum number of sale advertisements of the page, or
+	 *                   null for the default page size
+	 * @return the page of sale advertisements
+	 * @throws UserNotFoundException the user not found exception
+	 * @throws UserNoRatingException the user no rating exception
+	 */
+	SearchPage<SaleAdvertisementWithLoggedUserInfoDTO> search(DefaultUserEntity userLogged, SearchCriteriaForm form,
+			String after, Integer limit) throws UserNotFoundException, UserNoRatingException;
+
+	/**
+	 * Search a page of the sale advertisements matching the criteria published by
+	 * the users followed by the logged user. Without criteria, the page is read
+	 * from the feed of the logged user, newest publication first.
+	 *
+	 * @param userLogged the user logged
+	 * @param form       the search criteria form, with the raw values sent by the
+	 *                   user
+	 * @param after      the cursor returned with the previous page, or null for
+	 *                   the first page
+	 * @param limit      the maximum number of sale advertisements of the page, or
+	 *                   null for the default page size
+	 * @return the page of sale advertisements
+	 * @throws UserNotFoundException the user not found exception
+	 * @throws UserNoRatingException the user no rating exception
+	 */
+	SearchPage<SaleAdvertisementWithLoggedUserInfoDTO> searchFollowed(DefaultUserEntity userLogged,
+			SearchCriteriaForm form, String after, Integer limit) throws UserNotFoundException, UserNoRatingException;
+
+	/**
+	 * Iterate over every sale advertisement matching the criteria, as seen by the
+	 * logged user. The sale advertisements are read one page at a time as the
+	 * iterator advances, so the memory used does not depend on the number of
+	 * results.
+	 *
+	 * @param userLogged the user logged
+	 * @param form       the search criteria form, with the raw values sent by the
+	 *                   user
+	 * @return the iterator over the sale advertisements
+	 * @throws IllegalArgumentException if a date of the form is not valid
+	 */
+	Iterator<SaleAdvertisementWithLoggedUserInfoDTO> iterate(DefaultUserEntity userLogged, SearchCriteriaForm form);
+
+}
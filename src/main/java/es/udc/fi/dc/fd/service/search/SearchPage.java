@@ -0,0 +1,53 @@
+package es.udc.fi.dc.fd.service.search;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of search results.
+ * <p>
+ * The next cursor is an opaque token which, sent back with the same criteria,
+ * returns the page following this one. It is null when this is the last page.
+ *
+ * @param <T> the type of the results
+ */
+public final class SearchPage<T> implements Serializable {
+
+	/**
+	 * Serialization ID.
+	 */
+	private static final long serialVersionUID = 6211548403617226012L;
+
+	/** The results of the page. */
+	private final List<T> items;
+
+	/** The cursor of the next page. */
+	private final String nextCursor;
+
+	/**
+	 * Instantiates a new search page.
+	 *
+	 * @param items      the results of the page
+	 * @param nextCursor the cursor of the next page, null if there are no more
+	 *                   results
+	 */
+	public SearchPage(List<T> items, String nextCursor) {
+		super();
+		this.items = Collections.unmodifiableList(items);
+		this.nextCursor = nextCursor;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+
+}
@@ -0,0 +1,59 @@
+package es.udc.fi.dc.fd.service.search;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically hides from the search index and the followed sellers feeds the
+ * sale advertisements sold more than
+ * {@link SaleAdvertisementSearchIndex#SOLD_VISIBILITY} ago.
+ * <p>
+ * The sweep only reads the oldest sold dates of the index, so the searches do
+ * not have to check the sale date of every result.
+ */
+@Component
+public class SoldSaleAdvertisementSweeper {
+
+	private static final Logger logger = LoggerFactory.getLogger(SoldSaleAdvertisementSweeper.class);
+
+	/** The sale advertisement search index. */
+	private final SaleAdvertisementSearchIndex searchIndex;
+
+	/** The followed sellers feed. */
+	private final FollowedSellersFeed feed;
+
+	/**
+	 * Instantiates a new sold sale advertisement sweeper.
+	 *
+	 * @param searchIndex the sale advertisement search index
+	 * @param feed        the followed sellers feed
+	 */
+	@Autowired
+	public SoldSaleAdvertisementSweeper(final SaleAdvertisementSearchIndex searchIndex,
+			final FollowedSellersFeed feed) {
+		super();
+		this.searchIndex = checkNotNull(searchIndex, "Received a null pointer as searchIndex");
+		this.feed = checkNotNull(feed, "Received a null pointer as feed");
+	}
+
+	/**
+	 * Hides the sale advertisements whose visibility after the sale has expired.
+	 */
+	@Scheduled(fixedDelay = 60000, initialDelay = 60000)
+	public void sweep() {
+		LocalDateTime limit = LocalDateTime.now().minus(SaleAdvertisementSearchIndex.SOLD_VISIBILITY);
+		List<Integer> hidden = searchIndex.hideSoldBefore(limit);
+		feed.removeAll(hidden);
+		if (!hidden.isEmpty())
+			logger.debug("Hidden {} sold sale advertisements from the search index", hidden.size());
+	}
+
+}
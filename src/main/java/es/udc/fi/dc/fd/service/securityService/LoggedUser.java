@@ -0,0 +1,94 @@
+package es.udc.fi.dc.fd.service.securityService;
+
+import java.util.Collection;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import es.udc.fi.dc.fd.model.Role;
+
+/**
+ * The Class LoggedUser. Principal of the authenticated users, holding the
+ * values of the user read when it signs in, so they are not read from the
+ * database again on each request.
+ */
+public class LoggedUser extends User {
+
+	/**
+	 * Serialization ID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/** The user id. */
+	private final Integer id;
+
+	/** The role. */
+	private final Role role;
+
+	/** The city. */
+	private final String city;
+
+	/**
+	 * Instantiates a new logged user.
+	 *
+	 * @param id          the user id
+	 * @param login       the login
+	 * @param password    the password
+	 * @param role        the role
+	 * @param city        the city
+	 * @param authorities the authorities
+	 */
+	public LoggedUser(Integer id, String login, String password, Role role, String city,
+			Collection<? extends GrantedAuthority> authorities) {
+		super(login, password, authorities);
+		this.id = id;
+		this.role = role;
+		this.city = city;
+	}
+
+	/**
+	 * Gets the user id.
+	 *
+	 * @return the user id
+	 */
+	public Integer getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the login.
+	 *
+	 * @return the login
+	 */
+	public String getLogin() {
+		return getUsername();
+	}
+
+	/**
+	 * Gets the role.
+	 *
+	 * @return the role
+	 */
+	public Role getRole() {
+		return role;
+	}
+
+	/**
+	 * Gets the city.
+	 *
+	 * @return the city
+	 */
+	public String getCity() {
+		return city;
+	}
+
+	/**
+	 * Copies the logged user, with its password.
+	 *
+	 * @return the copy
+	 */
+	LoggedUser copy() {
+		return new LoggedUser(id, getUsername(), getPassword(), role, city, getAuthorities());
+	}
+
+}
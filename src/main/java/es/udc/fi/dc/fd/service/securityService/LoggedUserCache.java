@@ -0,0 +1,53 @@
+package es.udc.fi.dc.fd.service.securityService;
+
+import java.time.Duration;
+
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of the users read when they authenticate, used by the
+ * authentication provider so signing in does not read the user from the
+ * database each time.
+ * <p>
+ * The users must be removed from the cache when their role or password
+ * changes. The entries also expire after {@link #TIME_TO_LIVE}, bounding how
+ * long a change made elsewhere goes unnoticed.
+ */
+public class LoggedUserCache implements UserCache {
+
+	/** Maximum number of users kept. */
+	private static final long MAX_USERS = 10_000;
+
+	/** Time after which an user is read again from the database. */
+	private static final Duration TIME_TO_LIVE = Duration.ofMinutes(10);
+
+	/** Login to user. */
+	private final Cache<String, LoggedUser> users = CacheBuilder.newBuilder().maximumSize(MAX_USERS)
+			.expireAfterWrite(TIME_TO_LIVE).build();
+
+	/**
+	 * Returns a copy of the cached user, as the authentication erases the
+	 * password of the user it returns.
+	 */
+	@Override
+	public UserDetails getUserFromCache(String username) {
+		LoggedUser user = users.getIfPresent(username);
+		return user == null ? null : user.copy();
+	}
+
+	@Override
+	public void putUserInCache(UserDetails user) {
+		if (user instanceof LoggedUser)
+			users.put(user.getUsername(), ((LoggedUser) user).copy());
+	}
+
+	@Override
+	public void removeUserFromCache(String username) {
+		users.invalidate(username);
+	}
+
+}
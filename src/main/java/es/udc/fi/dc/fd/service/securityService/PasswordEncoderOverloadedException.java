@@ -0,0 +1,27 @@
+package es.udc.fi.dc.fd.service.securityService;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * Thrown when a password can not be hashed as there are too many waiting. It
+ * is an authentication exception, so signing in fails as with a wrong password
+ * instead of with a server error.
+ */
+public class PasswordEncoderOverloadedException extends AuthenticationServiceException {
+
+	/**
+	 * Serialization ID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Instantiates a new password encoder overloaded exception.
+	 *
+	 * @param message the message
+	 * @param cause   the cause
+	 */
+	public PasswordEncoderOverloadedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,164 @@
+package es.udc.fi.dc.fd.service.securityService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * BCrypt password encoder which hashes and checks the passwords in its own
+ * bounded pool of threads, so a burst of sign ups or sign ins can not take
+ * every request thread of the server.
+ * <p>
+ * The pool has a bounded queue. When it is full the password is rejected with
+ * a {@link PasswordEncoderOverloadedException} instead of waiting, and the size
+ * of the queue is exported through JMX.
+ * <p>
+ * The passwords hashed with a cost lower than the configured one are reported
+ * by {@link #upgradeEncoding(String)}, so they can be hashed again when the user
+ * signs in.
+ */
+@ManagedResource(objectName = "es.udc.fi.dc.fd:name=PooledPasswordEncoder", description = "Password hashing pool")
+public class PooledPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+	/** Cost of a BCrypt hash, as in <code>$2a$10$...</code>. */
+	private static final Pattern BCRYPT_COST = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+
+	/** The cost of the new hashes. */
+	private final int strength;
+
+	/** The encoder. */
+	private final BCryptPasswordEncoder encoder;
+
+	/** The hashing pool. */
+	private final ThreadPoolExecutor executor;
+
+	/** Number of passwords rejected as the pool was full. */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Instantiates a new pooled password encoder.
+	 *
+	 * @param strength      the BCrypt cost of the new hashes
+	 * @param threads       the number of hashing threads
+	 * @param queueCapacity the maximum number of passwords waiting to be hashed
+	 */
+	public PooledPasswordEncoder(final int strength, final int threads, final int queueCapacity) {
+		super();
+		checkArgument(threads > 0, "The number of threads must be positive");
+		checkArgument(queueCapacity > 0, "The queue capacity must be positive");
+
+		this.strength = strength;
+		this.encoder = new BCryptPasswordEncoder(strength);
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				new ThreadFactoryBuilder().setNameFormat("password-encoder-%d").setDaemon(true).build());
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return execute(() -> encoder.encode(rawPassword));
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		return execute(() -> encoder.matches(rawPassword, encodedPassword));
+	}
+
+	/**
+	 * Checks if a password was hashed with a lower cost than the configured one.
+	 *
+	 * @param encodedPassword the encoded password
+	 * @return true, if it should be hashed again
+	 */
+	public boolean upgradeEncoding(String encodedPassword) {
+		if (encodedPassword == null)
+			return false;
+
+		Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+		return matcher.find() && Integer.parseInt(matcher.group(1)) < strength;
+	}
+
+	/**
+	 * Gets the number of passwords waiting to be hashed.
+	 *
+	 * @return the queue size
+	 */
+	@ManagedAttribute(description = "Passwords waiting to be hashed")
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Gets the number of passwords being hashed.
+	 *
+	 * @return the active count
+	 */
+	@ManagedAttribute(description = "Passwords being hashed")
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Gets the number of passwords hashed.
+	 *
+	 * @return the completed count
+	 */
+	@ManagedAttribute(description = "Passwords hashed")
+	public long getCompletedCount() {
+		return executor.getCompletedTaskCount();
+	}
+
+	/**
+	 * Gets the number of passwords rejected as the pool was full.
+	 *
+	 * @return the rejected count
+	 */
+	@ManagedAttribute(description = "Passwords rejected as the pool was full")
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Runs a task in the pool and waits for its result.
+	 *
+	 * @param task the task
+	 * @return the result
+	 */
+	private <T> T execute(Callable<T> task) {
+		try {
+			return executor.submit(task).get();
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw new PasswordEncoderOverloadedException("Too many passwords waiting to be hashed", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PasswordEncoderOverloadedException("Interrupted while hashing the password", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("The password could not be hashed", e.getCause());
+		}
+	}
+
+}
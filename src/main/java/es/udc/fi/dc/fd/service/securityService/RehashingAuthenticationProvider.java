@@ -0,0 +1,54 @@
+package es.udc.fi.dc.fd.service.securityService;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Authentication provider which hashes the password of an user again when it
+ * signs in, if it was hashed with a lower cost than the one of the
+ * {@link PooledPasswordEncoder}.
+ */
+public class RehashingAuthenticationProvider extends DaoAuthenticationProvider {
+
+	/** The Constant logger. */
+	private static final Logger logger = LoggerFactory.getLogger(RehashingAuthenticationProvider.class);
+
+	/** The service storing the new hashes. */
+	private UserPasswordService userPasswordService;
+
+	/**
+	 * Sets the service storing the new hashes.
+	 *
+	 * @param userPasswordService the user password service
+	 */
+	public void setUserPasswordService(UserPasswordService userPasswordService) {
+		this.userPasswordService = checkNotNull(userPasswordService,
+				"Received a null pointer as userPasswordService");
+	}
+
+	@Override
+	protected Authentication createSuccessAuthentication(Object principal, Authentication authentication,
+			UserDetails user) {
+		PasswordEncoder encoder = getPasswordEncoder();
+		if (userPasswordService != null && encoder instanceof PooledPasswordEncoder
+				&& ((PooledPasswordEncoder) encoder).upgradeEncoding(user.getPassword())) {
+			try {
+				userPasswordService.updatePassword(user.getUsername(),
+						encoder.encode(authentication.getCredentials().toString()));
+				getUserCache().removeUserFromCache(user.getUsername());
+			} catch (PasswordEncoderOverloadedException e) {
+				// The password is hashed again the next time
+				logger.debug("The password of {} could not be hashed again", user.getUsername(), e);
+			}
+		}
+
+		return super.createSuccessAuthentication(principal, authentication, user);
+	}
+
+}
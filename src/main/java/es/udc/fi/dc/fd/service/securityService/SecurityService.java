@@ -1,5 +1,7 @@
 package es.udc.fi.dc.fd.service.securityService;
 
+import es.udc.fi.dc.fd.model.UserEntity;
+
 /**
  * The Interface SecurityService.
  */
@@ -11,6 +13,27 @@ public interface SecurityService {
 	 */
 	String findLoggedInUsername();
 
+	/**
+	 * Find logged in user, with the values read when it signed in.
+	 *
+	 * @return the logged user, null if there is not an user logged in
+	 */
+	LoggedUser findLoggedInUser();
+
+	/**
+	 * Find logged in user id.
+	 *
+	 * @return the user id, null if there is not an user logged in
+	 */
+	Integer findLoggedInUserId();
+
+	/**
+	 * Updates the logged in user after its values have changed.
+	 *
+	 * @param user the user
+	 */
+	void updateLoggedInUser(UserEntity user);
+
 	/**
 	 * Autologin.
 	 *
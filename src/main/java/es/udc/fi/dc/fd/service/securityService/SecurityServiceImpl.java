@@ -5,11 +5,13 @@
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
 
+import es.udc.fi.dc.fd.model.UserEntity;
+
 /**
  * The Class SecurityServiceImpl.
  */
@@ -19,10 +21,6 @@ public class SecurityServiceImpl implements SecurityService {
 	@Autowired
 	private AuthenticationManager authenticationManager;
 
-	/** The user details service. */
-	@Autowired
-	private UserDetailsService userDetailsService;
-
 	/** The Constant logger. */
 	private static final Logger logger = LoggerFactory.getLogger(SecurityServiceImpl.class);
 
@@ -36,16 +34,46 @@ public String findLoggedInUsername() {
 		return null;
 	}
 
+	@Override
+	public LoggedUser findLoggedInUser() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication != null && authentication.getPrincipal() instanceof LoggedUser) {
+			return (LoggedUser) authentication.getPrincipal();
+		}
+
+		return null;
+	}
+
+	@Override
+	public Integer findLoggedInUserId() {
+		LoggedUser loggedUser = findLoggedInUser();
+		return loggedUser == null ? null : loggedUser.getId();
+	}
+
+	@Override
+	public void updateLoggedInUser(UserEntity user) {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication == null || !(authentication.getPrincipal() instanceof LoggedUser))
+			return;
+
+		// The principal is kept in the session, without the password hash, as the
+		// one built on sign in once the authentication erases its credentials
+		LoggedUser loggedUser = UserDetailsServiceImpl.createLoggedUser(user);
+		loggedUser.eraseCredentials();
+		UsernamePasswordAuthenticationToken updated = new UsernamePasswordAuthenticationToken(loggedUser, null,
+				loggedUser.getAuthorities());
+		updated.setDetails(authentication.getDetails());
+		SecurityContextHolder.getContext().setAuthentication(updated);
+	}
+
 	@Override
 	public void autologin(String username, String password) {
-		UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-		UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(
-				userDetails, password, userDetails.getAuthorities());
-		usernamePasswordAuthenticationToken.setDetails(userDetails);
-		this.authenticationManager.authenticate(usernamePasswordAuthenticationToken);
-
-		if (usernamePasswordAuthenticationToken.isAuthenticated()) {
-			SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken);
+		// The provider reads the user, through its cache
+		Authentication authentication = this.authenticationManager
+				.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+
+		if (authentication.isAuthenticated()) {
+			SecurityContextHolder.getContext().setAuthentication(authentication);
 			logger.debug("Auto login {} successfully!", username);
 		}
 	}
@@ -11,13 +11,14 @@
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.transaction.annotation.Transactional;
 
+import es.udc.fi.dc.fd.model.UserEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.repository.UserRepository;
 
 /**
  * The Class UserDetailsServiceImpl.
  */
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserPasswordService {
 	/** The user repository. */
 	@Autowired
 	private UserRepository userRepository;
@@ -32,11 +33,27 @@ public UserDetails loadUserByUsername(String username) {
 			throw new UsernameNotFoundException(username);
 		}
 
+		return createLoggedUser(user);
+
+	}
+
+	@Override
+	@Transactional
+	public void updatePassword(String login, String encodedPassword) {
+		this.userRepository.updatePassword(login, encodedPassword);
+	}
+
+	/**
+	 * Creates the principal of an user.
+	 *
+	 * @param user the user
+	 * @return the logged user
+	 */
+	static LoggedUser createLoggedUser(UserEntity user) {
 		Set<GrantedAuthority> grantedAuthorities = new HashSet<>();
 		grantedAuthorities.add(new SimpleGrantedAuthority(user.getRole().getRole()));
 
-		return new org.springframework.security.core.userdetails.User(user.getLogin(), user.getPassword(),
+		return new LoggedUser(user.getId(), user.getLogin(), user.getPassword(), user.getRole(), user.getCity(),
 				grantedAuthorities);
-
 	}
 }
@@ -0,0 +1,17 @@
+package es.udc.fi.dc.fd.service.securityService;
+
+/**
+ * The Interface UserPasswordService. Stores the password hash of an user when
+ * it is hashed again after signing in.
+ */
+public interface UserPasswordService {
+
+	/**
+	 * Replaces the password hash of an user.
+	 *
+	 * @param login           the login
+	 * @param encodedPassword the new password hash
+	 */
+	void updatePassword(String login, String encodedPassword);
+
+}
@@ -1,5 +1,6 @@
 package es.udc.fi.dc.fd.test.integration.service;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -17,6 +18,7 @@
 import org.springframework.transaction.annotation.Transactional;
 
 import es.udc.fi.dc.fd.model.ChatMessageEntity;
+import es.udc.fi.dc.fd.model.dto.ChatInboxEntryDTO;
 import es.udc.fi.dc.fd.model.persistence.DefaultChatMessageEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultChatRoomEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
@@ -60,6 +62,9 @@ class ITChatMessageService {
 	/** The content. */
 	private final String CONTENT = "content";
 
+	/** The maximum number of messages read at once. */
+	private final int PAGE_SIZE = 10;
+
 	@Autowired
 	private UserService userService;
 
@@ -104,7 +109,8 @@ void sendChatMessageTest()
 			Assert.assertEquals(chatId, chatRoom.getId());
 		}
 
-		List<DefaultChatMessageEntity> actual = chatMessageService.findChatMessages(userTwo.getId(), userOne.getId());
+		List<DefaultChatMessageEntity> actual = chatMessageService.findLatestChatMessages(userTwo.getId(),
+				userOne.getId(), PAGE_SIZE);
 
 		Assert.assertEquals(1, actual.size());
 		Assert.assertTrue(actual.contains(first));
@@ -113,7 +119,7 @@ void sendChatMessageTest()
 		ChatMessageEntity third = chatMessageService.sendChatMessage(userOne.getId(), userTwo.getId(), CONTENT);
 		ChatMessageEntity fourth = chatMessageService.sendChatMessage(userTwo.getId(), userOne.getId(), CONTENT);
 
-		actual = chatMessageService.findChatMessages(userTwo.getId(), userOne.getId());
+		actual = chatMessageService.findLatestChatMessages(userTwo.getId(), userOne.getId(), PAGE_SIZE);
 
 		Assert.assertEquals(4, actual.size());
 		Assert.assertTrue(actual.contains(first));
@@ -187,7 +193,7 @@ void findChatMessagesUserOneNotExistsTest()
 		userService.signUp(userTwo);
 
 		Assertions.assertThrows(UserNotFoundException.class, () -> {
-			chatMessageService.findChatMessages(NON_EXISTENT_ID, userTwo.getId());
+			chatMessageService.findLatestChatMessages(NON_EXISTENT_ID, userTwo.getId(), PAGE_SIZE);
 		});
 	}
 
@@ -200,7 +206,7 @@ void findChatMessagesUserTwoNotExistsTest()
 		userService.signUp(userOne);
 
 		Assertions.assertThrows(UserNotFoundException.class, () -> {
-			chatMessageService.findChatMessages(userOne.getId(), NON_EXISTENT_ID);
+			chatMessageService.findLatestChatMessages(userOne.getId(), NON_EXISTENT_ID, PAGE_SIZE);
 		});
 	}
 
@@ -234,11 +240,67 @@ void findfindChatMessagesTest()
 		userService.signUp(userOne);
 		userService.signUp(userTwo);
 
-		List<DefaultChatMessageEntity> list = chatMessageService.findChatMessages(userOne.getId(), userTwo.getId());
+		List<DefaultChatMessageEntity> list = chatMessageService.findLatestChatMessages(userOne.getId(),
+				userTwo.getId(), PAGE_SIZE);
 
 		Assert.assertEquals(0, list.size());
 	}
 
+	@Test
+	void findChatMessagesBeforeAndAfterTest()
+			throws UserLoginExistsException, UserEmailExistsException, UserLoginAndEmailExistsException,
+			UserNotFoundException, ChatRoomNotFoundException, IncorrectChatMessageException {
+		DefaultUserEntity userOne = createUser(LOGIN, EMAIL);
+		DefaultUserEntity userTwo = createUser(LOGIN2, EMAIL2);
+
+		userService.signUp(userOne);
+		userService.signUp(userTwo);
+
+		ChatMessageEntity first = chatMessageService.sendChatMessage(userOne.getId(), userTwo.getId(), CONTENT);
+		ChatMessageEntity second = chatMessageService.sendChatMessage(userTwo.getId(), userOne.getId(), CONTENT);
+		ChatMessageEntity third = chatMessageService.sendChatMessage(userOne.getId(), userTwo.getId(), CONTENT);
+		ChatMessageEntity fourth = chatMessageService.sendChatMessage(userTwo.getId(), userOne.getId(), CONTENT);
+
+		List<DefaultChatMessageEntity> latest = chatMessageService.findLatestChatMessages(userOne.getId(),
+				userTwo.getId(), 2);
+		Assert.assertEquals(Arrays.asList(third, fourth), latest);
+
+		List<DefaultChatMessageEntity> older = chatMessageService.findChatMessagesBefore(userOne.getId(),
+				userTwo.getId(), third.getId(), 2);
+		Assert.assertEquals(Arrays.asList(first, second), older);
+
+		List<DefaultChatMessageEntity> newer = chatMessageService.findChatMessagesAfter(userOne.getId(),
+				userTwo.getId(), first.getId(), 2);
+		Assert.assertEquals(Arrays.asList(second, third), newer);
+
+		Assert.assertTrue(chatMessageService
+				.findChatMessagesAfter(userOne.getId(), userTwo.getId(), fourth.getId(), 2).isEmpty());
+	}
+
+	@Test
+	void inboxTest() throws UserLoginExistsException, UserEmailExistsException, UserLoginAndEmailExistsException,
+			UserNotFoundException, ChatRoomNotFoundException, IncorrectChatMessageException {
+		DefaultUserEntity userOne = createUser(LOGIN, EMAIL);
+		DefaultUserEntity userTwo = createUser(LOGIN2, EMAIL2);
+
+		userService.signUp(userOne);
+		userService.signUp(userTwo);
+
+		chatMessageService.sendChatMessage(userOne.getId(), userTwo.getId(), CONTENT);
+		chatMessageService.sendChatMessage(userOne.getId(), userTwo.getId(), CONTENT + "2");
+
+		List<ChatInboxEntryDTO> inbox = chatRoomService.findInbox(userTwo.getId());
+		Assert.assertEquals(1, inbox.size());
+		Assert.assertEquals(userOne.getId(), inbox.get(0).getPeerId());
+		Assert.assertEquals(LOGIN, inbox.get(0).getPeerLogin());
+		Assert.assertEquals(CONTENT + "2", inbox.get(0).getLastMessage());
+		Assert.assertEquals(2, inbox.get(0).getUnreadCount());
+		Assert.assertEquals(0, chatRoomService.findInbox(userOne.getId()).get(0).getUnreadCount());
+
+		chatRoomService.markAsRead(inbox.get(0).getChatId(), userTwo.getId());
+		Assert.assertEquals(0, chatRoomService.findInbox(userTwo.getId()).get(0).getUnreadCount());
+	}
+
 	@Test
 	void findByIdNonExistentTest()
 			throws UserLoginExistsException, UserEmailExistsException, UserLoginAndEmailExistsException,
@@ -97,6 +97,22 @@ void getChatIdTest() throws UserLoginExistsException, UserEmailExistsException,
 		Assert.assertNotNull(chatRommId);
 	}
 
+	@Test
+	void getChatIdBothWaysTest() throws UserLoginExistsException, UserEmailExistsException,
+			UserLoginAndEmailExistsException, UserNotFoundException, ChatRoomNotFoundException {
+		DefaultUserEntity userOne = createUser(LOGIN, EMAIL);
+		DefaultUserEntity userTwo = createUser(LOGIN2, EMAIL2);
+
+		userService.signUp(userOne);
+		userService.signUp(userTwo);
+
+		Integer chatRommId = chatRoomService.getChatId(userTwo.getId(), userOne.getId(), true);
+
+		Assert.assertEquals(chatRommId, chatRoomService.getChatId(userOne.getId(), userTwo.getId(), true));
+		Assert.assertEquals(chatRommId, chatRoomService.getChatId(userTwo.getId(), userOne.getId(), false));
+		Assert.assertEquals(1, chatRoomService.findByUserId(userOne.getId()).size());
+	}
+
 	@Test
 	void getChatIdChatRoomNotExistsTest()
 			throws UserLoginExistsException, UserEmailExistsException, UserLoginAndEmailExistsException,
@@ -0,0 +1,99 @@
+package es.udc.fi.dc.fd.test.unit.controller.account;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import es.udc.fi.dc.fd.controller.ViewConstants;
+import es.udc.fi.dc.fd.controller.account.AccountController;
+import es.udc.fi.dc.fd.controller.account.AccountViewConstants;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.service.UserService;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementDTOAssembler;
+import es.udc.fi.dc.fd.service.securityService.PasswordEncoderOverloadedException;
+import es.udc.fi.dc.fd.service.securityService.SecurityService;
+
+/**
+ * Unit tests for the {@link AccountController}, checking the sign up when the
+ * password can not be hashed.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestAccountControllerSignUp {
+
+	@Mock
+	private UserService userService;
+
+	@Mock
+	private SecurityService securityService;
+
+	@Mock
+	private SaleAdvertisementDTOAssembler assembler;
+
+	/**
+	 * Mocked MVC context.
+	 */
+	private MockMvc mockMvc;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestAccountControllerSignUp() {
+		super();
+	}
+
+	@BeforeEach
+	public void setUpMockContext() {
+		MockitoAnnotations.initMocks(this);
+
+		mockMvc = MockMvcBuilders.standaloneSetup(new AccountController(userService, securityService, assembler))
+				.build();
+	}
+
+	@Test
+	void showsTheFormAgainWhenThePasswordCanNotBeHashed() throws Exception {
+		doThrow(new PasswordEncoderOverloadedException("Too many passwords waiting", null)).when(userService)
+				.signUp(any(DefaultUserEntity.class));
+
+		mockMvc.perform(getSignUpRequest()).andExpect(view().name(ViewConstants.VIEW_SIGNUP))
+				.andExpect(model().attributeExists(AccountViewConstants.TRY_AGAIN));
+
+		verify(securityService, never()).autologin(anyString(), anyString());
+	}
+
+	@Test
+	void sendsToTheSignInWhenTheAccountIsCreatedButNotSignedIn() throws Exception {
+		doThrow(new PasswordEncoderOverloadedException("Too many passwords waiting", null)).when(securityService)
+				.autologin("userLogin", "password");
+
+		mockMvc.perform(getSignUpRequest()).andExpect(view().name("redirect:/signIn"));
+	}
+
+	@Test
+	void signsInAfterSigningUp() throws Exception {
+		mockMvc.perform(getSignUpRequest()).andExpect(view().name(ViewConstants.WELCOME))
+				.andExpect(model().attributeDoesNotExist(AccountViewConstants.TRY_AGAIN));
+
+		verify(securityService).autologin("userLogin", "password");
+	}
+
+	private static RequestBuilder getSignUpRequest() {
+		return post("/signUp").param("login", "userLogin").param("password", "password").param("name", "name")
+				.param("lastName", "lastName").param("email", "user@udc.es").param("city", "city");
+	}
+
+}
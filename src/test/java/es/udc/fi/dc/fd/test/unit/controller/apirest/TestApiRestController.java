@@ -0,0 +1,178 @@
+package es.udc.fi.dc.fd.test.unit.controller.apirest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import es.udc.fi.dc.fd.controller.apirest.ApiRestController;
+import es.udc.fi.dc.fd.controller.exception.GlobalDefaultExceptionHandler;
+import es.udc.fi.dc.fd.model.Role;
+import es.udc.fi.dc.fd.model.State;
+import es.udc.fi.dc.fd.model.dto.SaleAdvertisementWithLoggedUserInfoDTO;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.service.SaleAdvertisementService;
+import es.udc.fi.dc.fd.service.UserService;
+import es.udc.fi.dc.fd.service.search.DefaultSaleAdvertisementSearchService;
+import es.udc.fi.dc.fd.service.search.FollowedSellersFeed;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementDTOAssembler;
+import es.udc.fi.dc.fd.service.search.SearchPage;
+import es.udc.fi.dc.fd.service.securityService.SecurityService;
+
+/**
+ * Unit tests for the {@link ApiRestController}, checking the streamed search
+ * over several pages of results.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestApiRestController {
+
+	private static final String PATH = "/api/search/stream?userName=login";
+
+	private static final String CURSOR = "cursor";
+
+	@Mock
+	private SaleAdvertisementService saleAdvertisementService;
+
+	@Mock
+	private SaleAdvertisementDTOAssembler assembler;
+
+	@Mock
+	private FollowedSellersFeed feed;
+
+	@Mock
+	private UserService userService;
+
+	@Mock
+	private SecurityService securityService;
+
+	private final DefaultUserEntity user = new DefaultUserEntity();
+
+	/**
+	 * Mocked MVC context.
+	 */
+	private MockMvc mockMvc;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestApiRestController() {
+		super();
+	}
+
+	@BeforeEach
+	public void setUpMockContext() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		when(userService.findByLogin("login")).thenReturn(user);
+		when(assembler.assemble(any(), eq(user), any())).thenAnswer(invocation -> {
+			List<SaleAdvertisementWithLoggedUserInfoDTO> saleAdvertisements = new ArrayList<>();
+			for (Integer id : invocation.<List<Integer>>getArgument(0))
+				saleAdvertisements.add(saleAdvertisement(id));
+			return saleAdvertisements;
+		});
+
+		DefaultSaleAdvertisementSearchService searchService = new DefaultSaleAdvertisementSearchService(
+				saleAdvertisementService, assembler, feed);
+		mockMvc = MockMvcBuilders.standaloneSetup(new ApiRestController(searchService, userService, securityService))
+				.setControllerAdvice(new GlobalDefaultExceptionHandler()).build();
+	}
+
+	@Test
+	void streamsEveryPageAsOneLineEach() throws Exception {
+		when(saleAdvertisementService.getSaleAdvertisementIdsBySearchCriteria(any(), isNull(), anyInt()))
+				.thenReturn(new SearchPage<>(Arrays.asList(1, 2), CURSOR));
+		when(saleAdvertisementService.getSaleAdvertisementIdsBySearchCriteria(any(), eq(CURSOR), anyInt()))
+				.thenReturn(new SearchPage<>(Arrays.asList(3), null));
+
+		List<JsonNode> lines = lines(mockMvc.perform(get(PATH)).andExpect(status().isOk())
+				.andExpect(content().contentType(ApiRestController.NDJSON_VALUE)).andReturn().getResponse()
+				.getContentAsString());
+
+		assertEquals(3, lines.size());
+		for (int i = 0; i < lines.size(); i++)
+			assertEquals(i + 1, lines.get(i).get("saleAdvertisementID").asInt());
+	}
+
+	@Test
+	void streamsNothingWithoutResults() throws Exception {
+		when(saleAdvertisementService.getSaleAdvertisementIdsBySearchCriteria(any(), isNull(), anyInt()))
+				.thenReturn(new SearchPage<>(Collections.emptyList(), null));
+
+		mockMvc.perform(get(PATH)).andExpect(status().isOk()).andExpect(content().string(""));
+	}
+
+	@Test
+	void endsWithAnErrorLineWhenALaterPageFails() throws Exception {
+		when(saleAdvertisementService.getSaleAdvertisementIdsBySearchCriteria(any(), isNull(), anyInt()))
+				.thenReturn(new SearchPage<>(Arrays.asList(1, 2), CURSOR));
+		when(saleAdvertisementService.getSaleAdvertisementIdsBySearchCriteria(any(), eq(CURSOR), anyInt()))
+				.thenThrow(new IllegalStateException("The index is not available"));
+
+		List<JsonNode> lines = lines(
+				mockMvc.perform(get(PATH)).andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+
+		assertEquals(3, lines.size());
+		assertEquals(1, lines.get(0).get("saleAdvertisementID").asInt());
+		assertEquals(2, lines.get(1).get("saleAdvertisementID").asInt());
+		assertEquals(1, lines.get(2).size());
+		assertEquals("The search could not be completed", lines.get(2).get("error").asText());
+	}
+
+	@Test
+	void answersAnInvalidDateWithABadRequest() throws Exception {
+		mockMvc.perform(get(PATH).param("minDate", "yesterday")).andExpect(status().isBadRequest());
+
+		verify(saleAdvertisementService, never()).getSaleAdvertisementIdsBySearchCriteria(any(), any(), anyInt());
+	}
+
+	@Test
+	void answersAFailingFirstPageWithAnError() throws Exception {
+		when(saleAdvertisementService.getSaleAdvertisementIdsBySearchCriteria(any(), isNull(), anyInt()))
+				.thenThrow(new IllegalStateException("The index is not available"));
+
+		mockMvc.perform(get(PATH)).andExpect(status().isInternalServerError());
+	}
+
+	private static List<JsonNode> lines(String body) throws Exception {
+		assertTrue(body.endsWith("\n"));
+
+		ObjectMapper mapper = new ObjectMapper();
+		List<JsonNode> lines = new ArrayList<>();
+		for (String line : body.split("\n"))
+			lines.add(mapper.readTree(line));
+		return lines;
+	}
+
+	private static SaleAdvertisementWithLoggedUserInfoDTO saleAdvertisement(Integer id) {
+		return new SaleAdvertisementWithLoggedUserInfoDTO(id, "Title " + id, "Description", null, BigDecimal.TEN,
+				State.STATE_ON_SALE, 1, "owner", "Madrid", Role.ROLE_USER, 0, new ArrayList<>(), false, false, null,
+				false, true);
+	}
+
+}
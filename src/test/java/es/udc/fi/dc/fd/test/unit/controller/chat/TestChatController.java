@@ -0,0 +1,127 @@
+package es.udc.fi.dc.fd.test.unit.controller.chat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import es.udc.fi.dc.fd.controller.chat.ChatController;
+import es.udc.fi.dc.fd.controller.exception.GlobalDefaultExceptionHandler;
+import es.udc.fi.dc.fd.model.Role;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.service.UserService;
+import es.udc.fi.dc.fd.service.chat.ChatMessageService;
+import es.udc.fi.dc.fd.service.chat.ChatNotificationRegistry;
+import es.udc.fi.dc.fd.service.chat.ChatRoomService;
+import es.udc.fi.dc.fd.service.chat.exceptions.ChatRoomNotFoundException;
+import es.udc.fi.dc.fd.service.securityService.LoggedUser;
+import es.udc.fi.dc.fd.service.securityService.SecurityService;
+import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
+
+/**
+ * Unit tests for the {@link ChatController}, checking the subscription to the
+ * events of a chat.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestChatController {
+
+	private static final Integer USER_ID = 1;
+
+	private static final Integer RECIPIENT_ID = 2;
+
+	private static final Integer CHAT_ID = 3;
+
+	private static final String PATH = "/chat/" + RECIPIENT_ID + "/events";
+
+	@Mock
+	private UserService userService;
+
+	@Mock
+	private SecurityService securityService;
+
+	@Mock
+	private ChatRoomService chatRoomService;
+
+	@Mock
+	private ChatMessageService chatMessageService;
+
+	@Mock
+	private ChatNotificationRegistry notificationRegistry;
+
+	private final DefaultUserEntity recipient = new DefaultUserEntity();
+
+	/**
+	 * Mocked MVC context.
+	 */
+	private MockMvc mockMvc;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestChatController() {
+		super();
+	}
+
+	@BeforeEach
+	public void setUpMockContext() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		recipient.setId(RECIPIENT_ID);
+		when(securityService.findLoggedInUser()).thenReturn(new LoggedUser(USER_ID, "userLogin", null,
+				Role.ROLE_USER, "city", Collections.singleton(new SimpleGrantedAuthority(Role.ROLE_USER.getRole()))));
+
+		mockMvc = MockMvcBuilders
+				.standaloneSetup(new ChatController(userService, securityService, chatRoomService, chatMessageService,
+						notificationRegistry))
+				.setControllerAdvice(new GlobalDefaultExceptionHandler()).build();
+	}
+
+	@Test
+	void subscribesToTheChatWithTheUser() throws Exception {
+		when(userService.findById(RECIPIENT_ID)).thenReturn(recipient);
+		when(chatRoomService.getChatId(USER_ID, RECIPIENT_ID, true)).thenReturn(CHAT_ID);
+		when(notificationRegistry.subscribe(CHAT_ID)).thenReturn(new SseEmitter());
+
+		mockMvc.perform(get(PATH).accept(MediaType.TEXT_EVENT_STREAM)).andExpect(request().asyncStarted());
+
+		verify(notificationRegistry).subscribe(CHAT_ID);
+	}
+
+	@Test
+	void answersAnUnknownUserWithANotFound() throws Exception {
+		when(userService.findById(RECIPIENT_ID)).thenThrow(new UserNotFoundException(RECIPIENT_ID));
+
+		mockMvc.perform(get(PATH).accept(MediaType.TEXT_EVENT_STREAM)).andExpect(status().isNotFound());
+
+		verify(notificationRegistry, never()).subscribe(anyInt());
+	}
+
+	@Test
+	void answersAnUnknownChatWithANotFound() throws Exception {
+		when(userService.findById(RECIPIENT_ID)).thenReturn(recipient);
+		when(chatRoomService.getChatId(USER_ID, RECIPIENT_ID, true))
+				.thenThrow(new ChatRoomNotFoundException(USER_ID, RECIPIENT_ID));
+
+		mockMvc.perform(get(PATH).accept(MediaType.TEXT_EVENT_STREAM)).andExpect(status().isNotFound());
+
+		verify(notificationRegistry, never()).subscribe(anyInt());
+	}
+
+}
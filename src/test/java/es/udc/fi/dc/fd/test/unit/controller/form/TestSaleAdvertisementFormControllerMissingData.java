@@ -45,6 +45,7 @@
 import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.service.ImageService;
+import es.udc.fi.dc.fd.service.ImageStore;
 import es.udc.fi.dc.fd.service.SaleAdvertisementService;
 import es.udc.fi.dc.fd.service.UserService;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementAlreadyExistsException;
@@ -141,6 +142,7 @@ private final SaleAdvertisementFormController getController()
 		final SecurityService securityService; // Mocked service
 		final UserService userService;
 		final ImageService imageService;
+		final ImageStore imageStore;
 		final ServletContext context;
 
 		final DefaultSaleAdvertisementEntity saleAdvertisement; // Mocked entities
@@ -150,6 +152,7 @@ private final SaleAdvertisementFormController getController()
 		securityService = Mockito.mock(SecurityService.class);
 		userService = Mockito.mock(UserService.class);
 		imageService = Mockito.mock(ImageService.class);
+		imageStore = Mockito.mock(ImageStore.class);
 		context = Mockito.mock(ServletContext.class);
 
 		saleAdvertisement = new DefaultSaleAdvertisementEntity();
@@ -158,7 +161,8 @@ private final SaleAdvertisementFormController getController()
 
 		DefaultUserEntity user = new DefaultUserEntity();
 		Mockito.when(securityService.findLoggedInUsername()).thenReturn(user.getLogin());
-		Mockito.when(userService.findByLogin(user.getLogin())).thenReturn(user);
+		Mockito.when(securityService.findLoggedInUserId()).thenReturn(user.getId());
+		Mockito.when(userService.getReference(user.getId())).thenReturn(user);
 		Mockito.when(saleAdvertisementService.add(saleAdvertisement)).thenReturn(returnSaleAdvertisement);
 
 		/** The image service. */
@@ -166,7 +170,7 @@ private final SaleAdvertisementFormController getController()
 		/** The context. */
 
 		return new SaleAdvertisementFormController(saleAdvertisementService, securityService, userService, context,
-				imageService);
+				imageService, imageStore);
 	}
 
 	/**
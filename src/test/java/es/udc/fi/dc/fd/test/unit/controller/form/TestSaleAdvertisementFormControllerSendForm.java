@@ -47,6 +47,7 @@
 import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.service.ImageService;
+import es.udc.fi.dc.fd.service.ImageStore;
 import es.udc.fi.dc.fd.service.SaleAdvertisementService;
 import es.udc.fi.dc.fd.service.UserService;
 import es.udc.fi.dc.fd.service.exceptions.ImageAlreadyExistsException;
@@ -132,6 +133,7 @@ private final SaleAdvertisementFormController getController()
 		final SecurityService securityService; // Mocked service
 		final UserService userService;
 		final ImageService imageService;
+		final ImageStore imageStore;
 		final ServletContext context;
 
 		final DefaultSaleAdvertisementEntity saleAdvertisement; // Mocked entities
@@ -141,6 +143,7 @@ private final SaleAdvertisementFormController getController()
 		securityService = Mockito.mock(SecurityService.class);
 		userService = Mockito.mock(UserService.class);
 		imageService = Mockito.mock(ImageService.class);
+		imageStore = Mockito.mock(ImageStore.class);
 		context = Mockito.mock(ServletContext.class);
 
 		DefaultUserEntity user = new DefaultUserEntity();
@@ -153,7 +156,8 @@ private final SaleAdvertisementFormController getController()
 		returnSaleAdvertisement.setId(1);
 
 		Mockito.when(securityService.findLoggedInUsername()).thenReturn(user.getLogin());
-		Mockito.when(userService.findByLogin(user.getLogin())).thenReturn(user);
+		Mockito.when(securityService.findLoggedInUserId()).thenReturn(user.getId());
+		Mockito.when(userService.getReference(user.getId())).thenReturn(user);
 		Mockito.when(saleAdvertisementService.add(saleAdvertisement)).thenReturn(returnSaleAdvertisement);
 		DefaultImageEntity image = new DefaultImageEntity("imageFile", "imageFile", returnSaleAdvertisement);
 		Mockito.when(imageService.add(image)).thenReturn(image);
@@ -163,7 +167,7 @@ private final SaleAdvertisementFormController getController()
 		/** The context. */
 
 		return new SaleAdvertisementFormController(saleAdvertisementService, securityService, userService, context,
-				imageService);
+				imageService, imageStore);
 	}
 
 	/**
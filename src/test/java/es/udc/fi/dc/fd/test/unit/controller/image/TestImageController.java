@@ -0,0 +1,140 @@
+package es.udc.fi.dc.fd.test.unit.controller.image;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.servlet.ServletContext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import es.udc.fi.dc.fd.controller.exception.GlobalDefaultExceptionHandler;
+import es.udc.fi.dc.fd.controller.image.ImageController;
+import es.udc.fi.dc.fd.repository.ImageFileRepository;
+import es.udc.fi.dc.fd.service.ImageFileCache;
+import es.udc.fi.dc.fd.service.ImageStore;
+
+/**
+ * Unit tests for the {@link ImageController}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestImageController {
+
+	private static final String HASH = "ab" + String.join("", Collections.nCopies(62, "0"));
+
+	private static final String PATH = "/Images/ab/" + HASH + ".png";
+
+	private static final byte[] CONTENTS = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path webapp;
+
+	/**
+	 * Mocked MVC context.
+	 */
+	private MockMvc mockMvc;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestImageController() {
+		super();
+	}
+
+	@BeforeEach
+	public void setUpMockContext() throws Exception {
+		ServletContext context = Mockito.mock(ServletContext.class);
+		Mockito.when(context.getRealPath("/")).thenReturn(webapp.toString());
+		Mockito.when(context.getContextPath()).thenReturn("");
+		Mockito.when(context.getMimeType(Mockito.endsWith(".png"))).thenReturn("image/png");
+
+		ImageStore store = new ImageStore(Mockito.mock(ImageFileRepository.class), context,
+				Mockito.mock(PlatformTransactionManager.class));
+		mockMvc = MockMvcBuilders.standaloneSetup(new ImageController(store, new ImageFileCache(), context))
+				.setControllerAdvice(new GlobalDefaultExceptionHandler()).build();
+
+		Files.write(Files.createDirectories(webapp.resolve("Images/ab")).resolve(HASH + ".png"), CONTENTS);
+	}
+
+	@Test
+	void servesTheFileAsImmutable() throws Exception {
+		mockMvc.perform(get(PATH)).andExpect(status().isOk()).andExpect(content().bytes(CONTENTS))
+				.andExpect(content().contentType("image/png"))
+				.andExpect(header().string(HttpHeaders.ETAG, "\"" + HASH + "\""))
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"))
+				.andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"));
+	}
+
+	@Test
+	void answersNotModifiedToTheSameETag() throws Exception {
+		mockMvc.perform(get(PATH).header(HttpHeaders.IF_NONE_MATCH, "\"" + HASH + "\""))
+				.andExpect(status().isNotModified()).andExpect(content().bytes(new byte[0]));
+	}
+
+	@Test
+	void servesASingleRange() throws Exception {
+		mockMvc.perform(get(PATH).header(HttpHeaders.RANGE, "bytes=2-5")).andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+				.andExpect(content().bytes(Arrays.copyOfRange(CONTENTS, 2, 6)));
+	}
+
+	@Test
+	void servesTheWholeFileWhenTheIfRangeDoesNotMatch() throws Exception {
+		mockMvc.perform(get(PATH).header(HttpHeaders.RANGE, "bytes=2-5").header(HttpHeaders.IF_RANGE, "\"other\""))
+				.andExpect(status().isOk()).andExpect(content().bytes(CONTENTS));
+	}
+
+	@Test
+	void rejectsAnUnsatisfiableRange() throws Exception {
+		mockMvc.perform(get(PATH).header(HttpHeaders.RANGE, "bytes=20-"))
+				.andExpect(status().isRequestedRangeNotSatisfiable())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+	}
+
+	@Test
+	void servesARangeOfAFileTooLargeToMap() throws Exception {
+		byte[] large = new byte[(int) ImageFileCache.MAX_MAPPED_FILE_SIZE + 10];
+		for (int i = 0; i < large.length; i++)
+			large[i] = (byte) i;
+		Files.write(webapp.resolve(PATH.substring(1)), large);
+
+		MvcResult result = mockMvc.perform(get(PATH).header(HttpHeaders.RANGE, "bytes=-100"))
+				.andExpect(status().isPartialContent()).andReturn();
+
+		assertArrayEquals(Arrays.copyOfRange(large, large.length - 100, large.length),
+				result.getResponse().getContentAsByteArray());
+	}
+
+	@Test
+	void returnsNotFoundForAMissingFile() throws Exception {
+		mockMvc.perform(get("/Images/ab/" + HASH.replace('0', '1') + ".png"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void returnsNotFoundForAFileRemovedFromTheStore() throws Exception {
+		mockMvc.perform(get(PATH)).andExpect(status().isOk());
+		Files.delete(webapp.resolve(PATH.substring(1)));
+
+		mockMvc.perform(get(PATH)).andExpect(status().isNotFound());
+	}
+
+}
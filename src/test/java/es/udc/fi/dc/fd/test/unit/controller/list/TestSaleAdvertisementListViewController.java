@@ -0,0 +1,159 @@
+package es.udc.fi.dc.fd.test.unit.controller.list;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import es.udc.fi.dc.fd.controller.ViewConstants;
+import es.udc.fi.dc.fd.controller.sale_advertisement.SaleAdvertisementListViewController;
+import es.udc.fi.dc.fd.controller.sale_advertisement.SaleAdvertisementViewConstants;
+import es.udc.fi.dc.fd.model.Role;
+import es.udc.fi.dc.fd.model.State;
+import es.udc.fi.dc.fd.model.dto.SaleAdvertisementWithLoggedUserInfoDTO;
+import es.udc.fi.dc.fd.model.form.SearchCriteriaForm;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.service.BuyTransactionService;
+import es.udc.fi.dc.fd.service.SaleAdvertisementService;
+import es.udc.fi.dc.fd.service.UserService;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementDTOAssembler;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchService;
+import es.udc.fi.dc.fd.service.search.SearchPage;
+import es.udc.fi.dc.fd.service.securityService.SecurityService;
+
+/**
+ * Unit tests for the {@link SaleAdvertisementListViewController}, checking the
+ * list views read their pages from the search service.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestSaleAdvertisementListViewController {
+
+	private static final Integer USER_ID = 1;
+
+	private static final String CURSOR = "cursor";
+
+	@Mock
+	private SaleAdvertisementService saleAdvertisementService;
+
+	@Mock
+	private UserService userService;
+
+	@Mock
+	private SecurityService securityService;
+
+	@Mock
+	private BuyTransactionService buyTransactionService;
+
+	@Mock
+	private SaleAdvertisementSearchService searchService;
+
+	@Mock
+	private SaleAdvertisementDTOAssembler assembler;
+
+	private final DefaultUserEntity user = new DefaultUserEntity();
+
+	private final List<SaleAdvertisementWithLoggedUserInfoDTO> saleAdvertisements = Arrays
+			.asList(new SaleAdvertisementWithLoggedUserInfoDTO(10, "Title", "Description", null, BigDecimal.TEN,
+					State.STATE_ON_SALE, 2, "owner", "Madrid", Role.ROLE_USER, 0, new ArrayList<>(), false, false,
+					null, false, true));
+
+	/**
+	 * Mocked MVC context.
+	 */
+	private MockMvc mockMvc;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestSaleAdvertisementListViewController() {
+		super();
+	}
+
+	@BeforeEach
+	public void setUpMockContext() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		user.setId(USER_ID);
+		when(securityService.findLoggedInUserId()).thenReturn(USER_ID);
+		when(userService.getReference(USER_ID)).thenReturn(user);
+
+		mockMvc = MockMvcBuilders.standaloneSetup(new SaleAdvertisementListViewController(saleAdvertisementService,
+				userService, securityService, buyTransactionService, searchService, assembler)).build();
+	}
+
+	@Test
+	void listShowsTheFirstPageWithTheUrlOfTheNext() throws Exception {
+		when(searchService.search(eq(user), any(), isNull(), isNull()))
+				.thenReturn(new SearchPage<>(saleAdvertisements, CURSOR));
+
+		mockMvc.perform(get("/saleAdvertisement/list").param("city", "Madrid"))
+				.andExpect(view().name(SaleAdvertisementViewConstants.VIEW_SALE_ADVERTISEMENT_LIST))
+				.andExpect(model().attribute(SaleAdvertisementViewConstants.PARAM_SALE_ADVERTISEMENTS,
+						saleAdvertisements))
+				.andExpect(model().attribute(SaleAdvertisementViewConstants.NEXT_PAGE_URL,
+						"http://localhost/saleAdvertisement/list?city=Madrid&after=" + CURSOR));
+
+		ArgumentCaptor<SearchCriteriaForm> form = ArgumentCaptor.forClass(SearchCriteriaForm.class);
+		verify(searchService).search(eq(user), form.capture(), isNull(), isNull());
+		assertEquals("Madrid", form.getValue().getCity());
+	}
+
+	@Test
+	void listAnswersTheAjaxRequestsWithTheNextPageOnly() throws Exception {
+		when(searchService.search(eq(user), any(), eq(CURSOR), isNull()))
+				.thenReturn(new SearchPage<>(saleAdvertisements, null));
+
+		mockMvc.perform(get("/saleAdvertisement/list").param("after", CURSOR).header("X-Requested-With",
+				"XMLHttpRequest"))
+				.andExpect(view().name(
+						SaleAdvertisementViewConstants.VIEW_SALE_ADVERTISEMENT_LIST + " :: #saleAdvertisementsPage"))
+				.andExpect(model().attribute(SaleAdvertisementViewConstants.PARAM_SALE_ADVERTISEMENTS,
+						saleAdvertisements))
+				.andExpect(model().attributeDoesNotExist(SaleAdvertisementViewConstants.NEXT_PAGE_URL));
+	}
+
+	@Test
+	void listSendsAnInvalidCursorToTheWelcomeView() throws Exception {
+		when(searchService.search(eq(user), any(), eq(CURSOR), isNull()))
+				.thenThrow(new IllegalArgumentException("Invalid search cursor"));
+
+		mockMvc.perform(get("/saleAdvertisement/list").param("after", CURSOR))
+				.andExpect(view().name(ViewConstants.WELCOME));
+	}
+
+	@Test
+	void followedListShowsThePageOfTheFollowedUsers() throws Exception {
+		when(searchService.searchFollowed(eq(user), any(), isNull(), isNull()))
+				.thenReturn(new SearchPage<>(Collections.emptyList(), null));
+
+		mockMvc.perform(get("/saleAdvertisement/followedList"))
+				.andExpect(view().name(SaleAdvertisementViewConstants.VIEW_SALE_ADVERTISEMENT_LIST))
+				.andExpect(model().attribute(SaleAdvertisementViewConstants.VIEW_NAME,
+						SaleAdvertisementViewConstants.VIEW_FILTERED_LIST))
+				.andExpect(model().attribute(SaleAdvertisementViewConstants.PARAM_SALE_ADVERTISEMENTS,
+						Collections.emptyList()))
+				.andExpect(model().attributeDoesNotExist(SaleAdvertisementViewConstants.NEXT_PAGE_URL));
+	}
+
+}
@@ -52,6 +52,7 @@
 import es.udc.fi.dc.fd.service.exceptions.BuyTransactionAlreadyExistsException;
 import es.udc.fi.dc.fd.service.exceptions.BuyTransactionNotFoundException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementNotFoundException;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchIndex;
 import es.udc.fi.dc.fd.service.user.exceptions.UserNotFoundException;
 
 /**
@@ -72,6 +73,9 @@ final class TestBuyTransactionService {
 
 	@Mock
 	private BuyTransactionRepository buyTransactionRepository;
+
+	@Mock
+	private SaleAdvertisementSearchIndex searchIndex;
 	/**
 	 * Service being tested.
 	 */
@@ -236,6 +240,9 @@ void createBuyTransaction() {
 
 		try {
 			assertEquals(buyTransactionService.create(user, saleAdvertisement), buyTransaction);
+			Mockito.verify(saleAdvertisementRepository).updateSoldDate(saleAdvertisementId,
+					saleAdvertisement.getSoldDate());
+			Mockito.verify(searchIndex).markSold(saleAdvertisementId, saleAdvertisement.getSoldDate());
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
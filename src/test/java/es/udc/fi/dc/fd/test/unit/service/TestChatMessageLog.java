@@ -0,0 +1,122 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import es.udc.fi.dc.fd.service.chat.ChatMessageLog;
+
+/**
+ * Unit tests for the {@link ChatMessageLog}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestChatMessageLog {
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestChatMessageLog() {
+		super();
+	}
+
+	@Test
+	void readsTheMessagesAfterReopening() throws IOException {
+		Path file = directory.resolve("chat.log");
+
+		ChatMessageLog.Entry first;
+		ChatMessageLog.Entry second;
+		try (ChatMessageLog log = new ChatMessageLog(file)) {
+			first = log.append(message("Hello"));
+			second = log.append(message("Bye"));
+		}
+
+		assertEquals(0, first.getPosition());
+		assertEquals(first.getEnd(), second.getPosition());
+
+		try (ChatMessageLog log = new ChatMessageLog(file)) {
+			List<ChatMessageLog.Entry> entries = log.read();
+
+			assertEquals(2, entries.size());
+			assertEquals("Hello", entries.get(0).getContents());
+			assertEquals(second.getPosition(), entries.get(1).getPosition());
+			assertEquals(second.getEnd(), log.getEnd());
+		}
+	}
+
+	@Test
+	void discardsAMessageWrittenInPart() throws IOException {
+		Path file = directory.resolve("chat.log");
+
+		ChatMessageLog.Entry first;
+		try (ChatMessageLog log = new ChatMessageLog(file)) {
+			first = log.append(message("Hello"));
+			log.append(message("Bye"));
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 1);
+		}
+
+		try (ChatMessageLog log = new ChatMessageLog(file)) {
+			assertEquals(1, log.read().size());
+			assertEquals(first.getEnd(), log.append(message("Again")).getPosition());
+		}
+	}
+
+	@Test
+	void keepsThePositionsAfterDiscarding() throws IOException {
+		try (ChatMessageLog log = new ChatMessageLog(directory.resolve("chat.log"))) {
+			ChatMessageLog.Entry first = log.append(message("Hello"));
+			ChatMessageLog.Entry second = log.append(message("Bye"));
+
+			assertFalse(log.discardUpTo(first.getEnd()));
+			assertTrue(log.discardUpTo(second.getEnd()));
+			assertTrue(log.read().isEmpty());
+			assertEquals(second.getEnd(), log.append(message("Again")).getPosition());
+		}
+	}
+
+	@Test
+	void passesTheMessagesToTheListenerInTheOrderOfTheirPositions() throws Exception {
+		List<ChatMessageLog.Entry> positioned = new ArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try (ChatMessageLog log = new ChatMessageLog(directory.resolve("chat.log"))) {
+			List<Future<ChatMessageLog.Entry>> appends = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				String contents = "Message " + i;
+				appends.add(executor.submit(() -> log.append(message(contents), positioned::add)));
+			}
+			for (Future<ChatMessageLog.Entry> append : appends)
+				append.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(200, positioned.size());
+		for (int i = 1; i < positioned.size(); i++)
+			assertEquals(positioned.get(i - 1).getEnd(), positioned.get(i).getPosition());
+	}
+
+	private static ChatMessageLog.Entry message(String contents) {
+		return new ChatMessageLog.Entry(1, 2, 3, new Date(), contents);
+	}
+
+}
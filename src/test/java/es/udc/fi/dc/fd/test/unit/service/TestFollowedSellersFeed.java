@@ -0,0 +1,144 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
+import es.udc.fi.dc.fd.repository.UserRepository;
+import es.udc.fi.dc.fd.service.search.FollowedSellersFeed;
+import es.udc.fi.dc.fd.service.search.SearchPage;
+
+/**
+ * Unit tests for the {@link FollowedSellersFeed}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestFollowedSellersFeed {
+
+	private static final Integer USER_ID = 1;
+	private static final Integer SELLER_ID = 2;
+	private static final Integer OTHER_SELLER_ID = 3;
+
+	@Mock
+	private SaleAdvertisementRepository saleAdvertisementRepository;
+
+	@Mock
+	private UserRepository userRepository;
+
+	/**
+	 * Feed being tested.
+	 */
+	@InjectMocks
+	private FollowedSellersFeed feed;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestFollowedSellersFeed() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+
+		// Newest first, as read from the database; the 10 was published again
+		List<Object[]> entries = new ArrayList<>();
+		entries.add(new Object[] { 10, SELLER_ID, day(4) });
+		entries.add(new Object[] { 12, OTHER_SELLER_ID, day(3) });
+		entries.add(new Object[] { 11, SELLER_ID, day(3) });
+
+		Mockito.when(saleAdvertisementRepository.findFollowedFeedEntries(Mockito.eq(USER_ID), Mockito.any(),
+				Mockito.any())).thenReturn(entries);
+		Mockito.when(userRepository.findFollowerIds(SELLER_ID)).thenReturn(Arrays.asList(USER_ID));
+	}
+
+	@Test
+	void pageReturnsTheNewestPublicationFirst() {
+		SearchPage<Integer> first = feed.page(USER_ID, null, 2);
+		assertEquals(Arrays.asList(10, 12), first.getItems());
+
+		SearchPage<Integer> second = feed.page(USER_ID, first.getNextCursor(), 2);
+		assertEquals(Arrays.asList(11), second.getItems());
+		assertFalse(second.hasNext());
+	}
+
+	@Test
+	void pageRejectsAnInvalidCursor() {
+		assertThrows(IllegalArgumentException.class, () -> feed.page(USER_ID, "11", 2));
+	}
+
+	@Test
+	void publishAddsToTheFeedsOfTheFollowers() {
+		feed.page(USER_ID, null, 10);
+
+		feed.publish(SELLER_ID, 13, day(5));
+		assertEquals(Arrays.asList(13, 10, 12, 11), feed.page(USER_ID, null, 10).getItems());
+		Mockito.verify(saleAdvertisementRepository, Mockito.times(1)).findFollowedFeedEntries(Mockito.eq(USER_ID),
+				Mockito.any(), Mockito.any());
+	}
+
+	@Test
+	void publishAgainMovesToTheTop() {
+		feed.page(USER_ID, null, 10);
+
+		feed.publish(SELLER_ID, 11, day(5));
+		assertEquals(Arrays.asList(11, 10, 12), feed.page(USER_ID, null, 10).getItems());
+	}
+
+	@Test
+	void publishDropsTheOldestBeyondTheMaximumLength() {
+		feed.page(USER_ID, null, 10);
+
+		for (int i = 0; i < FollowedSellersFeed.MAX_FEED_LENGTH; i++)
+			feed.publish(SELLER_ID, 100 + i, day(5).plusMinutes(i));
+
+		List<Integer> ids = feed.page(USER_ID, null, FollowedSellersFeed.MAX_FEED_LENGTH + 10).getItems();
+		assertEquals(FollowedSellersFeed.MAX_FEED_LENGTH, ids.size());
+		assertEquals(Integer.valueOf(100 + FollowedSellersFeed.MAX_FEED_LENGTH - 1), ids.get(0));
+		assertFalse(ids.contains(10));
+	}
+
+	@Test
+	void followAndUnfollowUpdateTheFeed() {
+		feed.page(USER_ID, null, 10);
+
+		feed.unfollow(USER_ID, SELLER_ID);
+		assertEquals(Arrays.asList(12), feed.page(USER_ID, null, 10).getItems());
+
+		List<Object[]> published = new ArrayList<>();
+		published.add(new Object[] { 10, day(4) });
+		published.add(new Object[] { 11, day(3) });
+		Mockito.when(saleAdvertisementRepository.findVisibleFeedEntriesByUser(Mockito.eq(SELLER_ID), Mockito.any(),
+				Mockito.any())).thenReturn(published);
+		feed.follow(USER_ID, SELLER_ID);
+		assertEquals(Arrays.asList(10, 12, 11), feed.page(USER_ID, null, 10).getItems());
+	}
+
+	@Test
+	void removeAllRemovesFromEveryFeed() {
+		feed.page(USER_ID, null, 10);
+
+		feed.removeAll(Arrays.asList(11, 12));
+		assertEquals(Arrays.asList(10), feed.page(USER_ID, null, 10).getItems());
+	}
+
+	private static LocalDateTime day(int day) {
+		return LocalDateTime.of(2019, 11, day, 12, 0);
+	}
+
+}
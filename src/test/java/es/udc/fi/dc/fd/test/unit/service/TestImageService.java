@@ -49,6 +49,8 @@
 import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
 import es.udc.fi.dc.fd.service.DefaultImageService;
 import es.udc.fi.dc.fd.service.ImageService;
+import es.udc.fi.dc.fd.service.ImageStore;
+import es.udc.fi.dc.fd.service.ImageThumbnailGenerator;
 import es.udc.fi.dc.fd.service.exceptions.ImageAlreadyExistsException;
 import es.udc.fi.dc.fd.service.exceptions.ImageNotFoundException;
 
@@ -68,6 +70,12 @@ final class TestImageService {
 	@Mock
 	private SaleAdvertisementRepository saleAdvertisementRepository;
 
+	@Mock
+	private ImageStore imageStore;
+
+	@Mock
+	private ImageThumbnailGenerator thumbnailGenerator;
+
 	/**
 	 * Service being tested.
 	 */
@@ -0,0 +1,158 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.stream.Stream;
+
+import javax.servlet.ServletContext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.google.common.io.BaseEncoding;
+
+import es.udc.fi.dc.fd.model.persistence.DefaultImageFileEntity;
+import es.udc.fi.dc.fd.repository.ImageFileRepository;
+import es.udc.fi.dc.fd.service.ImageStore;
+
+/**
+ * Unit tests for the {@link ImageStore}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestImageStore {
+
+	private static final byte[] CONTENTS = "image contents".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path webapp;
+
+	@Mock
+	private ImageFileRepository imageFileRepository;
+
+	@Mock
+	private ServletContext context;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * Store being tested.
+	 */
+	private ImageStore store;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestImageStore() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+
+		when(context.getRealPath("/")).thenReturn(webapp.toString());
+		when(context.getContextPath()).thenReturn("");
+
+		store = new ImageStore(imageFileRepository, context, transactionManager);
+	}
+
+	@Test
+	void storesIdenticalContentsOnce() throws IOException, NoSuchAlgorithmException {
+		String hash = BaseEncoding.base16().lowerCase()
+				.encode(MessageDigest.getInstance("SHA-256").digest(CONTENTS));
+		String name = hash + ".jpg";
+		when(imageFileRepository.addReference(name)).thenReturn(0, 1);
+
+		String first = store.store(new MockMultipartFile("imageFile", "photo.JPG", "image/jpeg", CONTENTS));
+		String second = store.store(new MockMultipartFile("imageFile", "other.jpg", "image/jpeg", CONTENTS));
+
+		assertEquals("/Images/" + hash.substring(0, 2) + "/" + name, first);
+		assertEquals(first, second);
+		assertArrayEquals(CONTENTS, Files.readAllBytes(webapp.resolve(first.substring(1))));
+		verify(imageFileRepository, times(1)).save(any(DefaultImageFileEntity.class));
+		try (Stream<Path> uploads = Files.list(webapp.resolve("Images/.uploads"))) {
+			assertEquals(0, uploads.count());
+		}
+	}
+
+	@Test
+	void rejectsAnUploadNotFullyWritten() throws IOException {
+		MockMultipartFile truncated = new MockMultipartFile("imageFile", "photo.jpg", "image/jpeg", CONTENTS) {
+			@Override
+			public long getSize() {
+				return CONTENTS.length + 1;
+			}
+		};
+
+		assertThrows(IOException.class, () -> store.store(truncated));
+		verify(imageFileRepository, never()).addReference(any());
+	}
+
+	@Test
+	void releaseDeletesTheUnreferencedFile() throws IOException {
+		when(imageFileRepository.addReference(any())).thenReturn(0);
+		String path = store.store(upload());
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		when(imageFileRepository.removeReference(name)).thenReturn(1);
+		when(imageFileRepository.deleteIfUnreferenced(name)).thenReturn(1);
+		when(imageFileRepository.existsById(name)).thenReturn(false);
+
+		store.release(path);
+
+		assertFalse(Files.exists(webapp.resolve(path.substring(1))));
+	}
+
+	@Test
+	void releaseKeepsTheFileUsedByOtherImages() throws IOException {
+		when(imageFileRepository.addReference(any())).thenReturn(0);
+		String path = store.store(upload());
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		when(imageFileRepository.removeReference(name)).thenReturn(1);
+		when(imageFileRepository.deleteIfUnreferenced(name)).thenReturn(0);
+
+		store.release(path);
+
+		assertTrue(Files.exists(webapp.resolve(path.substring(1))));
+	}
+
+	@Test
+	void releaseDeletesTheImagesUploadedBeforeTheStore() throws IOException {
+		Path image = Files.createDirectories(webapp.resolve("Images/login")).resolve("photo.jpg");
+		Files.write(image, CONTENTS);
+		Path outside = Files.write(webapp.resolve("outside.jpg"), CONTENTS);
+
+		store.release("/Images/login/photo.jpg");
+		store.release("/Images/../outside.jpg");
+
+		assertFalse(Files.exists(image));
+		assertTrue(Files.exists(outside));
+	}
+
+	private static MockMultipartFile upload() {
+		return new MockMultipartFile("imageFile", "photo.jpg", "image/jpeg", CONTENTS);
+	}
+
+}
@@ -0,0 +1,188 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.servlet.ServletContext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import es.udc.fi.dc.fd.repository.ImageFileRepository;
+import es.udc.fi.dc.fd.repository.ImageRepository;
+import es.udc.fi.dc.fd.service.ImageStore;
+import es.udc.fi.dc.fd.service.ImageThumbnailGenerator;
+
+/**
+ * Unit tests for the {@link ImageThumbnailGenerator}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestImageThumbnailGenerator {
+
+	private static final byte[] MARKER = "variant".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path webapp;
+
+	@Mock
+	private ImageFileRepository imageFileRepository;
+
+	@Mock
+	private ImageRepository imageRepository;
+
+	@Mock
+	private ServletContext context;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	private ImageStore store;
+
+	/**
+	 * Generator being tested.
+	 */
+	private ImageThumbnailGenerator generator;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestImageThumbnailGenerator() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+
+		when(context.getRealPath("/")).thenReturn(webapp.toString());
+		when(context.getContextPath()).thenReturn("/app");
+		when(imageFileRepository.addReference(any())).thenReturn(0);
+
+		store = new ImageStore(imageFileRepository, context, transactionManager);
+		generator = new ImageThumbnailGenerator(store, imageRepository);
+	}
+
+	@Test
+	void generatesTheVariantsBesideTheOriginal() throws IOException {
+		String path = "/app" + store.store(image(3000, 1500));
+
+		generator.generate(path);
+
+		ArgumentCaptor<String> card = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<String> detail = ArgumentCaptor.forClass(String.class);
+		verify(imageRepository).updateVariantPaths(eq(path), card.capture(), detail.capture());
+
+		String folder = path.substring(0, path.lastIndexOf('/') + 1);
+		String hash = path.substring(folder.length(), path.lastIndexOf('.'));
+		assertEquals(folder + hash + "-card.png", card.getValue());
+		assertEquals(folder + hash + "-detail.png", detail.getValue());
+
+		BufferedImage cardImage = ImageIO.read(file(card.getValue()).toFile());
+		assertEquals(ImageThumbnailGenerator.CARD_SIZE, cardImage.getWidth());
+		assertEquals(ImageThumbnailGenerator.CARD_SIZE / 2, cardImage.getHeight());
+		BufferedImage detailImage = ImageIO.read(file(detail.getValue()).toFile());
+		assertEquals(ImageThumbnailGenerator.DETAIL_SIZE, detailImage.getWidth());
+		assertEquals(ImageThumbnailGenerator.DETAIL_SIZE / 2, detailImage.getHeight());
+	}
+
+	@Test
+	void keepsTheOriginalOfASmallImage() throws IOException {
+		String path = "/app" + store.store(image(200, 100));
+
+		generator.generate(path);
+
+		verify(imageRepository).updateVariantPaths(path, path, path);
+		try (Stream<Path> files = Files.list(file(path).getParent())) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	void reusesTheVariantsOfAFileUploadedAgain() throws IOException {
+		String path = "/app" + store.store(image(2000, 2000));
+		generator.generate(path);
+		Path card = file(path).resolveSibling(file(path).getFileName().toString().replace(".png", "-card.png"));
+		Files.write(card, MARKER);
+
+		generator.generate(path);
+
+		assertArrayEquals(MARKER, Files.readAllBytes(card));
+		verify(imageRepository, times(2)).updateVariantPaths(eq(path), anyString(), anyString());
+	}
+
+	@Test
+	void rejectsAnImageWhichCanNotBeDecoded() throws IOException {
+		String path = "/app" + store.store(new MockMultipartFile("imageFile", "photo.jpg", "image/jpeg",
+				"no image".getBytes(StandardCharsets.UTF_8)));
+
+		assertThrows(IOException.class, () -> generator.generate(path));
+		verify(imageRepository, never()).updateVariantPaths(anyString(), anyString(), anyString());
+	}
+
+	@Test
+	void releaseDeletesTheVariants() throws IOException {
+		String path = "/app" + store.store(image(2000, 1000));
+		generator.generate(path);
+		String name = file(path).getFileName().toString();
+		when(imageFileRepository.removeReference(name)).thenReturn(1);
+		when(imageFileRepository.deleteIfUnreferenced(name)).thenReturn(1);
+		when(imageFileRepository.existsById(name)).thenReturn(false);
+
+		store.release(path);
+
+		try (Stream<Path> files = Files.list(file(path).getParent())) {
+			assertEquals(0, files.count());
+		}
+		assertFalse(Files.exists(file(path)));
+	}
+
+	@Test
+	void ignoresTheImagesNotInTheStore() throws IOException {
+		generator.generate("/app/Images/login/photo.jpg");
+
+		verify(imageRepository, never()).updateVariantPaths(anyString(), anyString(), anyString());
+		assertNull(store.getFile("/app/Images/login/photo.jpg"));
+	}
+
+	private Path file(String path) {
+		return webapp.resolve(path.substring("/app/".length()));
+	}
+
+	private static MockMultipartFile image(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x += 10)
+			image.setRGB(x, x % height, 0xFF0000);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", output);
+		return new MockMultipartFile("imageFile", "photo.png", "image/png", output.toByteArray());
+	}
+
+}
@@ -0,0 +1,64 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import es.udc.fi.dc.fd.service.securityService.PooledPasswordEncoder;
+
+/**
+ * Unit tests for the {@link PooledPasswordEncoder}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestPooledPasswordEncoder {
+
+	private static final int STRENGTH = 5;
+
+	/**
+	 * Encoder being tested.
+	 */
+	private PooledPasswordEncoder encoder;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestPooledPasswordEncoder() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		encoder = new PooledPasswordEncoder(STRENGTH, 2, 8);
+	}
+
+	@AfterEach
+	public void destroy() {
+		encoder.destroy();
+	}
+
+	@Test
+	void matchesTheEncodedPassword() {
+		String encoded = encoder.encode("password");
+
+		assertTrue(encoder.matches("password", encoded));
+		assertFalse(encoder.matches("other", encoded));
+	}
+
+	@Test
+	void upgradesTheHashesWithALowerCost() {
+		String weaker = new BCryptPasswordEncoder(STRENGTH - 1).encode("password");
+
+		assertTrue(encoder.upgradeEncoding(weaker));
+		assertTrue(encoder.matches("password", weaker));
+		assertFalse(encoder.upgradeEncoding(encoder.encode("password")));
+		assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(STRENGTH + 1).encode("password")));
+		assertFalse(encoder.upgradeEncoding(null));
+	}
+
+}
@@ -0,0 +1,128 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import es.udc.fi.dc.fd.model.persistence.DefaultChatMessageEntity;
+import es.udc.fi.dc.fd.repository.ChatMessageRepository;
+import es.udc.fi.dc.fd.service.chat.RecentChatMessages;
+
+/**
+ * Unit tests for the {@link RecentChatMessages}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestRecentChatMessages {
+
+	private static final Integer CHAT_ID = 1;
+
+	@Mock
+	private ChatMessageRepository chatMessageRepository;
+
+	/**
+	 * Buffer being tested.
+	 */
+	@InjectMocks
+	private RecentChatMessages recentMessages;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestRecentChatMessages() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+	}
+
+	@Test
+	void readsTheDatabaseOnlyOnce() {
+		List<DefaultChatMessageEntity> stored = Arrays.asList(message(3), message(2), message(1));
+		Mockito.when(chatMessageRepository.findLatestByChatId(Mockito.eq(CHAT_ID), Mockito.any())).thenReturn(stored);
+
+		assertEquals(ids(1, 2, 3), idsOf(recentMessages.latest(CHAT_ID, 10)));
+		assertEquals(ids(2, 3), idsOf(recentMessages.latest(CHAT_ID, 2)));
+		assertEquals(ids(1), idsOf(recentMessages.before(CHAT_ID, 2, 10)));
+		assertEquals(ids(3), idsOf(recentMessages.after(CHAT_ID, 2, 10)));
+
+		Mockito.verify(chatMessageRepository, Mockito.times(1)).findLatestByChatId(Mockito.eq(CHAT_ID),
+				Mockito.any());
+		Mockito.verifyNoMoreInteractions(chatMessageRepository);
+	}
+
+	@Test
+	void addKeepsTheMostRecentMessages() {
+		List<DefaultChatMessageEntity> stored = new ArrayList<>();
+		for (int id = RecentChatMessages.CAPACITY; id > 0; id--) {
+			stored.add(message(id));
+		}
+		Mockito.when(chatMessageRepository.findLatestByChatId(Mockito.eq(CHAT_ID), Mockito.any())).thenReturn(stored);
+		recentMessages.latest(CHAT_ID, 1);
+
+		recentMessages.add(message(RecentChatMessages.CAPACITY + 2));
+		recentMessages.add(message(RecentChatMessages.CAPACITY + 1));
+
+		assertEquals(ids(RecentChatMessages.CAPACITY, RecentChatMessages.CAPACITY + 1,
+				RecentChatMessages.CAPACITY + 2), idsOf(recentMessages.latest(CHAT_ID, 3)));
+		assertEquals(ids(RecentChatMessages.CAPACITY + 1, RecentChatMessages.CAPACITY + 2),
+				idsOf(recentMessages.after(CHAT_ID, RecentChatMessages.CAPACITY, 10)));
+	}
+
+	@Test
+	void readsTheDatabaseForTheEvictedMessages() {
+		List<DefaultChatMessageEntity> stored = new ArrayList<>();
+		for (int id = RecentChatMessages.CAPACITY + 1; id > 1; id--) {
+			stored.add(message(id));
+		}
+		List<DefaultChatMessageEntity> older = Arrays.asList(message(1));
+		List<DefaultChatMessageEntity> newer = Arrays.asList(message(2));
+		Mockito.when(chatMessageRepository.findLatestByChatId(Mockito.eq(CHAT_ID), Mockito.any())).thenReturn(stored);
+		Mockito.when(chatMessageRepository.findOlderByChatId(Mockito.eq(CHAT_ID), Mockito.eq(3), Mockito.any()))
+				.thenReturn(older);
+		Mockito.when(chatMessageRepository.findNewerByChatId(Mockito.eq(CHAT_ID), Mockito.eq(1), Mockito.any()))
+				.thenReturn(newer);
+
+		assertEquals(ids(1), idsOf(recentMessages.before(CHAT_ID, 3, 2)));
+		assertEquals(ids(2), idsOf(recentMessages.after(CHAT_ID, 1, 1)));
+	}
+
+	@Test
+	void addIgnoresTheRoomsNotInMemory() {
+		recentMessages.add(message(1));
+
+		Mockito.verifyZeroInteractions(chatMessageRepository);
+	}
+
+	private static DefaultChatMessageEntity message(Integer id) {
+		DefaultChatMessageEntity message = Mockito.mock(DefaultChatMessageEntity.class);
+		Mockito.when(message.getId()).thenReturn(id);
+		Mockito.when(message.getChatId()).thenReturn(CHAT_ID);
+		return message;
+	}
+
+	private static List<Integer> ids(Integer... ids) {
+		return Arrays.asList(ids);
+	}
+
+	private static List<Integer> idsOf(List<DefaultChatMessageEntity> messages) {
+		List<Integer> ids = new ArrayList<>();
+		for (DefaultChatMessageEntity message : messages) {
+			ids.add(message.getId());
+		}
+		return ids;
+	}
+
+}
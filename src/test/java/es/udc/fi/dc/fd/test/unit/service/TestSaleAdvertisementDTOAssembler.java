@@ -0,0 +1,145 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import es.udc.fi.dc.fd.model.Role;
+import es.udc.fi.dc.fd.model.State;
+import es.udc.fi.dc.fd.model.dto.SaleAdvertisementWithLoggedUserInfoDTO;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.repository.ImageRepository;
+import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
+import es.udc.fi.dc.fd.repository.UserRepository;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementDTOAssembler;
+
+/**
+ * Unit tests for the {@link SaleAdvertisementDTOAssembler}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestSaleAdvertisementDTOAssembler {
+
+	private static final Integer VIEWER_ID = 1;
+	private static final Integer OWNER_ID = 2;
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2020, 5, 10, 12, 0);
+
+	@Mock
+	private SaleAdvertisementRepository saleAdvertisementRepository;
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private ImageRepository imageRepository;
+
+	/**
+	 * Assembler being tested.
+	 */
+	@InjectMocks
+	private SaleAdvertisementDTOAssembler assembler;
+
+	private DefaultUserEntity viewer;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestSaleAdvertisementDTOAssembler() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+
+		viewer = new DefaultUserEntity();
+		viewer.setId(VIEWER_ID);
+
+		List<Object[]> summaries = new ArrayList<>();
+		summaries.add(new Object[] { 10, "Mesa", "Mesa de madera", NOW.minusDays(1), BigDecimal.TEN,
+				State.STATE_ON_SALE, OWNER_ID, "owner", "Lugo", Role.ROLE_PREMIUM, 9L, 2, null, 3 });
+		summaries.add(new Object[] { 11, "Silla", "Silla de madera", NOW.minusDays(2), null, State.STATE_ON_HOLD,
+				VIEWER_ID, "viewer", "A Coruña", Role.ROLE_USER, 0L, 0, NOW.minusHours(1), 0 });
+		summaries.add(new Object[] { 12, "Sofa", "Sofa de piel", NOW.minusDays(3), null, State.STATE_ON_SALE,
+				OWNER_ID, "owner", "Lugo", Role.ROLE_PREMIUM, 9L, 2, NOW.minusDays(2), 0 });
+
+		List<Object[]> images = new ArrayList<>();
+		images.add(new Object[] { 10, "mesa1.png", "mesa1-card.png", "mesa1-detail.png" });
+		images.add(new Object[] { 10, "mesa2.png", null, null });
+
+		Mockito.when(saleAdvertisementRepository.findSummariesByIds(Mockito.anyCollection())).thenReturn(summaries);
+		Mockito.when(saleAdvertisementRepository.findLikedIds(Mockito.eq(VIEWER_ID), Mockito.anyCollection()))
+				.thenReturn(Arrays.asList(10));
+		Mockito.when(userRepository.findFollowedIds(Mockito.eq(VIEWER_ID), Mockito.anyCollection()))
+				.thenReturn(Arrays.asList(OWNER_ID));
+		Mockito.when(imageRepository.findImagePathsBySaleAdvertisementIds(Mockito.anyCollection())).thenReturn(images);
+	}
+
+	@Test
+	void assembleKeepsTheOrderOfTheIdentifiers() {
+		List<SaleAdvertisementWithLoggedUserInfoDTO> result = assembler.assemble(Arrays.asList(12, 10, 11, 13),
+				viewer);
+
+		assertEquals(3, result.size());
+		assertEquals(Integer.valueOf(12), result.get(0).getSaleAdvertisementID());
+		assertEquals(Integer.valueOf(10), result.get(1).getSaleAdvertisementID());
+		assertEquals(Integer.valueOf(11), result.get(2).getSaleAdvertisementID());
+	}
+
+	@Test
+	void assembleReadsTheValuesOfTheBatchQueries() {
+		List<SaleAdvertisementWithLoggedUserInfoDTO> result = assembler.assemble(Arrays.asList(10, 11), viewer);
+
+		SaleAdvertisementWithLoggedUserInfoDTO table = result.get(0);
+		assertEquals(Integer.valueOf(3), table.getSaleAdvertisementLikesCount());
+		assertEquals(2, table.getImages().size());
+		assertEquals("mesa1-card.png", table.getImages().get(0).getCardImagePath());
+		assertEquals("mesa1-detail.png", table.getImages().get(0).getDetailImagePath());
+		assertEquals("mesa2.png", table.getImages().get(1).getCardImagePath());
+		assertTrue(table.isUserLikeSaleAdvertisement());
+		assertTrue(table.isLoggedUserFollowsSaleAdvertisementUser());
+		assertEquals(Double.valueOf(4.5), table.getAverageRating());
+		assertFalse(table.isSaleAdvertisementIsSold());
+
+		SaleAdvertisementWithLoggedUserInfoDTO chair = result.get(1);
+		assertEquals(Integer.valueOf(0), chair.getSaleAdvertisementLikesCount());
+		assertTrue(chair.getImages().isEmpty());
+		assertFalse(chair.isUserLikeSaleAdvertisement());
+		assertNull(chair.getAverageRating());
+		assertTrue(chair.isSaleAdvertisementIsSold());
+	}
+
+	@Test
+	void assembleLeavesOutTheSaleAdvertisementsSoldBeforeTheLimit() {
+		List<SaleAdvertisementWithLoggedUserInfoDTO> result = assembler.assemble(Arrays.asList(10, 11, 12), viewer,
+				NOW.minusDays(1));
+
+		assertEquals(2, result.size());
+		assertEquals(Integer.valueOf(10), result.get(0).getSaleAdvertisementID());
+		assertEquals(Integer.valueOf(11), result.get(1).getSaleAdvertisementID());
+	}
+
+	@Test
+	void assembleWithoutIdentifiersDoesNotQuery() {
+		assertTrue(assembler.assemble(Collections.emptyList(), viewer).isEmpty());
+		Mockito.verifyZeroInteractions(saleAdvertisementRepository, userRepository, imageRepository);
+	}
+
+}
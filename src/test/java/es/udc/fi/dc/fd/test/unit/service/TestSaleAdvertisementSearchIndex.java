@@ -0,0 +1,291 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import es.udc.fi.dc.fd.model.Role;
+import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
+import es.udc.fi.dc.fd.repository.UserRepository;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchCriteria;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchIndex;
+import es.udc.fi.dc.fd.service.search.SearchPage;
+
+/**
+ * Unit tests for the {@link SaleAdvertisementSearchIndex}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestSaleAdvertisementSearchIndex {
+
+	private static final Integer OWNER_ID = 1;
+	private static final Integer PREMIUM_OWNER_ID = 2;
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2020, 5, 10, 12, 0);
+
+	@Mock
+	private SaleAdvertisementRepository saleAdvertisementRepository;
+
+	@Mock
+	private UserRepository userRepository;
+
+	/**
+	 * Index being tested.
+	 */
+	@InjectMocks
+	private SaleAdvertisementSearchIndex searchIndex;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestSaleAdvertisementSearchIndex() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+
+		List<Object[]> entries = new ArrayList<>();
+		entries.add(new Object[] { 1, OWNER_ID, "A Coruña", Role.ROLE_USER, NOW.minusDays(3), BigDecimal.valueOf(50),
+				"Bicicleta de montaña", "Ruedas nuevas", null });
+		entries.add(new Object[] { 2, OWNER_ID, "A Coruña", Role.ROLE_USER, NOW.minusDays(1), null, "Mesa",
+				"Mesa de madera para bicicleta", NOW.minusHours(1) });
+		entries.add(new Object[] { 3, PREMIUM_OWNER_ID, "Lugo", Role.ROLE_PREMIUM, NOW.minusDays(2),
+				BigDecimal.valueOf(500), "Bicicleta eléctrica", "Como nueva", null });
+
+		List<Object[]> ratings = new ArrayList<>();
+		ratings.add(new Object[] { PREMIUM_OWNER_ID, 4.5 });
+
+		Mockito.when(saleAdvertisementRepository.findSearchIndexEntries(Mockito.any())).thenReturn(entries);
+		Mockito.when(userRepository.findAverageRatings()).thenReturn(ratings);
+	}
+
+	@Test
+	void searchWithoutCriteriaReturnsPremiumFirstThenMostRecent() {
+		assertEquals(Arrays.asList(3, 2, 1), searchIndex.search(criteria(null, null, null, null, null)));
+	}
+
+	@Test
+	void searchByKeywordsIgnoresCaseAndAccents() {
+		assertEquals(Arrays.asList(3, 2, 1), searchIndex.search(criteria(null, "BICICLETA", null, null, null)));
+		assertEquals(Arrays.asList(1), searchIndex.search(criteria(null, "bicicleta montana", null, null, null)));
+	}
+
+	@Test
+	void searchByKeywordPrefix() {
+		assertEquals(Arrays.asList(3), searchIndex.search(criteria(null, "elec", null, null, null)));
+	}
+
+	@Test
+	void searchByCity() {
+		assertEquals(Arrays.asList(2, 1), searchIndex.search(criteria("a coruña", null, null, null, null)));
+		assertTrue(searchIndex.search(criteria("Ourense", null, null, null, null)).isEmpty());
+	}
+
+	@Test
+	void searchByPriceKeepsSaleAdvertisementsWithoutPrice() {
+		assertEquals(Arrays.asList(2, 1),
+				searchIndex.search(criteria(null, null, BigDecimal.valueOf(10), BigDecimal.valueOf(100), null)));
+	}
+
+	@Test
+	void searchByRatingDiscardsNotRatedOwners() {
+		assertEquals(Arrays.asList(3), searchIndex.search(criteria(null, null, null, null, 4.0)));
+		assertTrue(searchIndex.search(criteria(null, null, null, null, 5.0)).isEmpty());
+	}
+
+	@Test
+	void searchByDate() {
+		SaleAdvertisementSearchCriteria criteria = new SaleAdvertisementSearchCriteria(null, null,
+				NOW.minusDays(2).minusHours(1), NOW, null, null, null);
+		assertEquals(Arrays.asList(3, 2), searchIndex.search(criteria));
+	}
+
+	@Test
+	void searchPageStartsAfterTheCursor() {
+		SaleAdvertisementSearchCriteria all = criteria(null, null, null, null, null);
+
+		assertEquals(Arrays.asList(3, 2), searchIndex.search(all, null, 2));
+		assertEquals(Arrays.asList(1), searchIndex.search(all, searchIndex.cursorOf(2), 2));
+
+		SaleAdvertisementSearchCriteria bike = criteria(null, "bicicleta", null, null, null);
+		assertEquals(Arrays.asList(2, 1), searchIndex.search(bike, searchIndex.cursorOf(3), 5));
+	}
+
+	@Test
+	void searchPageKeepsItsPositionWhenTheCursorIsRemoved() {
+		SaleAdvertisementSearchCriteria all = criteria(null, null, null, null, null);
+		String cursor = searchIndex.cursorOf(2);
+
+		searchIndex.remove(2);
+		assertEquals(Arrays.asList(1), searchIndex.search(all, cursor, 2));
+	}
+
+	@Test
+	void searchPageCursorOutlivesTheRemovalOfTheLastResult() {
+		SaleAdvertisementSearchCriteria bike = criteria(null, "bici", null, null, null);
+
+		SearchPage<Integer> first = searchIndex.searchPage(bike, null, 1);
+		assertEquals(Arrays.asList(3), first.getItems());
+		searchIndex.remove(3);
+
+		SearchPage<Integer> second = searchIndex.searchPage(bike, first.getNextCursor(), 1);
+		assertEquals(Arrays.asList(2), second.getItems());
+		SearchPage<Integer> third = searchIndex.searchPage(bike, second.getNextCursor(), 1);
+		assertEquals(Arrays.asList(1), third.getItems());
+		assertFalse(third.hasNext());
+	}
+
+	@Test
+	void searchPageWithInvalidCursorThrowsException() {
+		assertThrows(IllegalArgumentException.class, () -> {
+			searchIndex.search(criteria(null, null, null, null, null), "not a cursor", 2);
+		});
+	}
+
+	@Test
+	void searchByOwners() {
+		SaleAdvertisementSearchCriteria criteria = new SaleAdvertisementSearchCriteria(null, null, null, null, null,
+				null, null, Arrays.asList(PREMIUM_OWNER_ID));
+		assertEquals(Arrays.asList(3), searchIndex.search(criteria));
+	}
+
+	@Test
+	void indexAndRemoveUpdateTheResults() {
+		searchIndex.search(criteria(null, null, null, null, null));
+
+		DefaultUserEntity owner = new DefaultUserEntity();
+		owner.setId(OWNER_ID);
+		owner.setCity("A Coruña");
+		owner.setRole(Role.ROLE_USER);
+		DefaultSaleAdvertisementEntity saleAdvertisement = new DefaultSaleAdvertisementEntity(4, "Casco",
+				"Casco para bicicleta", owner);
+		saleAdvertisement.setDate(NOW);
+
+		searchIndex.index(saleAdvertisement);
+		assertEquals(Arrays.asList(3, 4, 2, 1), searchIndex.search(criteria(null, "bici", null, null, null)));
+
+		searchIndex.remove(1);
+		assertEquals(Arrays.asList(3, 4, 2), searchIndex.search(criteria(null, "bici", null, null, null)));
+	}
+
+	@Test
+	void hideSoldBeforeRemovesTheExpiredSales() {
+		SaleAdvertisementSearchCriteria all = criteria(null, null, null, null, null);
+		searchIndex.search(all);
+
+		searchIndex.markSold(1, NOW.minusDays(2));
+		assertEquals(Arrays.asList(3, 2, 1), searchIndex.search(all));
+
+		assertEquals(Arrays.asList(1), searchIndex.hideSoldBefore(NOW.minusDays(1)));
+		assertEquals(Arrays.asList(3, 2), searchIndex.search(all));
+
+		assertEquals(Arrays.asList(2), searchIndex.hideSoldBefore(NOW));
+		assertEquals(Arrays.asList(3), searchIndex.search(all));
+	}
+
+	@Test
+	void updateOwnerRoleChangesTheOrder() {
+		searchIndex.search(criteria(null, null, null, null, null));
+
+		searchIndex.updateOwnerRole(PREMIUM_OWNER_ID, Role.ROLE_USER);
+		assertEquals(Arrays.asList(2, 3, 1), searchIndex.search(criteria(null, null, null, null, null)));
+	}
+
+	@Test
+	void updateOwnerRatingChangesTheResults() {
+		searchIndex.search(criteria(null, null, null, null, null));
+
+		searchIndex.updateOwnerRating(OWNER_ID, 5.0);
+		assertEquals(Arrays.asList(2, 1), searchIndex.search(criteria(null, null, null, null, 5.0)));
+
+		searchIndex.updateOwnerRating(OWNER_ID, null);
+		assertEquals(Collections.emptyList(), searchIndex.search(criteria(null, null, null, null, 5.0)));
+	}
+
+	@Test
+	void repeatedSearchIsAnsweredByTheCache() {
+		SaleAdvertisementSearchCriteria criteria = criteria("Lugo", "bici", null, null, null);
+
+		assertEquals(Arrays.asList(3), searchIndex.search(criteria));
+		assertEquals(Arrays.asList(3), searchIndex.search(criteria));
+
+		assertEquals(1, searchIndex.getCacheStats().hitCount());
+		assertEquals(1, searchIndex.getCacheStats().missCount());
+	}
+
+	@Test
+	void changeOnlyEvictsTheMatchingSearches() {
+		SaleAdvertisementSearchCriteria lugo = criteria("Lugo", null, null, null, null);
+		SaleAdvertisementSearchCriteria coruna = criteria("A Coruña", null, null, null, null);
+		searchIndex.search(lugo);
+		searchIndex.search(coruna);
+
+		searchIndex.remove(1);
+		assertEquals(1, searchIndex.getCachedSearches());
+
+		assertEquals(Arrays.asList(3), searchIndex.search(lugo));
+		assertEquals(Arrays.asList(2), searchIndex.search(coruna));
+		assertEquals(1, searchIndex.getCacheStats().hitCount());
+	}
+
+	@Test
+	void changeOnlyEvictsTheSearchesOfItsTokensCityAndOwners() {
+		SaleAdvertisementSearchCriteria bici = criteria(null, "BICI", null, null, null);
+		SaleAdvertisementSearchCriteria mesa = criteria(null, "mesa", null, null, null);
+		SaleAdvertisementSearchCriteria premium = new SaleAdvertisementSearchCriteria(null, null, null, null, null,
+				null, null, Arrays.asList(PREMIUM_OWNER_ID));
+		searchIndex.search(bici);
+		searchIndex.search(mesa);
+		searchIndex.search(premium);
+
+		DefaultUserEntity owner = new DefaultUserEntity();
+		owner.setId(OWNER_ID);
+		owner.setCity("A Coruña");
+		owner.setRole(Role.ROLE_USER);
+		DefaultSaleAdvertisementEntity saleAdvertisement = new DefaultSaleAdvertisementEntity(4, "Casco",
+				"Casco para bicicletas", owner);
+		saleAdvertisement.setDate(NOW);
+		searchIndex.index(saleAdvertisement);
+
+		assertEquals(2, searchIndex.getCachedSearches());
+		assertEquals(Arrays.asList(3, 4, 2, 1), searchIndex.search(bici));
+		assertEquals(Arrays.asList(2), searchIndex.search(mesa));
+		assertEquals(Arrays.asList(3), searchIndex.search(premium));
+		assertEquals(2, searchIndex.getCacheStats().hitCount());
+	}
+
+	@Test
+	void ratingChangeEvictsTheSearchesOfTheOwner() {
+		SaleAdvertisementSearchCriteria rated = criteria(null, null, null, null, 4.0);
+		assertEquals(Arrays.asList(3), searchIndex.search(rated));
+
+		searchIndex.updateOwnerRating(OWNER_ID, 4.5);
+		assertEquals(Arrays.asList(3, 2, 1), searchIndex.search(rated));
+	}
+
+	private SaleAdvertisementSearchCriteria criteria(String city, String keywords, BigDecimal minPrice,
+			BigDecimal maxPrice, Double minRating) {
+		return new SaleAdvertisementSearchCriteria(city, keywords, null, null, minPrice, maxPrice, minRating);
+	}
+
+}
@@ -30,7 +30,10 @@
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -42,19 +45,26 @@
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 
 import es.udc.fi.dc.fd.model.SaleAdvertisementEntity;
 import es.udc.fi.dc.fd.model.State;
 import es.udc.fi.dc.fd.model.persistence.DefaultSaleAdvertisementEntity;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
 import es.udc.fi.dc.fd.repository.ImageRepository;
 import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
 import es.udc.fi.dc.fd.service.DefaultSaleAdvertisementService;
 import es.udc.fi.dc.fd.service.DefaultUserService;
+import es.udc.fi.dc.fd.service.ImageStore;
 import es.udc.fi.dc.fd.service.SaleAdvertisementService;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementAlreadyExistsException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementAlreadyOnHoldException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementAlreadyOnSaleException;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementNotFoundException;
+import es.udc.fi.dc.fd.service.search.FollowedSellersFeed;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchCriteria;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchIndex;
 
 /**
  * Unit tests for the {@link SaleAdvertisementService}.
@@ -72,6 +82,15 @@ final class TestSaleAdvertisementService {
 	@Mock
 	private SaleAdvertisementRepository saleAdvertisementRepository;
 
+	@Mock
+	private SaleAdvertisementSearchIndex searchIndex;
+
+	@Mock
+	private FollowedSellersFeed feed;
+
+	@Mock
+	private ImageStore imageStore;
+
 	/**
 	 * Service being tested.
 	 */
@@ -82,6 +101,10 @@ final class TestSaleAdvertisementService {
 	static final private Integer saleAdvertisementB_ID = 2;
 	static final private Integer storedSaleAdvertisement_ID = 3;
 	static final private Integer saleAdvertisementNotExisting_ID = 25;
+	static final private Integer owner_ID = 7;
+
+	static final private LocalDateTime PUBLICATION_DATE = LocalDateTime.of(2019, 11, 20, 10, 0);
+	static final private LocalDateTime UPDATE_DATE = LocalDateTime.of(2019, 11, 21, 10, 0);
 
 	static final private BigDecimal maximunPrice = new BigDecimal(100);
 
@@ -94,6 +117,8 @@ final class TestSaleAdvertisementService {
 
 	private ArrayList<DefaultSaleAdvertisementEntity> saleAdvertisements;
 
+	private List<Integer> saleAdvertisementIds;
+
 	/**
 	 * Default constructor.
 	 */
@@ -122,11 +147,18 @@ public void initialize() {
 		notStoredSaleAdvertisement = new DefaultSaleAdvertisementEntity();
 		storedSaleAdvertisement = new DefaultSaleAdvertisementEntity();
 		storedSaleAdvertisement.setId(storedSaleAdvertisement_ID);
+		DefaultUserEntity owner = new DefaultUserEntity();
+		owner.setId(owner_ID);
+		storedSaleAdvertisement.setUser(owner);
+		storedSaleAdvertisement.setDate(PUBLICATION_DATE);
 
 		Mockito.when(saleAdvertisementRepository.existsById(notStoredSaleAdvertisement.getId())).thenReturn(false);
 		Mockito.when(saleAdvertisementRepository.save(notStoredSaleAdvertisement)).thenReturn(storedSaleAdvertisement);
 
 		updateSaleAdvertisement = new DefaultSaleAdvertisementEntity();
+		updateSaleAdvertisement.setId(storedSaleAdvertisement_ID);
+		updateSaleAdvertisement.setUser(owner);
+		updateSaleAdvertisement.setDate(UPDATE_DATE);
 		Mockito.when(saleAdvertisementRepository.save(storedSaleAdvertisement)).thenReturn(updateSaleAdvertisement);
 
 		Mockito.doNothing().when(saleAdvertisementRepository).delete(saleAdvertisementA);
@@ -137,6 +169,9 @@ public void initialize() {
 
 		Mockito.when(saleAdvertisementRepository.findAll()).thenReturn(saleAdvertisements);
 
+		saleAdvertisementIds = Arrays.asList(saleAdvertisementA_ID, saleAdvertisementB_ID);
+		Mockito.when(saleAdvertisementRepository.findAllById(Mockito.anyIterable())).thenReturn(saleAdvertisements);
+
 		PageImpl<DefaultSaleAdvertisementEntity> saleAdvertisementPages = new PageImpl<>(saleAdvertisements,
 				PageRequest.of(1, 3), 10);
 		Mockito.when(saleAdvertisementRepository.findAll(PageRequest.of(1, 3))).thenReturn(saleAdvertisementPages);
@@ -191,11 +226,28 @@ void addSaleAdvertisementReturnStoredSaleAdvertisement() {
 		try {
 			SaleAdvertisementEntity savedSaleAdvertisement = saleAdvertisementService.add(notStoredSaleAdvertisement);
 			assertEquals(storedSaleAdvertisement, savedSaleAdvertisement);
+			Mockito.verify(feed).publish(owner_ID, storedSaleAdvertisement_ID, PUBLICATION_DATE);
 		} catch (SaleAdvertisementAlreadyExistsException e) {
 			e.printStackTrace();
 		}
 	}
 
+	@Test
+	void addSaleAdvertisementIndexesItOnceCommitted() throws SaleAdvertisementAlreadyExistsException {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			saleAdvertisementService.add(notStoredSaleAdvertisement);
+			Mockito.verifyZeroInteractions(searchIndex, feed);
+
+			TransactionSynchronizationUtils.triggerAfterCommit();
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		Mockito.verify(searchIndex).index(storedSaleAdvertisement);
+		Mockito.verify(feed).publish(owner_ID, storedSaleAdvertisement_ID, PUBLICATION_DATE);
+	}
+
 	@Test
 	void updateNullSaleAdvertisementThrowException() {
 		assertThrows(NullPointerException.class, () -> {
@@ -216,6 +268,7 @@ void updateExistingSaleAdvertisementReturnsUpdated() {
 		try {
 			storedUpdate = saleAdvertisementService.update(storedSaleAdvertisement);
 			assertEquals(storedUpdate, updateSaleAdvertisement);
+			Mockito.verify(feed).publish(owner_ID, storedSaleAdvertisement_ID, UPDATE_DATE);
 		} catch (SaleAdvertisementNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -353,8 +406,9 @@ void setOnSaleAdvertisementAlreadyOnHoldThrowException() {
 	@Test
 	void getSaleAdvertisementsBySearchCriteriaRatingNull() {
 
-		Mockito.when(saleAdvertisementRepository.findSaleAdvertisementsByCriteria(null, null, null, null, null, null))
-				.thenReturn(saleAdvertisements);
+		Mockito.when(searchIndex
+				.search(new SaleAdvertisementSearchCriteria(null, null, null, null, null, null, null)))
+				.thenReturn(saleAdvertisementIds);
 		Iterable<DefaultSaleAdvertisementEntity> saleAdvertisementIterable = saleAdvertisementService
 				.getSaleAdvertisementsBySearchCriteria(null, null, null, null, null, null, null);
 		assertEquals(saleAdvertisements, saleAdvertisementIterable);
@@ -363,8 +417,8 @@ void getSaleAdvertisementsBySearchCriteriaRatingNull() {
 	@Test
 	void getSaleAdvertisementsBySearchCriteriaRatingLowerThanMin() {
 
-		Mockito.when(saleAdvertisementRepository.findSaleAdvertisementsByCriteriaAndRating(null, null, null, null, null,
-				null, Double.valueOf(DefaultUserService.MIN_RATING))).thenReturn(saleAdvertisements);
+		Mockito.when(searchIndex.search(new SaleAdvertisementSearchCriteria(null, null, null, null, null, null,
+				Double.valueOf(DefaultUserService.MIN_RATING)))).thenReturn(saleAdvertisementIds);
 		Iterable<DefaultSaleAdvertisementEntity> saleAdvertisementIterable = saleAdvertisementService
 				.getSaleAdvertisementsBySearchCriteria(null, null, null, null, null, null, Double.valueOf(-99));
 		assertEquals(saleAdvertisements, saleAdvertisementIterable);
@@ -373,11 +427,22 @@ void getSaleAdvertisementsBySearchCriteriaRatingLowerThanMin() {
 	@Test
 	void getSaleAdvertisementsBySearchCriteriaRatingLowerUpperThanMax() {
 
-		Mockito.when(saleAdvertisementRepository.findSaleAdvertisementsByCriteriaAndRating(null, null, null, null, null,
-				null, Double.valueOf(DefaultUserService.MAX_RATING))).thenReturn(saleAdvertisements);
+		Mockito.when(searchIndex.search(new SaleAdvertisementSearchCriteria(null, null, null, null, null, null,
+				Double.valueOf(DefaultUserService.MAX_RATING)))).thenReturn(saleAdvertisementIds);
 		Iterable<DefaultSaleAdvertisementEntity> saleAdvertisementIterable = saleAdvertisementService
 				.getSaleAdvertisementsBySearchCriteria(null, null, null, null, null, null, Double.valueOf(99));
 		assertEquals(saleAdvertisements, saleAdvertisementIterable);
 	}
 
+	@Test
+	void getSaleAdvertisementsBySearchCriteriaKeepsIndexOrder() {
+
+		Mockito.when(searchIndex
+				.search(new SaleAdvertisementSearchCriteria(null, "bike", null, null, null, null, null)))
+				.thenReturn(Arrays.asList(saleAdvertisementB_ID, saleAdvertisementA_ID));
+		Iterable<DefaultSaleAdvertisementEntity> saleAdvertisementIterable = saleAdvertisementService
+				.getSaleAdvertisementsBySearchCriteria(null, "bike", null, null, null, null, null);
+		assertEquals(Arrays.asList(saleAdvertisementB, saleAdvertisementA), saleAdvertisementIterable);
+	}
+
 }
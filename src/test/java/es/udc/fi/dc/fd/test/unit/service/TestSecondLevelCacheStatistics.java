@@ -0,0 +1,88 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import es.udc.fi.dc.fd.service.SecondLevelCacheStatistics;
+
+/**
+ * Unit tests for the {@link SecondLevelCacheStatistics}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestSecondLevelCacheStatistics {
+
+	private static final String USERS = "es.udc.fi.dc.fd.model.persistence.DefaultUserEntity";
+
+	private static final String IMAGES = "es.udc.fi.dc.fd.model.persistence.DefaultImageEntity";
+
+	@Mock
+	private EntityManagerFactory entityManagerFactory;
+
+	@Mock
+	private SessionFactory sessionFactory;
+
+	@Mock
+	private Statistics statistics;
+
+	@Mock
+	private CacheRegionStatistics userStatistics;
+
+	@InjectMocks
+	private SecondLevelCacheStatistics cacheStatistics;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestSecondLevelCacheStatistics() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+
+		when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+		when(sessionFactory.getStatistics()).thenReturn(statistics);
+		when(statistics.getSecondLevelCacheRegionNames()).thenReturn(new String[] { USERS, IMAGES });
+		when(statistics.getCacheRegionStatistics(USERS)).thenReturn(userStatistics);
+		when(userStatistics.getHitCount()).thenReturn(3L);
+		when(userStatistics.getMissCount()).thenReturn(1L);
+		when(userStatistics.getPutCount()).thenReturn(1L);
+		when(userStatistics.getElementCountInMemory()).thenReturn(1L);
+	}
+
+	@Test
+	void describesEveryRegionInOrder() {
+		assertArrayEquals(
+				new String[] { IMAGES + ": not found",
+						USERS + ": hits=3, misses=1, hitRate=0.750, puts=1, elements=1" },
+				cacheStatistics.getRegionStatistics());
+	}
+
+	@Test
+	void givesTheCountersOfARegion() {
+		assertEquals(3L, cacheStatistics.regionHitCount(USERS));
+		assertEquals(1L, cacheStatistics.regionMissCount(USERS));
+		assertEquals(-1L, cacheStatistics.regionHitCount(IMAGES));
+	}
+
+	@Test
+	void hitRateWithoutRequestsIsOne() {
+		assertEquals(1.0, cacheStatistics.getHitRate());
+	}
+
+}
@@ -0,0 +1,84 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import es.udc.fi.dc.fd.model.Role;
+import es.udc.fi.dc.fd.model.persistence.DefaultUserEntity;
+import es.udc.fi.dc.fd.service.securityService.LoggedUser;
+import es.udc.fi.dc.fd.service.securityService.SecurityServiceImpl;
+
+/**
+ * Unit tests for the {@link SecurityServiceImpl}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestSecurityService {
+
+	@Mock
+	private AuthenticationManager authenticationManager;
+
+	/**
+	 * Service being tested.
+	 */
+	@InjectMocks
+	private SecurityServiceImpl securityService;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestSecurityService() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+
+		LoggedUser loggedUser = new LoggedUser(1, "userLogin", "", Role.ROLE_USER, "city",
+				Collections.singleton(new SimpleGrantedAuthority(Role.ROLE_USER.getRole())));
+		loggedUser.eraseCredentials();
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(loggedUser, null, loggedUser.getAuthorities()));
+	}
+
+	@AfterEach
+	public void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void updateLoggedInUserKeepsThePrincipalWithoutThePassword() {
+		DefaultUserEntity user = new DefaultUserEntity();
+		user.setId(1);
+		user.setLogin("userLogin");
+		user.setPassword("$2a$10$hashOfThePassword");
+		user.setRole(Role.ROLE_PREMIUM);
+		user.setCity("otherCity");
+
+		securityService.updateLoggedInUser(user);
+
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		LoggedUser updated = (LoggedUser) authentication.getPrincipal();
+		assertEquals(Role.ROLE_PREMIUM, updated.getRole());
+		assertEquals("otherCity", updated.getCity());
+		assertNull(updated.getPassword());
+		assertNull(authentication.getCredentials());
+	}
+
+}
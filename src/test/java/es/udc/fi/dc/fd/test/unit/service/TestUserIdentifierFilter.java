@@ -0,0 +1,97 @@
+package es.udc.fi.dc.fd.test.unit.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import es.udc.fi.dc.fd.repository.UserRepository;
+import es.udc.fi.dc.fd.service.UserIdentifierFilter;
+
+/**
+ * Unit tests for the {@link UserIdentifierFilter}.
+ */
+@RunWith(JUnitPlatform.class)
+final class TestUserIdentifierFilter {
+
+	@Mock
+	private UserRepository userRepository;
+
+	/**
+	 * Filter being tested.
+	 */
+	private UserIdentifierFilter filter;
+
+	/**
+	 * Default constructor.
+	 */
+	public TestUserIdentifierFilter() {
+		super();
+	}
+
+	@BeforeEach
+	public void initialize() {
+		MockitoAnnotations.initMocks(this);
+
+		when(userRepository.count()).thenReturn(1L);
+		when(userRepository.findLoginsAndEmails())
+				.thenReturn(Collections.singletonList(new Object[] { "UserLogin", "User@Udc.es" }));
+
+		filter = new UserIdentifierFilter(userRepository);
+	}
+
+	@Test
+	void comparesTheValuesInLowerCase() {
+		assertTrue(filter.mightContainLogin("userlogin"));
+		assertTrue(filter.mightContainLogin(" USERLOGIN "));
+		assertTrue(filter.mightContainEmail("user@udc.es"));
+		assertTrue(filter.mightContainEmail("USER@UDC.ES"));
+	}
+
+	@Test
+	void containsTheValuesAdded() {
+		assertFalse(filter.mightContainLogin("otherLogin"));
+
+		for (int i = 0; i < 1000; i++)
+			filter.add("Login" + i, "Email" + i + "@udc.es");
+
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(filter.mightContainLogin("login" + i));
+			assertTrue(filter.mightContainEmail("EMAIL" + i + "@UDC.ES"));
+		}
+		verify(userRepository, times(1)).findLoginsAndEmails();
+	}
+
+	@Test
+	void loadsTheValuesAddedBeforeTheFirstUseFromTheRepository() {
+		filter.add("newLogin", "new@udc.es");
+		when(userRepository.findLoginsAndEmails())
+				.thenReturn(Collections.singletonList(new Object[] { "newLogin", "new@udc.es" }));
+
+		assertTrue(filter.mightContainLogin("newLogin"));
+		assertTrue(filter.mightContainEmail("new@udc.es"));
+	}
+
+	@Test
+	void reloadsOnceItHoldsMoreValuesThanItWasSizedFor() {
+		assertTrue(filter.mightContainLogin("UserLogin"));
+
+		// The filters are sized for at least 100000 users
+		for (int i = 0; i < 120_000; i++)
+			filter.add("login" + i, "email" + i);
+
+		assertTrue(filter.mightContainLogin("UserLogin"));
+		verify(userRepository, times(2)).findLoginsAndEmails();
+	}
+
+}
@@ -38,7 +38,12 @@
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 
 import es.udc.fi.dc.fd.model.Role;
 import es.udc.fi.dc.fd.model.persistence.DefaultRateUserEntity;
@@ -48,6 +53,9 @@
 import es.udc.fi.dc.fd.repository.SaleAdvertisementRepository;
 import es.udc.fi.dc.fd.repository.UserRepository;
 import es.udc.fi.dc.fd.service.DefaultUserService;
+import es.udc.fi.dc.fd.service.UserIdentifierFilter;
+import es.udc.fi.dc.fd.service.search.FollowedSellersFeed;
+import es.udc.fi.dc.fd.service.search.SaleAdvertisementSearchIndex;
 import es.udc.fi.dc.fd.service.SaleAdvertisementService;
 import es.udc.fi.dc.fd.service.exceptions.SaleAdvertisementNotFoundException;
 import es.udc.fi.dc.fd.service.user.exceptions.HighRatingException;
@@ -81,6 +89,22 @@ final class TestUserService {
 
 	@Mock
 	private RateUserRepository rateUserRepository;
+
+	@Mock
+	private SaleAdvertisementSearchIndex searchIndex;
+
+	@Mock
+	private FollowedSellersFeed feed;
+
+	@Mock
+	private UserCache userCache;
+
+	@Spy
+	private PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+
+	@Mock
+	private UserIdentifierFilter identifierFilter;
+
 	/**
 	 * Service being tested.
 	 */
@@ -98,6 +122,10 @@ public TestUserService() {
 	@BeforeEach
 	public void initialize() {
 		MockitoAnnotations.initMocks(this);
+
+		// Every login and email may be in use, so the repository is asked
+		Mockito.when(identifierFilter.mightContainLogin(Mockito.any())).thenReturn(true);
+		Mockito.when(identifierFilter.mightContainEmail(Mockito.any())).thenReturn(true);
 	}
 
 	@Test
@@ -264,6 +292,45 @@ void findByLogin() {
 		}
 	}
 
+	@Test
+	void signUpSkipsTheRepositoryForFreeLoginAndEmail()
+			throws UserLoginExistsException, UserEmailExistsException, UserLoginAndEmailExistsException {
+		DefaultUserEntity user = new DefaultUserEntity();
+		user.setLogin("userLogin");
+		user.setEmail("userEmail");
+		user.setPassword("userPassword");
+
+		Mockito.when(identifierFilter.mightContainLogin("userLogin")).thenReturn(false);
+		Mockito.when(identifierFilter.mightContainEmail("userEmail")).thenReturn(false);
+
+		userService.signUp(user);
+
+		Mockito.verify(userRepository, Mockito.never()).existsByLogin(Mockito.any());
+		Mockito.verify(userRepository, Mockito.never()).existsByEmail(Mockito.any());
+		Mockito.verify(userRepository).save(user);
+		Mockito.verify(identifierFilter).add("userLogin", "userEmail");
+	}
+
+	@Test
+	void findByLoginReadsTheUserOnce() throws UserNotFoundException {
+		DefaultUserEntity user = new DefaultUserEntity();
+		String userLogin = "userLogin";
+		user.setLogin(userLogin);
+
+		Mockito.when(userRepository.findByLogin(userLogin)).thenReturn(user);
+
+		assertEquals(user, userService.findByLogin(userLogin));
+		Mockito.verify(userRepository).findByLogin(userLogin);
+		Mockito.verifyNoMoreInteractions(userRepository);
+	}
+
+	@Test
+	void getReferenceWithoutIdentifierThrowException() {
+		assertThrows(UserNotFoundException.class, () -> {
+			userService.getReference(null);
+		});
+	}
+
 	@Test
 	void findByEmailNotFoundThrowException() {
 		String userEmail = "userEmail";
@@ -379,16 +446,35 @@ void likeUserSaleAdvertisement() {
 		Mockito.when(saleAdvertisementRepository.existsById(saleAdvertisementId)).thenReturn(true);
 		user.addLike(saleAdvertisement);
 		saleAdvertisement.addUsersLike(user);
-		Mockito.when(userRepository.save(user)).thenReturn(user);
-		Mockito.when(saleAdvertisementRepository.save(saleAdvertisement)).thenReturn(saleAdvertisement);
+		Mockito.when(saleAdvertisementRepository.insertLike(userId, saleAdvertisementId)).thenReturn(1);
+		Mockito.when(userRepository.findById(userId)).thenReturn(Optional.of(user));
 
 		try {
 			assertEquals(userService.like(userNoLike, saleAdvertisement), user);
+			Mockito.verify(saleAdvertisementRepository).updateLikesCount(saleAdvertisementId, 1);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	@Test
+	void likeAlreadyLikedSaleAdvertisementDoesNotCountTwice() throws Exception {
+		int userId = 1;
+		DefaultUserEntity user = new DefaultUserEntity();
+		user.setId(userId);
+		int saleAdvertisementId = 1;
+		DefaultSaleAdvertisementEntity saleAdvertisement = new DefaultSaleAdvertisementEntity();
+		saleAdvertisement.setId(saleAdvertisementId);
+		Mockito.when(userRepository.existsById(userId)).thenReturn(true);
+		Mockito.when(saleAdvertisementRepository.existsById(saleAdvertisementId)).thenReturn(true);
+		Mockito.when(saleAdvertisementRepository.insertLike(userId, saleAdvertisementId)).thenReturn(0);
+		Mockito.when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+
+		assertEquals(userService.like(user, saleAdvertisement), user);
+		Mockito.verify(saleAdvertisementRepository, Mockito.never()).updateLikesCount(Mockito.anyInt(),
+				Mockito.anyInt());
+	}
+
 	@Test
 	void unlikeNullUserThrowException() {
 		int saleAdvertisementId = 1;
@@ -457,11 +543,12 @@ void unlikeUserSaleAdvertisement() {
 		Mockito.when(saleAdvertisementRepository.existsById(saleAdvertisementId)).thenReturn(true);
 		userWithLike.addLike(saleAdvertisement);
 		saleAdvertisement.addUsersLike(userWithLike);
-		Mockito.when(userRepository.save(userNoLike)).thenReturn(userNoLike);
-		Mockito.when(saleAdvertisementRepository.save(saleAdvertisement)).thenReturn(saleAdvertisement);
+		Mockito.when(saleAdvertisementRepository.deleteLike(userId, saleAdvertisementId)).thenReturn(1);
+		Mockito.when(userRepository.findById(userId)).thenReturn(Optional.of(userNoLike));
 
 		try {
 			assertEquals(userService.unlike(userWithLike, saleAdvertisement), userNoLike);
+			Mockito.verify(saleAdvertisementRepository).updateLikesCount(saleAdvertisementId, -1);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -533,6 +620,7 @@ void followUser() {
 		Mockito.when(userRepository.save(user)).thenReturn(userHaveFollow);
 		try {
 			assertEquals(userService.followUser(user, userToFollow), userHaveFollow);
+			Mockito.verify(feed).follow(userId, userToFollowId);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -601,6 +689,7 @@ void unfollowUser() {
 		Mockito.when(userRepository.save(user)).thenReturn(user);
 		try {
 			assertEquals(userService.unfollowUser(user, userToUnFollow), user);
+			Mockito.verify(feed).unfollow(userId, userToUnFollowId);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -755,7 +844,8 @@ void rateUserRateGreaterThanMaxRatingThrowException() {
 	}
 
 	@Test
-	void rateUser() {
+	void rateUser()
+			throws UserNotFoundException, UserAlreadyGiveRatingToUserToRate, LowRatingException, HighRatingException {
 		int userId = 1;
 		int userToRateId = 2;
 		DefaultUserEntity user = new DefaultUserEntity();
@@ -768,12 +858,22 @@ void rateUser() {
 		DefaultRateUserEntity rate = new DefaultRateUserEntity(user, userToRate, userService.getMaxRating());
 		Mockito.when(rateUserRepository.save(rate)).thenReturn(rate);
 
-		try {
-			userService.rateUser(user, userToRate, userService.getMaxRating());
-			assertTrue(true);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		Mockito.when(userRepository.findAverageRating(userToRateId)).thenReturn(Double.valueOf(5));
+
+		userService.rateUser(user, userToRate, userService.getMaxRating());
+
+		Mockito.verify(userRepository).addRating(userToRateId, userService.getMaxRating());
+		Mockito.verify(searchIndex).updateOwnerRating(userToRateId, Double.valueOf(5));
+	}
+
+	@Test
+	void existsRatingForUserReadsTheRatingAggregate() throws UserNotFoundException {
+		int userId = 1;
+		DefaultUserEntity user = new DefaultUserEntity();
+		user.setId(userId);
+		Mockito.when(userRepository.existsById(userId)).thenReturn(true);
+		Mockito.when(userRepository.existsRatedUser(userId)).thenReturn(true);
+		assertTrue(userService.existsRatingForUser(user));
 	}
 
 	@Test
@@ -793,7 +893,7 @@ void averageRatingUserWithoutRateThrowException() {
 		DefaultUserEntity user = new DefaultUserEntity();
 		user.setId(userId);
 		Mockito.when(userRepository.existsById(userId)).thenReturn(true);
-		Mockito.when(rateUserRepository.existsRatedUser(userId)).thenReturn(false);
+		Mockito.when(userRepository.findAverageRating(userId)).thenReturn(null);
 		assertThrows(UserNoRatingException.class, () -> {
 			userService.averageRating(user);
 		});
@@ -805,8 +905,7 @@ void averageRating() {
 		DefaultUserEntity user = new DefaultUserEntity();
 		user.setId(userId);
 		Mockito.when(userRepository.existsById(userId)).thenReturn(true);
-		Mockito.when(rateUserRepository.existsRatedUser(userId)).thenReturn(true);
-		Mockito.when(rateUserRepository.findAverageRating(userId)).thenReturn(Double.valueOf(5));
+		Mockito.when(userRepository.findAverageRating(userId)).thenReturn(Double.valueOf(5));
 		try {
 			assertEquals(userService.averageRating(user), Double.valueOf(5));
 		} catch (Exception e) {
@@ -891,6 +990,42 @@ void premiumUserNoPremiumToPremium() {
 		}
 	}
 
+	@Test
+	void premiumUserRemovesTheUserFromTheCache() throws UserNotFoundException {
+		int userId = 1;
+		DefaultUserEntity user = new DefaultUserEntity();
+		user.setId(userId);
+		user.setLogin("userLogin");
+		user.setRole(Role.ROLE_USER);
+		Mockito.when(userRepository.existsById(userId)).thenReturn(true);
+
+		userService.premiumUser(user);
+
+		Mockito.verify(userCache).removeUserFromCache("userLogin");
+	}
+
+	@Test
+	void premiumUserRemovesTheUserFromTheCacheOnceCommitted() throws UserNotFoundException {
+		int userId = 1;
+		DefaultUserEntity user = new DefaultUserEntity();
+		user.setId(userId);
+		user.setLogin("userLogin");
+		user.setRole(Role.ROLE_USER);
+		Mockito.when(userRepository.existsById(userId)).thenReturn(true);
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			userService.premiumUser(user);
+			Mockito.verifyZeroInteractions(userCache);
+
+			TransactionSynchronizationUtils.triggerAfterCommit();
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		Mockito.verify(userCache).removeUserFromCache("userLogin");
+	}
+
 	@Test
 	void premiumUserPremiumToNoPremium() {
 		int userId = 1;